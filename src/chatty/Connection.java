@@ -28,7 +28,7 @@ public class Connection implements Runnable {
     
     private Socket socket;
     private PrintWriter out;
-    private BufferedReader in;
+    private InputStream in;
     private boolean connected = false;
     
     private int disconnectReason = -1;
@@ -98,9 +98,7 @@ public class Connection implements Runnable {
             out = new PrintWriter(
                     new OutputStreamWriter(socket.getOutputStream(),charset)
                     );
-            in = new BufferedReader(
-                    new InputStreamReader(socket.getInputStream(),charset)
-                );
+            in = socket.getInputStream();
             socket.setSoTimeout(SOCKET_BLOCK_TIMEOUT);
         } catch (UnknownHostException ex) {
             irc.disconnected(Irc.ERROR_UNKNOWN_HOST);
@@ -122,47 +120,24 @@ public class Connection implements Runnable {
         connected = true;
         irc.connected(socket.getInetAddress().toString(),address.getPort());
         
-        StringBuilder b = new StringBuilder();
-        boolean previousWasCR = false;
-        String receivedLine = null;
+        LineReader reader = new LineReader(in);
         while (true) {
             try {
                 /**
                  * Read line ending with \r\n (blocks, but has a timeout set).
                  * 
                  * This also filters \r and \n characters from the parsed
-                 * messages, because they are not added to the buffer.
+                 * messages. If the timeout occurs in the middle of a line, the
+                 * already received part is kept in the reader.
                  */
-                int c = in.read();
-                if (c == -1) {
+                String receivedLine = reader.readLine();
+                if (receivedLine == null) {
                     // End of stream
                     break;
                 }
-                if (c == '\r') {
-                    previousWasCR = true;
-                    //System.out.print("\\r");
-                } else if (c == '\n') {
-                    //System.out.println("\\n");
-                    if (previousWasCR) {
-                        // Take buffer as line and reset
-                        receivedLine = b.toString();
-                        b.setLength(0);
-                        previousWasCR = false;
-                    }
-                } else {
-                    b.append((char)c);
-                    previousWasCR = false;
-                    //System.out.print((char)c);
-                }
-                
-                if (receivedLine == null) {
-                    // Read more characters to get to end of line
-                    continue;
-                }
                 
                 // Line was received
                 irc.received(receivedLine);
-                receivedLine = null;
                 activity();
             } catch (SocketTimeoutException ex) {
                 checkConnection();
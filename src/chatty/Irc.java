@@ -7,11 +7,9 @@ import chatty.util.DelayedActionQueue.DelayedActionListener;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
 import java.util.logging.Logger;
-import java.util.regex.Pattern;
 
 /**
  *
@@ -100,7 +98,17 @@ public abstract class Irc {
     private boolean requestedDisconnect = false;
     
     
-    private static final Pattern SPACE_PATTERN = Pattern.compile(" ");
+    /**
+     * Reused for each received line. Usually only the Connection Thread calls
+     * received(), but simulate() may be called from other threads.
+     */
+    private static final ThreadLocal<IrcMessage> PARSER = new ThreadLocal<IrcMessage>() {
+        
+        @Override
+        protected IrcMessage initialValue() {
+            return new IrcMessage();
+        }
+    };
     
     private final String id;
     private final String idPrefix;
@@ -243,23 +251,6 @@ public abstract class Irc {
         sendCommand("QUIT",quitmessage);
     }
     
-    private static Map<String, String> parseTags(String data) {
-        String[] tags = data.split(";");
-        if (tags.length > 0) {
-            Map<String, String> result = new HashMap<>();
-            for (String tag : tags) {
-                String[] keyValue = tag.split("=",2);
-                if (keyValue.length == 2) {
-                    result.put(keyValue[0], Helper.tagsvalue_decode(keyValue[1]));
-                } else {
-                    result.put(keyValue[0], null);
-                }
-            }
-            return result;
-        }
-        return null;
-    }
-    
     public void simulate(String data) {
         received(data);
     }
@@ -275,63 +266,18 @@ public abstract class Irc {
         }
         raw(data);
         
-        Map<String, String> tags = null;
-        if (data.startsWith("@")) {
-            int endOfTags = data.indexOf(" ");
-            if (endOfTags == -1) {
-                warning("Parsing error: Couldn't find whitespace after tags: "+data);
-                return;
-            }
-            tags = parseTags(data.substring(1, endOfTags));
-            data = data.substring(endOfTags+1);
-        }
-        //System.out.println("Tags: "+tags);
-        
-        String prefix = "";
-        String command;
-        String[] parameters = new String[0];
-        String trailing = "";
-        
-        int endOfPrefix = 0;
-        int endOfCommand = 0;
-        
-        // Get prefix if available
-        if (data.startsWith(":")) {
-            endOfPrefix = data.indexOf(" ");
-            if (endOfPrefix == -1) {
-                warning("Parsing error: Couldn't find whitespace after prefix: "+data);
-                return;
-            }
-            prefix = data.substring(1,endOfPrefix);
-        }
-        
-        // Find and get trailing if available
-        endOfCommand = data.indexOf(":",endOfPrefix);
-        if (endOfCommand == -1) {
-            // No trailing, so the command takes up the remaining length
-            endOfCommand = data.length();
-        }
-        else {
-            trailing = data.substring(endOfCommand+1,data.length());
-        }
-        
-        // Get commands and parameters
-        String commandAndParameter = data.substring(endOfPrefix,endOfCommand).trim();
-        // Trying precompiled Pattern, but may not change the performance
-        // that much (it's an easy Pattern after all)
-        String[] parts = SPACE_PATTERN.split(commandAndParameter);
-        //String[] parts = commandAndParameter.split(" ");
-        if (parts.length > 1) {
-            // Get parameters if available
-            parameters = new String[parts.length - 1];
-            System.arraycopy(parts, 1, parameters, 0, parts.length - 1);
+        IrcMessage message = PARSER.get();
+        String error = message.parse(data);
+        if (error != null) {
+            warning("Parsing error: "+error+": "+data);
+            return;
         }
-        // First part must be command
-        command = parts[0];
         
         // An exception shouldn't happen unless the message is malformed (hopefully :P)
 //        try {
-            receivedCommand(prefix,command,parameters,trailing, tags);
+            receivedCommand(message.getPrefix(), message.getCommand(),
+                    message.getParameters(), message.getTrailing(),
+                    message.getTags());
 //        } catch (NullPointerException | ArrayIndexOutOfBoundsException ex) {
 //            warning("Error parsing irc message: "+data+" ["+ex+"]");
 //        }
@@ -0,0 +1,197 @@
+
+package chatty;
+
+import java.util.Arrays;
+
+/**
+ * A reusable view on a single received IRC line, which only stores the
+ * positions of the different parts of the message, determined in a single
+ * pass over the line.
+ *
+ * The parts are only turned into Strings when requested, and the tags are
+ * returned as {@link IrcTags}, which decodes values only on request.
+ *
+ * The rules are the same as previously used by {@link Irc}: the trailing
+ * starts at the first ":" after the prefix, and the command and parameters
+ * are separated by single spaces (so several consecutive spaces result in
+ * empty parameters).
+ *
+ * Since the same object is reused for each line, this is not thread-safe and
+ * the parts have to be retrieved before the next line is parsed.
+ *
+ * @author tduva
+ */
+class IrcMessage {
+
+    private static final String[] NO_PARAMETERS = new String[0];
+
+    private String data;
+
+    private int tagsStart;
+    private int tagsEnd;
+    private int prefixStart;
+    private int prefixEnd;
+    private int commandStart;
+    private int commandEnd;
+    private int trailingStart;
+
+    /**
+     * Start and end of each parameter.
+     */
+    private int[] params = new int[16];
+    private int paramsCount;
+
+    /**
+     * Parse the given line, replacing any previous data.
+     *
+     * @param data The line, must not be null
+     * @return null if the line was parsed successfully, an error message
+     * otherwise
+     */
+    public String parse(String data) {
+        this.data = data;
+        tagsStart = -1;
+        tagsEnd = -1;
+        prefixStart = -1;
+        prefixEnd = -1;
+        trailingStart = -1;
+        paramsCount = 0;
+
+        int pos = 0;
+        if (data.startsWith("@")) {
+            int endOfTags = data.indexOf(' ');
+            if (endOfTags == -1) {
+                return "Couldn't find whitespace after tags";
+            }
+            tagsStart = 1;
+            tagsEnd = endOfTags;
+            pos = endOfTags + 1;
+        }
+
+        int endOfPrefix = pos;
+        if (data.startsWith(":", pos)) {
+            endOfPrefix = data.indexOf(' ', pos);
+            if (endOfPrefix == -1) {
+                return "Couldn't find whitespace after prefix";
+            }
+            prefixStart = pos + 1;
+            prefixEnd = endOfPrefix;
+        }
+
+        int end = data.indexOf(':', endOfPrefix);
+        if (end == -1) {
+            end = data.length();
+        } else {
+            trailingStart = end + 1;
+        }
+
+        // Trim command and parameters section (same as String.trim())
+        int start = endOfPrefix;
+        while (start < end && data.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && data.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        // First part is the command, all others are parameters
+        int partStart = start;
+        boolean first = true;
+        for (int i = start; i <= end; i++) {
+            if (i == end || data.charAt(i) == ' ') {
+                if (first) {
+                    commandStart = partStart;
+                    commandEnd = i;
+                    first = false;
+                } else {
+                    addParameter(partStart, i);
+                }
+                partStart = i + 1;
+            }
+        }
+        return null;
+    }
+
+    private void addParameter(int start, int end) {
+        if (params.length < (paramsCount + 1) * 2) {
+            params = Arrays.copyOf(params, params.length * 2);
+        }
+        params[paramsCount * 2] = start;
+        params[paramsCount * 2 + 1] = end;
+        paramsCount++;
+    }
+
+    public String getRaw() {
+        return data;
+    }
+
+    /**
+     * The tags, if present. The returned object is independant from this one
+     * and can be retained.
+     *
+     * @return The tags, or null if the message didn't have tags
+     */
+    public IrcTags getTags() {
+        if (tagsStart == -1) {
+            return null;
+        }
+        return new IrcTags(data, tagsStart, tagsEnd);
+    }
+
+    /**
+     *
+     * @return The prefix, or an empty String if none was present
+     */
+    public String getPrefix() {
+        if (prefixStart == -1) {
+            return "";
+        }
+        return data.substring(prefixStart, prefixEnd);
+    }
+
+    public String getCommand() {
+        return data.substring(commandStart, commandEnd);
+    }
+
+    /**
+     * Check if the command equals the given one, without creating a String.
+     *
+     * @param command
+     * @return
+     */
+    public boolean isCommand(String command) {
+        return commandEnd - commandStart == command.length()
+                && data.startsWith(command, commandStart);
+    }
+
+    public int getParameterCount() {
+        return paramsCount;
+    }
+
+    public String getParameter(int index) {
+        return data.substring(params[index * 2], params[index * 2 + 1]);
+    }
+
+    public String[] getParameters() {
+        if (paramsCount == 0) {
+            return NO_PARAMETERS;
+        }
+        String[] result = new String[paramsCount];
+        for (int i = 0; i < paramsCount; i++) {
+            result[i] = getParameter(i);
+        }
+        return result;
+    }
+
+    /**
+     *
+     * @return The trailing, or an empty String if none was present
+     */
+    public String getTrailing() {
+        if (trailingStart == -1) {
+            return "";
+        }
+        return data.substring(trailingStart);
+    }
+
+}
@@ -0,0 +1,182 @@
+
+package chatty;
+
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The IRCv3 tags of a message, as a read-only Map that works directly on the
+ * received line.
+ *
+ * When created, only the positions of the keys and values are determined. A
+ * value is only decoded the first time it is requested, and a regular Map of
+ * all tags is only created when it's actually needed (e.g. for iterating over
+ * the entries), so for the common case of looking up a few keys there are
+ * much less objects created than when parsing all tags into a HashMap.
+ *
+ * Since the data is never changed after creation, this can be passed on to
+ * other threads. Decoded values are cached in a way that may at worst cause a
+ * value to be decoded more than once.
+ *
+ * @author tduva
+ */
+public class IrcTags extends AbstractMap<String, String> {
+
+    private static final int NO_VALUE = -1;
+
+    private final String data;
+    private final int count;
+
+    /**
+     * Offsets into data, for each tag: key start, key end, value start (or
+     * NO_VALUE) and value end.
+     */
+    private final int[] offsets;
+
+    /**
+     * The decoded values, filled on request.
+     */
+    private final String[] values;
+
+    /**
+     * The full Map, only created if requested.
+     */
+    private volatile Map<String, String> map;
+
+    /**
+     * Parse the tags in the given section of the line.
+     *
+     * @param data The line containing the tags
+     * @param start The start of the tags (after the @)
+     * @param end The end of the tags (exclusive)
+     */
+    IrcTags(String data, int start, int end) {
+        this.data = data;
+        int[] offsets = new int[32];
+        int count = 0;
+        int pos = start;
+        while (pos <= end) {
+            int tagEnd = data.indexOf(';', pos);
+            if (tagEnd == -1 || tagEnd > end) {
+                tagEnd = end;
+            }
+            if (tagEnd > pos) {
+                int equals = data.indexOf('=', pos);
+                if (offsets.length < (count + 1) * 4) {
+                    offsets = Arrays.copyOf(offsets, offsets.length * 2);
+                }
+                int i = count * 4;
+                offsets[i] = pos;
+                if (equals != -1 && equals < tagEnd) {
+                    offsets[i + 1] = equals;
+                    offsets[i + 2] = equals + 1;
+                } else {
+                    offsets[i + 1] = tagEnd;
+                    offsets[i + 2] = NO_VALUE;
+                }
+                offsets[i + 3] = tagEnd;
+                count++;
+            }
+            pos = tagEnd + 1;
+        }
+        this.count = count;
+        this.offsets = offsets;
+        this.values = new String[count];
+    }
+
+    /**
+     * Find the index of the tag with the given key. If the key occurs more
+     * than once, the last one is used.
+     *
+     * @param key
+     * @return The index, or -1 if the key wasn't found
+     */
+    private int find(Object key) {
+        if (!(key instanceof String)) {
+            return -1;
+        }
+        String k = (String) key;
+        int length = k.length();
+        for (int index = count - 1; index >= 0; index--) {
+            int i = index * 4;
+            if (offsets[i + 1] - offsets[i] == length
+                    && data.regionMatches(offsets[i], k, 0, length)) {
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    private String getValue(int index) {
+        int i = index * 4;
+        if (offsets[i + 2] == NO_VALUE) {
+            return null;
+        }
+        String value = values[index];
+        if (value == null) {
+            value = decode(data, offsets[i + 2], offsets[i + 3]);
+            values[index] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Only use the regular decoding if there actually are escaped characters
+     * (which all start with a backslash).
+     */
+    private static String decode(String data, int start, int end) {
+        String value = data.substring(start, end);
+        if (value.indexOf('\\') == -1) {
+            return value;
+        }
+        return Helper.tagsvalue_decode(value);
+    }
+
+    @Override
+    public String get(Object key) {
+        int index = find(key);
+        if (index == -1) {
+            return null;
+        }
+        return getValue(index);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return find(key) != -1;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    @Override
+    public int size() {
+        return getMap().size();
+    }
+
+    @Override
+    public Set<Entry<String, String>> entrySet() {
+        return getMap().entrySet();
+    }
+
+    private Map<String, String> getMap() {
+        Map<String, String> result = map;
+        if (result == null) {
+            result = new HashMap<>();
+            for (int index = 0; index < count; index++) {
+                int i = index * 4;
+                result.put(data.substring(offsets[i], offsets[i + 1]), getValue(index));
+            }
+            result = Collections.unmodifiableMap(result);
+            map = result;
+        }
+        return result;
+    }
+
+}
@@ -1,12 +1,12 @@
 
 package chatty;
 
+import chatty.util.TaskScheduler;
+import chatty.util.TaskScheduler.Task;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.logging.Logger;
 
 /**
@@ -30,9 +30,9 @@ public class JoinChecker {
     private final Irc irc;
     
     /**
-     * Map of timers for channels.
+     * Map of scheduled checks for channels.
      */
-    private final HashMap<String, Timer> pendingChecks = new HashMap<>();
+    private final HashMap<String, Task> pendingChecks = new HashMap<>();
     private final Map<String, Integer> joinAttempts = new HashMap<>();
     
     public JoinChecker(Irc irc) {
@@ -54,8 +54,11 @@ public class JoinChecker {
             delay = DELAY[count - 1];
         }
 
-        Timer timer = new Timer();
-        timer.schedule(new TimerTask() {
+        Task previous = pendingChecks.remove(channel);
+        if (previous != null) {
+            previous.cancel();
+        }
+        Task task = TaskScheduler.schedule("JoinChecker", new Runnable() {
 
             @Override
             public void run() {
@@ -64,7 +67,7 @@ public class JoinChecker {
             }
         }, delay*1000);
         
-        pendingChecks.put(channel, timer);
+        pendingChecks.put(channel, task);
         joinAttempts.put(channel, count);
     }
     
@@ -74,9 +77,9 @@ public class JoinChecker {
      * @param channel Then name of the channel to cancel the timer for
      */
     public synchronized void cancel(String channel) {
-        Timer timer = pendingChecks.remove(channel);
-        if (timer != null) {
-            timer.cancel();
+        Task task = pendingChecks.remove(channel);
+        if (task != null) {
+            task.cancel();
         }
         joinAttempts.remove(channel);
     }
@@ -0,0 +1,194 @@
+
+package chatty;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads lines ending with \r\n from a stream, by reading chunks of raw bytes
+ * into a reusable buffer and scanning for the line ending on the bytes. Each
+ * line is only decoded once it is complete.
+ *
+ * Scanning on bytes is safe for UTF-8, since multi-byte sequences never
+ * contain the \r or \n bytes. Lone \r and \n characters are removed from the
+ * line, same as the previous char-by-char reading did.
+ *
+ * Reading may be interrupted at any time (e.g. by a socket timeout or an SSL
+ * record ending in the middle of a line), in which case any already read data
+ * stays in the buffer and continues to be used on the next call.
+ *
+ * This is not thread-safe, it is intended to be used only by the thread that
+ * reads from the connection.
+ *
+ * @author tduva
+ */
+class LineReader {
+
+    private static final int DEFAULT_CAPACITY = 16*1024;
+
+    /**
+     * Lines longer than this are discarded (IRC lines with tags are limited
+     * to much less than that anyway), so the buffer can't grow indefinitely.
+     */
+    private static final int MAX_CAPACITY = 1024*1024;
+
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+
+    private final InputStream in;
+    private final Charset charset;
+
+    /**
+     * The buffer is kept in "read mode" in between calls, so position is the
+     * start of the data that hasn't been returned as line yet and limit the
+     * end of the data read so far.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Where to continue scanning for the line ending, so that data isn't
+     * scanned more than once if a line is received in several parts.
+     */
+    private int scanPos;
+
+    /**
+     * Set when the current line became too long, so the rest of it can be
+     * skipped.
+     */
+    private boolean discarding;
+
+    public LineReader(InputStream in) {
+        this(in, StandardCharsets.UTF_8, DEFAULT_CAPACITY);
+    }
+
+    LineReader(InputStream in, Charset charset, int capacity) {
+        this.in = in;
+        this.charset = charset;
+        this.buffer = ByteBuffer.allocate(capacity);
+        this.buffer.flip();
+    }
+
+    /**
+     * Returns the next line, without the line ending. Blocks until a complete
+     * line has been received, or the underlying stream throws an exception
+     * (which is passed on, so e.g. a SocketTimeoutException can be handled by
+     * the caller and reading can continue afterwards).
+     *
+     * @return The line, or null if the end of the stream has been reached
+     * @throws IOException
+     */
+    public String readLine() throws IOException {
+        while (true) {
+            String line = findLine();
+            if (line != null) {
+                return line;
+            }
+            if (!fill()) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Scan the data read so far for a line ending, starting from where the
+     * previous scan stopped.
+     *
+     * @return The line, or null if no complete line has been read yet
+     */
+    private String findLine() {
+        byte[] data = buffer.array();
+        int start = buffer.position();
+        int end = buffer.limit();
+        for (int i = scanPos; i < end; i++) {
+            if (data[i] == LF && i > start && data[i - 1] == CR) {
+                buffer.position(i + 1);
+                scanPos = i + 1;
+                if (discarding) {
+                    discarding = false;
+                    return findLine();
+                }
+                return decode(data, start, i - 1);
+            }
+        }
+        scanPos = end;
+        return null;
+    }
+
+    /**
+     * Turns the given bytes into a String, removing any \r or \n characters
+     * that may be contained.
+     */
+    private String decode(byte[] data, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (data[i] == CR || data[i] == LF) {
+                return decodeFiltered(data, start, end);
+            }
+        }
+        return new String(data, start, end - start, charset);
+    }
+
+    private String decodeFiltered(byte[] data, int start, int end) {
+        byte[] filtered = new byte[end - start];
+        int length = 0;
+        for (int i = start; i < end; i++) {
+            if (data[i] != CR && data[i] != LF) {
+                filtered[length++] = data[i];
+            }
+        }
+        return new String(filtered, 0, length, charset);
+    }
+
+    /**
+     * Read more data from the stream into the buffer, making room first if
+     * necessary.
+     *
+     * @return false if the end of the stream has been reached
+     * @throws IOException
+     */
+    private boolean fill() throws IOException {
+        makeRoom();
+        int limit = buffer.limit();
+        int read = in.read(buffer.array(), limit, buffer.capacity() - limit);
+        if (read == -1) {
+            return false;
+        }
+        buffer.limit(limit + read);
+        return true;
+    }
+
+    /**
+     * Ensures there is free space at the end of the buffer, by moving the
+     * incomplete line to the start of the buffer or growing the buffer.
+     */
+    private void makeRoom() {
+        if (buffer.limit() < buffer.capacity()) {
+            return;
+        }
+        int consumed = buffer.position();
+        if (consumed > 0) {
+            buffer.compact();
+            buffer.flip();
+            scanPos -= consumed;
+            return;
+        }
+        // Buffer is full with a single incomplete line
+        if (buffer.capacity() >= MAX_CAPACITY) {
+            // Keep the last byte, in case it's the \r of the line ending
+            byte last = buffer.get(buffer.limit() - 1);
+            buffer.clear();
+            buffer.put(last);
+            buffer.flip();
+            scanPos = 0;
+            discarding = true;
+            return;
+        }
+        ByteBuffer newBuffer = ByteBuffer.allocate(Math.min(buffer.capacity() * 2, MAX_CAPACITY));
+        newBuffer.put(buffer);
+        newBuffer.flip();
+        buffer = newBuffer;
+    }
+
+}
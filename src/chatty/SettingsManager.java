@@ -197,6 +197,7 @@ public class SettingsManager {
         settings.addBoolean("ffzModIcon", true);
         settings.addBoolean("bttvEmotes", true);
         settings.addBoolean("showAnimatedEmotes", false);
+        settings.addBoolean("animationPauseUnfocused", false);
         settings.addList("ignoredEmotes", new ArrayList(), Setting.STRING);
         settings.addList("favoriteEmotes", new ArrayList(), Setting.LIST);
         
@@ -339,6 +340,7 @@ public class SettingsManager {
         settings.addLong("userlistMinWidth", 0);
         settings.addBoolean("userlistEnabled", true);
         settings.addLong("bufferSize", 500);
+        settings.addBoolean("virtualChatView", false);
         
         settings.addString("liveStreamsSorting", "recent");
         settings.addLong("historyRange", 0);
@@ -470,6 +472,12 @@ public class SettingsManager {
         settings.addList("logBlacklist",new ArrayList(), Setting.STRING);
         settings.addString("logPath", "");
         settings.addString("logTimestamp", "[HH:mm:ss]");
+        settings.addLong("logFlushInterval", 250);
+        settings.addBoolean("logForce", false);
+        settings.addBoolean("logIndex", true);
+        settings.addLong("logRotateSize", 0);
+        settings.addBoolean("logRotateDaily", false);
+        settings.addBoolean("logCompress", true);
         
         // TAB Completion
         settings.addMap("customCompletion", new HashMap(), Setting.STRING);
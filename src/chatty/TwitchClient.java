@@ -15,6 +15,7 @@ import chatty.Version.VersionListener;
 import chatty.WhisperManager.WhisperListener;
 import chatty.gui.GuiUtil;
 import chatty.gui.MainGui;
+import chatty.gui.emoji.EmojiUtil;
 import chatty.util.BTTVEmotes;
 import chatty.util.BotNameManager;
 import chatty.util.DateTime;
@@ -26,13 +27,16 @@ import chatty.util.LogUtil;
 import chatty.util.MiscUtil;
 import chatty.util.ProcessManager;
 import chatty.util.Speedruncom;
+import chatty.util.Startup;
 import chatty.util.StreamHighlightHelper;
 import chatty.util.StreamStatusWriter;
 import chatty.util.StringUtil;
+import chatty.util.TaskScheduler;
 import chatty.util.TwitchEmotes;
 import chatty.util.TwitchEmotes.TwitchEmotesListener;
 import chatty.util.Webserver;
 import chatty.util.api.ChatInfo;
+import chatty.util.api.EmoteCatalog;
 import chatty.util.api.EmoticonSizeCache;
 import chatty.util.api.EmoticonUpdate;
 import chatty.util.api.Emoticons;
@@ -45,6 +49,8 @@ import chatty.util.api.pubsub.Message;
 import chatty.util.api.pubsub.ModeratorActionData;
 import chatty.util.api.pubsub.PubSubListener;
 import chatty.util.chatlog.ChatLog;
+import chatty.util.chatlog.LogIndex;
+import chatty.util.http.HttpClient;
 import chatty.util.settings.Settings;
 import chatty.util.settings.SettingsListener;
 import chatty.util.srl.SpeedrunsLive;
@@ -86,6 +92,12 @@ public class TwitchClient {
      * The interval to check version in (seconds)
      */
     private static final int CHECK_VERSION_INTERVAL = 60*60*24*2;
+    
+    /**
+     * How long to wait for the first channel to be joined before performing
+     * the deferred startup tasks anyway (milliseconds)
+     */
+    private static final long DEFERRED_STARTUP_TIMEOUT = 20*1000;
 
     /**
      * Holds the Settings object, which is used to store and retrieve renametings
@@ -162,6 +174,12 @@ public class TwitchClient {
     
     private boolean fixServer = false;
     
+    /**
+     * Performs and records the steps of starting up, some of them deferred
+     * until the first channel has been joined.
+     */
+    private final Startup startup = new Startup(4);
+    
     public TwitchClient(Map<String, String> args) {
 
         // Logging
@@ -179,6 +197,7 @@ public class TwitchClient {
         
         // Create after Logging is created, since that resets some stuff
         ircLogger = new IrcLogger();
+        startup.phase("Logging");
         
         createTestUser("tduva", "");
         
@@ -195,23 +214,43 @@ public class TwitchClient {
         settingsManager.loadCommandLineSettings(args);
         settingsManager.overrideSettings();
         settingsManager.debugSettings();
+        startup.phase("Settings");
         
         pubsub = new chatty.util.api.pubsub.Manager(
                 settings.getString("pubsub"), new PubSubResults(), api);
         
         frankerFaceZ = new FrankerFaceZ(new EmoticonsListener(), settings);
-        frankerFaceZ.autoUpdateFeatureFridayEmotes();
         
         ImageCache.setDefaultPath(Paths.get(Chatty.getCacheDirectory()+"img"));
         ImageCache.setCachingEnabled(settings.getBoolean("imageCache"));
-        ImageCache.clearOldFiles();
-        EmoticonSizeCache.loadFromFile();
+        startup.add("Emote Sizes", new Runnable() {
+
+            @Override
+            public void run() {
+                EmoticonSizeCache.loadFromFile();
+            }
+        });
+        startup.add("Emoji", new Runnable() {
+
+            @Override
+            public void run() {
+                EmojiUtil.preload(settings.getString("emoji"));
+            }
+        });
+        startup.start();
         
         channelFavorites = new ChannelFavorites(settings);
         usercolorManager = new UsercolorManager(settings);
         usericonManager = new UsericonManager(settings);
         customCommands = new CustomCommands(settings);
-        customCommands.loadFromSettings();
+        startup.add("Custom Commands", new Runnable() {
+
+            @Override
+            public void run() {
+                customCommands.loadFromSettings();
+            }
+        });
+        startup.start();
         botNameManager = new BotNameManager(settings);
         settings.addSettingsListener(new SettingSaveListener());
 
@@ -220,18 +259,38 @@ public class TwitchClient {
         customNames = new CustomNames(settings);
         
         chatLog = new ChatLog(settings);
-        chatLog.start();
+        startup.add("Chat Log", new Runnable() {
+
+            @Override
+            public void run() {
+                chatLog.start();
+            }
+        });
+        startup.start();
         
         testUser.setUsericonManager(usericonManager);
         testUser.setUsercolorManager(usercolorManager);
         
         addressbook = new Addressbook(Chatty.getUserDataDirectory()+"addressbook",
             Chatty.getUserDataDirectory()+"addressbookImport.txt", settings);
-        addressbook.loadFromFile();
-        addressbook.setSomewhatUniqueCategories(settings.getString("abUniqueCats"));
-        if (settings.getBoolean("abAutoImport")) {
-            addressbook.enableAutoImport();
-        }
+        startup.add("Addressbook", new Runnable() {
+
+            @Override
+            public void run() {
+                addressbook.loadFromFile();
+                addressbook.setSomewhatUniqueCategories(settings.getString("abUniqueCats"));
+            }
+        });
+        startup.add("Addressbook Import", new Runnable() {
+
+            @Override
+            public void run() {
+                if (settings.getBoolean("abAutoImport")) {
+                    addressbook.enableAutoImport();
+                }
+            }
+        }, "Addressbook");
+        startup.start();
         testUser.setAddressbook(addressbook);
         
         speedrunsLive = new SpeedrunsLive();
@@ -257,6 +316,10 @@ public class TwitchClient {
         streamStatusWriter.setSetting(settings.getString("statusWriter"));
         streamStatusWriter.setEnabled(settings.getBoolean("enableStatusWriter"));
         settings.addSettingChangeListener(streamStatusWriter);
+        startup.phase("Create Managers");
+        
+        // Loaded in the background while creating the other stuff
+        startup.await("Loaders");
         
         initDxSettings();
         
@@ -267,6 +330,40 @@ public class TwitchClient {
         g = new MainGui(this);
         g.loadSettings();
         g.showGui();
+        startup.phase("GUI");
+        
+        // Not required for connecting, so done after joining
+        startup.defer("Twitch Emotes", new Runnable() {
+
+            @Override
+            public void run() {
+                api.requestEmoticons(false);
+                twitchemotes.requestEmotesets(false);
+            }
+        });
+        startup.defer("BTTV Global Emotes", new Runnable() {
+
+            @Override
+            public void run() {
+                if (settings.getBoolean("bttvEmotes")) {
+                    bttvEmotes.requestEmotes("$global$", false);
+                }
+            }
+        });
+        startup.defer("FFZ Feature Friday", new Runnable() {
+
+            @Override
+            public void run() {
+                frankerFaceZ.autoUpdateFeatureFridayEmotes();
+            }
+        });
+        startup.defer("Image Cache Cleanup", new Runnable() {
+
+            @Override
+            public void run() {
+                ImageCache.clearOldFiles();
+            }
+        });
         
         if (Chatty.DEBUG) {
             getSpecialUser().setEmoteSets("130,4280,793,33,42");
@@ -340,6 +437,10 @@ public class TwitchClient {
         
         new UpdateTimer(g);
         
+        // In case no channel is joined soon
+        startup.runDeferredAfter(DEFERRED_STARTUP_TIMEOUT);
+        startup.phase("Init");
+        
         // Shutdown hook
         Runtime.getRuntime().addShutdownHook(new Thread(new Shutdown(this)));
     }
@@ -935,6 +1036,21 @@ public class TwitchClient {
         else if (command.equals("pubsubstatus")) {
             g.printSystem("[PubSub] Status: "+pubsub.getStatus());
         }
+        else if (command.equals("logstats")) {
+            g.printSystem("[Log] "+chatLog.getStats());
+        }
+        else if (command.equals("schedulerstats")) {
+            g.printSystem("[Scheduler] "+TaskScheduler.getStats());
+        }
+        else if (command.equals("httpstats")) {
+            g.printSystem("[Http] "+HttpClient.getStats());
+        }
+        else if (command.equals("startupstats")) {
+            g.printSystem("[Startup] "+startup.getStats());
+        }
+        else if (command.equals("logsearch")) {
+            commandLogSearch(channel, parameter);
+        }
         else if (command.equals("refresh")) {
             commandRefresh(channel, parameter);
         }
@@ -1518,6 +1634,49 @@ public class TwitchClient {
         }
     }
     
+    /**
+     * Searches the chat log of the given channel and outputs the results.
+     * Parameter: [user:<name>] [text]
+     * 
+     * @param channel
+     * @param parameter 
+     */
+    private void commandLogSearch(final String channel, String parameter) {
+        if (parameter == null || parameter.trim().isEmpty()) {
+            g.printSystem("Usage: /logsearch [user:<name>] [text]");
+            return;
+        }
+        String user = null;
+        String text = parameter.trim();
+        if (text.startsWith("user:")) {
+            String[] split = text.split(" ", 2);
+            user = split[0].substring("user:".length());
+            text = split.length == 2 ? split[1].trim() : "";
+        }
+        final String searchUser = user;
+        final String searchText = text.isEmpty() ? null : text;
+        // Reads from files (which can take long for compressed logs), so not
+        // on the EDT or the shared TaskScheduler threads
+        new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                List<LogIndex.Result> results
+                        = chatLog.search(channel, searchUser, searchText, 20);
+                if (results == null) {
+                    g.printSystem("[Log] Log index not enabled (logIndex setting)");
+                } else if (results.isEmpty()) {
+                    g.printSystem("[Log] No results");
+                } else {
+                    g.printSystem("[Log] "+results.size()+" most recent results:");
+                    for (int i = results.size() - 1; i >= 0; i--) {
+                        g.printSystem("[Log] "+results.get(i).line);
+                    }
+                }
+            }
+        }, "LogSearch").start();
+    }
+    
     private void commandFFZ(String channel) {
         Set<Emoticon> output;
         StringBuilder b = new StringBuilder();
@@ -1654,8 +1813,8 @@ public class TwitchClient {
     private class TwitchApiResults implements TwitchApiResultListener {
         
         @Override
-        public void receivedEmoticons(Set<Emoticon> emoticons) {
-            g.addEmoticons(emoticons);
+        public void receivedTwitchEmotes(EmoteCatalog catalog) {
+            g.setTwitchEmotes(catalog);
             if (refreshRequests.contains("emoticons")) {
                 g.printLine("Emoticons list updated.");
                 refreshRequests.remove("emoticons");
@@ -2175,6 +2334,7 @@ public class TwitchClient {
             channelFavorites.addChannelToHistory(channel);
             
             g.printLine(channel,"You have joined " + channel);
+            startup.runDeferred("joined "+channel);
             
             // Icons and FFZ/BTTV Emotes
             //api.requestChatIcons(Helper.toStream(channel), false);
@@ -2292,6 +2452,17 @@ public class TwitchClient {
             g.removeUser(user.getChannel(), user);
         }
         
+        @Override
+        public void onUserlistChanged(String channel, List<User> added, List<User> removed) {
+            List<User> shownAdded = new ArrayList<>(added.size());
+            for (User user : added) {
+                if (showUserInGui(user)) {
+                    shownAdded.add(user);
+                }
+            }
+            g.updateUsers(channel, shownAdded, removed);
+        }
+        
         private final Pattern findId = Pattern.compile(
                         "([0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12})",
                         Pattern.CASE_INSENSITIVE);
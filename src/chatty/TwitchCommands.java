@@ -2,13 +2,12 @@
 package chatty;
 
 import chatty.util.DateTime;
+import chatty.util.TaskScheduler;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.logging.Logger;
 
 /**
@@ -446,8 +445,7 @@ public class TwitchCommands {
      * Starts the timer which requests the /mods list for joined channels.
      */
     public void startAutoRequestMods() {
-        Timer timer = new Timer(true);
-        timer.schedule(new TimerTask() {
+        TaskScheduler.scheduleAtFixedRate("AutoRequestMods", new Runnable() {
 
             @Override
             public void run() {
@@ -4,7 +4,10 @@ import chatty.util.api.usericons.UsericonManager;
 import chatty.ChannelStateManager.ChannelStateListener;
 import chatty.util.BotNameManager;
 import chatty.util.StringUtil;
+import chatty.util.TaskScheduler;
+import chatty.util.TaskScheduler.Task;
 import chatty.util.settings.Settings;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -13,8 +16,6 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -57,7 +58,7 @@ public class TwitchConnection {
      */
     private final static int[] RECONNECTION_DELAY = new int[]{1, 5, 5, 10, 10, 60};
 
-    private volatile Timer reconnectionTimer;
+    private volatile Task reconnectionTimer;
 
     /**
      * The username to send to the server. This is stored to reconnect.
@@ -84,6 +85,11 @@ public class TwitchConnection {
     private final TwitchCommands twitchCommands;
     private final SpamProtection spamProtection;
     private final ChannelStateManager channelStates = new ChannelStateManager();
+    
+    /**
+     * Collects users joining/leaving, so they can be applied in batches.
+     */
+    private final UserlistBatcher userlistBatcher;
 
     public TwitchConnection(final ConnectionListener listener, Settings settings,
             String label) {
@@ -96,6 +102,13 @@ public class TwitchConnection {
         spamProtection = new SpamProtection();
         spamProtection.setLinesPerSeconds(settings.getString("spamProtection"));
         users.setCapitalizedNames(settings.getBoolean("capitalizedNames"));
+        userlistBatcher = new UserlistBatcher(new UserlistBatcher.BatchListener() {
+
+            @Override
+            public void apply(String channel, List<UserlistBatcher.Change> changes) {
+                applyUserlistChanges(channel, changes);
+            }
+        });
         users.addListener(new UserManager.UserManagerListener() {
 
             @Override
@@ -107,8 +120,8 @@ public class TwitchConnection {
         });
     }
     
-    private TimerTask getReconnectionTimerTask() {
-        return new TimerTask() {
+    private Runnable getReconnectionTimerTask() {
+        return new Runnable() {
 
             @Override
             public void run() {
@@ -234,11 +247,13 @@ public class TwitchConnection {
         }
         partChannel(channel);
         openChannels.remove(channel);
+        userlistBatcher.discard(channel);
         users.clear(channel);
         irc.cancelJoinAttempt(channel);
     }
     
     public void setAllOffline() {
+        userlistBatcher.discardAll();
         users.setAllOffline();
     }
     
@@ -599,7 +614,7 @@ public class TwitchConnection {
                 }
                 userlistReceived.add(channel);
                 for (String nick : nicknames) {
-                    userJoined(channel, nick);
+                    userlistBatcher.add(channel, nick, true, false);
                 }
             }
         }
@@ -692,8 +707,8 @@ public class TwitchConnection {
                             +irc.connectionAttempts+"/"+maxReconnectionAttempts+")"
                     );
                     setState(Irc.STATE_RECONNECTING);
-                    reconnectionTimer = new Timer();
-                    reconnectionTimer.schedule(getReconnectionTimerTask(), delay * 1000);
+                    reconnectionTimer = TaskScheduler.schedule("Reconnect",
+                            getReconnectionTimerTask(), delay * 1000);
                 }
             }
         }
@@ -733,8 +748,7 @@ public class TwitchConnection {
                         // may not be in the batch of joins again
                         localUserJoined(channel);
                     }
-                    User user = userJoined(channel, nick);
-                    listener.onJoin(user);
+                    userlistBatcher.add(channel, nick, true, true);
                     userlistReceived.add(channel);
                 }
             }
@@ -742,6 +756,8 @@ public class TwitchConnection {
         
         private void clearUserlist(String channel) {
             //System.out.println("userlist cleared"+channel);
+            // Apply changes received before clearing, same as if not batched
+            userlistBatcher.flush(channel);
             users.setAllOffline(channel);
             listener.onUserlistCleared(channel);
         }
@@ -773,6 +789,7 @@ public class TwitchConnection {
                     // Remove users for this channel, clearing the userlist in the
                     // GUI shouldn't be necessary if this channel is closed since
                     // the GUI userlist is removed as well.
+                    userlistBatcher.discard(channel);
                     users.clear(channel);
                     listener.onChannelLeft(channel);
                     channelStates.reset(channel);
@@ -784,8 +801,7 @@ public class TwitchConnection {
                 debug("PARTED: "+channel);
             } else {
                 if (isChannelOpen(channel)) {
-                    User user = userOffline(channel, nick);
-                    listener.onPart(user);
+                    userlistBatcher.add(channel, nick, false, true);
                 }
             }
         }
@@ -1267,7 +1283,56 @@ public class TwitchConnection {
         return userJoined(user);
     }
 
+    /**
+     * Applies the changes collected for a channel, getting all Users at once
+     * and informing the listener of all added and removed users at once.
+     * 
+     * @param channel
+     * @param changes 
+     */
+    private void applyUserlistChanges(String channel, List<UserlistBatcher.Change> changes) {
+        List<String> names = new ArrayList<>(changes.size());
+        for (UserlistBatcher.Change change : changes) {
+            names.add(change.name);
+        }
+        List<User> changedUsers = users.getUsers(channel, names);
+        Set<User> added = new LinkedHashSet<>();
+        Set<User> removed = new LinkedHashSet<>();
+        for (int i = 0; i < changes.size(); i++) {
+            UserlistBatcher.Change change = changes.get(i);
+            User user = changedUsers.get(i);
+            if (change.joined) {
+                if (user.setOnline(true)) {
+                    if (channel.substring(1).equals(user.nick)) {
+                        user.setBroadcaster(true);
+                    }
+                    if (!removed.remove(user)) {
+                        added.add(user);
+                    }
+                }
+                if (change.notify) {
+                    listener.onJoin(user);
+                }
+            } else {
+                if (!change.isSuperseded() && user.setOnline(false)) {
+                    if (!added.remove(user)) {
+                        removed.add(user);
+                    }
+                }
+                if (change.notify) {
+                    listener.onPart(user);
+                }
+            }
+        }
+        if (!added.isEmpty() || !removed.isEmpty()) {
+            listener.onUserlistChanged(channel, new ArrayList<>(added),
+                    new ArrayList<>(removed));
+        }
+    }
+
     public User userJoined(User user) {
+        // Don't let a PART that was received earlier set the user offline
+        userlistBatcher.userActive(user.getChannel(), user.nick);
         if (user.setOnline(true)) {
             String channel = user.getChannel();
             if (channel.substring(1).equals(user.nick)) {
@@ -1302,6 +1367,15 @@ public class TwitchConnection {
 
         void onUserRemoved(User user);
         
+        /**
+         * Several users joined or left a channel.
+         * 
+         * @param channel The channel
+         * @param added Users that are now online
+         * @param removed Users that are now offline
+         */
+        void onUserlistChanged(String channel, List<User> added, List<User> removed);
+        
         void onUserlistCleared(String channel);
 
         void onUserUpdated(User user);
@@ -2,8 +2,7 @@
 package chatty;
 
 import chatty.gui.MainGui;
-import java.util.Timer;
-import java.util.TimerTask;
+import chatty.util.TaskScheduler;
 
 /**
  * A Timer that runs throughout the execution of the program, mainly to update
@@ -11,23 +10,21 @@ import java.util.TimerTask;
  * 
  * @author tduva
  */
-public class UpdateTimer extends Timer {
+public class UpdateTimer {
 
-    private final TimerTask task;
     /**
      * Delay between executions in seconds
      */
     private static final int DELAY = 5;
 
     public UpdateTimer(final MainGui g) {
-        task = new TimerTask() {
+        TaskScheduler.scheduleAtFixedRate("UpdateTimer", new Runnable() {
 
             @Override
             public void run() {
                 g.updateState();
             }
-        };
-        schedule(task, DELAY*1000, DELAY*1000); 
+        }, DELAY*1000, DELAY*1000);
    }
     
     
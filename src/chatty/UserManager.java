@@ -3,8 +3,8 @@ package chatty;
 
 import chatty.util.api.usericons.UsericonManager;
 import chatty.util.BotNameManager;
-import java.util.Map.Entry;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 /**
@@ -16,6 +16,12 @@ import java.util.logging.Logger;
  * Although it could be useful to add some caching again (e.g. for showing
  * user type in userlist before the user said something).
  * 
+ * The users are stored in a concurrent Map for each channel, with a second
+ * index from username to the users of that name in all channels, so looking
+ * up users doesn't need to lock and finding all users with a name doesn't
+ * need to check every channel. Creating and removing users locks only the Map
+ * of the affected channel, to keep both indices consistent.
+ * 
  * @author tduva
  */
 public class UserManager {
@@ -27,9 +33,18 @@ public class UserManager {
     private volatile String localUsername;
     public final User specialUser = new User("[specialUser]", "[nochannel]");
     
-    private final HashMap<String, HashMap<String, User>> users = new HashMap<>();
-    private final HashMap<String, String> cachedColors = new HashMap<>();
-    private boolean capitalizedNames = false;
+    /**
+     * Channel -> (Username -> User)
+     */
+    private final Map<String, Map<String, User>> users = new ConcurrentHashMap<>();
+    
+    /**
+     * Username -> (Channel -> User)
+     */
+    private final Map<String, Map<String, User>> usersByName = new ConcurrentHashMap<>();
+    
+    private final Map<String, String> cachedColors = new ConcurrentHashMap<>();
+    private volatile boolean capitalizedNames = false;
     
     private final Map<Integer, String> emotesets = Collections.synchronizedMap(new HashMap<Integer, String>());
     
@@ -143,19 +158,90 @@ public class UserManager {
     }
     
     /**
-     * Gets a Map of all User objects in the given channel.
+     * Gets a Map of all User objects in the given channel. The Map must only
+     * be modified while synchronized on it, and the name index has to be
+     * updated accordingly.
      * 
      * @param channel
      * @return 
      */
-    public synchronized HashMap<String, User> getUsersByChannel(String channel) {
-        HashMap<String, User> result = users.get(channel);
+    private Map<String, User> getUsersByChannel(String channel) {
+        Map<String, User> result = users.get(channel);
         if (result == null) {
-            result = new HashMap<>();
-            users.put(channel, result);
+            result = new ConcurrentHashMap<>();
+            Map<String, User> previous = users.putIfAbsent(channel, result);
+            if (previous != null) {
+                result = previous;
+            }
         }
         return result;
     }
+    
+    /**
+     * Gets a copy of the Map of all User objects in the given channel.
+     * 
+     * @param channel
+     * @return 
+     */
+    public Map<String, User> getUsersInChannel(String channel) {
+        Map<String, User> channelUsers = users.get(channel);
+        if (channelUsers == null) {
+            return new HashMap<>();
+        }
+        return new HashMap<>(channelUsers);
+    }
+    
+    /**
+     * Adds the user to the name index. Must be called while synchronized on
+     * the Map of the user's channel.
+     * 
+     * <p>Changes to the Map of a name are synchronized on that Map, so it
+     * can't be removed from the index (when empty) while a user is added.</p>
+     * 
+     * @param channel
+     * @param name
+     * @param user 
+     */
+    private void addToNameIndex(String channel, String name, User user) {
+        while (true) {
+            Map<String, User> byChannel = usersByName.get(name);
+            if (byChannel == null) {
+                byChannel = new ConcurrentHashMap<>(4);
+                Map<String, User> previous = usersByName.putIfAbsent(name, byChannel);
+                if (previous != null) {
+                    byChannel = previous;
+                }
+            }
+            synchronized (byChannel) {
+                if (usersByName.get(name) == byChannel) {
+                    byChannel.put(channel, user);
+                    return;
+                }
+            }
+            // Was removed in the meantime, so try again
+        }
+    }
+    
+    /**
+     * Removes all users of the given channel Map from the name index. Must be
+     * called while synchronized on the Map.
+     * 
+     * @param channel
+     * @param channelUsers 
+     */
+    private void removeFromNameIndex(String channel, Map<String, User> channelUsers) {
+        for (String name : channelUsers.keySet()) {
+            Map<String, User> byChannel = usersByName.get(name);
+            if (byChannel != null) {
+                synchronized (byChannel) {
+                    byChannel.remove(channel);
+                    if (byChannel.isEmpty()) {
+                        usersByName.remove(name, byChannel);
+                    }
+                }
+            }
+        }
+    }
 
     /**
      * Searches all channels for the given username and returns a List of all
@@ -165,18 +251,12 @@ public class UserManager {
      * @param name The username to search for
      * @return The List of User-objects.
      */
-    public synchronized List<User> getUsersByName(String name) {
-        name = name.toLowerCase();
-        List<User> result = new ArrayList<>();
-        Iterator<HashMap<String, User>> it = users.values().iterator();
-        while (it.hasNext()) {
-            HashMap<String, User> channelUsers = it.next();
-            User user = channelUsers.get(name);
-            if (user != null) {
-                result.add(user);
-            }
+    public List<User> getUsersByName(String name) {
+        Map<String, User> byChannel = usersByName.get(name.toLowerCase(Locale.ENGLISH));
+        if (byChannel == null) {
+            return new ArrayList<>();
         }
-        return result;
+        return new ArrayList<>(byChannel.values());
     }
 
     /**
@@ -187,8 +267,12 @@ public class UserManager {
      * @param name
      * @return The {@code User} object or null if none exists
      */
-    public synchronized User getUserIfExists(String channel, String name) {
-        return getUsersByChannel(channel).get(name);
+    public User getUserIfExists(String channel, String name) {
+        Map<String, User> channelUsers = users.get(channel);
+        if (channelUsers == null) {
+            return null;
+        }
+        return channelUsers.get(name);
     }
     
     /**
@@ -200,7 +284,7 @@ public class UserManager {
      * @return The matching User object
      * @see User
      */
-    public synchronized User getUser(String channel, String name) {
+    public User getUser(String channel, String name) {
         // Not sure if this makes sense
         if (name == null || name.isEmpty()) {
             return errorUser;
@@ -209,54 +293,121 @@ public class UserManager {
         name = name.toLowerCase(Locale.ENGLISH);
         User user = getUserIfExists(channel, name);
         if (user == null) {
-            String capitalizedName = capitalizedNamesManager != null
-                    ? capitalizedNamesManager.getName(name) : null;
-            if (displayName.equals(name)) {
-                if (capitalizedName != null) {
-                    displayName = capitalizedName;
-                } else if (capitalizedNames) {
-                    displayName = name.substring(0, 1).toUpperCase() + name.substring(1);
-                }
+            user = createUser(channel, name, displayName);
+        } else if (capitalizedNamesManager != null) {
+            //System.out.println(name);
+            capitalizedNamesManager.activity(name);
+        }
+        return user;
+    }
+    
+    /**
+     * Creates a new User, unless one was created concurrently.
+     * 
+     * @param channel
+     * @param name The lowercase name
+     * @param displayName The name as given
+     * @return The new User, or the existing one
+     */
+    private User createUser(String channel, String name, String displayName) {
+        Map<String, User> channelUsers = getUsersByChannel(channel);
+        synchronized (channelUsers) {
+            User user = channelUsers.get(name);
+            if (user != null) {
+                return user;
             }
-            user = new User(displayName, capitalizedName, channel);
-            user.setUsercolorManager(usercolorManager);
-            user.setAddressbook(addressbook);
-            user.setUsericonManager(usericonManager);
-            if (customNamesManager != null) {
-                user.setCustomNick(customNamesManager.getCustomName(name));
+            return createUser(channel, channelUsers, name, displayName);
+        }
+    }
+    
+    /**
+     * Gets the Users with the given names in a channel, creating the ones that
+     * don't exist yet, all while holding the lock for the channel once.
+     * 
+     * @param channel
+     * @param names The names of the users
+     * @return The Users, in the same order as the names
+     */
+    public List<User> getUsers(String channel, List<String> names) {
+        List<User> result = new ArrayList<>(names.size());
+        Map<String, User> channelUsers = getUsersByChannel(channel);
+        synchronized (channelUsers) {
+            for (String displayName : names) {
+                if (displayName == null || displayName.isEmpty()) {
+                    result.add(errorUser);
+                    continue;
+                }
+                String name = displayName.toLowerCase(Locale.ENGLISH);
+                User user = channelUsers.get(name);
+                if (user == null) {
+                    user = createUser(channel, channelUsers, name, displayName);
+                } else if (capitalizedNamesManager != null) {
+                    capitalizedNamesManager.activity(name);
+                }
+                result.add(user);
             }
-            if (botNameManager != null && botNameManager.isBotName(channel, name)) {
-                user.setBot(true);
+        }
+        return result;
+    }
+    
+    /**
+     * Creates a new User and adds it. Must be called while synchronized on
+     * the Map of the channel.
+     * 
+     * @param channel
+     * @param channelUsers The Map of the channel
+     * @param name The lowercase name
+     * @param displayName The name as given
+     * @return The new User
+     */
+    private User createUser(String channel, Map<String, User> channelUsers,
+            String name, String displayName) {
+        String capitalizedName = capitalizedNamesManager != null
+                ? capitalizedNamesManager.getName(name) : null;
+        if (displayName.equals(name)) {
+            if (capitalizedName != null) {
+                displayName = capitalizedName;
+            } else if (capitalizedNames) {
+                displayName = name.substring(0, 1).toUpperCase() + name.substring(1);
             }
-            // Initialize some values if present for this name
-            if (cachedColors.containsKey(name)) {
-                user.setColor(cachedColors.get(name));
+        }
+        User user = new User(displayName, capitalizedName, channel);
+        user.setUsercolorManager(usercolorManager);
+        user.setAddressbook(addressbook);
+        user.setUsericonManager(usericonManager);
+        if (customNamesManager != null) {
+            user.setCustomNick(customNamesManager.getCustomName(name));
+        }
+        if (botNameManager != null && botNameManager.isBotName(channel, name)) {
+            user.setBot(true);
+        }
+        // Initialize some values if present for this name
+        String cachedColor = cachedColors.get(name);
+        if (cachedColor != null) {
+            user.setColor(cachedColor);
+        }
+        if (name.equals(localUsername)) {
+            /**
+             * Set initial data for local user that is globally valid. This
+             * data would have been received from the GLOBALUSERSTATE
+             * command which may not be send after every join or sent
+             * message.
+             */
+            user.setAdmin(specialUser.isAdmin());
+            user.setGlobalMod(specialUser.isGlobalMod());
+            user.setStaff(specialUser.isStaff());
+            user.setTurbo(specialUser.hasTurbo());
+            if (!specialUser.hasDefaultColor()) {
+                user.setColor(specialUser.getPlainColor());
             }
-            if (name.equals(localUsername)) {
-                /**
-                 * Set initial data for local user that is globally valid. This
-                 * data would have been received from the GLOBALUSERSTATE
-                 * command which may not be send after every join or sent
-                 * message.
-                 */
-                user.setAdmin(specialUser.isAdmin());
-                user.setGlobalMod(specialUser.isGlobalMod());
-                user.setStaff(specialUser.isStaff());
-                user.setTurbo(specialUser.hasTurbo());
-                if (!specialUser.hasDefaultColor()) {
-                    user.setColor(specialUser.getPlainColor());
-                }
-                user.setEmoteSets(specialUser.getEmoteSet());
-                if (specialUser.hasDisplayNickSet()) {
-                    user.setDisplayNick(specialUser.getDisplayNick());
-                }
+            user.setEmoteSets(specialUser.getEmoteSet());
+            if (specialUser.hasDisplayNickSet()) {
+                user.setDisplayNick(specialUser.getDisplayNick());
             }
-            // Put User into the map for the channel
-            getUsersByChannel(channel).put(name, user);
-        } else if (capitalizedNamesManager != null) {
-            //System.out.println(name);
-            capitalizedNamesManager.activity(name);
         }
+        // Put User into the map for the channel
+        channelUsers.put(name, user);
+        addToNameIndex(channel, name, user);
         return user;
     }
     
@@ -267,30 +418,21 @@ public class UserManager {
      * @param name The username to be searched for
      * @return A Map with channel->User association
      */
-    public synchronized HashMap<String,User> getChannelsAndUsersByUserName(String name) {
-        String lowercaseName = name.toLowerCase(Locale.ENGLISH);
-        HashMap<String,User> result = new HashMap<>();
-        
-        Iterator<Entry<String, HashMap<String, User>>> it = users.entrySet().iterator();
-        while (it.hasNext()) {
-            Entry<String, HashMap<String, User>> channel = it.next();
-            
-            String channelName = channel.getKey();
-            HashMap<String,User> channelUsers = channel.getValue();
-            
-            User user = channelUsers.get(lowercaseName);
-            if (user != null) {
-                result.put(channelName,user);
-            }
+    public HashMap<String,User> getChannelsAndUsersByUserName(String name) {
+        Map<String, User> byChannel = usersByName.get(name.toLowerCase(Locale.ENGLISH));
+        if (byChannel == null) {
+            return new HashMap<>();
         }
-        return result;
+        return new HashMap<>(byChannel);
     }
     
     /**
      * Remove all users.
      */
-    public synchronized void clear() {
-        users.clear();
+    public void clear() {
+        for (String channel : users.keySet()) {
+            clear(channel);
+        }
     }
     
     /**
@@ -298,17 +440,22 @@ public class UserManager {
      * 
      * @param channel 
      */
-    public synchronized void clear(String channel) {
-        getUsersByChannel(channel).clear();
+    public void clear(String channel) {
+        Map<String, User> channelUsers = users.get(channel);
+        if (channelUsers != null) {
+            synchronized (channelUsers) {
+                removeFromNameIndex(channel, channelUsers);
+                channelUsers.clear();
+            }
+        }
     }
     
     /**
      * Set all users offline.
      */
-    public synchronized void setAllOffline() {
-        Iterator<HashMap<String,User>> it = users.values().iterator();
-        while (it.hasNext()) {
-            setAllOffline(it.next());
+    public void setAllOffline() {
+        for (Map<String, User> channelUsers : users.values()) {
+            setAllOffline(channelUsers);
         }
     }
     
@@ -317,9 +464,10 @@ public class UserManager {
      * 
      * @param channel 
      */
-    public synchronized void setAllOffline(String channel) {
+    public void setAllOffline(String channel) {
         if (channel == null) {
             setAllOffline();
+            return;
         }
         Map<String, User> usersInChannel = users.get(channel);
         if (usersInChannel != null) {
@@ -344,9 +492,13 @@ public class UserManager {
      * @param userName String The name of the user
      * @param color String The color as a string representation
      */
-    protected synchronized void setColorForUsername(String userName, String color) {
-        userName = userName.toLowerCase();
-        cachedColors.put(userName,color);
+    protected void setColorForUsername(String userName, String color) {
+        userName = userName.toLowerCase(Locale.ENGLISH);
+        if (color == null) {
+            cachedColors.remove(userName);
+        } else {
+            cachedColors.put(userName, color);
+        }
         
         List<User> userAllChans = getUsersByName(userName);
         for (User user : userAllChans) {
@@ -362,7 +514,7 @@ public class UserManager {
      * @param modsList
      * @return 
      */
-    protected synchronized List<User> modsListReceived(String channel, List<String> modsList) {
+    protected List<User> modsListReceived(String channel, List<String> modsList) {
         // Demod everyone on the channel
         Map<String,User> usersToDemod = getUsersByChannel(channel);
         for (User user : usersToDemod.values()) {
@@ -2,11 +2,14 @@
 package chatty;
 
 import chatty.gui.HtmlColors;
+import chatty.util.StringUtil;
 import chatty.util.settings.Settings;
 import java.awt.Color;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Manages {@link UsercolorItem}s, loading them from the settings on start,
@@ -26,6 +29,7 @@ public class UsercolorManager {
     
     private final Settings settings;
     private volatile List<UsercolorItem> data;
+    private volatile Lookup lookup;
     
     public UsercolorManager(Settings settings) {
         this.settings = settings;
@@ -58,6 +62,7 @@ public class UsercolorManager {
             }
         }
         data = loadedData;
+        lookup = new Lookup(loadedData);
     }
     
     /**
@@ -87,6 +92,7 @@ public class UsercolorManager {
      */
     public synchronized void setData(List<UsercolorItem> newData) {
         data = new ArrayList<>(newData);
+        lookup = new Lookup(data);
         saveToSettings();
     }
     
@@ -96,32 +102,100 @@ public class UsercolorManager {
      * @param user
      * @return 
      */
-    public synchronized Color getColor(User user) {
-        if (data == null || !settings.getBoolean("customUsercolors")) {
+    public Color getColor(User user) {
+        Lookup currentLookup = lookup;
+        if (currentLookup == null || !settings.getBoolean("customUsercolors")) {
             return null;
         }
-        for (UsercolorItem item : data) {
-            if (item.type == UsercolorItem.TYPE_COLOR) {
-                if (item.idColor.equals(user.getPlainColor())) {
-                    return item.color;
+        return currentLookup.getColor(user);
+    }
+    
+    /**
+     * The items prepared for finding the first item matching a user, without
+     * having to check every item. Name and color items are looked up by
+     * name/color, the remaining items (which usually are only a few) are
+     * checked in order.
+     */
+    private static class Lookup {
+        
+        /**
+         * The first item for each name (lowercase) and color, with the index
+         * of the item in the list.
+         */
+        private final Map<String, Integer> names = new HashMap<>();
+        private final Map<Color, Integer> colors = new HashMap<>();
+        
+        /**
+         * The other items and their indices, in order.
+         */
+        private final List<UsercolorItem> other = new ArrayList<>();
+        private final List<Integer> otherIndices = new ArrayList<>();
+        
+        private final List<UsercolorItem> items;
+        
+        Lookup(List<UsercolorItem> items) {
+            this.items = new ArrayList<>(items);
+            for (int i = 0; i < items.size(); i++) {
+                UsercolorItem item = items.get(i);
+                if (item.type == UsercolorItem.TYPE_COLOR) {
+                    if (!colors.containsKey(item.idColor)) {
+                        colors.put(item.idColor, i);
+                    }
+                } else if (item.type == UsercolorItem.TYPE_NAME) {
+                    String name = StringUtil.toLowerCase(item.id);
+                    if (!names.containsKey(name)) {
+                        names.put(name, i);
+                    }
+                } else if (item.type == UsercolorItem.TYPE_STATUS
+                        || item.type == UsercolorItem.TYPE_CATEGORY
+                        || item.type == UsercolorItem.TYPE_ALL) {
+                    other.add(item);
+                    otherIndices.add(i);
                 }
-            } else if (item.type == UsercolorItem.TYPE_NAME) {
-                if (item.id.equalsIgnoreCase(user.getNick())) {
-                    return item.color;
+            }
+        }
+        
+        /**
+         * Find the first matching item, the same as checking all items in
+         * order would.
+         * 
+         * @param user
+         * @return 
+         */
+        Color getColor(User user) {
+            int result = Integer.MAX_VALUE;
+            Integer nameIndex = names.get(StringUtil.toLowerCase(user.getNick()));
+            if (nameIndex != null) {
+                result = nameIndex;
+            }
+            Color plainColor = user.getPlainColor();
+            if (plainColor != null) {
+                Integer colorIndex = colors.get(plainColor);
+                if (colorIndex != null && colorIndex < result) {
+                    result = colorIndex;
                 }
-            } else if (item.type == UsercolorItem.TYPE_STATUS) {
-                if (Helper.matchUserStatus(item.id, user)) {
-                    return item.color;
+            }
+            for (int i = 0; i < other.size() && otherIndices.get(i) < result; i++) {
+                UsercolorItem item = other.get(i);
+                if (matches(item, user)) {
+                    result = otherIndices.get(i);
+                    break;
                 }
+            }
+            if (result == Integer.MAX_VALUE) {
+                return null;
+            }
+            return items.get(result).color;
+        }
+        
+        private static boolean matches(UsercolorItem item, User user) {
+            if (item.type == UsercolorItem.TYPE_STATUS) {
+                return Helper.matchUserStatus(item.id, user);
             } else if (item.type == UsercolorItem.TYPE_CATEGORY) {
-                if (user.hasCategory(item.category)) {
-                    return item.color;
-                }
-            } else if (item.type == UsercolorItem.TYPE_ALL) {
-                return item.color;
+                return user.hasCategory(item.category);
             }
+            return item.type == UsercolorItem.TYPE_ALL;
         }
-        return null;
     }
     
 }
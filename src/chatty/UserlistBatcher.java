@@ -0,0 +1,199 @@
+
+package chatty;
+
+import chatty.util.TaskScheduler;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Collects users joining and leaving channels (from NAMES and JOIN/PART) for
+ * a short time, so they can be applied in batches instead of one by one, which
+ * would be slow for channels with a lot of users.
+ *
+ * Changes are given to the listener in the order they were added, separately
+ * for each channel. All changes of a channel are applied before any changes
+ * added later, even if {@link #flush(String)} is called concurrently.
+ *
+ * Users that are set online directly (e.g. because they sent a message) have
+ * to be reported with {@link #userActive(String, String)}, so that a PART
+ * that was added earlier, but not applied yet, doesn't set them offline.
+ *
+ * @author tduva
+ */
+public class UserlistBatcher {
+
+    /**
+     * How long to collect changes before applying them, in milliseconds.
+     */
+    private static final long DELAY = 200;
+
+    private final Map<String, List<Change>> pending = new HashMap<>();
+    private final Object applyLock = new Object();
+    private final BatchListener listener;
+    private boolean scheduled;
+
+    public UserlistBatcher(BatchListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Adds a change, which will be applied after a short delay.
+     *
+     * @param channel The channel
+     * @param name The name of the user
+     * @param joined true if the user joined, false if the user left
+     * @param notify Whether this should be shown as join/part (false for
+     * users from the NAMES list)
+     */
+    public synchronized void add(String channel, String name, boolean joined,
+            boolean notify) {
+        List<Change> changes = pending.get(channel);
+        if (changes == null) {
+            changes = new ArrayList<>();
+            pending.put(channel, changes);
+        }
+        changes.add(new Change(name, joined, notify));
+        if (!scheduled) {
+            scheduled = true;
+            TaskScheduler.schedule("UserlistBatcher", new Runnable() {
+
+                @Override
+                public void run() {
+                    flushAll();
+                }
+            }, DELAY);
+        }
+    }
+
+    /**
+     * The user is known to be in the channel (e.g. because they sent a
+     * message) and is about to be set online directly. Pending PARTs of the
+     * user are marked as superseded, so they don't set the user offline when
+     * applied later (they still should be shown, if enabled).
+     *
+     * Waits for changes that are currently being applied, so the user can be
+     * set online after them.
+     *
+     * @param channel The channel
+     * @param name The name of the user
+     */
+    public void userActive(String channel, String name) {
+        synchronized(applyLock) {
+            synchronized(this) {
+                List<Change> changes = pending.get(channel);
+                if (changes != null) {
+                    for (Change change : changes) {
+                        if (!change.joined && change.name.equalsIgnoreCase(name)) {
+                            change.superseded = true;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies the pending changes of the given channel right away, for
+     * example before clearing the userlist.
+     *
+     * @param channel
+     */
+    public void flush(String channel) {
+        synchronized(applyLock) {
+            List<Change> changes;
+            synchronized(this) {
+                changes = pending.remove(channel);
+            }
+            if (changes != null) {
+                listener.apply(channel, changes);
+            }
+        }
+    }
+
+    /**
+     * Applies all pending changes.
+     */
+    public void flushAll() {
+        synchronized(applyLock) {
+            Map<String, List<Change>> changes;
+            synchronized(this) {
+                changes = new HashMap<>(pending);
+                pending.clear();
+                scheduled = false;
+            }
+            for (Map.Entry<String, List<Change>> entry : changes.entrySet()) {
+                listener.apply(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Removes the pending changes of the given channel without applying them.
+     * Waits for changes that are currently being applied.
+     *
+     * @param channel
+     */
+    public void discard(String channel) {
+        synchronized(applyLock) {
+            synchronized(this) {
+                pending.remove(channel);
+            }
+        }
+    }
+
+    /**
+     * Removes all pending changes without applying them. Waits for changes
+     * that are currently being applied.
+     */
+    public void discardAll() {
+        synchronized(applyLock) {
+            synchronized(this) {
+                pending.clear();
+            }
+        }
+    }
+
+    public static class Change {
+
+        public final String name;
+        public final boolean joined;
+        public final boolean notify;
+
+        /**
+         * Only changed while holding the lock of the batcher, and only read
+         * after the change has been removed from the pending changes.
+         */
+        private boolean superseded;
+
+        private Change(String name, boolean joined, boolean notify) {
+            this.name = name;
+            this.joined = joined;
+            this.notify = notify;
+        }
+
+        /**
+         * Whether this PART happened before the user was set online directly
+         * (e.g. by sending a message), which means it shouldn't set the user
+         * offline anymore.
+         *
+         * @return
+         */
+        public boolean isSuperseded() {
+            return superseded;
+        }
+    }
+
+    public interface BatchListener {
+
+        /**
+         * Apply the given changes, in order.
+         *
+         * @param channel
+         * @param changes
+         */
+        public void apply(String channel, List<Change> changes);
+    }
+
+}
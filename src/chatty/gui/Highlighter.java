@@ -3,8 +3,10 @@ package chatty.gui;
 
 import chatty.Helper;
 import chatty.User;
+import chatty.util.AhoCorasick;
 import java.awt.Color;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -29,6 +31,7 @@ public class Highlighter {
     
     private final Map<String, Long> lastHighlighted = new HashMap<>();
     private final List<HighlightItem> items = new ArrayList<>();
+    private final CompiledItems compiled = new CompiledItems();
     private Pattern usernamePattern;
     private Color lastMatchColor;
     private boolean lastMatchNoNotification;
@@ -51,6 +54,7 @@ public class Highlighter {
                 items.add(new HighlightItem(item));
             }
         }
+        compiled.update(items);
     }
     
     /**
@@ -137,13 +141,12 @@ public class Highlighter {
         }
         
         // Then try to match against the items
-        for (HighlightItem item : items) {
-            if (item.matches(user, text, lowercaseText)) {
-                lastMatchColor = item.getColor();
-                lastMatchNoNotification = item.noNotification();
-                lastMatchNoSound = item.noSound();
-                return true;
-            }
+        HighlightItem item = compiled.findFirstMatch(user, text, lowercaseText);
+        if (item != null) {
+            lastMatchColor = item.getColor();
+            lastMatchNoNotification = item.noNotification();
+            lastMatchNoSound = item.noSound();
+            return true;
         }
         
         // Then see if there is a recent match
@@ -171,6 +174,244 @@ public class Highlighter {
         }
     }
     
+    /**
+     * The items prepared for checking many of them at once.
+     * 
+     * Items that contain literal text (regular, cs:, and w:/wcs: without any
+     * regex special characters) are put into automatons, which find all of
+     * them in a single pass over the message. Only those items, and the items
+     * that can't be put into an automaton (re:, start:, no text at all), are
+     * candidates that then have the rest of their requirements (user, channel,
+     * status etc.) checked, in the original order of the items.
+     */
+    private static class CompiledItems {
+        
+        private static final int[] NO_ITEMS = new int[0];
+        
+        private HighlightItem[] items = new HighlightItem[0];
+        
+        /**
+         * Indices of the items that have to be checked for every message.
+         */
+        private int[] alwaysCandidates = NO_ITEMS;
+        
+        /**
+         * Indices of w:/wcs: items in the automatons, which have to fall back
+         * to the regex if the text contains line terminators (which the regex
+         * doesn't match).
+         */
+        private int[] wordItems = NO_ITEMS;
+        
+        /**
+         * Case-insensitive literals, searched in the lowercase text.
+         */
+        private AhoCorasick lowercase;
+        
+        /**
+         * w: literals (ASCII case-insensitive, like the regex), searched in the
+         * text with only ASCII characters made lowercase.
+         */
+        private AhoCorasick asciiLowercase;
+        
+        /**
+         * cs: and wcs: literals, searched in the text as received.
+         */
+        private AhoCorasick caseSensitive;
+        
+        private boolean[] candidates = new boolean[0];
+        private String currentText;
+        
+        /**
+         * Marks matching items as candidates, checking word boundaries if
+         * necessary.
+         */
+        private final AhoCorasick.MatchListener listener = new AhoCorasick.MatchListener() {
+
+            @Override
+            public boolean match(int id, int start, int end) {
+                if (!items[id].literalWord
+                        || (isWordBoundary(currentText, start)
+                            && isWordBoundary(currentText, end))) {
+                    candidates[id] = true;
+                }
+                return true;
+            }
+        };
+        
+        public void update(List<HighlightItem> newItems) {
+            items = newItems.toArray(new HighlightItem[newItems.size()]);
+            candidates = new boolean[items.length];
+            lowercase = new AhoCorasick();
+            asciiLowercase = new AhoCorasick();
+            caseSensitive = new AhoCorasick();
+            List<Integer> always = new ArrayList<>();
+            List<Integer> words = new ArrayList<>();
+            for (int i = 0; i < items.length; i++) {
+                HighlightItem item = items[i];
+                String literal = item.literal;
+                if (literal == null || literal.isEmpty()) {
+                    always.add(i);
+                } else if (item.literalWord) {
+                    words.add(i);
+                    if (item.literalCaseSensitive) {
+                        caseSensitive.add(literal, i);
+                    } else {
+                        asciiLowercase.add(toLowerCaseAscii(literal), i);
+                    }
+                } else if (item.literalCaseSensitive) {
+                    caseSensitive.add(literal, i);
+                } else {
+                    lowercase.add(literal, i);
+                }
+            }
+            lowercase.build();
+            asciiLowercase.build();
+            caseSensitive.build();
+            alwaysCandidates = toArray(always);
+            wordItems = toArray(words);
+        }
+        
+        public HighlightItem findFirstMatch(User user, String text, String lowercaseText) {
+            if (items.length == 0) {
+                return null;
+            }
+            Arrays.fill(candidates, false);
+            for (int index : alwaysCandidates) {
+                candidates[index] = true;
+            }
+            boolean fallback = containsLineTerminator(text);
+            if (fallback) {
+                for (int index : wordItems) {
+                    candidates[index] = true;
+                }
+            }
+            currentText = text;
+            if (!lowercase.isEmpty()) {
+                lowercase.find(lowercaseText, listener);
+            }
+            if (!caseSensitive.isEmpty()) {
+                caseSensitive.find(text, listener);
+            }
+            if (!fallback && !asciiLowercase.isEmpty()) {
+                asciiLowercase.find(toLowerCaseAscii(text), listener);
+            }
+            currentText = null;
+            
+            for (int i = 0; i < items.length; i++) {
+                if (candidates[i]) {
+                    HighlightItem item = items[i];
+                    boolean textMatched = item.literal != null
+                            && !item.literal.isEmpty()
+                            && !(fallback && item.literalWord);
+                    if (textMatched ? item.matchesUser(user) : item.matches(user, text, lowercaseText)) {
+                        return item;
+                    }
+                }
+            }
+            return null;
+        }
+        
+        private static int[] toArray(List<Integer> list) {
+            int[] result = new int[list.size()];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = list.get(i);
+            }
+            return result;
+        }
+        
+    }
+    
+    /**
+     * Only changes the case of ASCII characters, same as the regex flag (?i)
+     * does, so the length stays the same.
+     * 
+     * @param input
+     * @return 
+     */
+    static String toLowerCaseAscii(String input) {
+        char[] result = null;
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                if (result == null) {
+                    result = input.toCharArray();
+                }
+                result[i] = (char) (c + ('a' - 'A'));
+            }
+        }
+        return result == null ? input : new String(result);
+    }
+    
+    /**
+     * Whether the regex "." would not match any character in the text.
+     */
+    private static boolean containsLineTerminator(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Checks for a word boundary at the given index, the same way the regex
+     * "\\b" does (without the UNICODE_CHARACTER_CLASS flag).
+     * 
+     * @param text
+     * @param index
+     * @return 
+     */
+    static boolean isWordBoundary(String text, int index) {
+        boolean left = false;
+        if (index > 0) {
+            int ch = Character.codePointBefore(text, index);
+            left = isWord(ch) || (Character.getType(ch) == Character.NON_SPACING_MARK
+                    && hasBaseCharacter(text, index - 1));
+        }
+        boolean right = false;
+        if (index < text.length()) {
+            int ch = Character.codePointAt(text, index);
+            right = isWord(ch) || (Character.getType(ch) == Character.NON_SPACING_MARK
+                    && hasBaseCharacter(text, index));
+        }
+        return left ^ right;
+    }
+    
+    private static boolean isWord(int ch) {
+        return ch == '_' || Character.isLetterOrDigit(ch);
+    }
+    
+    private static boolean hasBaseCharacter(String text, int index) {
+        for (int i = index; i >= 0; i--) {
+            int ch = Character.codePointAt(text, i);
+            if (Character.isLetterOrDigit(ch)) {
+                return true;
+            }
+            if (Character.getType(ch) != Character.NON_SPACING_MARK) {
+                return false;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Whether the given w:/wcs: term only contains characters that the regex
+     * treats as literal text.
+     * 
+     * @param term
+     * @return 
+     */
+    static boolean isLiteral(String term) {
+        for (int i = 0; i < term.length(); i++) {
+            if ("\\^$.|?*+()[]{}".indexOf(term.charAt(i)) != -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
     /**
      * A single item that itself parses the item String and prepares it for
      * matching. The item can be asked whether it matches a message.
@@ -208,6 +449,14 @@ public class Highlighter {
         private boolean noSound;
         private boolean appliesToInfo;
         
+        /**
+         * The literal text this item requires (if any), used for finding
+         * candidates for matching.
+         */
+        private String literal;
+        private boolean literalCaseSensitive;
+        private boolean literalWord;
+        
         private final Set<Status> statusReq = new HashSet<>();
         private final Set<Status> statusReqNot = new HashSet<>();
         
@@ -238,10 +487,14 @@ public class Highlighter {
                 compilePattern(item.substring(3));
             } else if (item.startsWith("w:") && item.length() > 2) {
                 compilePattern("(?i).*\\b"+item.substring(2)+"\\b.*");
+                setLiteralWord(item.substring(2), false);
             } else if (item.startsWith("wcs:") && item.length() > 4) {
                 compilePattern(".*\\b"+item.substring(4)+"\\b.*");
+                setLiteralWord(item.substring(4), true);
             } else if (item.startsWith("cs:") && item.length() > 3) {
                 caseSensitive = item.substring(3);
+                literal = caseSensitive;
+                literalCaseSensitive = true;
             } else if (item.startsWith("start:") && item.length() > 6) {
                 startsWith = item.substring(6).toLowerCase();
             } else if (item.startsWith("cat:")) {
@@ -270,6 +523,15 @@ public class Highlighter {
                 parseListPrefix(item, "config:");
             } else {
                 caseInsensitive = item.toLowerCase();
+                literal = caseInsensitive;
+            }
+        }
+        
+        private void setLiteralWord(String term, boolean caseSensitive) {
+            if (pattern != null && isLiteral(term)) {
+                literal = term;
+                literalCaseSensitive = caseSensitive;
+                literalWord = true;
             }
         }
         
@@ -368,7 +630,17 @@ public class Highlighter {
          * @return true if it matches, false otherwise
          */
         public boolean matches(User user, String text, String lowercaseText) {
-            
+            return matchesText(text, lowercaseText) && matchesUser(user);
+        }
+        
+        /**
+         * Check whether the text requirement of this item matches.
+         * 
+         * @param text The text as received
+         * @param lowercaseText The text in lowercase
+         * @return true if it matches or there is no text requirement
+         */
+        public boolean matchesText(String text, String lowercaseText) {
             if (pattern != null && !pattern.matcher(text).matches()) {
                 return false;
             }
@@ -381,6 +653,16 @@ public class Highlighter {
             if (startsWith != null && !lowercaseText.startsWith(startsWith)) {
                 return false;
             }
+            return true;
+        }
+        
+        /**
+         * Check whether all requirements of this item except the text match.
+         * 
+         * @param user The user the message is from, or null for info messages
+         * @return true if it matches, false otherwise
+         */
+        public boolean matchesUser(User user) {
             if (user == null) {
                 return appliesToInfo;
             }
@@ -3,7 +3,12 @@ package chatty.gui;
 
 import java.awt.Color;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Defines some HTML color names and provides several methods about Colors.
@@ -15,6 +20,34 @@ public class HtmlColors {
     private static volatile Color defaultColor = Color.BLACK;
     private static final ArrayList<NamedColor> colors = new ArrayList<>();
     
+    /**
+     * The named colors by lowercase name (the first color added with a name).
+     */
+    private static final Map<String, NamedColor> colorsByName = new HashMap<>();
+    
+    /**
+     * Decoded colors by the String they were decoded from, so the same Color
+     * object can be reused instead of decoding it again for every message.
+     * Strings that couldn't be decoded are stored as {@link #NO_COLOR}.
+     */
+    private static final Map<String, Color> decoded = new ConcurrentHashMap<>();
+    private static final int DECODED_MAX_SIZE = 2000;
+    private static final Color NO_COLOR = new Color(0, 0, 0);
+    
+    /**
+     * Readability corrected colors, by foreground and background color. Since
+     * the background is part of the key, changing the background doesn't
+     * return any old results, which are removed once there are too many.
+     */
+    private static final Map<Long, Color> corrected = new LinkedHashMap<Long, Color>(16, 0.75f, true) {
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Color> eldest) {
+            return size() > CORRECTED_MAX_SIZE;
+        }
+    };
+    private static final int CORRECTED_MAX_SIZE = 2000;
+    
     
     static {
         
@@ -195,20 +228,28 @@ public class HtmlColors {
     }
     
     private static void add(String name, int r, int g, int b) {
-        colors.add(new NamedColor(name, r, g, b));
+        NamedColor color = new NamedColor(name, r, g, b);
+        colors.add(color);
+        addName(name, color);
     }
     
     private static void add(int r, int g, int b, String... names) {
-        colors.add(new NamedColor(names, r, g, b));
+        NamedColor color = new NamedColor(names, r, g, b);
+        colors.add(color);
+        for (String name : names) {
+            addName(name, color);
+        }
+    }
+    
+    private static void addName(String name, NamedColor color) {
+        String key = name.toLowerCase(Locale.ENGLISH);
+        if (!colorsByName.containsKey(key)) {
+            colorsByName.put(key, color);
+        }
     }
 
     public static NamedColor getNamedColor(String name) {
-        for (NamedColor color : colors) {
-            if (color.hasName(name)) {
-                return color;
-            }
-        }
-        return null;
+        return colorsByName.get(name.toLowerCase(Locale.ENGLISH));
     }
     
     public static List<NamedColor> getNamedColors() {
@@ -231,15 +272,25 @@ public class HtmlColors {
         if (color == null) {
             return defaultColor;
         }
-        Color c = getNamedColor(color);
+        Color c = decoded.get(color);
         if (c == null) {
-            // No recognized named color
-            try {
-                c = Color.decode(color);
-            } catch (NumberFormatException ex) {
-                // If neither color, return default
-                return defaultColor;
+            c = getNamedColor(color);
+            if (c == null) {
+                // No recognized named color
+                try {
+                    c = Color.decode(color);
+                } catch (NumberFormatException ex) {
+                    c = NO_COLOR;
+                }
+            }
+            if (decoded.size() > DECODED_MAX_SIZE) {
+                decoded.clear();
             }
+            decoded.put(color, c);
+        }
+        if (c == NO_COLOR) {
+            // If neither color, return default
+            return defaultColor;
         }
         return c;
     }
@@ -300,11 +351,26 @@ public class HtmlColors {
      * some colors have a high enough brightness difference, but they are
      * still not very well readable, e.g. springgreen on light grey.
      * 
+     * The results are cached, so this is cheap for colors that have already
+     * been corrected for the same background.
+     * 
      * @param foreground
      * @param background
      * @return 
      */
     public static Color correctReadability(Color foreground, Color background) {
+        long key = ((long) foreground.getRGB() << 32) | (background.getRGB() & 0xFFFFFFFFL);
+        synchronized(corrected) {
+            Color result = corrected.get(key);
+            if (result == null) {
+                result = correctReadabilityInternal(foreground, background);
+                corrected.put(key, result);
+            }
+            return result;
+        }
+    }
+    
+    private static Color correctReadabilityInternal(Color foreground, Color background) {
         int bd = getBrightnessDifference(foreground, background);
         if (Math.abs(bd) < 50) {
             if (getBrightness(background) > 180) {
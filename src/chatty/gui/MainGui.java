@@ -57,14 +57,17 @@ import chatty.util.MiscUtil;
 import chatty.util.Sound;
 import chatty.util.StringUtil;
 import chatty.util.api.ChatInfo;
+import chatty.util.api.EmoteCatalog;
 import chatty.util.api.Emoticon.EmoticonImage;
 import chatty.util.api.EmoticonUpdate;
 import chatty.util.api.Emoticons.TagEmotes;
 import chatty.util.api.FollowerInfo;
 import chatty.util.api.TwitchApi.RequestResult;
 import chatty.util.api.pubsub.ModeratorActionData;
+import chatty.util.gif.AnimationClock;
 import chatty.util.hotkeys.HotkeyManager;
 import chatty.util.settings.Setting;
+import chatty.util.settings.SettingHandle;
 import chatty.util.settings.SettingChangeListener;
 import chatty.util.settings.Settings;
 import chatty.util.settings.SettingsListener;
@@ -140,6 +143,7 @@ public class MainGui extends JFrame implements Runnable {
     private final StateUpdater state = new StateUpdater();
     private WindowStateManager windowStateManager;
     private final IgnoredMessages ignoredMessagesHelper = new IgnoredMessages(this);
+    private final MessagePump messagePump = new MessagePump();
     public final HotkeyManager hotkeyManager = new HotkeyManager(this);
 
     // Listeners that need to be returned by methods
@@ -149,8 +153,24 @@ public class MainGui extends JFrame implements Runnable {
     private final LinkLabelListener linkLabelListener = new MyLinkLabelListener();
     private final ContextMenuListener contextMenuListener = new MyContextMenuListener();
     
+    // Settings used for every message
+    private final SettingHandle.LongHandle whisperDisplayMode;
+    private final SettingHandle.BooleanHandle highlightIgnored;
+    private final SettingHandle.ListHandle noHighlightUsers;
+    private final SettingHandle.LongHandle ignoreMode;
+    private final SettingHandle.ListHandle streamChatChannels;
+    private final SettingHandle.ListHandle ignoredUsers;
+    private final SettingHandle.ListHandle ignoredUsersWhisper;
+    
     public MainGui(TwitchClient client) {
         this.client = client;
+        whisperDisplayMode = client.settings.getLongHandle("whisperDisplayMode");
+        highlightIgnored = client.settings.getBooleanHandle("highlightIgnored");
+        noHighlightUsers = client.settings.getListHandle("noHighlightUsers");
+        ignoreMode = client.settings.getLongHandle("ignoreMode");
+        streamChatChannels = client.settings.getListHandle("streamChatChannels");
+        ignoredUsers = client.settings.getListHandle("ignoredUsers");
+        ignoredUsersWhisper = client.settings.getListHandle("ignoredUsersWhisper");
         SwingUtilities.invokeLater(this);
     }
     
@@ -277,13 +297,6 @@ public class MainGui extends JFrame implements Runnable {
         pack();
         setLocationByPlatform(true);
         
-        // Load some stuff
-        client.api.requestEmoticons(false);
-        client.twitchemotes.requestEmotesets(false);
-        if (client.settings.getBoolean("bttvEmotes")) {
-            client.bttvEmotes.requestEmotes("$global$", false);
-        }
-        
         // Window states
         windowStateManager = new WindowStateManager(this, client.settings);
         windowStateManager.addWindow(this, "main", true, true);
@@ -810,6 +823,7 @@ public class MainGui extends JFrame implements Runnable {
         loadCommercialDelaySettings();
         UrlOpener.setPrompt(client.settings.getBoolean("urlPrompt"));
         UrlOpener.setCustomCommandEnabled(client.settings.getBoolean("urlCommandEnabled"));
+        AnimationClock.setPauseUnfocused(client.settings.getBoolean("animationPauseUnfocused"));
         UrlOpener.setCustomCommand(client.settings.getString("urlCommand"));
         channels.setTabOrder(client.settings.getString("tabOrder"));
         
@@ -1981,6 +1995,8 @@ public class MainGui extends JFrame implements Runnable {
                 return true;
             }
             printSystem("Invalid parameters.");
+        } else if (command.equals("messagepumpstats")) {
+            printSystem("[MessagePump] "+messagePump.getStats());
         } else {
             return false;
         }
@@ -2291,7 +2307,7 @@ public class MainGui extends JFrame implements Runnable {
      */
     
     public void removeChannel(final String channel) {
-        SwingUtilities.invokeLater(new Runnable() {
+        messagePump.add(channel, new Runnable() {
 
             @Override
             public void run() {
@@ -2302,7 +2318,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void switchToChannel(final String channel) {
-        SwingUtilities.invokeLater(new Runnable() {
+        messagePump.add(channel, new Runnable() {
 
             @Override
             public void run() {
@@ -2382,7 +2398,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void setChannelNewStatus(final String channel, final String newStatus) {
-        SwingUtilities.invokeLater(new Runnable() {
+        messagePump.add(channel, new Runnable() {
 
             @Override
             public void run() {
@@ -2491,7 +2507,7 @@ public class MainGui extends JFrame implements Runnable {
     public void printMessage(final String toChan, final User user,
             final String text, final boolean action, final String emotes,
             final int bits, final String id) {
-        SwingUtilities.invokeLater(new Runnable() {
+        messagePump.add(toChan, new Runnable() {
             @Override
             public void run() {
                 Channel chan;
@@ -2503,7 +2519,7 @@ public class MainGui extends JFrame implements Runnable {
                  * settings
                  */
                 if (channel.equals(WhisperManager.WHISPER_CHANNEL)) {
-                    int whisperSetting = (int)client.settings.getLong("whisperDisplayMode");
+                    int whisperSetting = (int)whisperDisplayMode.get();
                     if (whisperSetting == WhisperManager.DISPLAY_ONE_WINDOW) {
                         chan = channels.getChannel(channel);
                     } else if (whisperSetting == WhisperManager.DISPLAY_PER_USER) {
@@ -2528,8 +2544,8 @@ public class MainGui extends JFrame implements Runnable {
                         || (userIgnored(user, whisper) && !isOwnMessage);
                 
                 boolean highlighted = false;
-                if ((client.settings.getBoolean("highlightIgnored") || !ignored)
-                        && !client.settings.listContains("noHighlightUsers", user.nick)) {
+                if ((highlightIgnored.get() || !ignored)
+                        && !noHighlightUsers.contains(user.nick)) {
                     highlighted = checkHighlight(user, text, highlighter, "highlight", isOwnMessage);
                 }
                 
@@ -2559,7 +2575,7 @@ public class MainGui extends JFrame implements Runnable {
                             tagEmotes, bits, whisper);
                     ignoredMessagesHelper.ignoredMessage(channel);
                 }
-                long ignoreMode = client.settings.getLong("ignoreMode");
+                long ignoreMode = MainGui.this.ignoreMode.get();
                 
                 // Print or don't print depending on ignore
                 if (ignored && (ignoreMode <= IgnoredMessages.MODE_COUNT || 
@@ -2580,7 +2596,7 @@ public class MainGui extends JFrame implements Runnable {
                         message.ignored_compact = true;
                     }
                     chan.printMessage(message);
-                    if (client.settings.listContains("streamChatChannels", channel)) {
+                    if (streamChatChannels.contains(channel)) {
                         streamChat.printMessage(message);
                     }
                 }
@@ -2600,7 +2616,7 @@ public class MainGui extends JFrame implements Runnable {
     public void printSubscriberMessage(final String channel, final User user,
             final String text, final String message, final int months,
             final String emotes) {
-        SwingUtilities.invokeLater(new Runnable() {
+        messagePump.add(channel, new Runnable() {
 
             @Override
             public void run() {
@@ -2632,8 +2648,8 @@ public class MainGui extends JFrame implements Runnable {
      * @return 
      */
     private boolean userIgnored(User user, boolean whisper) {
-        String setting = whisper ? "ignoredUsersWhisper" : "ignoredUsers";
-        return client.settings.listContains(setting, user.nick);
+        SettingHandle.ListHandle setting = whisper ? ignoredUsersWhisper : ignoredUsers;
+        return setting.contains(user.nick);
     }
     
     private String processMessage(String text) {
@@ -2671,14 +2687,14 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void userBanned(final User user, final long duration, final String reason, final String id) {
-        SwingUtilities.invokeLater(new Runnable() {
+        messagePump.add(user.getChannel(), new Runnable() {
 
             @Override
             public void run() {
                 channels.getChannel(user.getChannel()).userBanned(user, duration, reason, id);
                 user.addBan(duration, reason, id);
                 updateUserInfoDialog(user);
-                if (client.settings.listContains("streamChatChannels", user.getChannel())) {
+                if (streamChatChannels.contains(user.getChannel())) {
                     streamChat.userBanned(user, duration, reason, id);
                 }
             }
@@ -2690,7 +2706,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void clearChat(final String channel) {
-        SwingUtilities.invokeLater(new Runnable() {
+        messagePump.add(channel, new Runnable() {
             @Override
             public void run() {
                 Channel panel;
@@ -2698,7 +2714,7 @@ public class MainGui extends JFrame implements Runnable {
                     panel = channels.getActiveChannel();
                 } else {
                     panel = channels.getChannel(channel);
-                    if (client.settings.listContains("streamChatChannels", channel)) {
+                    if (streamChatChannels.contains(channel)) {
                         streamChat.clear();
                     }
                 }
@@ -2722,7 +2738,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void printLine(final String line) {
-        SwingUtilities.invokeLater(new Runnable() {
+        messagePump.add(null, new Runnable() {
             @Override
             public void run() {
                 Channel panel = channels.getLastActiveChannel();
@@ -2735,7 +2751,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void printSystem(final String line) {
-        SwingUtilities.invokeLater(new Runnable() {
+        messagePump.add(null, new Runnable() {
             @Override
             public void run() {
                 Channel panel = channels.getActiveChannel();
@@ -2748,7 +2764,7 @@ public class MainGui extends JFrame implements Runnable {
     }
 
     public void printLine(final String channel, final String line) {
-        SwingUtilities.invokeLater(new Runnable() {
+        messagePump.add(channel, new Runnable() {
             @Override
             public void run() {
                 if (channel == null) {
@@ -2762,7 +2778,7 @@ public class MainGui extends JFrame implements Runnable {
     }
     
     public void printLineAll(final String line) {
-        SwingUtilities.invokeLater(new Runnable() {
+        messagePump.add(null, new Runnable() {
             @Override
             public void run() {
                 //client.chatLog.info(null, line);
@@ -2808,7 +2824,7 @@ public class MainGui extends JFrame implements Runnable {
      * @param user The User object of who was the target of this event (mod/..).
      */
     public void printCompact(final String channel, final String type, final User user) {
-        SwingUtilities.invokeLater(new Runnable() {
+        messagePump.add(channel, new Runnable() {
             @Override
             public void run() {
                 channels.getChannel(channel).printCompact(type, user);
@@ -2895,7 +2911,7 @@ public class MainGui extends JFrame implements Runnable {
     
     public void printModerationAction(final ModeratorActionData data,
             final boolean ownAction) {
-        SwingUtilities.invokeLater(new Runnable() {
+        messagePump.add(Helper.toValidChannel(data.stream), new Runnable() {
 
             @Override
             public void run() {
@@ -2938,7 +2954,7 @@ public class MainGui extends JFrame implements Runnable {
      * @param user 
      */
     public void addUser(final String channel, final User user) {
-        SwingUtilities.invokeLater(new Runnable() {
+        messagePump.add(channel, new Runnable() {
             @Override
             public void run() {
                 if (!shouldUpdateUser(user)) return;
@@ -2958,7 +2974,7 @@ public class MainGui extends JFrame implements Runnable {
      * @param user 
      */
     public void removeUser(final String channel, final User user) {
-        SwingUtilities.invokeLater(new Runnable() {
+        messagePump.add(channel, new Runnable() {
             @Override
             public void run() {
                 if (!shouldUpdateUser(user)) return;
@@ -2971,13 +2987,38 @@ public class MainGui extends JFrame implements Runnable {
         });
     }
     
+    /**
+     * Adds and removes several users of a channel at once.
+     * 
+     * @param channel
+     * @param added Users to add to the userlist
+     * @param removed Users to remove from the userlist
+     */
+    public void updateUsers(final String channel, final List<User> added,
+            final List<User> removed) {
+        messagePump.add(channel, new Runnable() {
+            @Override
+            public void run() {
+                if (channel.equals(WhisperManager.WHISPER_CHANNEL)
+                        && !channels.isChannel(WhisperManager.WHISPER_CHANNEL)) {
+                    return;
+                }
+                Channel c = channels.getChannel(channel);
+                c.updateUsers(added, removed);
+                if (channels.getActiveChannel() == c) {
+                    state.update();
+                }
+            }
+        });
+    }
+    
     /**
      * Updates a user.
      * 
      * @param user 
      */
     public void updateUser(final User user) {
-        SwingUtilities.invokeLater(new Runnable() {
+        messagePump.add(user.getChannel(), new Runnable() {
             @Override
             public void run() {
                 if (!shouldUpdateUser(user)) return;
@@ -2998,7 +3039,7 @@ public class MainGui extends JFrame implements Runnable {
      * @param channel
      */
     public void resortUsers(final String channel) {
-        SwingUtilities.invokeLater(new Runnable() {
+        messagePump.add(channel, new Runnable() {
             @Override
             public void run() {
                 channels.getChannel(channel).resortUserlist();
@@ -3010,7 +3051,7 @@ public class MainGui extends JFrame implements Runnable {
      * Clears the userlist on all channels.
      */
     public void clearUsers(final String channel) {
-        SwingUtilities.invokeLater(new Runnable() {
+        messagePump.add(channel, new Runnable() {
             @Override
             public void run() {
                 if (channel != null) {
@@ -3351,6 +3392,17 @@ public class MainGui extends JFrame implements Runnable {
         });
     }
     
+    public void setTwitchEmotes(final EmoteCatalog catalog) {
+        SwingUtilities.invokeLater(new Runnable() {
+
+            @Override
+            public void run() {
+                emoticons.setTwitchCatalog(catalog);
+                emotesDialog.update();
+            }
+        });
+    }
+    
     public void addEmoticons(final Set<Emoticon> emotes) {
         SwingUtilities.invokeLater(new Runnable() {
 
@@ -3882,6 +3934,8 @@ public class MainGui extends JFrame implements Runnable {
                     emotesDialog.setCloseOnDoubleClick(bool);
                 } else if (setting.equals("foreignToken")) {
                     tokenDialog.setForeignToken(bool);
+                } else if (setting.equals("animationPauseUnfocused")) {
+                    AnimationClock.setPauseUnfocused(bool);
                 }
                 if (setting.startsWith("title")) {
                     updateState(true);
@@ -4010,6 +4064,18 @@ public class MainGui extends JFrame implements Runnable {
         return emoticons.getEmotesNamesByStream(stream);
     }
     
+    /**
+     * Gets the emote names usable in the given channel that start with the
+     * given prefix.
+     * 
+     * @param stream
+     * @param prefix
+     * @return 
+     */
+    public List<String> findEmoteNames(String stream, String prefix) {
+        return emoticons.findEmoteNames(stream, prefix);
+    }
+    
     public String getCustomCompletionItem(String key) {
         return (String)client.settings.mapGet("customCompletion", key);
     }
@@ -0,0 +1,205 @@
+
+package chatty.gui;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.SwingUtilities;
+
+/**
+ * Delivers chat related tasks to the EDT in batches, instead of each task
+ * being posted as it's own event.
+ *
+ * Any thread can add tasks, which are put into a lock-free queue. Only one
+ * drain is scheduled on the EDT at a time, which runs all tasks that have
+ * been added until then, in the order they were added. If the drain takes
+ * longer than the time budget, it stops and schedules another drain, so that
+ * other events (like repainting or user input) can be processed in between.
+ *
+ * Since other events can run between drains, anything that has to happen in
+ * order with the tasks (like closing a channel, which would otherwise be
+ * opened again by a message added before) should also be added as a task
+ * instead of being posted to the EDT directly.
+ *
+ * @author tduva
+ */
+public class MessagePump {
+
+    /**
+     * How long a drain may run before giving other events a chance.
+     */
+    private static final long TIME_BUDGET = TimeUnit.MILLISECONDS.toNanos(8);
+
+    /**
+     * The max number of tasks taken from the queue before checking the time
+     * budget again.
+     */
+    private static final int CHUNK_SIZE = 200;
+
+    private final Queue<Task> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final Runnable drain = new Runnable() {
+
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    // Stats (max depth updated by any thread, the rest only on the EDT)
+    private final AtomicInteger maxSize = new AtomicInteger();
+    private long drains;
+    private long tasks;
+    private long batches;
+    private String lastChannel;
+    private long budgetExceeded;
+    private long totalLatency;
+    private long maxLatency;
+    private long maxDrainTime;
+
+    /**
+     * Adds a task to be run on the EDT.
+     *
+     * @param channel The channel the task affects, can be null (for tasks
+     * that don't affect a specific channel)
+     * @param task The task to run
+     */
+    public void add(String channel, Runnable task) {
+        queue.add(new Task(channel, task));
+        int currentSize = size.incrementAndGet();
+        updateMaxSize(currentSize);
+        if (scheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(drain);
+        }
+    }
+
+    private void updateMaxSize(int currentSize) {
+        int max = maxSize.get();
+        while (currentSize > max && !maxSize.compareAndSet(max, currentSize)) {
+            max = maxSize.get();
+        }
+    }
+
+    /**
+     * Runs tasks until the queue is empty or the time budget is used up.
+     */
+    private void drain() {
+        long start = System.nanoTime();
+        drains++;
+        List<Task> chunk = new ArrayList<>();
+        while (true) {
+            Task task;
+            while (chunk.size() < CHUNK_SIZE && (task = queue.poll()) != null) {
+                chunk.add(task);
+            }
+            if (chunk.isEmpty()) {
+                scheduled.set(false);
+                // Check again, in case a task was added before the flag was
+                // reset (which wouldn't have scheduled a drain)
+                if (queue.isEmpty() || !scheduled.compareAndSet(false, true)) {
+                    break;
+                }
+                continue;
+            }
+            size.addAndGet(-chunk.size());
+            run(chunk);
+            chunk.clear();
+            if (System.nanoTime() - start > TIME_BUDGET) {
+                // Still flagged as scheduled, so continue in the next drain
+                budgetExceeded++;
+                SwingUtilities.invokeLater(drain);
+                break;
+            }
+        }
+        long duration = System.nanoTime() - start;
+        if (duration > maxDrainTime) {
+            maxDrainTime = duration;
+        }
+    }
+
+    /**
+     * Runs the given tasks in order. Consecutive tasks of the same channel
+     * are counted as one batch, but tasks are never reordered.
+     *
+     * @param chunk
+     */
+    private void run(List<Task> chunk) {
+        long now = System.nanoTime();
+        for (Task task : chunk) {
+            if (!sameChannel(task.channel, lastChannel)) {
+                batches++;
+                lastChannel = task.channel;
+            }
+            long latency = now - task.added;
+            totalLatency += latency;
+            if (latency > maxLatency) {
+                maxLatency = latency;
+            }
+            tasks++;
+            try {
+                task.task.run();
+            } catch (RuntimeException ex) {
+                // Don't let one faulty task prevent all others from running
+                Thread current = Thread.currentThread();
+                current.getUncaughtExceptionHandler().uncaughtException(current, ex);
+            }
+        }
+    }
+
+    private static boolean sameChannel(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    /**
+     * Current queue depth, can be called from any thread.
+     *
+     * @return
+     */
+    public int getQueueSize() {
+        return size.get();
+    }
+
+    /**
+     * Returns info about the queue and delivery times. Should only be called
+     * from the EDT.
+     *
+     * @return
+     */
+    public String getStats() {
+        return String.format("Queue: %d (max %d) Tasks: %d (channel batches %d) Drains: %d (budget exceeded %d) "
+                + "Latency avg/max: %.1fms/%.1fms Max drain time: %.1fms",
+                size.get(),
+                maxSize.get(),
+                tasks,
+                batches,
+                drains,
+                budgetExceeded,
+                tasks > 0 ? toMillis(totalLatency / tasks) : 0,
+                toMillis(maxLatency),
+                toMillis(maxDrainTime));
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1000000.0;
+    }
+
+    private static class Task {
+
+        private final String channel;
+        private final Runnable task;
+        private final long added;
+
+        Task(String channel, Runnable task) {
+            this.channel = channel;
+            this.task = task;
+            this.added = System.nanoTime();
+        }
+    }
+
+}
@@ -1,21 +1,25 @@
 
 package chatty.gui;
 
+import chatty.util.IndexedTreeList;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Collection;
 import javax.swing.AbstractListModel;
 
 /**
  * The data model behind the userlist, sorts items.
  * 
+ * Items are stored in an {@link IndexedTreeList}, so adding, removing and
+ * accessing items is O(log n) even for channels with a lot of users.
+ * 
  * @author tduva
  */
 public class UserlistModel<T extends Comparable> extends AbstractListModel {
 
-    ArrayList<T> data = new ArrayList<>();
+    private final IndexedTreeList<T> data = new IndexedTreeList<>(null);
 
     public ArrayList<T> getData() {
-        return (ArrayList) data.clone();
+        return data.toList();
     }
 
     @Override
@@ -29,26 +33,59 @@ public class UserlistModel<T extends Comparable> extends AbstractListModel {
     }
 
     public void add(T item) {
-        int insertionPoint = findInsertionPoint(item);
-        data.add(insertionPoint, item);
-        super.fireIntervalAdded(this, insertionPoint, insertionPoint);
+        int insertionPoint = data.add(item);
+        if (insertionPoint != -1) {
+            super.fireIntervalAdded(this, insertionPoint, insertionPoint);
+        }
+    }
+
+    /**
+     * Adds several items at once, only informing listeners once, which is
+     * much faster than adding them one by one.
+     * 
+     * @param items 
+     */
+    public void addAll(Collection<? extends T> items) {
+        int before = data.size();
+        int added = data.addAll(items);
+        if (added > 0) {
+            super.fireIntervalAdded(this, before, before + added - 1);
+            if (before > 0) {
+                // Added items are not only at the end
+                super.fireContentsChanged(this, 0, data.size() - 1);
+            }
+        }
+    }
+
+    public boolean contains(T item) {
+        return data.contains(item);
     }
 
     public void remove(T item) {
-        int index = data.indexOf(item);
-        if (index == -1) {
-            return;
+        int index = data.remove(item);
+        if (index != -1) {
+            super.fireIntervalRemoved(this, index, index);
         }
-        data.remove(index);
-        super.fireIntervalRemoved(this, index, index);
     }
 
-    private int findInsertionPoint(T item) {
-        int insertionPoint = Collections.binarySearch(data, item, null);
-        if (insertionPoint < 0) {
-            insertionPoint = -(insertionPoint + 1);
+    /**
+     * Removes several items at once, only informing listeners once.
+     * 
+     * @param items 
+     */
+    public void removeAll(Collection<? extends T> items) {
+        int before = data.size();
+        for (T item : items) {
+            data.remove(item);
+        }
+        int after = data.size();
+        if (after < before) {
+            super.fireIntervalRemoved(this, after, before - 1);
+            if (after > 0) {
+                // Removed items were not only at the end
+                super.fireContentsChanged(this, 0, after - 1);
+            }
         }
-        return insertionPoint;
     }
 
     public void updated(T item) {
@@ -61,8 +98,9 @@ public class UserlistModel<T extends Comparable> extends AbstractListModel {
 
     public void clear() {
         if (!data.isEmpty()) {
-            super.fireIntervalRemoved(this, 0, data.size() - 1);
+            int size = data.size();
             data.clear();
+            super.fireIntervalRemoved(this, 0, size - 1);
         }
     }
     
@@ -70,7 +108,7 @@ public class UserlistModel<T extends Comparable> extends AbstractListModel {
      * Manually sort entries. This may sometimes fix the sorting.
      */
     public void sort() {
-        Collections.sort(data);
+        data.resort();
         super.fireContentsChanged(this, 0, data.size() - 1);
     }
     
@@ -8,7 +8,9 @@ import chatty.gui.MainGui;
 import chatty.User;
 import chatty.gui.components.menus.ContextMenuListener;
 import chatty.gui.components.textpane.ChannelTextPane;
+import chatty.gui.components.textpane.ChatView;
 import chatty.gui.components.textpane.Message;
+import chatty.gui.components.textpane.VirtualChatView;
 import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.event.ActionEvent;
@@ -22,7 +24,8 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -30,6 +33,7 @@ import java.util.Set;
 import java.util.TreeSet;
 import javax.swing.AbstractAction;
 import javax.swing.InputMap;
+import javax.swing.JComponent;
 import javax.swing.JPanel;
 import javax.swing.JScrollBar;
 import javax.swing.JScrollPane;
@@ -54,8 +58,14 @@ public class Channel extends JPanel {
     private static final int DIVIDER_SIZE = 5;
     
     private final ChannelEditBox input;
-    private final ChannelTextPane text;
+    private final ChatView text;
+    private final JComponent textComponent;
     private final UserList users;
+    
+    /**
+     * The names of the users in the userlist, for TAB Completion.
+     */
+    private final UserNameIndex userNameIndex = new UserNameIndex();
     private final JSplitPane mainPane;
     private final JScrollPane userlist;
     private final JScrollPane west;
@@ -78,13 +88,21 @@ public class Channel extends JPanel {
         this.type = type;
         
         // Text Pane
-        text = new ChannelTextPane(main,styleManager);
+        if (main.getSettings().getBoolean("virtualChatView")) {
+            VirtualChatView view = new VirtualChatView(main, styleManager);
+            text = view;
+            textComponent = view;
+        } else {
+            ChannelTextPane pane = new ChannelTextPane(main, styleManager);
+            text = pane;
+            textComponent = pane;
+        }
         text.setContextMenuListener(contextMenuListener);
         
         
         setTextPreferredSizeTemporarily();
         
-        west = new JScrollPane(text);
+        west = new JScrollPane(textComponent);
         text.setScrollPane(west);
         //System.out.println(west.getVerticalScrollBarPolicy());
         //System.out.println(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
@@ -190,14 +208,34 @@ public class Channel extends JPanel {
     
     public void addUser(User user) {
         users.addUser(user);
+        userNameIndex.add(user);
     }
     
     public void removeUser(User user) {
         users.removeUser(user);
+        userNameIndex.remove(user);
+    }
+    
+    /**
+     * Adds and removes several users at once.
+     * 
+     * @param added
+     * @param removed 
+     */
+    public void updateUsers(Collection<User> added, Collection<User> removed) {
+        users.removeUsers(removed);
+        users.addUsers(added);
+        for (User user : removed) {
+            userNameIndex.remove(user);
+        }
+        for (User user : added) {
+            userNameIndex.add(user);
+        }
     }
     
     public void updateUser(User user) {
         users.updateUser(user);
+        userNameIndex.update(user);
     }
     
     public void resortUserlist() {
@@ -206,6 +244,7 @@ public class Channel extends JPanel {
     
     public void clearUsers() {
         users.clearUsers();
+        userNameIndex.clear();
     }
     
     public int getNumUsers() {
@@ -218,7 +257,6 @@ public class Channel extends JPanel {
 
     private class InputCompletionServer implements AutoCompletionServer {
         
-        private final UserSorterNew userSorterNew = new UserSorterNew();
         private final UserSorterAlphabetic userSorterAlphabetical = new UserSorterAlphabetic();
         
         private final Set<String> commands = new TreeSet<>(Arrays.asList(new String[]{
@@ -281,9 +319,9 @@ public class Channel extends JPanel {
             if (prefix.endsWith(".")) {
                 return new CompletionItems(getCustomCompletionItems(search), ".");
             } else {
-                Collection<String> emotes = new LinkedList<>(main.getEmoteNames());
-                emotes.addAll(main.getEmoteNamesPerStream(getStreamName()));
-                return new CompletionItems(filterCompletionItems(emotes, search), "");
+                List<String> emotes = main.findEmoteNames(getStreamName(), search);
+                Collections.sort(emotes);
+                return new CompletionItems(emotes, "");
             }
         }
         
@@ -309,32 +347,16 @@ public class Channel extends JPanel {
         }
             
         private CompletionItems getCompletionItemsNames(String search, boolean preferUsernames) {
-            List<User> matchedUsers = new ArrayList<>();
-            Set<User> regularMatched = new HashSet<>();
-            Set<User> customMatched = new HashSet<>();
-            Set<User> localizedMatched = new HashSet<>();
-            for (User user : users.getData()) {
-                boolean matched = false;
-                if (user.nick.startsWith(search)) {
-                    matched = true;
-                    regularMatched.add(user);
-                }
-                if (!user.hasRegularDisplayNick() && user.getDisplayNick().toLowerCase(Locale.ROOT).startsWith(search)) {
-                    matched = true;
-                    localizedMatched.add(user);
-                }
-                if (user.hasCustomNickSet() && user.getCustomNick().toLowerCase(Locale.ROOT).startsWith(search)) {
-                    matched = true;
-                    customMatched.add(user);
-                }
-                
-                if (matched) {
-                    matchedUsers.add(user);
-                }
-            }
+            Set<User> regularMatched = new HashSet<>(userNameIndex.findRegular(search));
+            Set<User> customMatched = new HashSet<>(userNameIndex.findCustom(search));
+            Set<User> localizedMatched = new HashSet<>(userNameIndex.findLocalized(search));
+            Set<User> allMatched = new LinkedHashSet<>(regularMatched);
+            allMatched.addAll(localizedMatched);
+            allMatched.addAll(customMatched);
+            List<User> matchedUsers = new ArrayList<>(allMatched);
             switch (main.getSettings().getString("completionSorting")) {
                 case "predictive":
-                    Collections.sort(matchedUsers, userSorterNew);
+                    sortByActivity(matchedUsers);
                     break;
                 case "alphabetical":
                     Collections.sort(matchedUsers, userSorterAlphabetical);
@@ -421,21 +443,32 @@ public class Channel extends JPanel {
             return new CompletionItems(nicks, info, "");
         }
         
-        private class UserSorterNew implements Comparator<User> {
+        /**
+         * Sorts by activity score, highest first. The scores are calculated
+         * only once for each user before sorting, instead of for every
+         * comparison.
+         * 
+         * @param users 
+         */
+        private void sortByActivity(List<User> users) {
+            final Map<User, Integer> scores = new IdentityHashMap<>();
+            for (User user : users) {
+                scores.put(user, user.getActivityScore());
+            }
+            Collections.sort(users, new Comparator<User>() {
 
-            @Override
-            public int compare(User o1, User o2) {
-                int s1 = o1.getActivityScore();
-                int s2 = o2.getActivityScore();
-                //System.out.println(o1+" "+s1+" "+o2+" "+s2);
-                if (s1 == s2) {
-                    return o1.compareTo(o2);
-                } else if (s1 > s2) {
-                    return -1;
+                @Override
+                public int compare(User o1, User o2) {
+                    int s1 = scores.get(o1);
+                    int s2 = scores.get(o2);
+                    if (s1 == s2) {
+                        return o1.compareTo(o2);
+                    } else if (s1 > s2) {
+                        return -1;
+                    }
+                    return 1;
                 }
-                return 1;
-            }
-            
+            });
         }
         
         private class UserSorterAlphabetic implements Comparator<User> {
@@ -569,12 +602,12 @@ public class Channel extends JPanel {
      * I don't know enough about this to find a proper solution.
      */
     private void setTextPreferredSizeTemporarily() {
-        text.setPreferredSize(new Dimension(0, 0));
+        textComponent.setPreferredSize(new Dimension(0, 0));
         Timer t = new Timer(5000, new ActionListener() {
 
             @Override
             public void actionPerformed(ActionEvent e) {
-                text.setPreferredSize(null);
+                textComponent.setPreferredSize(null);
             }
         });
         t.setRepeats(false);
@@ -103,7 +103,7 @@ public class EmotesDialog extends JDialog {
         emoteUser = new Emoticon.EmoticonUser() {
 
             @Override
-            public void iconLoaded() {
+            public void iconLoaded(Emoticon.EmoticonImage image) {
 //                repaint = true;
                 repaint();
             }
@@ -161,7 +161,7 @@ public class HighlightedMessages extends JDialog {
         }
         
         public void clear() {
-            setText("");
+            clearAll();
         }
         
     }
@@ -5,6 +5,7 @@ import chatty.Helper;
 import chatty.gui.components.menus.ContextMenuListener;
 import chatty.gui.components.menus.StreamInfosContextMenu;
 import chatty.util.DateTime;
+import chatty.util.TaskScheduler;
 import chatty.util.api.StreamInfo;
 import java.awt.Color;
 import java.awt.Component;
@@ -20,8 +21,6 @@ import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
 import javax.swing.BorderFactory;
 import javax.swing.DefaultListCellRenderer;
 import javax.swing.JList;
@@ -65,7 +64,7 @@ public class LiveStreamsList extends JList<StreamInfo> {
         contextMenuListeners = new ArrayList<>();
         this.liveStreamListener = liveStreamListener;
         addListeners();
-        new UpdateTimer();
+        startUpdateTimer();
     }
 
     public void addContextMenuListener(ContextMenuListener listener) {
@@ -358,26 +357,20 @@ public class LiveStreamsList extends JList<StreamInfo> {
      * Periodically check what of the list should be updated. This is used for
      * clearing focus, removing old elements etc.
      */
-    private class UpdateTimer extends Timer {
+    private void startUpdateTimer() {
+        TaskScheduler.scheduleAtFixedRate("LiveStreamsList", new Runnable() {
 
-        public UpdateTimer() {
-            
-            TimerTask task = new TimerTask() {
-                @Override
-                public void run() {
-                    SwingUtilities.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                SwingUtilities.invokeLater(new Runnable() {
 
-                        @Override
-                        public void run() {
-                            update();
-                        }
-                    });
-                }
-            };
-            this.schedule(task, UPDATE_TIMER_DELAY*1000, UPDATE_TIMER_DELAY*1000);
-        }
-        
-        
+                    @Override
+                    public void run() {
+                        update();
+                    }
+                });
+            }
+        }, UPDATE_TIMER_DELAY*1000, UPDATE_TIMER_DELAY*1000);
     }
     
     public interface ListDataChangedListener {
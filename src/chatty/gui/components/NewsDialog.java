@@ -226,7 +226,7 @@ public class NewsDialog extends JDialog {
                 });
             }
         };
-        new Thread(request).start();
+        request.async();
     }
     
     /**
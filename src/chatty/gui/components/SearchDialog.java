@@ -62,6 +62,7 @@ public class SearchDialog extends JDialog {
         gbc.insets = new Insets(5,5,5,5);
         gbc.anchor = GridBagConstraints.WEST;
         
+        searchText.setToolTipText("Search is case-insensitive, prefix with re: to search with a regular expression");
         add(searchText, gbc);
         gbc.gridx = 1;
         searchButton.setMargin(GuiUtil.SMALL_BUTTON_INSETS);
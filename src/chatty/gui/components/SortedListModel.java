@@ -1,8 +1,8 @@
 
 package chatty.gui.components;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import chatty.util.IndexedTreeList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.Iterator;
 import javax.swing.AbstractListModel;
@@ -11,13 +11,15 @@ import javax.swing.AbstractListModel;
  * A List Model that sorts the entries either by a Comparator that can be set
  * or their natural ordering (must be Comparable if no Comparator is set).
  * 
+ * Entries are stored in an {@link IndexedTreeList}, so adding, removing and
+ * accessing entries is O(log n). Each entry can only be added once.
+ * 
  * @author tduva
  * @param <E>
  */
 public class SortedListModel<E> extends AbstractListModel<E> implements Iterable<E> {
 
-    private final ArrayList<E> data = new ArrayList<>();
-    private Comparator<? super E> comparator = null;
+    private final IndexedTreeList<E> data = new IndexedTreeList<>(null);
 
     /**
      * Set a new Comparator, which also automatically resorts the items.
@@ -25,8 +27,7 @@ public class SortedListModel<E> extends AbstractListModel<E> implements Iterable
      * @param c The Comparator to use from now on.
      */
     public void setComparator(Comparator<? super E> c) {
-        comparator = c;
-        Collections.sort(data, c);
+        data.setComparator(c);
         super.fireContentsChanged(this, 0, data.size());
     }
 
@@ -41,9 +42,26 @@ public class SortedListModel<E> extends AbstractListModel<E> implements Iterable
     }
 
     public void add(E item) {
-        int insertionPoint = findInsertionPoint(item);
-        data.add(insertionPoint, item);
-        super.fireIntervalAdded(this, insertionPoint, insertionPoint);
+        int insertionPoint = data.add(item);
+        if (insertionPoint != -1) {
+            super.fireIntervalAdded(this, insertionPoint, insertionPoint);
+        }
+    }
+
+    /**
+     * Adds several items at once, only informing listeners once.
+     * 
+     * @param items 
+     */
+    public void addAll(Collection<? extends E> items) {
+        int before = data.size();
+        int added = data.addAll(items);
+        if (added > 0) {
+            super.fireIntervalAdded(this, before, before + added - 1);
+            if (before > 0) {
+                super.fireContentsChanged(this, 0, data.size() - 1);
+            }
+        }
     }
 
     public boolean contains(E item) {
@@ -51,20 +69,10 @@ public class SortedListModel<E> extends AbstractListModel<E> implements Iterable
     }
 
     public void remove(E item) {
-        int index = data.indexOf(item);
-        if (index == -1) {
-            return;
-        }
-        data.remove(index);
-        super.fireIntervalRemoved(this, index, index);
-    }
-
-    private int findInsertionPoint(E item) {
-        int insertionPoint = Collections.binarySearch(data, item, comparator);
-        if (insertionPoint < 0) {
-            insertionPoint = -(insertionPoint + 1);
+        int index = data.remove(item);
+        if (index != -1) {
+            super.fireIntervalRemoved(this, index, index);
         }
-        return insertionPoint;
     }
 
     public void updated(E item) {
@@ -77,18 +85,19 @@ public class SortedListModel<E> extends AbstractListModel<E> implements Iterable
 
     public void clear() {
         if (!data.isEmpty()) {
-            super.fireIntervalRemoved(this, 0, data.size() - 1);
+            int size = data.size();
             data.clear();
+            super.fireIntervalRemoved(this, 0, size - 1);
         }
     }
 
     /**
-     * Removing entries using this iterator may not update the list.
+     * Removing entries using this iterator is not supported.
      * 
      * @return 
      */
     @Override
-    public Iterator iterator() {
+    public Iterator<E> iterator() {
         return data.iterator();
     }
 }
@@ -103,7 +103,7 @@ public class UpdateMessage extends JDialog {
                 }
             }
         };
-        new Thread(request).start();
+        request.async();
     }
     
 }
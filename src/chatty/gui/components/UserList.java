@@ -12,6 +12,7 @@ import java.awt.Rectangle;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.util.ArrayList;
+import java.util.Collection;
 import javax.swing.DefaultListCellRenderer;
 import javax.swing.JList;
 
@@ -111,10 +112,29 @@ public class UserList extends JList<User> {
         data.add(user);
     }
     
+    /**
+     * Adds several users at once, which is much faster than adding them one
+     * by one.
+     * 
+     * @param users 
+     */
+    public void addUsers(Collection<User> users) {
+        data.addAll(users);
+    }
+    
     public void removeUser(User user) {
         data.remove(user);
     }
     
+    /**
+     * Removes several users at once.
+     * 
+     * @param users 
+     */
+    public void removeUsers(Collection<User> users) {
+        data.removeAll(users);
+    }
+    
     public void updateUser(User user) {
         data.remove(user);
         data.add(user);
@@ -0,0 +1,124 @@
+
+package chatty.gui.components;
+
+import chatty.User;
+import chatty.util.PrefixIndex;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Indexes the different names of the users in a channel (username, localized
+ * display name and custom name) by lowercase prefix, for TAB Completion. Has
+ * to be updated when users are added, removed or changed.
+ *
+ * @author tduva
+ */
+class UserNameIndex {
+
+    private final PrefixIndex<User> regular = new PrefixIndex<>();
+    private final PrefixIndex<User> localized = new PrefixIndex<>();
+    private final PrefixIndex<User> custom = new PrefixIndex<>();
+
+    /**
+     * The keys the users were added with, so they can be removed even if the
+     * names changed in the meantime.
+     */
+    private final Map<User, Keys> keys = new IdentityHashMap<>();
+
+    public void add(User user) {
+        if (keys.containsKey(user)) {
+            return;
+        }
+        Keys userKeys = new Keys(user);
+        keys.put(user, userKeys);
+        regular.add(userKeys.regular, user);
+        if (userKeys.localized != null) {
+            localized.add(userKeys.localized, user);
+        }
+        if (userKeys.custom != null) {
+            custom.add(userKeys.custom, user);
+        }
+    }
+
+    public void remove(User user) {
+        Keys userKeys = keys.remove(user);
+        if (userKeys == null) {
+            return;
+        }
+        regular.remove(userKeys.regular, user);
+        if (userKeys.localized != null) {
+            localized.remove(userKeys.localized, user);
+        }
+        if (userKeys.custom != null) {
+            custom.remove(userKeys.custom, user);
+        }
+    }
+
+    /**
+     * Updates the names of the user, if the user is in the index.
+     *
+     * @param user
+     */
+    public void update(User user) {
+        if (keys.containsKey(user)) {
+            remove(user);
+            add(user);
+        }
+    }
+
+    public void clear() {
+        keys.clear();
+        regular.clear();
+        localized.clear();
+        custom.clear();
+    }
+
+    /**
+     * Users whose username starts with the given prefix.
+     *
+     * @param prefix Lowercase prefix
+     * @return
+     */
+    public List<User> findRegular(String prefix) {
+        return regular.find(prefix);
+    }
+
+    /**
+     * Users whose localized display name starts with the given prefix (only
+     * users that have a display name that is different from the username).
+     *
+     * @param prefix Lowercase prefix
+     * @return
+     */
+    public List<User> findLocalized(String prefix) {
+        return localized.find(prefix);
+    }
+
+    /**
+     * Users whose custom name starts with the given prefix.
+     *
+     * @param prefix Lowercase prefix
+     * @return
+     */
+    public List<User> findCustom(String prefix) {
+        return custom.find(prefix);
+    }
+
+    private static class Keys {
+
+        final String regular;
+        final String localized;
+        final String custom;
+
+        Keys(User user) {
+            regular = user.nick;
+            localized = user.hasRegularDisplayNick() ? null
+                    : user.getDisplayNick().toLowerCase(Locale.ROOT);
+            custom = user.hasCustomNickSet()
+                    ? user.getCustomNick().toLowerCase(Locale.ROOT) : null;
+        }
+    }
+
+}
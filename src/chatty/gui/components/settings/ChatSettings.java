@@ -56,6 +56,12 @@ public class ChatSettings extends SettingsPanel {
         main.add(new JLabel("(too high values may lower performance)"),
                 gbc);
         
+        gbc = d.makeGbc(0, 5, 3, 1, GridBagConstraints.WEST);
+        main.add(d.addSimpleBooleanSetting("virtualChatView",
+                "Use lightweight chat view (for large buffer sizes, requires restart)",
+                "Only lays out and paints the visible lines, but doesn't support all features (e.g. selecting text)"),
+                gbc);
+        
         
         
         JPanel pauseChat = addTitledPanel("Pause Chat", 1);
@@ -113,6 +113,12 @@ public class EmoteSettings extends SettingsPanel {
                 "Double-clicking on an emote in the Emotes Dialog closes the Dialog"),
                 d.makeGbc(0, 5, 3, 1));
         
+        main.add(d.addSimpleBooleanSetting(
+                "animationPauseUnfocused",
+                "Pause animations when unfocused",
+                "Don't animate emotes in windows that are not focused"),
+                d.makeGbc(3, 5, 2, 1, GridBagConstraints.WEST));
+        
         // Checkbox status
         ffzMod.setEnabled(false);
         ffzEvent.setEnabled(false);
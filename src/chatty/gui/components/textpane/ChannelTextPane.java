@@ -20,7 +20,6 @@ import chatty.util.api.CheersUtil;
 import chatty.util.api.Emoticon;
 import chatty.util.api.Emoticon.EmoticonImage;
 import chatty.util.api.Emoticon.EmoticonUser;
-import chatty.util.api.Emoticons;
 import chatty.util.api.Emoticons.TagEmotes;
 import java.awt.*;
 import java.awt.event.ActionEvent;
@@ -70,12 +69,23 @@ import javax.swing.text.html.HTML;
  * 
  * @author tduva
  */
-public class ChannelTextPane extends JTextPane implements LinkListener, EmoticonUser {
+public class ChannelTextPane extends JTextPane implements LinkListener, EmoticonUser, ChatView {
     
     private static final Logger LOGGER = Logger.getLogger(ChannelTextPane.class.getName());
     
     private final StyledDocument doc;
     
+    /**
+     * The lines of each user, for finding them without going through the
+     * whole document.
+     */
+    private final UserLineIndex userLines;
+    
+    /**
+     * The lowercase text of the lines, for searching.
+     */
+    private final LineTextIndex lineTexts;
+    
     private static final Color BACKGROUND_COLOR = new Color(250,250,250);
     
     // Compact mode
@@ -145,6 +155,26 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
     
     private final javax.swing.Timer updateTimer;
     
+    /**
+     * Delay for updating the document after icons finished loading, so that
+     * several icons loading at about the same time only cause one update.
+     */
+    private static final int ICON_UPDATE_DELAY = 20;
+    
+    /**
+     * Positions of emotes in the document whose image is still loading, so
+     * only the lines containing them have to be updated when the image is
+     * loaded (only accessed on the EDT).
+     */
+    private final Map<EmoticonImage, java.util.List<Position>> loadingIcons = new HashMap<>();
+    
+    /**
+     * Images that have finished loading since the last update.
+     */
+    private final Set<EmoticonImage> loadedIcons = new HashSet<>();
+    
+    private final javax.swing.Timer iconUpdateTimer;
+    
     public ChannelTextPane(MainGui main, StyleServer styleServer) {
         this(main, styleServer, false, true);
     }
@@ -165,11 +195,22 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
         setEditorKit(new MyEditorKit(startAtBottom));
         this.setDocument(new MyDocument());
         doc = getStyledDocument();
+        userLines = new UserLineIndex(doc);
+        lineTexts = new LineTextIndex(doc);
         setEditable(false);
         DefaultCaret caret = (DefaultCaret)getCaret();
         caret.setUpdatePolicy(DefaultCaret.NEVER_UPDATE);
         styles.setStyles();
         
+        iconUpdateTimer = new javax.swing.Timer(ICON_UPDATE_DELAY, new ActionListener() {
+
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                updateLoadedIcons();
+            }
+        });
+        iconUpdateTimer.setRepeats(false);
+        
         if (special) {
             updateTimer = new javax.swing.Timer(2000, new ActionListener() {
 
@@ -193,6 +234,7 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
         if (updateTimer != null) {
             updateTimer.stop();
         }
+        iconUpdateTimer.stop();
         scrollManager.cleanUp();
     }
     
@@ -211,12 +253,70 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
     /**
      * Can be called when an icon finished loading, so it is displayed correctly.
      * 
-     * This seems pretty ineffecient, because it refreshes the whole document.
+     * The update is done a bit later, together with other icons that finished
+     * loading in the meantime.
      */
     @Override
-    public void iconLoaded() {
-        ((MyDocument)doc).refresh();
-        scrollDownIfNecessary();
+    public void iconLoaded(EmoticonImage image) {
+        if (loadingIcons.containsKey(image)) {
+            loadedIcons.add(image);
+            if (!iconUpdateTimer.isRunning()) {
+                iconUpdateTimer.start();
+            }
+        }
+    }
+    
+    /**
+     * Updates the lines that contain the icons that finished loading, so the
+     * layout is changed to the actual size of the image. Other lines don't
+     * have to be layed out again.
+     */
+    private void updateLoadedIcons() {
+        Set<Element> paragraphs = new LinkedHashSet<>();
+        for (EmoticonImage image : loadedIcons) {
+            java.util.List<Position> positions = loadingIcons.remove(image);
+            if (positions == null) {
+                continue;
+            }
+            for (Position position : positions) {
+                int offset = position.getOffset();
+                if (offset < doc.getLength() && doc.getCharacterElement(offset)
+                        .getAttributes().getAttribute(Attribute.EMOTICON) == image) {
+                    paragraphs.add(doc.getParagraphElement(offset));
+                }
+            }
+        }
+        loadedIcons.clear();
+        for (Element paragraph : paragraphs) {
+            int start = paragraph.getStartOffset();
+            ((MyDocument)doc).refreshRange(start, paragraph.getEndOffset() - start);
+        }
+        if (!paragraphs.isEmpty()) {
+            scrollDownIfNecessary();
+        }
+    }
+    
+    /**
+     * Remember the position of the emote in the given style, if it is still
+     * loading.
+     * 
+     * @param offset The offset the text with the style was inserted at
+     * @param style 
+     */
+    private void trackLoadingIcon(int offset, AttributeSet style) {
+        Object image = style.getAttribute(Attribute.EMOTICON);
+        if (image instanceof EmoticonImage && ((EmoticonImage)image).isLoading()) {
+            try {
+                java.util.List<Position> positions = loadingIcons.get((EmoticonImage)image);
+                if (positions == null) {
+                    positions = new ArrayList<>();
+                    loadingIcons.put((EmoticonImage)image, positions);
+                }
+                positions.add(doc.createPosition(offset));
+            } catch (BadLocationException ex) {
+                // Shouldn't happen, just don't track it then
+            }
+        }
     }
  
     /**
@@ -470,27 +570,21 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
      * @return 
      */
     private Element findPreviousBanMessage(User user, String newMessage) {
-        Element root = doc.getDefaultRootElement();
-        for (int i=root.getElementCount()-1;i>=0;i--) {
-            Element line = root.getElement(i);
-            if (isLineFromUserAndId(line, user, null)) {
-                // Stop immediately a message from that user is found first
-                return null;
-            }
-            // By convention, the first element of the ban message must contain
-            // the info that it is a ban message and of which user (and a
-            // timestamp)
-            Element firstElement = line.getElement(0);
-            if (firstElement != null) {
-                AttributeSet attr = firstElement.getAttributes();
-                if (attr.containsAttribute(Attribute.IS_BAN_MESSAGE, user)
-                        && getTimeAgo(firstElement) < MAX_BAN_MESSAGE_COMBINE_TIME) {
-                    if (attr.getAttribute(Attribute.BAN_MESSAGE).equals(newMessage)) {
-                        return line;
-                    } else {
-                        return null;
-                    }
-                }
+        Element line = userLines.getLastLine(user);
+        if (line == null || isLineFromUserAndId(line, user, null)) {
+            // Stop immediately a message from that user is found first
+            return null;
+        }
+        // By convention, the first element of the ban message must contain
+        // the info that it is a ban message and of which user (and a
+        // timestamp)
+        Element firstElement = line.getElement(0);
+        if (firstElement != null) {
+            AttributeSet attr = firstElement.getAttributes();
+            if (attr.containsAttribute(Attribute.IS_BAN_MESSAGE, user)
+                    && getTimeAgo(firstElement) < MAX_BAN_MESSAGE_COMBINE_TIME
+                    && attr.getAttribute(Attribute.BAN_MESSAGE).equals(newMessage)) {
+                return line;
             }
         }
         return null;
@@ -543,7 +637,7 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
                 styles.isEnabled(Setting.BAN_REASON_APPENDED),
                 true);
 
-        ArrayList<Integer> lines = getLinesFromUser(user, id);
+        java.util.List<Integer> lines = getLinesFromUser(user, id);
         Iterator<Integer> it = lines.iterator();
         /**
          * values > 0 mean strike through, shorten message
@@ -589,21 +683,40 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
     }
     
     /**
-     * Searches the Document for all lines by the given user.
+     * Gets all lines by the given user.
      * 
-     * @param nick
-     * @return 
+     * @param user
+     * @param id If non-null, only the message with this id is returned
+     * @return The line numbers
      */
-    private ArrayList<Integer> getLinesFromUser(User user, String id) {
-        Element root = doc.getDefaultRootElement();
-        ArrayList<Integer> result = new ArrayList<>();
-        for (int i=0;i<root.getElementCount();i++) {
-            Element line = root.getElement(i);
-            if (isLineFromUserAndId(line, user, id)) {
-                result.add(i);
+    private java.util.List<Integer> getLinesFromUser(User user, String id) {
+        return userLines.getLines(user, id);
+    }
+    
+    /**
+     * Adds the given line to the index of user lines, if it is a message by a
+     * user or a ban message.
+     * 
+     * @param line 
+     */
+    private void addToUserLines(Element line) {
+        Element firstElement = line.getElement(0);
+        if (firstElement != null) {
+            Object bannedUser = firstElement.getAttributes().getAttribute(Attribute.IS_BAN_MESSAGE);
+            if (bannedUser instanceof User) {
+                userLines.add(line, (User)bannedUser, null, true);
+                return;
+            }
+        }
+        // Same as isLineFromUserAndId(), the first User object counts
+        for (int j = 0; j < 20; j++) {
+            Element element = line.getElement(j);
+            User elementUser = getUserFromElement(element);
+            if (elementUser != null) {
+                userLines.add(line, elementUser, getIdFromElement(element), false);
+                return;
             }
         }
-        return result;
     }
     
     private boolean isMessageLine(Element line) {
@@ -1061,7 +1174,7 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
                 currentSelection = line;
 
                 currentUser = user;
-                ArrayList<Integer> lines = getLinesFromUser(user, null);
+                java.util.List<Integer> lines = getLinesFromUser(user, null);
                 for (Integer lineNumber : lines) {
                     Element otherLine = doc.getDefaultRootElement().getElement(lineNumber);
                     if (otherLine != currentSelection) {
@@ -1082,14 +1195,11 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
          * scrolls to the line
          */
         private void highlightLine(Element element, boolean primary) {
-            int startOffset = element.getStartOffset();
-            int endOffset = element.getEndOffset() - 1;
-            int length = endOffset - startOffset;
 //            MutableAttributeSet style = primary && !subduedHl ? styles.searchResult2(primary) : styles.searchResult(primary);
             MutableAttributeSet style = primary ? styles.searchResult2(primary) : styles.searchResult(primary);
-            doc.setCharacterAttributes(startOffset, length, style, false);
+            setSearchResultAttributes(element, style);
             if (primary) {
-                scrollManager.scrollToOffset(startOffset);
+                scrollManager.scrollToOffset(element.getStartOffset());
             }
         }
         
@@ -1169,6 +1279,19 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
     
     private Element lastSearchPos = null;
     
+    /**
+     * The text of the last search, to determine whether a new search started.
+     */
+    private String lastSearchText;
+    
+    /**
+     * The ranges (start and end) of the lines that have been highlighted as
+     * search result or line selection, so only those have to be cleared. Each
+     * line is only added once, even if its highlight changes (e.g. when
+     * moving to the next search result).
+     */
+    private final Map<Element, Position[]> searchHighlights = new HashMap<>();
+    
     /**
      * Checks if the given line exists in this document.
      * 
@@ -1176,18 +1299,24 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
      * @return true if the line was found in the document, false otherwise
      */
     private boolean doesLineExist(Object line) {
-        int count = doc.getDefaultRootElement().getElementCount();
-        for (int i=0;i<count;i++) {
-            if (doc.getDefaultRootElement().getElement(i) == line) {
-                return true;
-            }
+        if (!(line instanceof Element)) {
+            return false;
         }
-        return false;
+        Element root = doc.getDefaultRootElement();
+        int index = root.getElementIndex(((Element) line).getStartOffset());
+        return index >= 0 && root.getElement(index) == line;
     }
     
     /**
      * Perform search in the chat buffer. Starts searching for the given text
-     * backwards from the last found position.
+     * backwards from the last found position. When a new search text is
+     * entered, all matching lines are highlighted, with the current result
+     * highlighted differently.
+     * 
+     * <p>
+     * The search text can be prefixed with "re:" to search with a regular
+     * expression. Both are case-insensitive.
+     * </p>
      * 
      * @param searchText 
      * @return  
@@ -1196,61 +1325,86 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
         if (searchText == null || searchText.isEmpty()) {
             return false;
         }
-        clearSearchResult();
-        int count = doc.getDefaultRootElement().getElementCount();
+        LineTextIndex.Query query = LineTextIndex.createQuery(searchText);
+        if (query == null) {
+            return false;
+        }
+        Element root = doc.getDefaultRootElement();
         if (lastSearchPos != null && !doesLineExist(lastSearchPos)) {
             //System.out.println(lastSearchPos+"doesnt exist");
             lastSearchPos = null;
         }
-        // Determine if search should start immediately.
-        boolean startSearch = lastSearchPos == null;
-        searchText = StringUtil.toLowerCase(searchText);
-        // Loop through all lines
-        for (int i=count-1;i>=0;i--) {
-            //System.out.println(i+"/"+count);
-            Element element = doc.getDefaultRootElement().getElement(i);
-            if (element == lastSearchPos) {
-                // If this lines contained the last result, start searching
-                // on next line
-                startSearch = true;
-                if (i == 0) {
-                    lastSearchPos = null;
-                }
-                continue;
+        if (!searchText.equals(lastSearchText)) {
+            clearSearchResult();
+            lastSearchPos = null;
+            lastSearchText = searchText;
+            for (Integer offset : lineTexts.findAll(query)) {
+                highlightSearchResult(root.getElement(root.getElementIndex(offset)), false);
             }
-            if (!startSearch) {
-                continue;
+        } else if (lastSearchPos != null) {
+            highlightSearchResult(lastSearchPos, false);
+        }
+        
+        // Search backwards from the last result (or the end)
+        int beforeOffset = lastSearchPos != null ? lastSearchPos.getStartOffset() : Integer.MAX_VALUE;
+        Element found = null;
+        Element lastLine = root.getElement(root.getElementCount() - 1);
+        if (lastLine.getStartOffset() > lineTexts.getLastOffset()
+                && lastLine.getStartOffset() < beforeOffset) {
+            // Line that is currently being printed is not in the index yet
+            String text = getElementText(lastLine);
+            if (query.matches(StringUtil.toLowerCase(text))) {
+                found = lastLine;
             }
-            int startOffset = element.getStartOffset();
-            int endOffset = element.getEndOffset() - 1;
-            int length = endOffset - startOffset;
-            try {
-                String text = doc.getText(startOffset, length);
-                if (StringUtil.toLowerCase(text).contains(searchText)) {
-                    //this.setCaretPosition(startOffset);
-                    //this.moveCaretPosition(endOffset);
-                    doc.setCharacterAttributes(startOffset, length, styles.searchResult(false), false);
-                    scrollManager.scrollToOffset(startOffset);
-                    //System.out.println(text);
-//                    if (i == 0) {
-//                        lastSearchPos = null;
-//                    } else {
-                        lastSearchPos = element;
-//                    }
-                    break;
-                }
-            } catch (BadLocationException ex) {
-                LOGGER.warning("Bad location");
+        }
+        if (found == null) {
+            int offset = lineTexts.findPrevious(query, beforeOffset);
+            if (offset != -1) {
+                found = root.getElement(root.getElementIndex(offset));
             }
-            lastSearchPos = null;
         }
+        lastSearchPos = found;
         if (lastSearchPos == null) {
             scrollManager.scrollDown();
             return false;
         }
+        highlightSearchResult(lastSearchPos, true);
+        scrollManager.scrollToOffset(lastSearchPos.getStartOffset());
         return true;
     }
     
+    /**
+     * Highlights the given line as search result.
+     * 
+     * @param line
+     * @param current Whether this is the current result, which is highlighted
+     * differently from the other results
+     */
+    private void highlightSearchResult(Element line, boolean current) {
+        MutableAttributeSet style = current ? styles.searchResult2(false) : styles.searchResult(false);
+        setSearchResultAttributes(line, style);
+    }
+    
+    /**
+     * Sets the search result attributes on the given line and remembers the
+     * range, so it can be cleared later.
+     * 
+     * @param line
+     * @param style 
+     */
+    private void setSearchResultAttributes(Element line, MutableAttributeSet style) {
+        int start = line.getStartOffset();
+        int length = line.getEndOffset() - 1 - start;
+        doc.setCharacterAttributes(start, length, style, false);
+        try {
+            // Replaces the range if already remembered for this line
+            searchHighlights.put(line, new Position[]{
+                doc.createPosition(start), doc.createPosition(start + length)});
+        } catch (BadLocationException ex) {
+            LOGGER.warning("Bad location: "+ex);
+        }
+    }
+    
     /**
      * Remove any highlighted search results and start the search from the
      * beginning next time.
@@ -1258,13 +1412,23 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
     public void resetSearch() {
         clearSearchResult();
         lastSearchPos = null;
+        lastSearchText = null;
     }
     
     /**
-     * Removes any prior style changes used to highlight a search result.
+     * Removes any prior style changes used to highlight a search result. Only
+     * the previously highlighted ranges are changed.
      */
     private void clearSearchResult() {
-        doc.setCharacterAttributes(0, doc.getLength(), styles.clearSearchResult(), false);
+        for (Position[] range : searchHighlights.values()) {
+            int start = range[0].getOffset();
+            int end = range[1].getOffset();
+            if (end > start) {
+                doc.setCharacterAttributes(start, end - start, styles.clearSearchResult(), false);
+            }
+        }
+        searchHighlights.clear();
+        lastSearchText = null;
     }
 
     /**
@@ -1499,6 +1663,8 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
             endOffset = doc.getLength();
         }
         //System.out.println(startOffset+" "+endOffset+" "+doc.getLength());
+        userLines.removeUntil(endOffset);
+        lineTexts.removeUntil(endOffset);
         try {
             doc.remove(startOffset,endOffset);
         } catch (BadLocationException ex) {
@@ -1520,6 +1686,10 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
     
     public void clearAll() {
         try {
+            userLines.clear();
+            lineTexts.clear();
+            searchHighlights.clear();
+            loadingIcons.clear();
             doc.remove(0, doc.getLength());
             resetNewlineRequired();
         } catch (BadLocationException ex) {
@@ -1615,7 +1785,10 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
      */
     protected void printNewline() {
         newlineRequired = true;
-        lineSelection.onLineAdded(getLastLine(doc));
+        Element line = getLastLine(doc);
+        addToUserLines(line);
+        lineTexts.add(line);
+        lineSelection.onLineAdded(line);
 //        try {
 //            getHighlighter().addHighlight(doc.getLength(), doc.getLength(), painter);
 //        } catch (BadLocationException ex) {
@@ -1750,145 +1923,18 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
     }
     
     
-    private void findEmoticons(String text, User user, Map<Integer, Integer> ranges,
-            Map<Integer, MutableAttributeSet> rangesStyle, TagEmotes tagEmotes) {
-        
-        findEmoticons(user, main.emoticons.getCustomEmotes(), text, ranges, rangesStyle);
-        findEmoticons(user, main.emoticons.getEmoji(), text, ranges, rangesStyle);
-        
-        if (tagEmotes != null) {
-            // Add emotes from tags
-            Map<Integer, Emoticon> emoticonsById = main.emoticons.getEmoticonsById();
-            addTwitchTagsEmoticons(user, emoticonsById, text, ranges, rangesStyle, tagEmotes);
-        }
-        
-        // Emoteset based
-        for (Integer set : user.getEmoteSet()) {
-            HashSet<Emoticon> emoticons = main.emoticons.getEmoticons(set);
-            findEmoticons(emoticons, text, ranges, rangesStyle);
-        }
-        
-        // Global emotes
-        if (tagEmotes == null) {
-            Set<Emoticon> emoticons = main.emoticons.getGlobalTwitchEmotes();
-            findEmoticons(emoticons, text, ranges, rangesStyle);
-        }
-        Set<Emoticon> emoticons = main.emoticons.getOtherGlobalEmotes();
-        findEmoticons(emoticons, text, ranges, rangesStyle);
-        
-        // Channel based (may also have a emoteset restriction)
-        HashSet<Emoticon> channelEmotes = main.emoticons.getEmoticons(user.getStream());
-        findEmoticons(user, channelEmotes, text, ranges, rangesStyle);
-    }
-    
-    /**
-     * Adds the emoticons from the Twitch IRCv3 tags.
-     * 
-     * @param emoticons Map of emotes associated with Twitch emote id
-     * @param text The message text
-     * @param ranges The ranges for this message
-     * @param rangesStyle The styles for this message
-     * @param emotesDef The emotes definition from the IRCv3 tags
-     */
-    private void addTwitchTagsEmoticons(User user, Map<Integer, Emoticon> emoticons, String text,
-            Map<Integer, Integer> ranges, Map<Integer, MutableAttributeSet> rangesStyle,
-            TagEmotes emotesDef) {
-        if (emotesDef == null) {
-            return;
-        }
-        Map<Integer, Emoticons.TagEmote> def = emotesDef.emotes;
-        
-        /**
-         * Iterate over each character of the message and check if an emote starts
-         * at the current position.
-         * 
-         * The offset is used to handle supplemantary characters that consist
-         * of two UTF-16 characters. Twitch Chat sees these as only one character
-         * so that has to be corrected.
-         * 
-         * http://discuss.dev.twitch.tv/t/jtv-2-receiving-messages/1635/10
-         * 
-         * Example message: "Kappa 𠜎 Kappa"
-         */
-        int offset = 0;
-        for (int i=0;i<text.length();) {
-            
-            if (def.containsKey(i-offset)) {
-                // An emote starts at the current position, so add it.
-                Emoticons.TagEmote emoteData = def.get(i-offset);
-                int id = emoteData.id;
-                int start = i;
-                int end = emoteData.end+offset;
-                
-                // Get and check emote
-                Emoticon emoticon = null;
-                Emoticon customEmote = main.emoticons.getCustomEmoteById(id);
-                if (customEmote != null && customEmote.allowedForStream(user.getStream())) {
-                    emoticon = customEmote;
-                } else {
-                    emoticon = emoticons.get(id);
-                }
-                boolean isIgnored = emoticon != null && main.emoticons.isEmoteIgnored(emoticon);
-                if (end < text.length() && !isIgnored) {
-                    if (emoticon == null) {
-                        /**
-                         * Add emote from message alone
-                         */
-                        String code = text.substring(start, end+1);
-                        String url = Emoticon.getTwitchEmoteUrlById(id, 1);
-                        Emoticon.Builder b = new Emoticon.Builder(
-                                Emoticon.Type.TWITCH, code, url);
-                        b.setNumericId(id);
-                        b.setEmoteset(Emoticon.SET_UNKNOWN);
-                        emoticon = b.build();
-                        main.emoticons.addTempEmoticon(emoticon);
-                        LOGGER.info("Added emote from message: "+emoticon);
-                    }
-                    addEmoticon(emoticon, start, end, ranges,
-                            rangesStyle);
-                }
-            }
-            /**
-             * If the current position in the String consists of an character
-             * thats more than one long (some Unicode characters), then add to
-             * the offset and jump ahead accordingly.
-             */
-            offset += Character.charCount(text.codePointAt(i))-1;
-            i += Character.charCount(text.codePointAt(i));
-        }
-    }
-    
-    private void findEmoticons(Set<Emoticon> emoticons, String text,
-            Map<Integer, Integer> ranges, Map<Integer, MutableAttributeSet> rangesStyle) {
-        findEmoticons(null, emoticons, text, ranges, rangesStyle);
-    }
-    
-    private void findEmoticons(User user, Set<Emoticon> emoticons, String text,
-            Map<Integer, Integer> ranges, Map<Integer, MutableAttributeSet> rangesStyle) {
-        // Find emoticons
-        Iterator<Emoticon> it = emoticons.iterator();
-        for (Emoticon emoticon : emoticons) {
-            // Check the text for every single emoticon
-            if (!emoticon.matchesUser(user)) {
-                continue;
-            }
-            if (main.emoticons.isEmoteIgnored(emoticon)) {
-                continue;
-            }
-            if (emoticon.isAnimated
-                    && !styles.isEnabled(Setting.EMOTICONS_SHOW_ANIMATED)) {
-                continue;
-            }
-            Matcher m = emoticon.getMatcher(text);
-            while (m.find()) {
-                // As long as this emoticon is still found in the text, add
-                // it's position (if it doesn't overlap with something already
-                // found) and move on
-                int start = m.start();
-                int end = m.end() - 1;
-                addEmoticon(emoticon, start, end, ranges, rangesStyle);
+    private void findEmoticons(String text, User user,
+            final Map<Integer, Integer> ranges,
+            final Map<Integer, MutableAttributeSet> rangesStyle, TagEmotes tagEmotes) {
+        EmoticonFinder.find(main.emoticons, text, user, tagEmotes,
+                styles.isEnabled(Setting.EMOTICONS_SHOW_ANIMATED),
+                new EmoticonFinder.Listener() {
+
+            @Override
+            public void found(Emoticon emote, int start, int end) {
+                addEmoticon(emote, start, end, ranges, rangesStyle);
             }
-        }
+        });
     }
     
     private void findBits(String text,
@@ -2011,7 +2057,9 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
                 clearSomeChat();
             }
             //System.out.println("1:"+doc.getLength());
+            int start = doc.getLength() + newline.length();
             doc.insertString(doc.getLength(), newline+text, style);
+            trackLoadingIcon(start, style);
             //System.out.println("2:"+doc.getLength());
             //this.getHighlighter().addHighlight(doc.getLength(), 10, null);
             // TODO: check how this works
@@ -2022,18 +2070,28 @@ public class ChannelTextPane extends JTextPane implements LinkListener, Emoticon
         }
     }
 
+    /**
+     * Whether a delayed scroll down has already been requested (only accessed
+     * on the EDT).
+     */
+    private boolean delayedScrollPending;
+    
     private void scrollDownIfNecessary() {
         if ((scrollManager.isScrollpositionAtTheEnd() || scrollManager.scrolledUpTimeout())
                 && lastSearchPos == null) {
             //if (false) {
             scrollManager.scrollDown();
-            SwingUtilities.invokeLater(new Runnable() {
-                @Override
-                public void run() {
-                    scrollManager.scrollDown();
-                }
-            });
-
+            // Lines printed in a batch only need one delayed scroll
+            if (!delayedScrollPending) {
+                delayedScrollPending = true;
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        delayedScrollPending = false;
+                        scrollManager.scrollDown();
+                    }
+                });
+            }
         }
     }
     
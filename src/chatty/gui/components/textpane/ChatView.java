@@ -0,0 +1,39 @@
+
+package chatty.gui.components.textpane;
+
+import chatty.User;
+import chatty.gui.MouseClickedListener;
+import chatty.gui.components.menus.ContextMenuListener;
+import javax.swing.JScrollPane;
+
+/**
+ * The methods a component displaying the chat of a channel has to provide, so
+ * the {@link ChannelTextPane} or the {@link VirtualChatView} can be used.
+ *
+ * @author tduva
+ */
+public interface ChatView {
+
+    public void setContextMenuListener(ContextMenuListener listener);
+    public void setMouseClickedListener(MouseClickedListener listener);
+    public void setScrollPane(JScrollPane scroll);
+    public void cleanUp();
+
+    public void printMessage(Message message);
+    public void printLine(String line);
+    public void printCompact(String type, User user);
+    public void userBanned(User user, long duration, String reason, String id);
+    public void clearAll();
+    public void refreshStyles();
+
+    public boolean search(String searchText);
+    public void resetSearch();
+
+    public void selectPreviousUser();
+    public void selectNextUser();
+    public void selectNextUserExitAtBottom();
+    public void exitUserSelection();
+    public void toggleUserSelection();
+    public User getSelectedUser();
+
+}
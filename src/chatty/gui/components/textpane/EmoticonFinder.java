@@ -0,0 +1,221 @@
+
+package chatty.gui.components.textpane;
+
+import chatty.User;
+import chatty.util.api.EmojiTrie;
+import chatty.util.api.Emoticon;
+import chatty.util.api.EmoticonIndex;
+import chatty.util.api.Emoticons;
+import chatty.util.api.Emoticons.TagEmotes;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+
+/**
+ * Finds the emotes in a chat message, used by all chat views so they show the
+ * same emotes.
+ *
+ * Emotes are reported in the order of priority: custom emotes, Emoji, emotes
+ * from the Twitch IRCv3 tags, emoteset based, global and channel based
+ * emotes. If emotes overlap, the listener should keep the one that was found
+ * first.
+ *
+ * @author tduva
+ */
+class EmoticonFinder {
+
+    private static final Logger LOGGER = Logger.getLogger(EmoticonFinder.class.getName());
+
+    public interface Listener {
+
+        /**
+         * An emote that is allowed to be shown was found.
+         *
+         * @param emote The emote
+         * @param start The index of the first character
+         * @param end The index of the last character (inclusive)
+         */
+        public void found(Emoticon emote, int start, int end);
+    }
+
+    private final Emoticons emoticons;
+    private final boolean showAnimated;
+    private final Listener listener;
+
+    private EmoticonFinder(Emoticons emoticons, boolean showAnimated,
+            Listener listener) {
+        this.emoticons = emoticons;
+        this.showAnimated = showAnimated;
+        this.listener = listener;
+    }
+
+    /**
+     * Finds the emotes in the given message text.
+     *
+     * @param emoticons The emotes
+     * @param text The message text
+     * @param user The user who sent the message
+     * @param tagEmotes The emotes from the Twitch IRCv3 tags, can be null
+     * @param showAnimated Whether animated emotes should be reported
+     * @param listener Receives the found emotes
+     */
+    public static void find(Emoticons emoticons, String text, User user,
+            TagEmotes tagEmotes, boolean showAnimated, Listener listener) {
+        new EmoticonFinder(emoticons, showAnimated, listener)
+                .find(text, user, tagEmotes);
+    }
+
+    private void find(String text, final User user, TagEmotes tagEmotes) {
+        // Split only once for looking up the emotes of all indices
+        EmoticonIndex.Words words = EmoticonIndex.split(text);
+
+        find(user, emoticons.getCustomEmotesIndex(), words, text);
+        emoticons.getEmojiTrie().find(text, new EmojiTrie.Listener() {
+
+            @Override
+            public void found(Emoticon emote, int start, int end) {
+                if (isAllowed(user, emote)) {
+                    listener.found(emote, start, end - 1);
+                }
+            }
+        });
+
+        if (tagEmotes != null) {
+            // Add emotes from tags
+            findTagEmotes(user, text, tagEmotes);
+        }
+
+        // Emoteset based
+        for (Integer set : user.getEmoteSet()) {
+            find(null, emoticons.getEmoticonsIndex(set), words, text);
+        }
+
+        // Global emotes
+        if (tagEmotes == null) {
+            find(null, emoticons.getGlobalTwitchEmotesIndex(), words, text);
+        }
+        find(null, emoticons.getOtherGlobalEmotesIndex(), words, text);
+
+        // Channel based (may also have a emoteset restriction)
+        find(user, emoticons.getEmoticonsIndex(user.getStream()), words, text);
+    }
+
+    /**
+     * Adds the emoticons from the Twitch IRCv3 tags.
+     *
+     * @param user The user who sent the message
+     * @param text The message text
+     * @param emotesDef The emotes definition from the IRCv3 tags
+     */
+    private void findTagEmotes(User user, String text, TagEmotes emotesDef) {
+        /**
+         * Iterate over each character of the message and check if an emote starts
+         * at the current position.
+         *
+         * The offset is used to handle supplemantary characters that consist
+         * of two UTF-16 characters. Twitch Chat sees these as only one character
+         * so that has to be corrected.
+         *
+         * http://discuss.dev.twitch.tv/t/jtv-2-receiving-messages/1635/10
+         *
+         * Example message: "Kappa 𠜎 Kappa"
+         */
+        int offset = 0;
+        for (int i=0;i<text.length();) {
+            Emoticons.TagEmote emoteData = emotesDef.emotes.get(i-offset);
+            if (emoteData != null) {
+                // An emote starts at the current position, so add it.
+                int id = emoteData.id;
+                int start = i;
+                int end = emoteData.end+offset;
+
+                // Get and check emote
+                Emoticon emoticon;
+                Emoticon customEmote = emoticons.getCustomEmoteById(id);
+                if (customEmote != null && customEmote.allowedForStream(user.getStream())) {
+                    emoticon = customEmote;
+                } else {
+                    emoticon = emoticons.getTwitchEmoteById(id);
+                }
+                boolean isIgnored = emoticon != null && emoticons.isEmoteIgnored(emoticon);
+                if (end < text.length() && !isIgnored) {
+                    if (emoticon == null) {
+                        /**
+                         * Add emote from message alone
+                         */
+                        String code = text.substring(start, end+1);
+                        String url = Emoticon.getTwitchEmoteUrlById(id, 1);
+                        Emoticon.Builder b = new Emoticon.Builder(
+                                Emoticon.Type.TWITCH, code, url);
+                        b.setNumericId(id);
+                        b.setEmoteset(Emoticon.SET_UNKNOWN);
+                        emoticon = b.build();
+                        emoticons.addTempEmoticon(emoticon);
+                        LOGGER.info("Added emote from message: "+emoticon);
+                    }
+                    listener.found(emoticon, start, end);
+                }
+            }
+            /**
+             * If the current position in the String consists of an character
+             * thats more than one long (some Unicode characters), then add to
+             * the offset and jump ahead accordingly.
+             */
+            offset += Character.charCount(text.codePointAt(i))-1;
+            i += Character.charCount(text.codePointAt(i));
+        }
+    }
+
+    /**
+     * Find emotes using the index, so only emotes that can't be looked up by
+     * word have to be checked using their regex.
+     *
+     * @param user The user, if it should be checked whether the emote is
+     * allowed for the user, can be null
+     * @param index The emotes
+     * @param words The words of the text
+     * @param text The text
+     */
+    private void find(User user, EmoticonIndex index, EmoticonIndex.Words words,
+            String text) {
+        if (index.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < words.size(); i++) {
+            List<Emoticon> found = index.get(words.get(i));
+            if (found != null) {
+                for (Emoticon emoticon : found) {
+                    if (isAllowed(user, emoticon)) {
+                        listener.found(emoticon, words.getStart(i), words.getEnd(i));
+                    }
+                }
+            }
+        }
+        for (Emoticon emoticon : index.getRegexEmotes()) {
+            // Check the text for every single emoticon
+            if (!isAllowed(user, emoticon)) {
+                continue;
+            }
+            Matcher m = emoticon.getMatcher(text);
+            while (m.find()) {
+                // As long as this emoticon is still found in the text, add
+                // it's position and move on
+                listener.found(emoticon, m.start(), m.end() - 1);
+            }
+        }
+    }
+
+    private boolean isAllowed(User user, Emoticon emoticon) {
+        if (!emoticon.matchesUser(user)) {
+            return false;
+        }
+        if (emoticons.isEmoteIgnored(emoticon)) {
+            return false;
+        }
+        if (emoticon.isAnimated && !showAnimated) {
+            return false;
+        }
+        return true;
+    }
+
+}
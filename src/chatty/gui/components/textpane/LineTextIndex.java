@@ -0,0 +1,286 @@
+
+package chatty.gui.components.textpane;
+
+import chatty.util.StringUtil;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.Position;
+
+/**
+ * Keeps a lowercase copy of the text of each line, so the lines can be
+ * searched without having to get the text from the document and convert it
+ * for every line on every search.
+ *
+ * Lines are stored as a {@link Position} of their start, in the order they
+ * were added (lines are only added at the end and removed from the start of
+ * the document). When the text of a line is changed afterwards (e.g. when a
+ * message is deleted), the copy is updated the next time it is needed.
+ *
+ * This should only be used from the EDT.
+ *
+ * @author tduva
+ */
+class LineTextIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(LineTextIndex.class.getName());
+
+    private final Document doc;
+
+    /**
+     * All lines, in the order they were added. Removed lines at the start are
+     * only removed from the list once in a while, until then the list starts
+     * at {@link #first}.
+     */
+    private final List<Entry> lines = new ArrayList<>();
+    private int first;
+
+    LineTextIndex(Document doc) {
+        this.doc = doc;
+        doc.addDocumentListener(new DocumentListener() {
+
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                changed(e.getOffset(), true);
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                changed(e.getOffset(), false);
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                // Only attributes changed
+            }
+        });
+    }
+
+    /**
+     * Adds a line, which must be the last line in the document.
+     *
+     * @param line
+     */
+    public void add(Element line) {
+        try {
+            Position start = doc.createPosition(line.getStartOffset());
+            lines.add(new Entry(start, getText(line)));
+        } catch (BadLocationException ex) {
+            LOGGER.warning("Bad location: "+ex);
+        }
+    }
+
+    /**
+     * Must be called before the lines from the start of the document up to
+     * the given offset are removed.
+     *
+     * @param endOffset The end offset of the removed text (exclusive)
+     */
+    public void removeUntil(int endOffset) {
+        while (first < lines.size() && lines.get(first).start.getOffset() < endOffset) {
+            lines.set(first, null);
+            first++;
+        }
+        if (first > 100 && first > lines.size() / 2) {
+            lines.subList(0, first).clear();
+            first = 0;
+        }
+    }
+
+    public void clear() {
+        lines.clear();
+        first = 0;
+    }
+
+    /**
+     * The start offset of the last line that was added.
+     *
+     * @return The offset, or -1 if there are no lines
+     */
+    public int getLastOffset() {
+        if (first == lines.size()) {
+            return -1;
+        }
+        return lines.get(lines.size() - 1).start.getOffset();
+    }
+
+    /**
+     * Finds the last line before the given offset that matches the query.
+     *
+     * @param query The query
+     * @param beforeOffset Only lines that start before this offset are
+     * searched
+     * @return The start offset of the found line, or -1 if none was found
+     */
+    public int findPrevious(Query query, int beforeOffset) {
+        for (int i = findIndex(beforeOffset - 1); i >= first; i--) {
+            Entry entry = lines.get(i);
+            if (query.matches(getText(entry))) {
+                return entry.start.getOffset();
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Finds all lines that match the query.
+     *
+     * @param query The query
+     * @return The start offsets of the found lines (ascending), may be empty
+     */
+    public List<Integer> findAll(Query query) {
+        List<Integer> result = new ArrayList<>();
+        for (int i = first; i < lines.size(); i++) {
+            Entry entry = lines.get(i);
+            if (query.matches(getText(entry))) {
+                result.add(entry.start.getOffset());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Index of the last entry that starts at or before the given offset.
+     *
+     * @param offset
+     * @return The index, or first - 1 if there is none
+     */
+    private int findIndex(int offset) {
+        int low = first;
+        int high = lines.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (lines.get(mid).start.getOffset() <= offset) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return high;
+    }
+
+    /**
+     * Marks the line containing the changed offset as changed, so the text is
+     * updated when it's needed next. Adding a new line at the end (which
+     * starts with a linebreak) doesn't change the previous line.
+     *
+     * @param offset The offset of the change
+     * @param insert Whether text was inserted
+     */
+    private void changed(int offset, boolean insert) {
+        int index = findIndex(offset);
+        if (index < first) {
+            return;
+        }
+        Entry entry = lines.get(index);
+        int end = entry.start.getOffset() + entry.length;
+        if (offset < end || (offset == end && !(insert && isLinebreak(offset)))) {
+            entry.text = null;
+        }
+    }
+
+    private boolean isLinebreak(int offset) {
+        try {
+            return doc.getText(offset, 1).equals("\n");
+        } catch (BadLocationException ex) {
+            return false;
+        }
+    }
+
+    private String getText(Entry entry) {
+        if (entry.text == null) {
+            Element root = doc.getDefaultRootElement();
+            Element line = root.getElement(root.getElementIndex(entry.start.getOffset()));
+            entry.setText(getText(line));
+        }
+        return entry.text;
+    }
+
+    private String getText(Element line) {
+        int start = line.getStartOffset();
+        int end = Math.min(line.getEndOffset(), doc.getLength());
+        try {
+            return doc.getText(start, end - start);
+        } catch (BadLocationException ex) {
+            LOGGER.warning("Bad location: "+ex);
+            return "";
+        }
+    }
+
+    /**
+     * Creates a query for the given search text, which is either a regular
+     * expression (prefixed with "re:") or a text to search for, both case
+     * insensitive.
+     *
+     * @param searchText
+     * @return The query, or null if the regular expression is invalid
+     */
+    public static Query createQuery(String searchText) {
+        if (searchText.startsWith("re:") && searchText.length() > 3) {
+            try {
+                return new Query(null, Pattern.compile(searchText.substring(3),
+                        Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE));
+            } catch (PatternSyntaxException ex) {
+                return null;
+            }
+        }
+        return new Query(StringUtil.toLowerCase(searchText), null);
+    }
+
+    public static class Query {
+
+        private final String text;
+        private final Pattern pattern;
+
+        private Query(String text, Pattern pattern) {
+            this.text = text;
+            this.pattern = pattern;
+        }
+
+        /**
+         * Checks whether the given lowercase text matches this query.
+         *
+         * @param lowercaseText
+         * @return
+         */
+        public boolean matches(String lowercaseText) {
+            if (pattern != null) {
+                return pattern.matcher(lowercaseText).find();
+            }
+            return lowercaseText.contains(text);
+        }
+    }
+
+    private static class Entry {
+
+        private final Position start;
+
+        /**
+         * The lowercase text, or null if the line changed.
+         */
+        private String text;
+
+        /**
+         * The length of the line when the text was last updated.
+         */
+        private int length;
+
+        Entry(Position start, String text) {
+            this.start = start;
+            setText(text);
+        }
+
+        final void setText(String text) {
+            this.length = text.length();
+            this.text = StringUtil.toLowerCase(text);
+        }
+    }
+
+}
@@ -7,10 +7,8 @@ import javax.swing.text.DefaultStyledDocument;
 import javax.swing.text.Element;
 
 /**
- * Adds a way to refresh the (whole) document.
- * 
- * This is currently used to display Icons after they are fully loaded, although
- * there should be a better way to do this.
+ * Adds a way to refresh the whole document or a part of it, for example to
+ * display Icons after they are fully loaded.
  * 
  * @author tduva
  */
@@ -29,5 +27,19 @@ class MyDocument extends DefaultStyledDocument {
         changes.end();
         fireChangedUpdate(changes);
     }
+    
+    /**
+     * Informs the views of a change in the given range, without changing the
+     * structure of the root element, so only the views in that range have to
+     * be layed out again (e.g. when an icon in that range changed size).
+     * 
+     * @param offset
+     * @param len 
+     */
+    public void refreshRange(int offset, int len) {
+        DefaultDocumentEvent changes = new AbstractDocument.DefaultDocumentEvent(offset, len, DocumentEvent.EventType.CHANGE);
+        changes.end();
+        fireChangedUpdate(changes);
+    }
 
 }
\ No newline at end of file
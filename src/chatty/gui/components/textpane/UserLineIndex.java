@@ -0,0 +1,151 @@
+
+package chatty.gui.components.textpane;
+
+import chatty.User;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import javax.swing.text.Position;
+
+/**
+ * Keeps track of which lines in the document belong to which user, so the
+ * lines of a user can be found without going through the whole document.
+ *
+ * Lines are stored as a {@link Position} of their start, so they stay correct
+ * when the document is changed. Since lines are only ever added at the end and
+ * removed from the start of the document, the lines are kept in the order they
+ * were added, which makes removing them cheap.
+ *
+ * This should only be used from the EDT.
+ *
+ * @author tduva
+ */
+class UserLineIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(UserLineIndex.class.getName());
+
+    private final Document doc;
+
+    /**
+     * All lines, in the order they were added.
+     */
+    private final Deque<Entry> lines = new ArrayDeque<>();
+
+    /**
+     * Lines by user, in the order they were added.
+     */
+    private final Map<User, Deque<Entry>> byUser = new HashMap<>();
+
+    UserLineIndex(Document doc) {
+        this.doc = doc;
+    }
+
+    /**
+     * Adds a line, which must be the last line in the document.
+     *
+     * @param line The line
+     * @param user The user the line belongs to
+     * @param id The message id, can be null
+     * @param ban Whether this is a ban message, as opposed to a message by
+     * the user
+     */
+    public void add(Element line, User user, String id, boolean ban) {
+        Position start;
+        try {
+            start = doc.createPosition(line.getStartOffset());
+        } catch (BadLocationException ex) {
+            LOGGER.warning("Bad location: "+ex);
+            return;
+        }
+        Entry entry = new Entry(user, id, ban, start);
+        lines.add(entry);
+        Deque<Entry> userLines = byUser.get(user);
+        if (userLines == null) {
+            userLines = new ArrayDeque<>();
+            byUser.put(user, userLines);
+        }
+        userLines.add(entry);
+    }
+
+    /**
+     * Must be called before the lines from the start of the document up to
+     * the given offset are removed.
+     *
+     * @param endOffset The end offset of the removed text (exclusive)
+     */
+    public void removeUntil(int endOffset) {
+        while (!lines.isEmpty() && lines.peekFirst().start.getOffset() < endOffset) {
+            Entry entry = lines.removeFirst();
+            Deque<Entry> userLines = byUser.get(entry.user);
+            userLines.removeFirst();
+            if (userLines.isEmpty()) {
+                byUser.remove(entry.user);
+            }
+        }
+    }
+
+    public void clear() {
+        lines.clear();
+        byUser.clear();
+    }
+
+    /**
+     * Gets the line numbers of the messages of the given user.
+     *
+     * @param user The user
+     * @param id If non-null, only the message with this id is returned
+     * @return The line numbers (ascending), may be empty
+     */
+    public List<Integer> getLines(User user, String id) {
+        List<Integer> result = new ArrayList<>();
+        Deque<Entry> userLines = byUser.get(user);
+        if (userLines != null) {
+            Element root = doc.getDefaultRootElement();
+            for (Entry entry : userLines) {
+                if (!entry.ban && (id == null || id.equals(entry.id))) {
+                    result.add(root.getElementIndex(entry.start.getOffset()));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the most recent line of the given user, which can be a ban message
+     * or a message by the user.
+     *
+     * @param user The user
+     * @return The line, or null if the user has no lines
+     */
+    public Element getLastLine(User user) {
+        Deque<Entry> userLines = byUser.get(user);
+        if (userLines == null) {
+            return null;
+        }
+        Element root = doc.getDefaultRootElement();
+        return root.getElement(root.getElementIndex(userLines.peekLast().start.getOffset()));
+    }
+
+    private static class Entry {
+
+        private final User user;
+        private final String id;
+        private final boolean ban;
+        private final Position start;
+
+        Entry(User user, String id, boolean ban, Position start) {
+            this.user = user;
+            this.id = id;
+            this.ban = ban;
+            this.start = start;
+        }
+    }
+
+}
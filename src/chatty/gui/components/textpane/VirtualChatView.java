@@ -0,0 +1,918 @@
+
+package chatty.gui.components.textpane;
+
+import chatty.Helper;
+import chatty.User;
+import chatty.gui.HtmlColors;
+import chatty.gui.MainGui;
+import chatty.gui.MouseClickedListener;
+import chatty.gui.StyleServer;
+import chatty.gui.UrlOpener;
+import chatty.gui.UserListener;
+import chatty.gui.components.menus.ChannelContextMenu;
+import chatty.gui.components.menus.ContextMenuListener;
+import chatty.gui.components.menus.EmoteContextMenu;
+import chatty.gui.components.menus.UrlContextMenu;
+import chatty.gui.components.menus.UserContextMenu;
+import chatty.gui.components.menus.UsericonContextMenu;
+import chatty.gui.components.textpane.ChannelTextPane.Setting;
+import chatty.gui.components.textpane.VirtualLine.Placed;
+import chatty.gui.components.textpane.VirtualLine.Segment;
+import chatty.util.DateTime;
+import chatty.util.StringUtil;
+import chatty.util.api.Emoticon;
+import chatty.util.api.Emoticon.EmoticonImage;
+import chatty.util.api.Emoticon.EmoticonUser;
+import chatty.util.api.Emoticons.TagEmotes;
+import chatty.util.api.usericons.Usericon;
+import java.awt.Color;
+import java.awt.Cursor;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import javax.swing.ImageIcon;
+import javax.swing.JComponent;
+import javax.swing.JPopupMenu;
+import javax.swing.JScrollPane;
+import javax.swing.JViewport;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+import javax.swing.text.MutableAttributeSet;
+import javax.swing.text.StyleConstants;
+
+/**
+ * Alternative to the {@link ChannelTextPane} for large buffer sizes, which
+ * doesn't use a Swing text document.
+ *
+ * Lines are stored in a compact model in a ring buffer, with the layout of
+ * each line cached for the current width. Only the lines that are visible are
+ * laid out and painted, and the heights of all lines are kept in the buffer so
+ * the line at a certain position can be found quickly.
+ *
+ * This supports the common features (usericons, emotes, links, deleting
+ * messages, user selection, search), but not everything the
+ * {@link ChannelTextPane} supports (no text selection and copying for
+ * example).
+ *
+ * @author tduva
+ */
+public class VirtualChatView extends JComponent implements ChatView, Scrollable, EmoticonUser {
+
+    private static final int BUFFER_SIZE_MIN = 10;
+    private static final int BUFFER_SIZE_MAX = 100000;
+
+    private static final int MAX_COMPACTMODE_LENGTH = 10;
+    private static final int MAX_COMPACTMODE_TIME = 30*1000;
+
+    private static final int PADDING = 3;
+
+    private static final Cursor HAND_CURSOR = Cursor.getPredefinedCursor(Cursor.HAND_CURSOR);
+
+    private static final Matcher urlMatcher = Helper.getUrlPattern().matcher("");
+
+    private final MainGui main;
+    private final StyleServer styleServer;
+
+    private final VirtualLineBuffer<VirtualLine> lines = new VirtualLineBuffer<>(BUFFER_SIZE_MIN);
+
+    /**
+     * Lines by user, oldest first, for finding the lines to delete.
+     */
+    private final Map<User, Deque<VirtualLine>> userLines = new HashMap<>();
+
+    private JScrollPane scrollPane;
+    private ContextMenuListener contextMenuListener;
+    private MouseClickedListener mouseClickedListener;
+
+    // Styles
+    private Font font;
+    private Font boldFont;
+    private Color foreground;
+    private Color infoColor;
+    private Color highlightColor;
+    private Color searchColor;
+    private Color searchColor2;
+    private SimpleDateFormat timestampFormat;
+    private final Map<Setting, Object> settings = new HashMap<>();
+
+    /**
+     * Increased when all lines need to be laid out again.
+     */
+    private int layoutVersion;
+    private boolean revalidatePending;
+    private boolean scrollDownPending;
+
+    private VirtualLine compactLine;
+    private VirtualLine searchResult;
+    private String searchText;
+    private VirtualLine selectedLine;
+
+    public VirtualChatView(MainGui main, StyleServer styleServer) {
+        this.main = main;
+        this.styleServer = styleServer;
+        setOpaque(true);
+        MouseHandler mouseHandler = new MouseHandler();
+        addMouseListener(mouseHandler);
+        addMouseMotionListener(mouseHandler);
+        loadStyles();
+    }
+
+    @Override
+    public void setContextMenuListener(ContextMenuListener listener) {
+        this.contextMenuListener = listener;
+    }
+
+    @Override
+    public void setMouseClickedListener(MouseClickedListener listener) {
+        this.mouseClickedListener = listener;
+    }
+
+    @Override
+    public void setScrollPane(JScrollPane scroll) {
+        this.scrollPane = scroll;
+    }
+
+    @Override
+    public void cleanUp() {
+        clearAll();
+    }
+
+    /*
+     * ##########
+     * # Styles
+     * ##########
+     */
+
+    private void loadStyles() {
+        font = styleServer.getFont();
+        boldFont = font.deriveFont(Font.BOLD);
+        foreground = styleServer.getColor("foreground");
+        infoColor = styleServer.getColor("info");
+        highlightColor = StyleConstants.getForeground(styleServer.getStyle("highlight"));
+        searchColor = styleServer.getColor("searchResult");
+        searchColor2 = styleServer.getColor("searchResult2");
+        timestampFormat = styleServer.getTimestampFormat();
+        setBackground(styleServer.getColor("background"));
+
+        MutableAttributeSet loadFrom = styleServer.getStyle("settings");
+        for (Setting setting : Setting.values()) {
+            settings.put(setting, loadFrom.getAttribute(setting));
+        }
+        for (VirtualLine removed : lines.setCapacity(getNumber(Setting.BUFFER_SIZE, 250, BUFFER_SIZE_MIN, BUFFER_SIZE_MAX))) {
+            lineRemoved(removed);
+        }
+        layoutVersion++;
+    }
+
+    private boolean isEnabled(Setting setting, boolean defaultValue) {
+        Object value = settings.get(setting);
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        return defaultValue;
+    }
+
+    private int getNumber(Setting setting, int defaultValue, int min, int max) {
+        Object value = settings.get(setting);
+        int result = defaultValue;
+        if (value instanceof Number) {
+            result = ((Number) value).intValue();
+        }
+        return Math.max(min, Math.min(max, result));
+    }
+
+    @Override
+    public void refreshStyles() {
+        boolean scrolledDown = isScrolledDown();
+        loadStyles();
+        updateSize(scrolledDown);
+    }
+
+    @Override
+    public void iconLoaded(EmoticonImage image) {
+        // Icon sizes may have changed
+        layoutVersion++;
+        updateSize(isScrolledDown());
+    }
+
+    /*
+     * ############
+     * # Printing
+     * ############
+     */
+
+    @Override
+    public void printMessage(Message message) {
+        if (message instanceof UserMessage) {
+            printUserMessage((UserMessage) message);
+        } else if (message instanceof SubscriberMessage) {
+            SubscriberMessage m = (SubscriberMessage) message;
+            VirtualLine line = new VirtualLine(m.user.nick.isEmpty() ? null : m.user,
+                    m.id, false, false, null);
+            addTimestamp(line, infoColor);
+            line.add(Segment.text("[Notification] " + m.text + " ", infoColor, false));
+            if (!StringUtil.isNullOrEmpty(m.attachedMessage)) {
+                line.startMessage();
+                line.add(Segment.text("[", infoColor, false));
+                addSpecials(line, m.attachedMessage, m.user, m.emotes, infoColor, false);
+                line.add(Segment.text("]", infoColor, false));
+            }
+            addLine(line);
+        }
+    }
+
+    private void printUserMessage(UserMessage message) {
+        User user = message.user;
+        if (message.ignored_compact) {
+            printCompact("IGNORED", user);
+            return;
+        }
+        boolean highlighted = message.highlighted;
+        Color color = message.color;
+        if (message.whisper && message.action) {
+            color = infoColor;
+            highlighted = true;
+        }
+        Color textColor = foreground;
+        if (highlighted) {
+            textColor = color != null ? color : highlightColor;
+        }
+        VirtualLine line = new VirtualLine(user, message.id, false, highlighted, null);
+        addTimestamp(line, textColor);
+        addUser(line, user, message.action, message.whisper);
+        line.startMessage();
+        if (!highlighted && message.action && isEnabled(Setting.ACTION_COLORED, false)) {
+            textColor = user.getDisplayColor();
+        }
+        addSpecials(line, message.text, user, message.emotes, textColor, false);
+        addLine(line);
+    }
+
+    @Override
+    public void printLine(String text) {
+        VirtualLine line = new VirtualLine(null, null, false, false, null);
+        addTimestamp(line, infoColor);
+        line.add(Segment.text(text, infoColor, false));
+        addLine(line);
+    }
+
+    @Override
+    public void printCompact(String type, User user) {
+        VirtualLine line = compactLine;
+        if (line == null || !type.equals(line.compactType)
+                || line.getCompactCount() >= MAX_COMPACTMODE_LENGTH
+                || System.currentTimeMillis() - line.time > MAX_COMPACTMODE_TIME) {
+            line = new VirtualLine(null, null, false, false, type);
+            addTimestamp(line, infoColor);
+            line.add(Segment.text(type + ": ", infoColor, false));
+            line.add(Segment.user(user.getCustomNick(), infoColor, user));
+            line.increaseCompactCount();
+            addLine(line);
+            compactLine = line;
+        } else {
+            line.add(Segment.text(", ", infoColor, false));
+            line.add(Segment.user(user.getCustomNick(), infoColor, user));
+            line.increaseCompactCount();
+            lineChanged(line);
+        }
+    }
+
+    @Override
+    public void userBanned(User user, long duration, String reason, String id) {
+        if (isEnabled(Setting.SHOW_BANMESSAGES, false)) {
+            String banInfo = Helper.makeBanInfo(duration, reason,
+                    isEnabled(Setting.BAN_DURATION_MESSAGE, true),
+                    isEnabled(Setting.BAN_REASON_MESSAGE, true),
+                    false);
+            String message = duration > 0 ? "has been timed out" : "has been banned";
+            if (!StringUtil.isNullOrEmpty(id)) {
+                message += " (single message)";
+            }
+            if (!banInfo.isEmpty()) {
+                message += " " + banInfo;
+            }
+            VirtualLine line = new VirtualLine(user, null, true, false, null);
+            addTimestamp(line, infoColor);
+            line.add(Segment.user(user.getCustomNick(), infoColor, user));
+            line.add(Segment.text(" " + message, infoColor, false));
+            addLine(line);
+        }
+
+        Deque<VirtualLine> affected = userLines.get(user);
+        if (affected == null) {
+            return;
+        }
+        int mode = getNumber(Setting.DELETED_MESSAGES_MODE, 30, -1, 9999999);
+        Segment replacement = Segment.text("<message deleted>", infoColor, false);
+        boolean changed = false;
+        for (VirtualLine line : affected) {
+            if (line.isMessage() && (id == null || id.equals(line.id))) {
+                line.delete(mode, replacement);
+                changed = true;
+            }
+        }
+        if (changed) {
+            updateSize(isScrolledDown());
+        }
+    }
+
+    @Override
+    public void clearAll() {
+        lines.clear();
+        userLines.clear();
+        compactLine = null;
+        searchResult = null;
+        selectedLine = null;
+        updateSize(true);
+    }
+
+    private void addTimestamp(VirtualLine line, Color color) {
+        if (timestampFormat != null) {
+            line.add(Segment.text(DateTime.currentTime(timestampFormat) + " ", color, false));
+        } else {
+            line.add(Segment.text(" ", color, false));
+        }
+    }
+
+    private void addUser(VirtualLine line, User user, boolean action, boolean whisper) {
+        String userName = user.getCustomNick();
+        if (isEnabled(Setting.USERICONS_ENABLED, true)) {
+            addUsericons(line, user.getAddonIcons(true));
+            List<Usericon> badges = user.getTwitchBadgeUsericons();
+            if (badges != null) {
+                addUsericons(line, badges);
+            }
+            if (user.isBot() && isEnabled(Setting.BOT_BADGE_ENABLED, true)) {
+                Usericon icon = user.getIcon(Usericon.Type.BOT);
+                if (icon != null && !icon.removeBadge && icon.image != null) {
+                    line.add(Segment.usericon(icon));
+                }
+            }
+            addUsericons(line, user.getAddonIcons(false));
+        } else {
+            userName = user.getModeSymbol() + userName;
+        }
+
+        Color color = user.getColor();
+        if (!user.hasCustomColor() && isEnabled(Setting.COLOR_CORRECTION, true)) {
+            color = HtmlColors.correctReadability(color, getBackground());
+            user.setCorrectedColor(color);
+        }
+        if (whisper) {
+            userName = action ? ">>[" + userName + "]" : "-[" + userName + "]-";
+        } else if (action) {
+            userName = "* " + userName;
+        }
+        line.add(Segment.user(userName, color, user));
+        line.add(Segment.user(action || whisper ? " " : ": ", color, user));
+    }
+
+    private void addUsericons(VirtualLine line, List<Usericon> icons) {
+        for (Usericon icon : icons) {
+            if (icon.image != null && !icon.removeBadge) {
+                line.add(Segment.usericon(icon));
+            }
+        }
+    }
+
+    /**
+     * Adds the text, with emotes and links as separate segments.
+     */
+    private void addSpecials(VirtualLine line, String text, User user,
+            TagEmotes tagEmotes, Color color, boolean bold) {
+        // For each position, the special segment starting there
+        Segment[] specials = new Segment[text.length()];
+        int[] ends = new int[text.length()];
+        boolean[] used = new boolean[text.length()];
+
+        if (isEnabled(Setting.EMOTICONS_ENABLED, true)) {
+            findEmotes(text, user, tagEmotes, specials, ends, used);
+        }
+        urlMatcher.reset(text);
+        while (urlMatcher.find()) {
+            String url = urlMatcher.group();
+            add(Segment.link(url, color), urlMatcher.start(), urlMatcher.end() - 1,
+                    specials, ends, used);
+        }
+
+        int textStart = 0;
+        int i = 0;
+        while (i < text.length()) {
+            if (specials[i] != null) {
+                if (i > textStart) {
+                    line.add(Segment.text(text.substring(textStart, i), color, bold));
+                }
+                line.add(specials[i]);
+                i = ends[i] + 1;
+                textStart = i;
+            } else {
+                i++;
+            }
+        }
+        if (textStart < text.length()) {
+            line.add(Segment.text(text.substring(textStart), color, bold));
+        }
+    }
+
+    /**
+     * Adds the special segment, if it doesn't overlap with an already added
+     * one.
+     */
+    private static void add(Segment segment, int start, int end,
+            Segment[] specials, int[] ends, boolean[] used) {
+        if (start < 0 || end >= used.length || end < start) {
+            return;
+        }
+        for (int i = start; i <= end; i++) {
+            if (used[i]) {
+                return;
+            }
+        }
+        for (int i = start; i <= end; i++) {
+            used[i] = true;
+        }
+        specials[start] = segment;
+        ends[start] = end;
+    }
+
+    private void findEmotes(String text, User user, TagEmotes tagEmotes,
+            final Segment[] specials, final int[] ends, final boolean[] used) {
+        EmoticonFinder.find(main.emoticons, text, user, tagEmotes,
+                isEnabled(Setting.EMOTICONS_SHOW_ANIMATED, false),
+                new EmoticonFinder.Listener() {
+
+            @Override
+            public void found(Emoticon emote, int start, int end) {
+                addEmote(emote, start, end, specials, ends, used);
+            }
+        });
+    }
+
+    private void addEmote(Emoticon emote, int start, int end,
+            Segment[] specials, int[] ends, boolean[] used) {
+        if (!emote.hasStreamSet()) {
+            emote.setStream(main.emoticons.getStreamFromEmoteset(emote.emoteSet));
+        }
+        float scale = getNumber(Setting.EMOTICON_SCALE_FACTOR, 100, 1, 200) / 100f;
+        int maxHeight = getNumber(Setting.EMOTICON_MAX_HEIGHT, 200, 0, 300);
+        EmoticonImage image = emote.getIcon(scale, maxHeight, this);
+        add(Segment.emote(emote.code, image), start, end, specials, ends, used);
+    }
+
+    /*
+     * #########
+     * # Lines
+     * #########
+     */
+
+    private void addLine(VirtualLine line) {
+        boolean scrolledDown = isScrolledDown();
+        if (line.compactType == null) {
+            compactLine = null;
+        }
+        VirtualLine removed = lines.add(line, layout(line));
+        if (removed != null) {
+            lineRemoved(removed);
+        }
+        if (line.user != null) {
+            Deque<VirtualLine> forUser = userLines.get(line.user);
+            if (forUser == null) {
+                forUser = new ArrayDeque<>();
+                userLines.put(line.user, forUser);
+            }
+            forUser.add(line);
+        }
+        updateSize(scrolledDown);
+    }
+
+    private void lineRemoved(VirtualLine line) {
+        if (line.user != null) {
+            // Lines are always removed in the order they were added
+            Deque<VirtualLine> forUser = userLines.get(line.user);
+            if (forUser != null) {
+                forUser.remove(line);
+                if (forUser.isEmpty()) {
+                    userLines.remove(line.user);
+                }
+            }
+        }
+        if (line == compactLine) {
+            compactLine = null;
+        }
+        if (line == searchResult) {
+            searchResult = null;
+        }
+        if (line == selectedLine) {
+            selectedLine = null;
+        }
+    }
+
+    private void lineChanged(VirtualLine line) {
+        boolean scrolledDown = isScrolledDown();
+        line.invalidate();
+        updateSize(scrolledDown);
+    }
+
+    private int getLineWidth() {
+        int width = getWidth();
+        if (width <= 0 && scrollPane != null) {
+            width = scrollPane.getViewport().getWidth();
+        }
+        return Math.max(width - PADDING * 2, 10);
+    }
+
+    private int layout(VirtualLine line) {
+        return line.layout(getLineWidth(), layoutVersion,
+                getFontMetrics(font), getFontMetrics(boldFont));
+    }
+
+    /**
+     * Updates the size of this component after the total height may have
+     * changed, and scrolls down if requested.
+     *
+     * @param scrollDown
+     */
+    private void updateSize(boolean scrollDown) {
+        if (!revalidatePending) {
+            revalidatePending = true;
+            SwingUtilities.invokeLater(new Runnable() {
+
+                @Override
+                public void run() {
+                    revalidatePending = false;
+                    revalidate();
+                    repaint();
+                }
+            });
+        }
+        if (scrollDown) {
+            scrollDown();
+        }
+    }
+
+    private boolean isScrolledDown() {
+        if (scrollPane == null) {
+            return true;
+        }
+        JViewport viewport = scrollPane.getViewport();
+        Rectangle visible = viewport.getViewRect();
+        return visible.y + visible.height >= getHeight() - 10;
+    }
+
+    private void scrollDown() {
+        if (!scrollDownPending) {
+            scrollDownPending = true;
+            SwingUtilities.invokeLater(new Runnable() {
+
+                @Override
+                public void run() {
+                    scrollDownPending = false;
+                    // After the revalidate, so the size is already updated
+                    if (scrollPane != null) {
+                        scrollPane.validate();
+                    }
+                    scrollRectToVisible(new Rectangle(0, getHeight() - 1, 1, 1));
+                }
+            });
+        }
+    }
+
+    private void scrollToLine(int index) {
+        long y = lines.getY(index) + PADDING;
+        scrollRectToVisible(new Rectangle(0, (int) y, 1, lines.getHeight(index)));
+    }
+
+    @Override
+    public Dimension getPreferredSize() {
+        if (isPreferredSizeSet()) {
+            return super.getPreferredSize();
+        }
+        long height = lines.getTotalHeight() + PADDING * 2;
+        return new Dimension(10, (int) Math.min(height, Integer.MAX_VALUE));
+    }
+
+    /*
+     * ############
+     * # Painting
+     * ############
+     */
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Graphics2D g2 = (Graphics2D) g;
+        g2.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
+        }
+        g.setColor(getBackground());
+        g.fillRect(clip.x, clip.y, clip.width, clip.height);
+        if (lines.size() == 0) {
+            return;
+        }
+        boolean heightChanged = false;
+        int index = lines.getIndexAt(clip.y - PADDING);
+        long y = lines.getY(index) + PADDING;
+        while (index < lines.size() && y < clip.y + clip.height) {
+            VirtualLine line = lines.get(index);
+            int height = layout(line);
+            if (height != lines.getHeight(index)) {
+                lines.setHeight(index, height);
+                heightChanged = true;
+            }
+            paintLine(g, line, (int) y, height);
+            y += height;
+            index++;
+        }
+        if (heightChanged) {
+            // Estimated heights of lines were wrong (e.g. because of resizing)
+            updateSize(isScrolledDown());
+        }
+    }
+
+    private void paintLine(Graphics g, VirtualLine line, int y, int height) {
+        Color background = null;
+        if (line == searchResult) {
+            background = searchColor;
+        } else if (selectedLine != null && line.user == selectedLine.user && line.isMessage()) {
+            background = line == selectedLine ? searchColor : searchColor2;
+        }
+        if (background != null) {
+            g.setColor(background);
+            g.fillRect(0, y, getWidth(), height);
+        }
+        for (Placed p : line.getLayout()) {
+            int x = p.x + PADDING;
+            Segment s = p.segment;
+            if (s.isText()) {
+                g.setFont(s.bold ? boldFont : font);
+                g.setColor(s.color != null ? s.color : foreground);
+                g.drawString(p.text, x, y + p.baseline);
+                if (s.type == VirtualLine.Type.LINK) {
+                    g.drawLine(x, y + p.baseline + 1, x + p.width, y + p.baseline + 1);
+                }
+            } else {
+                ImageIcon icon = s.getIcon();
+                if (icon != null) {
+                    icon.paintIcon(this, g, x, y + p.y);
+                }
+            }
+            if (line.isDeleted()) {
+                int strikeY = y + p.baseline - g.getFontMetrics(font).getAscent() / 3;
+                g.setColor(foreground);
+                g.drawLine(x, strikeY, x + p.width, strikeY);
+            }
+        }
+    }
+
+    /*
+     * ####################
+     * # Search/Selection
+     * ####################
+     */
+
+    @Override
+    public boolean search(String text) {
+        if (text == null || text.isEmpty()) {
+            return false;
+        }
+        LineTextIndex.Query query = LineTextIndex.createQuery(text);
+        if (query == null) {
+            return false;
+        }
+        int start = lines.size() - 1;
+        if (searchResult != null && text.equals(searchText)) {
+            start = indexOf(searchResult) - 1;
+        }
+        searchText = text;
+        searchResult = null;
+        for (int i = start; i >= 0; i--) {
+            VirtualLine line = lines.get(i);
+            if (query.matches(line.getLowercaseText())) {
+                searchResult = line;
+                scrollToLine(i);
+                repaint();
+                return true;
+            }
+        }
+        repaint();
+        scrollDown();
+        return false;
+    }
+
+    @Override
+    public void resetSearch() {
+        searchResult = null;
+        searchText = null;
+        repaint();
+    }
+
+    private int indexOf(VirtualLine line) {
+        for (int i = lines.size() - 1; i >= 0; i--) {
+            if (lines.get(i) == line) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void selectPreviousUser() {
+        moveSelection(-1, false);
+    }
+
+    @Override
+    public void selectNextUser() {
+        moveSelection(1, false);
+    }
+
+    @Override
+    public void selectNextUserExitAtBottom() {
+        moveSelection(1, true);
+    }
+
+    @Override
+    public void exitUserSelection() {
+        selectedLine = null;
+        repaint();
+        scrollDown();
+    }
+
+    @Override
+    public void toggleUserSelection() {
+        if (selectedLine == null) {
+            selectPreviousUser();
+        } else {
+            exitUserSelection();
+        }
+    }
+
+    @Override
+    public User getSelectedUser() {
+        return selectedLine != null ? selectedLine.user : null;
+    }
+
+    private void moveSelection(int direction, boolean exitAtBottom) {
+        int index = selectedLine != null ? indexOf(selectedLine) : lines.size();
+        for (int i = index + direction; i >= 0 && i < lines.size(); i += direction) {
+            VirtualLine line = lines.get(i);
+            if (line.isMessage()) {
+                selectedLine = line;
+                scrollToLine(i);
+                repaint();
+                return;
+            }
+        }
+        if (direction > 0 && exitAtBottom) {
+            exitUserSelection();
+        }
+    }
+
+    /*
+     * #########
+     * # Mouse
+     * #########
+     */
+
+    /**
+     * Gets the segment at the given position.
+     *
+     * @param x
+     * @param y
+     * @return The segment, or null if there is none
+     */
+    private Segment getSegmentAt(int x, int y) {
+        int index = lines.getIndexAt(y - PADDING);
+        if (index == -1) {
+            return null;
+        }
+        VirtualLine line = lines.get(index);
+        layout(line);
+        int lineY = (int) (lines.getY(index) + PADDING);
+        Segment segment = line.getSegmentAt(x - PADDING, y - lineY);
+        if (segment != null && segment.type == VirtualLine.Type.LINK && line.isDeleted()) {
+            return null;
+        }
+        return segment;
+    }
+
+    private class MouseHandler extends MouseAdapter {
+
+        @Override
+        public void mousePressed(MouseEvent e) {
+            if (e.isPopupTrigger()) {
+                openContextMenu(e);
+                return;
+            }
+            if (e.getClickCount() != 1 || !SwingUtilities.isLeftMouseButton(e)) {
+                return;
+            }
+            Segment s = getSegmentAt(e.getX(), e.getY());
+            if (s == null) {
+                return;
+            }
+            UserListener listener = main.getUserListener();
+            switch (s.type) {
+                case LINK:
+                    UrlOpener.openUrlPrompt(getTopLevelAncestor(), (String) s.data);
+                    break;
+                case USER:
+                    listener.userClicked((User) s.data, e);
+                    break;
+                case EMOTE:
+                    listener.emoteClicked(((EmoticonImage) s.data).getEmoticon(), e);
+                    break;
+                case USERICON:
+                    listener.usericonClicked((Usericon) s.data, e);
+                    break;
+            }
+        }
+
+        @Override
+        public void mouseReleased(MouseEvent e) {
+            if (e.isPopupTrigger()) {
+                openContextMenu(e);
+            }
+        }
+
+        @Override
+        public void mouseClicked(MouseEvent e) {
+            if (mouseClickedListener != null && e.getClickCount() == 1
+                    && !e.isAltDown() && !e.isAltGraphDown()) {
+                mouseClickedListener.mouseClicked();
+            }
+        }
+
+        @Override
+        public void mouseMoved(MouseEvent e) {
+            Segment s = getSegmentAt(e.getX(), e.getY());
+            setCursor(s != null && s.type != VirtualLine.Type.TEXT ? HAND_CURSOR : null);
+        }
+
+        private void openContextMenu(MouseEvent e) {
+            if (!isShowing()) {
+                return;
+            }
+            Segment s = getSegmentAt(e.getX(), e.getY());
+            JPopupMenu m;
+            if (s != null && s.type == VirtualLine.Type.USER) {
+                m = new UserContextMenu((User) s.data, contextMenuListener);
+            } else if (s != null && s.type == VirtualLine.Type.LINK) {
+                m = new UrlContextMenu((String) s.data, false, contextMenuListener);
+            } else if (s != null && s.type == VirtualLine.Type.EMOTE) {
+                m = new EmoteContextMenu((EmoticonImage) s.data, contextMenuListener);
+            } else if (s != null && s.type == VirtualLine.Type.USERICON) {
+                m = new UsericonContextMenu((Usericon) s.data, contextMenuListener);
+            } else {
+                m = new ChannelContextMenu(contextMenuListener);
+            }
+            m.show(e.getComponent(), e.getX(), e.getY());
+        }
+    }
+
+    /*
+     * ##############
+     * # Scrollable
+     * ##############
+     */
+
+    @Override
+    public Dimension getPreferredScrollableViewportSize() {
+        return getPreferredSize();
+    }
+
+    @Override
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return getFontMetrics(font).getHeight();
+    }
+
+    @Override
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportWidth() {
+        return true;
+    }
+
+    @Override
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+
+}
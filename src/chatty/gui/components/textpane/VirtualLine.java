@@ -0,0 +1,379 @@
+
+package chatty.gui.components.textpane;
+
+import chatty.User;
+import chatty.util.StringUtil;
+import chatty.util.api.Emoticon.EmoticonImage;
+import chatty.util.api.usericons.Usericon;
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.ImageIcon;
+
+/**
+ * A single line in the {@link VirtualChatView}, consisting of segments of
+ * text, users, links and icons, as well as the layout of the segments for the
+ * most recently used width.
+ *
+ * This should only be used from the EDT.
+ *
+ * @author tduva
+ */
+class VirtualLine {
+
+    /**
+     * Horizontal space after icons.
+     */
+    private static final int ICON_SPACE = 3;
+
+    enum Type {
+        TEXT, USER, LINK, EMOTE, USERICON
+    }
+
+    static class Segment {
+
+        final Type type;
+        final String text;
+        final Color color;
+        final boolean bold;
+
+        /**
+         * The User, url, EmoticonImage or Usericon, depending on the type.
+         */
+        final Object data;
+
+        private Segment(Type type, String text, Color color, boolean bold, Object data) {
+            this.type = type;
+            this.text = text;
+            this.color = color;
+            this.bold = bold;
+            this.data = data;
+        }
+
+        static Segment text(String text, Color color, boolean bold) {
+            return new Segment(Type.TEXT, text, color, bold, null);
+        }
+
+        static Segment user(String text, Color color, User user) {
+            return new Segment(Type.USER, text, color, true, user);
+        }
+
+        static Segment link(String text, Color color) {
+            return new Segment(Type.LINK, text, color, false, text);
+        }
+
+        static Segment emote(String code, EmoticonImage image) {
+            return new Segment(Type.EMOTE, code, null, false, image);
+        }
+
+        static Segment usericon(Usericon icon) {
+            return new Segment(Type.USERICON, icon.getSymbol(), null, false, icon);
+        }
+
+        ImageIcon getIcon() {
+            if (type == Type.EMOTE) {
+                return ((EmoticonImage) data).getImageIcon();
+            } else if (type == Type.USERICON) {
+                return ((Usericon) data).image;
+            }
+            return null;
+        }
+
+        boolean isText() {
+            return type == Type.TEXT || type == Type.USER || type == Type.LINK;
+        }
+    }
+
+    /**
+     * A segment (or part of a text segment, when it was wrapped) with a
+     * position.
+     */
+    static class Placed {
+
+        final Segment segment;
+        final String text;
+        final int x;
+        final int width;
+        int y;
+        int height;
+        int baseline;
+
+        Placed(Segment segment, String text, int x, int width) {
+            this.segment = segment;
+            this.text = text;
+            this.x = x;
+            this.width = width;
+        }
+
+        boolean contains(int px, int py) {
+            return px >= x && px < x + width && py >= y && py < y + height;
+        }
+    }
+
+    final long time;
+
+    /**
+     * The user this line belongs to (message or ban message), may be null.
+     */
+    final User user;
+    final String id;
+    final boolean ban;
+    final boolean highlighted;
+    final String compactType;
+
+    private final List<Segment> segments = new ArrayList<>();
+    private String lowercaseText;
+
+    /**
+     * The index of the first segment that belongs to the actual message (so
+     * it can be deleted), -1 if not a message.
+     */
+    private int messageStart = -1;
+    private boolean deleted;
+    private int compactCount;
+
+    private List<Placed> layout;
+    private int layoutWidth = -1;
+    private int layoutVersion = -1;
+    private int height;
+
+    VirtualLine(User user, String id, boolean ban, boolean highlighted,
+            String compactType) {
+        this.time = System.currentTimeMillis();
+        this.user = user;
+        this.id = id;
+        this.ban = ban;
+        this.highlighted = highlighted;
+        this.compactType = compactType;
+    }
+
+    void add(Segment segment) {
+        segments.add(segment);
+        invalidate();
+    }
+
+    /**
+     * Everything added after this is part of the message.
+     */
+    void startMessage() {
+        messageStart = segments.size();
+    }
+
+    boolean isMessage() {
+        return messageStart != -1 && !ban;
+    }
+
+    boolean isDeleted() {
+        return deleted;
+    }
+
+    int getCompactCount() {
+        return compactCount;
+    }
+
+    void increaseCompactCount() {
+        compactCount++;
+    }
+
+    /**
+     * Marks the message as deleted (drawn crossed out), optionally shortening
+     * or replacing the message.
+     *
+     * @param maxLength Shorten the message text to this many characters, 0 to
+     * keep the whole message, negative to replace the message
+     * @param replacement The segment that replaces the message
+     */
+    void delete(int maxLength, Segment replacement) {
+        if (deleted || messageStart == -1) {
+            return;
+        }
+        deleted = true;
+        if (maxLength < 0) {
+            segments.subList(messageStart, segments.size()).clear();
+            segments.add(replacement);
+        } else if (maxLength > 0) {
+            int length = 0;
+            for (int i = messageStart; i < segments.size(); i++) {
+                Segment s = segments.get(i);
+                if (length + s.text.length() > maxLength) {
+                    if (s.isText()) {
+                        segments.set(i, Segment.text(s.text.substring(0, maxLength - length) + "..",
+                                s.color, s.bold));
+                        i++;
+                    }
+                    segments.subList(i, segments.size()).clear();
+                    break;
+                }
+                length += s.text.length();
+            }
+        }
+        invalidate();
+    }
+
+    /**
+     * Get the plain text of the line (as it appears, with emote codes).
+     *
+     * @return
+     */
+    String getText() {
+        StringBuilder b = new StringBuilder();
+        for (Segment s : segments) {
+            b.append(s.text);
+        }
+        return b.toString();
+    }
+
+    /**
+     * Get the lowercase plain text of the line, for searching. Cached until
+     * the line changes.
+     *
+     * @return
+     */
+    String getLowercaseText() {
+        if (lowercaseText == null) {
+            lowercaseText = StringUtil.toLowerCase(getText());
+        }
+        return lowercaseText;
+    }
+
+    void invalidate() {
+        layoutWidth = -1;
+        lowercaseText = null;
+    }
+
+    /**
+     * Lays out the line for the given width, if not already done for the same
+     * width and version.
+     *
+     * @param width The available width
+     * @param version Increased when something that affects all lines changed
+     * (font, icon sizes)
+     * @param plain Metrics for regular text
+     * @param bold Metrics for bold text
+     * @return The height of the line
+     */
+    int layout(int width, int version, FontMetrics plain, FontMetrics bold) {
+        if (layoutWidth == width && layoutVersion == version) {
+            return height;
+        }
+        layoutWidth = width;
+        layoutVersion = version;
+        layout = new ArrayList<>();
+
+        int ascent = Math.max(plain.getAscent(), bold.getAscent());
+        int descent = Math.max(plain.getDescent(), bold.getDescent());
+
+        int x = 0;
+        int y = 0;
+        int rowStart = 0;
+        int rowAscent = ascent;
+        for (Segment s : segments) {
+            if (s.isText()) {
+                FontMetrics fm = s.bold ? bold : plain;
+                String text = s.text;
+                int pos = 0;
+                while (pos < text.length()) {
+                    // Next word including following spaces
+                    int end = pos;
+                    while (end < text.length() && text.charAt(end) != ' ') {
+                        end++;
+                    }
+                    while (end < text.length() && text.charAt(end) == ' ') {
+                        end++;
+                    }
+                    String word = text.substring(pos, end);
+                    int wordWidth = fm.stringWidth(word);
+                    if (x + wordWidth > width && x > 0) {
+                        y = finishRow(rowStart, y, rowAscent, descent);
+                        rowStart = layout.size();
+                        rowAscent = ascent;
+                        x = 0;
+                    }
+                    if (wordWidth > width) {
+                        // Too long for a single row, so break anywhere
+                        int fit = pos + 1;
+                        while (fit < end && fm.stringWidth(text.substring(pos, fit + 1)) <= width) {
+                            fit++;
+                        }
+                        end = fit;
+                        word = text.substring(pos, end);
+                        wordWidth = fm.stringWidth(word);
+                    }
+                    layout.add(new Placed(s, word, x, wordWidth));
+                    x += wordWidth;
+                    pos = end;
+                }
+            } else {
+                ImageIcon icon = s.getIcon();
+                if (icon == null) {
+                    continue;
+                }
+                int iconWidth = icon.getIconWidth() + ICON_SPACE;
+                if (x + iconWidth > width && x > 0) {
+                    y = finishRow(rowStart, y, rowAscent, descent);
+                    rowStart = layout.size();
+                    rowAscent = ascent;
+                    x = 0;
+                }
+                Placed p = new Placed(s, s.text, x, iconWidth);
+                p.height = icon.getIconHeight();
+                rowAscent = Math.max(rowAscent, icon.getIconHeight() - descent);
+                layout.add(p);
+                x += iconWidth;
+            }
+        }
+        height = finishRow(rowStart, y, rowAscent, descent);
+        return height;
+    }
+
+    /**
+     * Sets the vertical position of all segments of the row.
+     *
+     * @return The y position of the next row
+     */
+    private int finishRow(int rowStart, int y, int rowAscent, int descent) {
+        int baseline = y + rowAscent;
+        for (int i = rowStart; i < layout.size(); i++) {
+            Placed p = layout.get(i);
+            p.baseline = baseline;
+            if (p.segment.isText()) {
+                p.y = y;
+                p.height = rowAscent + descent;
+            } else {
+                // Icons are aligned to the bottom of the text
+                p.y = Math.max(y, baseline + descent - p.height);
+            }
+        }
+        return baseline + descent;
+    }
+
+    /**
+     * The segments with their position, must be laid out first.
+     *
+     * @return
+     */
+    List<Placed> getLayout() {
+        return layout;
+    }
+
+    /**
+     * Gets the segment at the given position, relative to the line, must be
+     * laid out first.
+     *
+     * @param x
+     * @param y
+     * @return The segment, or null if none is at that position
+     */
+    Segment getSegmentAt(int x, int y) {
+        if (layout != null) {
+            for (Placed p : layout) {
+                if (p.contains(x, y)) {
+                    return p.segment;
+                }
+            }
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,220 @@
+
+package chatty.gui.components.textpane;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Ring buffer for the lines of a {@link VirtualChatView}, which also keeps
+ * track of the height of each line, so the line at a certain y position (and
+ * the y position of a line) can be found without adding up the heights of all
+ * previous lines.
+ *
+ * The heights are stored in a Fenwick tree over the slots of the ring buffer,
+ * so changing the height of a line and getting the y position of a line are
+ * both O(log n).
+ *
+ * Lines are identified by their index, where 0 is the oldest line still in
+ * the buffer.
+ *
+ * @author tduva
+ * @param <T> The type of the lines
+ */
+class VirtualLineBuffer<T> {
+
+    private Object[] lines;
+    private int[] heights;
+    private long[] tree;
+
+    /**
+     * The slot of the oldest line.
+     */
+    private int start;
+    private int size;
+
+    VirtualLineBuffer(int capacity) {
+        init(capacity);
+    }
+
+    private void init(int capacity) {
+        if (capacity < 1) {
+            capacity = 1;
+        }
+        lines = new Object[capacity];
+        heights = new int[capacity];
+        tree = new long[capacity + 1];
+        start = 0;
+        size = 0;
+    }
+
+    public int capacity() {
+        return lines.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Changes the capacity, keeping the newest lines that still fit.
+     *
+     * @param capacity
+     * @return The removed lines (oldest first), may be empty
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> setCapacity(int capacity) {
+        List<T> removed = new ArrayList<>();
+        if (capacity == lines.length) {
+            return removed;
+        }
+        int keep = Math.min(size, Math.max(capacity, 1));
+        for (int i = 0; i < size - keep; i++) {
+            removed.add((T) lines[slot(i)]);
+        }
+        Object[] keptLines = new Object[keep];
+        int[] keptHeights = new int[keep];
+        for (int i = 0; i < keep; i++) {
+            int slot = slot(size - keep + i);
+            keptLines[i] = lines[slot];
+            keptHeights[i] = heights[slot];
+        }
+        init(capacity);
+        for (int i = 0; i < keep; i++) {
+            add((T) keptLines[i], keptHeights[i]);
+        }
+        return removed;
+    }
+
+    /**
+     * Adds a line at the end, removing the oldest line if the buffer is full.
+     *
+     * @param line The line to add
+     * @param height The (possibly estimated) height of the line
+     * @return The removed line, or null if no line was removed
+     */
+    @SuppressWarnings("unchecked")
+    public T add(T line, int height) {
+        T removed = null;
+        int slot;
+        if (size == lines.length) {
+            slot = start;
+            removed = (T) lines[slot];
+            start = (start + 1) % lines.length;
+        } else {
+            slot = slot(size);
+            size++;
+        }
+        lines[slot] = line;
+        updateHeight(slot, height);
+        return removed;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        checkIndex(index);
+        return (T) lines[slot(index)];
+    }
+
+    public int getHeight(int index) {
+        checkIndex(index);
+        return heights[slot(index)];
+    }
+
+    public void setHeight(int index, int height) {
+        checkIndex(index);
+        updateHeight(slot(index), height);
+    }
+
+    /**
+     * The sum of all heights.
+     *
+     * @return
+     */
+    public long getTotalHeight() {
+        return prefix(lines.length);
+    }
+
+    /**
+     * The y position of the given line, which is the sum of the heights of all
+     * older lines.
+     *
+     * @param index The line, may also be equal to size()
+     * @return
+     */
+    public long getY(int index) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException(index + " / " + size);
+        }
+        int end = start + index;
+        if (end <= lines.length) {
+            return prefix(end) - prefix(start);
+        }
+        return prefix(lines.length) - prefix(start) + prefix(end - lines.length);
+    }
+
+    /**
+     * Finds the line at the given y position.
+     *
+     * @param y
+     * @return The index of the line, 0 if y is smaller than 0, size() - 1 if
+     * y is larger than the total height, -1 if there are no lines
+     */
+    public int getIndexAt(long y) {
+        if (size == 0) {
+            return -1;
+        }
+        int low = 0;
+        int high = size - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (getY(mid) <= y) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+
+    public void clear() {
+        Arrays.fill(lines, null);
+        Arrays.fill(heights, 0);
+        Arrays.fill(tree, 0);
+        start = 0;
+        size = 0;
+    }
+
+    private int slot(int index) {
+        return (start + index) % lines.length;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index + " / " + size);
+        }
+    }
+
+    private void updateHeight(int slot, int height) {
+        int delta = height - heights[slot];
+        heights[slot] = height;
+        for (int i = slot + 1; i < tree.length; i += i & (-i)) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * The sum of the heights of the slots before the given one.
+     *
+     * @param slot
+     * @return
+     */
+    private long prefix(int slot) {
+        long result = 0;
+        for (int i = slot; i > 0; i -= i & (-i)) {
+            result += tree[i];
+        }
+        return result;
+    }
+
+}
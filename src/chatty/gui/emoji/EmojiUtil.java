@@ -3,7 +3,9 @@ package chatty.gui.emoji;
 
 import chatty.util.api.Emoticon;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Logger;
 
@@ -22,6 +24,11 @@ public class EmojiUtil {
     
     private static final Logger LOGGER = Logger.getLogger(EmojiUtil.class.getName());
     
+    /**
+     * Emoji created in advance by {@link #preload(String)}, by source id.
+     */
+    private static final Map<String, Set<Emoticon>> preloaded = new HashMap<>();
+    
     /**
      * One Emoji set specifiying an identifier, human-readable name and image
      * path in the jar relative to this file.
@@ -81,6 +88,31 @@ public class EmojiUtil {
      * @return A Set of Emoticon objects representing the selected Emoji
      */
     public static Set<Emoticon> makeEmoticons(String sourceId) {
+        synchronized(preloaded) {
+            Set<Emoticon> result = preloaded.remove(sourceId);
+            if (result != null) {
+                return result;
+            }
+        }
+        return create(sourceId);
+    }
+    
+    /**
+     * Creates the Emoticon objects for the given set in advance, so that the
+     * next {@link #makeEmoticons(String)} for the same set can return them
+     * right away. This can be used to create them in another thread while
+     * doing something else.
+     * 
+     * @param sourceId The name of the Emoji set
+     */
+    public static void preload(String sourceId) {
+        Set<Emoticon> result = create(sourceId);
+        synchronized(preloaded) {
+            preloaded.put(sourceId, result);
+        }
+    }
+    
+    private static Set<Emoticon> create(String sourceId) {
         Set<Emoticon> result = new HashSet<>();
         
         /**
@@ -0,0 +1,213 @@
+
+package chatty.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.TreeMap;
+
+/**
+ * Finds all occurences of any number of literal Strings in a text in a single
+ * pass over the text (Aho-Corasick automaton).
+ *
+ * Patterns are added with an id, and once all patterns are added, the
+ * automaton has to be built before it can be used. After that no more patterns
+ * can be added. Searching doesn't change the automaton, so it can be done by
+ * several threads at the same time.
+ *
+ * @author tduva
+ */
+public class AhoCorasick {
+
+    private static final int ROOT = 0;
+
+    private final List<Node> nodes = new ArrayList<>();
+    private boolean built;
+    private int patternCount;
+
+    // Frozen data, created by build()
+    private char[][] keys;
+    private int[][] targets;
+    private int[] fail;
+    private int[][] outputIds;
+    private int[][] outputLengths;
+
+    public AhoCorasick() {
+        nodes.add(new Node());
+    }
+
+    /**
+     * Adds a pattern. The same id can be added for several patterns and a
+     * pattern can be added with several ids.
+     *
+     * @param pattern The literal text to find, empty patterns are ignored
+     * @param id The id that will be reported for matches of this pattern
+     * @throws IllegalStateException if the automaton has already been built
+     */
+    public void add(String pattern, int id) {
+        if (built) {
+            throw new IllegalStateException("Already built");
+        }
+        if (pattern.isEmpty()) {
+            return;
+        }
+        int current = ROOT;
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            Integer next = nodes.get(current).children.get(c);
+            if (next == null) {
+                next = nodes.size();
+                nodes.add(new Node());
+                nodes.get(current).children.put(c, next);
+            }
+            current = next;
+        }
+        Node node = nodes.get(current);
+        patternCount++;
+        node.ids.add(id);
+        node.lengths.add(pattern.length());
+    }
+
+    /**
+     * Whether any patterns have been added.
+     *
+     * @return
+     */
+    public boolean isEmpty() {
+        return patternCount == 0;
+    }
+
+    /**
+     * Creates the failure links and the compact representation used for
+     * searching.
+     */
+    public void build() {
+        if (built) {
+            return;
+        }
+        built = true;
+        int count = nodes.size();
+        keys = new char[count][];
+        targets = new int[count][];
+        fail = new int[count];
+        outputIds = new int[count][];
+        outputLengths = new int[count][];
+
+        for (int i = 0; i < count; i++) {
+            Node node = nodes.get(i);
+            keys[i] = new char[node.children.size()];
+            targets[i] = new int[node.children.size()];
+            int index = 0;
+            // TreeMap, so keys are sorted for binary search
+            for (Character c : node.children.keySet()) {
+                keys[i][index] = c;
+                targets[i][index] = node.children.get(c);
+                index++;
+            }
+        }
+
+        // Breadth-first, so the failure links of shorter prefixes are known
+        Queue<Integer> queue = new ArrayDeque<>();
+        outputIds[ROOT] = new int[0];
+        outputLengths[ROOT] = new int[0];
+        for (int child : targets[ROOT]) {
+            fail[child] = ROOT;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int current = queue.poll();
+            Node node = nodes.get(current);
+            // Own outputs plus those of the longest proper suffix
+            int[] suffixIds = outputIds[fail[current]];
+            int[] suffixLengths = outputLengths[fail[current]];
+            int own = node.ids.size();
+            outputIds[current] = Arrays.copyOf(toArray(node.ids), own + suffixIds.length);
+            outputLengths[current] = Arrays.copyOf(toArray(node.lengths), own + suffixLengths.length);
+            System.arraycopy(suffixIds, 0, outputIds[current], own, suffixIds.length);
+            System.arraycopy(suffixLengths, 0, outputLengths[current], own, suffixLengths.length);
+
+            for (int i = 0; i < keys[current].length; i++) {
+                char c = keys[current][i];
+                int child = targets[current][i];
+                int state = fail[current];
+                while (state != ROOT && next(state, c) == -1) {
+                    state = fail[state];
+                }
+                int f = next(state, c);
+                fail[child] = (f == -1 || f == child) ? ROOT : f;
+                queue.add(child);
+            }
+        }
+        nodes.clear();
+    }
+
+    private static int[] toArray(List<Integer> list) {
+        int[] result = new int[list.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = list.get(i);
+        }
+        return result;
+    }
+
+    private int next(int state, char c) {
+        int index = Arrays.binarySearch(keys[state], c);
+        if (index < 0) {
+            return -1;
+        }
+        return targets[state][index];
+    }
+
+    /**
+     * Finds all occurences of all patterns in the given text, including
+     * overlapping ones.
+     *
+     * @param text The text to search in
+     * @param listener Receives the matches in order of their end position,
+     * can stop the search by returning false
+     * @throws IllegalStateException if the automaton hasn't been built yet
+     */
+    public void find(CharSequence text, MatchListener listener) {
+        if (!built) {
+            throw new IllegalStateException("Not built yet");
+        }
+        int state = ROOT;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int next;
+            while ((next = next(state, c)) == -1 && state != ROOT) {
+                state = fail[state];
+            }
+            state = next == -1 ? ROOT : next;
+            int[] ids = outputIds[state];
+            for (int o = 0; o < ids.length; o++) {
+                int end = i + 1;
+                if (!listener.match(ids[o], end - outputLengths[state][o], end)) {
+                    return;
+                }
+            }
+        }
+    }
+
+    public interface MatchListener {
+
+        /**
+         * A pattern has been found.
+         *
+         * @param id The id of the pattern
+         * @param start The start index of the match in the text
+         * @param end The end index of the match in the text (exclusive)
+         * @return true to continue searching, false to stop
+         */
+        boolean match(int id, int start, int end);
+    }
+
+    private static class Node {
+
+        private final TreeMap<Character, Integer> children = new TreeMap<>();
+        private final List<Integer> ids = new ArrayList<>(1);
+        private final List<Integer> lengths = new ArrayList<>(1);
+    }
+
+}
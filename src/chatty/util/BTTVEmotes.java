@@ -90,7 +90,7 @@ public class BTTVEmotes {
             }
         };
         request.setLabel("[BTTV]");
-        new Thread(request).start();
+        request.async();
     }
     
     private String getUrlForStream(String stream) {
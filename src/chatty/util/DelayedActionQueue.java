@@ -1,27 +1,40 @@
 
 package chatty.util;
 
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.logging.Logger;
+import java.util.LinkedList;
+import java.util.Queue;
 
 /**
  * A queue that items can be added to, that are send to the registered action
  * listener on a fixed delay (in between each item). The queue is FIFO.
  * 
+ * <p>
+ * The items are sent from the {@link TaskScheduler}, so no thread is used
+ * while the queue is empty.
+ * </p>
+ * 
  * @author tduva
  * @param <E> The type of the items
  */
 public class DelayedActionQueue<E> {
     
-    private static final Logger LOGGER = Logger.getLogger(DelayedActionQueue.class.getName());
-    
     private final DelayedActionListener<E> listener;
     private final long delay;
-    private final BlockingQueue<E> q = new LinkedBlockingQueue<>();
+    private final Queue<E> q = new LinkedList<>();
+    
+    /**
+     * Whether the next item is already scheduled to be sent (or is currently
+     * being sent).
+     */
+    private boolean scheduled;
+    
+    /**
+     * When the last item was sent (after the listener returned).
+     */
+    private long lastAction;
 
     /**
-     * Create a new queue object and start it.
+     * Create a new queue object.
      * 
      * @param <T>
      * @param listener
@@ -29,9 +42,7 @@ public class DelayedActionQueue<E> {
      * @return 
      */
     public static<T> DelayedActionQueue<T> create(DelayedActionListener<T> listener, long delay) {
-        DelayedActionQueue<T> q = new DelayedActionQueue<>(listener, delay);
-        q.start();
-        return q;
+        return new DelayedActionQueue<>(listener, delay);
     }
     
     /**
@@ -45,49 +56,62 @@ public class DelayedActionQueue<E> {
         this.delay = delay;
     }
     
-    /**
-     * Start a new reader thread. This should only be called once per instance.
-     */
-    private void start() {
-        new Reader().start();
-    }
-    
     /**
      * Adds an item to the queue.
      * 
      * @param item 
      */
-    public void add(E item) {
+    public synchronized void add(E item) {
         q.add(item);
+        scheduleNext();
     }
     
     /**
      * Clears all elements from the queue.
      */
-    public void clear() {
+    public synchronized void clear() {
         q.clear();
     }
     
     /**
-     * Thread that reads an item (or blocks if none is available) sends it to
-     * the listener and then waits for the specified delay.
+     * Schedule sending the next item, if there is one and it isn't already
+     * scheduled, so that the delay since the last item has passed.
+     */
+    private synchronized void scheduleNext() {
+        if (scheduled || q.isEmpty()) {
+            return;
+        }
+        scheduled = true;
+        long wait = Math.max(0, lastAction + delay - System.currentTimeMillis());
+        TaskScheduler.schedule("DelayedActionQueue", new Runnable() {
+
+            @Override
+            public void run() {
+                sendNext();
+            }
+        }, wait);
+    }
+    
+    /**
+     * Sends the next item to the listener (outside of the lock, so items can
+     * be added in the meantime) and schedules the following one.
      */
-    private class Reader extends Thread {
-        
-        @Override
-        public void run() {
-            while (true) {
-                try {
-                    E item = q.take();
-                    listener.actionPerformed(item);
-                    sleep(delay);
-                } catch (InterruptedException ex) {
-                    LOGGER.warning("Reader Thread interrupted.");
-                    break;
-                }
+    private void sendNext() {
+        E item;
+        synchronized(this) {
+            item = q.poll();
+        }
+        try {
+            if (item != null) {
+                listener.actionPerformed(item);
+            }
+        } finally {
+            synchronized(this) {
+                lastAction = System.currentTimeMillis();
+                scheduled = false;
+                scheduleNext();
             }
         }
-        
     }
 
     public static interface DelayedActionListener<E> {
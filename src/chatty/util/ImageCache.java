@@ -2,22 +2,25 @@
 package chatty.util;
 
 import chatty.util.gif.GifUtil;
+import chatty.util.http.HttpClient;
+import chatty.util.http.HttpRequest;
+import chatty.util.http.HttpResponse;
 import static java.awt.MediaTracker.COMPLETE;
 import static java.awt.MediaTracker.ERRORED;
 import java.awt.Toolkit;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
@@ -48,6 +51,8 @@ public class ImageCache {
      */
     private static final String GLOBAL_PREFIX = "imgcache-";
     
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+    
     /**
      * Used as expire time for {@link clearOldFiles()} and
      * {@link clearOldFiles(Path)}.
@@ -320,14 +325,14 @@ public class ImageCache {
         if (fromFile == null) {
             // The image was NOT read from file successfully
             //System.out.println("Loading image from server (cache not found)"+url);
-            if (saveFile(url, file)) {
+            if (saveFile(url, file, false)) {
                 fromFile = getImageFromFile(file);
             }
         } else {
             // The image was read from file successfully
             if (hasExpired(expireTime, file)) {
                 //System.out.println("Loading image from server (expired)"+url);
-                if (saveFile(url, file)) {
+                if (saveFile(url, file, true)) {
                     // Only use new image from file if it was saved successfully
                     fromFile = getImageFromFile(file);
                 }
@@ -349,18 +354,72 @@ public class ImageCache {
         return GLOBAL_PREFIX+prefix+"__"+id;
     }
     
-    private static boolean saveFile(URL url, Path file) {
-        try (InputStream is = url.openStream()) {
-            long written = Files.copy(is, file, StandardCopyOption.REPLACE_EXISTING);
-            if (written > 0) {
+    /**
+     * Requests the file from the URL and saves it. If the existing file should
+     * be revalidated, the request asks the server to only send it if it was modified (based on
+     * the last modified time of the file and the ETag saved from a previous
+     * request), and if it wasn't modified, the existing file is kept and
+     * marked as current.
+     * 
+     * @param url The URL to request
+     * @param file The file to save to
+     * @param revalidate Whether the existing file can be kept if unchanged
+     * @return true if the file is now up-to-date, false if an error occured
+     */
+    private static boolean saveFile(URL url, Path file, boolean revalidate) {
+        Path etagFile = getEtagFile(file);
+        HttpRequest request = new HttpRequest(url.toString());
+        request.setStatsKey("ImageCache");
+        if (revalidate && Files.exists(file)) {
+            request.setCacheValidators(readEtag(etagFile), file.toFile().lastModified());
+        }
+        HttpResponse response = HttpClient.execute(request);
+        try {
+            if (response.isNotModified()) {
+                Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+                return true;
+            }
+            byte[] body = response.getBody();
+            if (body != null && body.length > 0) {
+                Files.write(file, body);
+                if (response.getEtag() != null) {
+                    Files.write(etagFile, response.getEtag().getBytes(CHARSET));
+                } else {
+                    Files.deleteIfExists(etagFile);
+                }
                 return true;
             }
+            if (response.getError() != null) {
+                LOGGER.warning("Error saving "+url+" to "+file+": "+response.getError());
+            }
         } catch (IOException ex) {
             LOGGER.warning("Error saving "+url+" to "+file+": "+ex);
         }
         return false;
     }
     
+    /**
+     * The file the ETag of the given cache file is stored in. It has the same
+     * prefix, so it is deleted along with the cache file.
+     * 
+     * @param file
+     * @return 
+     */
+    private static Path getEtagFile(Path file) {
+        return file.resolveSibling(file.getFileName()+".etag");
+    }
+    
+    private static String readEtag(Path etagFile) {
+        try {
+            if (Files.exists(etagFile)) {
+                return new String(Files.readAllBytes(etagFile), CHARSET);
+            }
+        } catch (IOException ex) {
+            LOGGER.warning("Error reading "+etagFile+": "+ex);
+        }
+        return null;
+    }
+    
     private static boolean saveFile2(URL url, Path file) {
         try (ReadableByteChannel rbc = Channels.newChannel(url.openStream())) {
             FileOutputStream fos = new FileOutputStream(file.toFile());
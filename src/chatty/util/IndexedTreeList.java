@@ -0,0 +1,425 @@
+
+package chatty.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * A sorted list that supports adding, removing and finding the index of an
+ * item as well as getting the item at an index in O(log n).
+ *
+ * The items are stored in a treap (a binary search tree balanced by random
+ * priorities) where each node knows the size of its subtree, so the position
+ * of a node can be determined. An identity map from the item to its node
+ * allows removing and finding items without comparing them, which also works
+ * if the sort order of the item changed in the meantime (which wouldn't be
+ * the case with a binary search).
+ *
+ * Each item can only be contained once (by identity). Not thread-safe.
+ *
+ * @author tduva
+ * @param <E>
+ */
+public class IndexedTreeList<E> implements Iterable<E> {
+
+    private final Map<E, Node<E>> nodes = new IdentityHashMap<>();
+    private final Random random = new Random();
+    private Comparator<? super E> comparator;
+    private Node<E> root;
+
+    /**
+     * Creates a new list.
+     *
+     * @param comparator The Comparator to sort by, or null to use the natural
+     * ordering (items must be Comparable in that case)
+     */
+    public IndexedTreeList(Comparator<? super E> comparator) {
+        this.comparator = comparator;
+    }
+
+    public int size() {
+        return size(root);
+    }
+
+    public boolean isEmpty() {
+        return root == null;
+    }
+
+    public boolean contains(E item) {
+        return nodes.containsKey(item);
+    }
+
+    /**
+     * Gets the item at the given index.
+     *
+     * @param index
+     * @return
+     * @throws IndexOutOfBoundsException If the index is invalid
+     */
+    public E get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size());
+        }
+        Node<E> node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index > leftSize) {
+                index -= leftSize + 1;
+                node = node.right;
+            } else {
+                return node.value;
+            }
+        }
+    }
+
+    /**
+     * Gets the current index of the given item.
+     *
+     * @param item
+     * @return The index, or -1 if the item is not contained
+     */
+    public int indexOf(E item) {
+        Node<E> node = nodes.get(item);
+        if (node == null) {
+            return -1;
+        }
+        int index = size(node.left);
+        while (node.parent != null) {
+            if (node == node.parent.right) {
+                index += size(node.parent.left) + 1;
+            }
+            node = node.parent;
+        }
+        return index;
+    }
+
+    /**
+     * Adds the item at the position determined by the sort order, after equal
+     * items.
+     *
+     * @param item
+     * @return The index the item was added at, or -1 if it was already
+     * contained
+     */
+    public int add(E item) {
+        if (nodes.containsKey(item)) {
+            return -1;
+        }
+        Node<E> node = new Node<>(item, random.nextInt());
+        nodes.put(item, node);
+        int index = findInsertionPoint(item);
+        Node<E>[] parts = split(root, index);
+        setRoot(merge(merge(parts[0], node), parts[1]));
+        return index;
+    }
+
+    /**
+     * Adds all the given items. If the list is empty, or many items are added,
+     * the items are sorted and the tree is build at once, which is faster than
+     * adding them one by one.
+     *
+     * @param items
+     * @return The number of items that were added (not including items that
+     * were already contained)
+     */
+    public int addAll(Collection<? extends E> items) {
+        int before = size();
+        if (items.size() > before / 4) {
+            List<E> all = new ArrayList<>(before + items.size());
+            collect(root, all);
+            for (E item : items) {
+                if (!nodes.containsKey(item)) {
+                    nodes.put(item, null);
+                    all.add(item);
+                }
+            }
+            build(all);
+        } else {
+            for (E item : items) {
+                add(item);
+            }
+        }
+        return size() - before;
+    }
+
+    /**
+     * Removes the given item.
+     *
+     * @param item
+     * @return The index the item was at, or -1 if it was not contained
+     */
+    public int remove(E item) {
+        int index = indexOf(item);
+        if (index == -1) {
+            return -1;
+        }
+        nodes.remove(item);
+        Node<E>[] parts = split(root, index);
+        Node<E>[] rest = split(parts[1], 1);
+        setRoot(merge(parts[0], rest[1]));
+        return index;
+    }
+
+    public void clear() {
+        nodes.clear();
+        root = null;
+    }
+
+    /**
+     * Sets a new Comparator and sorts the items accordingly.
+     *
+     * @param comparator The Comparator, or null for natural ordering
+     */
+    public void setComparator(Comparator<? super E> comparator) {
+        this.comparator = comparator;
+        resort();
+    }
+
+    /**
+     * Sorts all items again, in O(n log n), for when the sort order of the
+     * items changed.
+     */
+    public void resort() {
+        List<E> all = new ArrayList<>(size());
+        collect(root, all);
+        build(all);
+    }
+
+    /**
+     * Returns a copy of the items, in order.
+     *
+     * @return
+     */
+    public ArrayList<E> toList() {
+        ArrayList<E> result = new ArrayList<>(size());
+        collect(root, result);
+        return result;
+    }
+
+    /**
+     * The number of items that are smaller than or equal to the given item.
+     */
+    private int findInsertionPoint(E item) {
+        int index = 0;
+        Node<E> node = root;
+        while (node != null) {
+            if (compare(item, node.value) < 0) {
+                node = node.left;
+            } else {
+                index += size(node.left) + 1;
+                node = node.right;
+            }
+        }
+        return index;
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(E a, E b) {
+        if (comparator != null) {
+            return comparator.compare(a, b);
+        }
+        return ((Comparable<? super E>)a).compareTo(b);
+    }
+
+    /**
+     * Sorts the items and creates a new tree from them in linear time (after
+     * sorting), replacing the current tree. Each item gets a new node.
+     */
+    @SuppressWarnings("unchecked")
+    private void build(List<E> items) {
+        Object[] sorted = items.toArray();
+        Arrays.sort(sorted, (Comparator<Object>)getComparator());
+        // Build with stack, so the priorities are in heap order
+        Node<E>[] stack = new Node[sorted.length];
+        int top = 0;
+        for (Object item : sorted) {
+            Node<E> node = new Node<>((E)item, random.nextInt());
+            nodes.put(node.value, node);
+            Node<E> last = null;
+            while (top > 0 && stack[top - 1].priority < node.priority) {
+                last = stack[--top];
+            }
+            node.left = last;
+            if (last != null) {
+                last.parent = node;
+            }
+            if (top > 0) {
+                stack[top - 1].right = node;
+                node.parent = stack[top - 1];
+            }
+            stack[top++] = node;
+        }
+        root = top > 0 ? stack[0] : null;
+        updateSizes(root);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Comparator<? super E> getComparator() {
+        if (comparator != null) {
+            return comparator;
+        }
+        return new Comparator<E>() {
+
+            @Override
+            public int compare(E o1, E o2) {
+                return ((Comparable<? super E>)o1).compareTo(o2);
+            }
+        };
+    }
+
+    private static <E> int updateSizes(Node<E> node) {
+        if (node == null) {
+            return 0;
+        }
+        node.size = updateSizes(node.left) + updateSizes(node.right) + 1;
+        return node.size;
+    }
+
+    private void setRoot(Node<E> node) {
+        root = node;
+        if (node != null) {
+            node.parent = null;
+        }
+    }
+
+    /**
+     * Splits the tree into the first count items and the rest.
+     */
+    @SuppressWarnings("unchecked")
+    private static <E> Node<E>[] split(Node<E> node, int count) {
+        if (node == null) {
+            return new Node[]{null, null};
+        }
+        int leftSize = size(node.left);
+        if (count <= leftSize) {
+            Node<E>[] parts = split(node.left, count);
+            node.left = parts[1];
+            update(node);
+            parts[1] = node;
+            return parts;
+        } else {
+            Node<E>[] parts = split(node.right, count - leftSize - 1);
+            node.right = parts[0];
+            update(node);
+            parts[0] = node;
+            return parts;
+        }
+    }
+
+    /**
+     * Merges two trees, where all items of a come before all items of b.
+     */
+    private static <E> Node<E> merge(Node<E> a, Node<E> b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            update(a);
+            return a;
+        } else {
+            b.left = merge(a, b.left);
+            update(b);
+            return b;
+        }
+    }
+
+    private static <E> void update(Node<E> node) {
+        node.size = size(node.left) + size(node.right) + 1;
+        if (node.left != null) {
+            node.left.parent = node;
+        }
+        if (node.right != null) {
+            node.right.parent = node;
+        }
+    }
+
+    private static <E> int size(Node<E> node) {
+        return node != null ? node.size : 0;
+    }
+
+    private static <E> void collect(Node<E> node, List<E> result) {
+        if (node != null) {
+            collect(node.left, result);
+            result.add(node.value);
+            collect(node.right, result);
+        }
+    }
+
+    /**
+     * Iterates over the items in order. The list must not be changed while
+     * iterating.
+     *
+     * @return
+     */
+    @Override
+    public Iterator<E> iterator() {
+        return new Iterator<E>() {
+
+            private Node<E> next = first(root);
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public E next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Node<E> current = next;
+                next = successor(current);
+                return current.value;
+            }
+        };
+    }
+
+    private static <E> Node<E> first(Node<E> node) {
+        if (node != null) {
+            while (node.left != null) {
+                node = node.left;
+            }
+        }
+        return node;
+    }
+
+    private static <E> Node<E> successor(Node<E> node) {
+        if (node.right != null) {
+            return first(node.right);
+        }
+        while (node.parent != null && node == node.parent.right) {
+            node = node.parent;
+        }
+        return node.parent;
+    }
+
+    private static class Node<E> {
+
+        final E value;
+        final int priority;
+        int size = 1;
+        Node<E> left;
+        Node<E> right;
+        Node<E> parent;
+
+        Node(E value, int priority) {
+            this.value = value;
+            this.priority = priority;
+        }
+    }
+
+}
@@ -0,0 +1,223 @@
+
+package chatty.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ContentHandler;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Reads the elements of a JSON array or object one by one from a stream,
+ * without building the whole document in memory first. This is meant for
+ * large documents that consist of many small records (like a list of
+ * emotes).
+ *
+ * <p>The container with the records is selected with the keys leading to it
+ * from the root object, for example the keys {@code "emoticons"} for
+ * <code>{"emoticons":[{..},{..}]}</code>. Each record is given to the
+ * listener as a regular json-simple value (e.g. a {@code JSONObject}) and
+ * can be discarded afterwards, so only one record at a time is kept in
+ * memory. Everything outside of the selected container is skipped.</p>
+ *
+ * @author tduva
+ */
+public class JSONRecordReader {
+
+    /**
+     * Reads the records of the container at the given path.
+     *
+     * @param input The JSON text to read (not closed by this method)
+     * @param listener Receives the records
+     * @param path The keys leading from the root object to the container
+     * @return true if the container was found, false otherwise
+     * @throws IOException If an error occurs reading the input
+     * @throws ParseException If the input is not valid JSON
+     */
+    public static boolean read(Reader input, RecordListener listener,
+            String... path) throws IOException, ParseException {
+        Handler handler = new Handler(listener, path);
+        new JSONParser().parse(input, handler);
+        return handler.found;
+    }
+
+    public interface RecordListener {
+
+        /**
+         * A record has been read.
+         *
+         * @param key The key of the record if the container is an object, or
+         * null if it is an array
+         * @param value The value of the record ({@code JSONObject},
+         * {@code JSONArray}, {@code String}, {@code Number},
+         * {@code Boolean} or null)
+         */
+        public void record(String key, Object value);
+    }
+
+    private static class Handler implements ContentHandler {
+
+        private final RecordListener listener;
+        private final String[] path;
+
+        /**
+         * The current key of each open container (null for arrays).
+         */
+        private final List<String> keys = new ArrayList<>();
+
+        /**
+         * Whether each open container is an object.
+         */
+        private final List<Boolean> objects = new ArrayList<>();
+
+        /**
+         * The containers of the record currently being read, empty if no
+         * record is being read.
+         */
+        private final Deque<Object> building = new ArrayDeque<>();
+
+        private String recordKey;
+        private boolean found;
+
+        Handler(RecordListener listener, String[] path) {
+            this.listener = listener;
+            this.path = path;
+        }
+
+        @Override
+        public void startJSON() {
+        }
+
+        @Override
+        public void endJSON() {
+        }
+
+        @Override
+        public boolean startObject() {
+            startContainer(new JSONObject(), true);
+            return true;
+        }
+
+        @Override
+        public boolean endObject() {
+            endContainer();
+            return true;
+        }
+
+        @Override
+        public boolean startArray() {
+            startContainer(new JSONArray(), false);
+            return true;
+        }
+
+        @Override
+        public boolean endArray() {
+            endContainer();
+            return true;
+        }
+
+        @Override
+        public boolean startObjectEntry(String key) {
+            keys.set(keys.size() - 1, key);
+            return true;
+        }
+
+        @Override
+        public boolean endObjectEntry() {
+            return true;
+        }
+
+        @Override
+        public boolean primitive(Object value) {
+            if (!building.isEmpty()) {
+                addToParent(value);
+            } else if (isRecordStart()) {
+                listener.record(currentKey(), value);
+            }
+            return true;
+        }
+
+        private void startContainer(Object container, boolean object) {
+            if (!building.isEmpty()) {
+                addToParent(container);
+                building.push(container);
+            } else if (isRecordStart()) {
+                recordKey = currentKey();
+                building.push(container);
+            } else if (isAtPath(path.length)) {
+                found = true;
+            }
+            keys.add(null);
+            objects.add(object);
+        }
+
+        private void endContainer() {
+            keys.remove(keys.size() - 1);
+            objects.remove(objects.size() - 1);
+            if (!building.isEmpty()) {
+                Object container = building.pop();
+                if (building.isEmpty()) {
+                    listener.record(recordKey, container);
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void addToParent(Object value) {
+            Object parent = building.peek();
+            if (parent instanceof JSONObject) {
+                ((JSONObject) parent).put(currentKey(), value);
+            } else {
+                ((JSONArray) parent).add(value);
+            }
+        }
+
+        /**
+         * Whether a value starting now is a record, which is the case if it is
+         * directly in the container at the path.
+         *
+         * @return
+         */
+        private boolean isRecordStart() {
+            return isAtPath(path.length + 1);
+        }
+
+        /**
+         * Whether the given number of containers is open and the current keys
+         * of the containers are the ones on the path. With as many containers
+         * open as the path has keys, the value starting now is the container
+         * at the path.
+         *
+         * @param depth
+         * @return
+         */
+        private boolean isAtPath(int depth) {
+            if (keys.size() != depth) {
+                return false;
+            }
+            for (int i = 0; i < path.length; i++) {
+                if (!objects.get(i) || !path[i].equals(keys.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * The key of the value in the innermost open container.
+         *
+         * @return The key, or null if the container is an array
+         */
+        private String currentKey() {
+            int index = keys.size() - 1;
+            return objects.get(index) ? keys.get(index) : null;
+        }
+    }
+
+}
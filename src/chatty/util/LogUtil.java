@@ -5,8 +5,6 @@ import chatty.Chatty;
 import java.lang.management.ManagementFactory;
 import java.lang.management.ThreadInfo;
 import java.lang.management.ThreadMXBean;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.logging.Logger;
 
 /**
@@ -35,8 +33,7 @@ public class LogUtil {
      * Log JVM memory information every 15 minutes.
      */
     public static void startMemoryUsageLogging() {
-        Timer t = new Timer(true);
-        t.schedule(new TimerTask() {
+        TaskScheduler.scheduleAtFixedRate("MemoryUsageLogging", new Runnable() {
 
             @Override
             public void run() {
@@ -68,8 +65,7 @@ public class LogUtil {
     
     public static void startDeadlockDetection() {
         LOGGER.info("Started Thread Deadlock Detection");
-        Timer t = new Timer(true);
-        t.schedule(new TimerTask() {
+        TaskScheduler.scheduleAtFixedRate("DeadlockDetection", new Runnable() {
 
             @Override
             public void run() {
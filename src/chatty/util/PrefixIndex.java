@@ -0,0 +1,102 @@
+
+package chatty.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Items stored by a String key, which can be searched by a prefix of the key.
+ * The keys are kept sorted, so finding all items with a key starting with a
+ * prefix is O(log n + k) (where k is the number of matching keys), instead of
+ * having to check every key.
+ *
+ * Keys are case-sensitive, so they should be normalized (e.g. lowercase) when
+ * case-insensitive search is required. Several items can have the same key.
+ * Not thread-safe.
+ *
+ * @author tduva
+ * @param <T>
+ */
+public class PrefixIndex<T> {
+
+    private final TreeMap<String, Set<T>> data = new TreeMap<>();
+    private int size;
+
+    /**
+     * Adds an item with the given key.
+     *
+     * @param key
+     * @param item
+     * @return true if the item was added, false if the item was already added
+     * with this key
+     */
+    public boolean add(String key, T item) {
+        Set<T> items = data.get(key);
+        if (items == null) {
+            items = new LinkedHashSet<>(2);
+            data.put(key, items);
+        }
+        if (items.add(item)) {
+            size++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes the item with the given key.
+     *
+     * @param key
+     * @param item
+     * @return true if the item was removed, false if it wasn't found
+     */
+    public boolean remove(String key, T item) {
+        Set<T> items = data.get(key);
+        if (items != null && items.remove(item)) {
+            if (items.isEmpty()) {
+                data.remove(key);
+            }
+            size--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Gets all items with a key starting with the given prefix, in order of
+     * the keys.
+     *
+     * @param prefix The prefix (an empty prefix returns all items)
+     * @return A new List with the items
+     */
+    public List<T> find(String prefix) {
+        List<T> result = new ArrayList<>();
+        for (Map.Entry<String, Set<T>> entry : data.tailMap(prefix, true).entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                break;
+            }
+            result.addAll(entry.getValue());
+        }
+        return result;
+    }
+
+    public void clear() {
+        data.clear();
+        size = 0;
+    }
+
+    /**
+     * The number of items (with different keys or different items with the
+     * same key).
+     *
+     * @return
+     */
+    public int size() {
+        return size;
+    }
+
+}
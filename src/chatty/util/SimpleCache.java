@@ -4,6 +4,8 @@ package chatty.util;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -57,6 +59,27 @@ public class SimpleCache {
         }
     }
     
+    /**
+     * Saves the contents of the given UTF-8 encoded file into the file
+     * specified for this cache, without loading it all at once.
+     *
+     * @param source The file to copy the text from
+     * @return true if the text was saved, false if an error occured
+     */
+    public boolean save(Path source) {
+        LOGGER.info("Cache: Trying to save "+id+"..");
+        try (OutputStream output = Files.newOutputStream(file)) {
+            output.write((System.currentTimeMillis() / 1000+"\n").getBytes(CHARSET));
+            Files.copy(source, output);
+            LOGGER.info("Cache: Saved "+id+".");
+            return true;
+        }
+        catch (IOException ex) {
+            LOGGER.warning("Cache: Error saving "+id+" ["+ex+"]");
+            return false;
+        }
+    }
+    
     public String load() {
         return load(false);
     }
@@ -69,23 +92,55 @@ public class SimpleCache {
      * error occured
      */
     public String load(boolean loadEvenIfExpired) {
+        try (Reader reader = openReader(loadEvenIfExpired)) {
+            if (reader == null) {
+                return null;
+            }
+            StringBuilder data = new StringBuilder();
+            char[] buffer = new char[8192];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                data.append(buffer, 0, read);
+            }
+            return data.toString();
+        } catch (IOException ex) {
+            LOGGER.warning("Cache: Error loading "+id+" ["+ex+"]");
+            return null;
+        }
+    }
+    
+    /**
+     * Opens the file specified for this cache for reading the cached text,
+     * so it can be processed while reading instead of loading it all at
+     * once.
+     *
+     * @param loadEvenIfExpired
+     * @return A Reader positioned at the start of the cached text, which has
+     * to be closed by the caller, or null if the file isn't recent enough or
+     * an error occured
+     */
+    public Reader openReader(boolean loadEvenIfExpired) {
         LOGGER.info("Cache: Trying to load "+id+"..");
-        try (BufferedReader reader = Files.newBufferedReader(file, CHARSET)) {
+        BufferedReader reader = null;
+        try {
+            reader = Files.newBufferedReader(file, CHARSET);
             long time = Long.parseLong(reader.readLine());
             long timePassed = (System.currentTimeMillis() / 1000) - time;
             if (!loadEvenIfExpired && timePassed > expireTime) {
                 LOGGER.info("Cache: Did not load "+id+" (expired)");
+                reader.close();
                 return null;
             }
-            StringBuilder data = new StringBuilder();
-            String line;
-            while ((line = reader.readLine()) != null) {
-                data.append(line);
-                data.append("\n");
-            }
-            return data.toString();
+            return reader;
         } catch (IOException | NumberFormatException ex) {
             LOGGER.warning("Cache: Error loading "+id+" ["+ex+"]");
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ex2) {
+                    // Nothing more to do
+                }
+            }
             return null;
         }
     }
@@ -0,0 +1,346 @@
+
+package chatty.util;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the steps of starting the program and records how long each of them
+ * took.
+ *
+ * <p>There are three kinds of steps:</p>
+ * <ul>
+ * <li>Phases, which are performed on the calling thread and marked as done
+ * with {@link #phase(String)}, e.g. loading the settings.</li>
+ * <li>Loaders, which are added with
+ * {@link #add(String, Runnable, String...)} and performed on a few threads
+ * at the same time, in the background after {@link #start()}, until
+ * {@link #await(String)} waits for them. A loader only starts when the
+ * loaders it depends on are done.</li>
+ * <li>Deferred tasks, which are added with {@link #defer(String, Runnable)}
+ * and only performed once {@link #runDeferred(String)} is called (e.g. when
+ * the first channel has been joined), so they don't slow down the start.</li>
+ * </ul>
+ *
+ * <p>An exception thrown by a loader or deferred task is logged and doesn't
+ * stop other steps (including the ones depending on it).</p>
+ *
+ * @author tduva
+ */
+public class Startup {
+
+    private static final Logger LOGGER = Logger.getLogger(Startup.class.getName());
+
+    private final ThreadPoolExecutor executor;
+    private final long startTime = System.currentTimeMillis();
+
+    private final List<Step> steps = new ArrayList<>();
+    private final Map<String, Loader> loaders = new LinkedHashMap<>();
+    private final List<Loader> running = new ArrayList<>();
+    private final List<Loader> deferred = new ArrayList<>();
+
+    private long phaseStart = startTime;
+    private long runningStart;
+    private boolean deferredStarted;
+    private String deferredReason;
+    private long deferredTime = -1;
+
+    /**
+     * Create a new instance, which will perform at most the given number of
+     * loaders or deferred tasks at the same time.
+     *
+     * @param threads The maximum number of threads
+     */
+    public Startup(int threads) {
+        executor = new ThreadPoolExecutor(threads, threads, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "Startup-"+count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Marks the phase performed on the calling thread since the previous
+     * phase (or since this was created) as done.
+     *
+     * @param name The name of the phase
+     */
+    public void phase(String name) {
+        long now = System.currentTimeMillis();
+        synchronized(this) {
+            addStep(name, "", phaseStart, now, null);
+            phaseStart = now;
+        }
+    }
+
+    /**
+     * Adds a loader, which is performed by the next {@link #start()}.
+     *
+     * @param name The unique name of the loader
+     * @param task What to perform
+     * @param dependencies The names of loaders added since the last
+     * {@link #start()} that have to be done before this one can start
+     * @throws IllegalArgumentException If the name is already used or a
+     * dependency hasn't been added yet
+     */
+    public synchronized void add(String name, Runnable task, String... dependencies) {
+        if (loaders.containsKey(name)) {
+            throw new IllegalArgumentException("Duplicate loader: "+name);
+        }
+        List<Loader> required = new ArrayList<>();
+        for (String dependency : dependencies) {
+            Loader loader = loaders.get(dependency);
+            if (loader == null) {
+                throw new IllegalArgumentException("Unknown dependency of "
+                        +name+": "+dependency);
+            }
+            required.add(loader);
+        }
+        loaders.put(name, new Loader(name, task, required));
+    }
+
+    /**
+     * Starts performing all previously added loaders, at the same time where
+     * possible, without waiting for them.
+     */
+    public void start() {
+        List<Loader> ready = new ArrayList<>();
+        synchronized(this) {
+            if (running.isEmpty()) {
+                runningStart = System.currentTimeMillis();
+            }
+            for (Loader loader : loaders.values()) {
+                running.add(loader);
+                if (loader.dependencies.isEmpty()) {
+                    ready.add(loader);
+                }
+            }
+            loaders.clear();
+        }
+        for (Loader loader : ready) {
+            submit(loader);
+        }
+    }
+
+    /**
+     * Waits until all started loaders are done. The time from the first
+     * {@link #start()} until all loaders are done is recorded as a phase.
+     *
+     * @param name The name of the phase
+     */
+    public void await(String name) {
+        List<Loader> toWait;
+        synchronized(this) {
+            toWait = new ArrayList<>(running);
+            running.clear();
+        }
+        boolean interrupted = false;
+        for (Loader loader : toWait) {
+            synchronized(loader) {
+                while (!loader.done) {
+                    try {
+                        loader.wait();
+                    } catch (InterruptedException ex) {
+                        interrupted = true;
+                    }
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        long now = System.currentTimeMillis();
+        synchronized(this) {
+            addStep(name, "", runningStart, now, null);
+            phaseStart = now;
+        }
+    }
+
+    /**
+     * Adds a task that is performed once {@link #runDeferred(String)} has
+     * been called, or right away if that has already happened.
+     *
+     * @param name The name of the task
+     * @param task What to perform
+     */
+    public void defer(String name, Runnable task) {
+        Loader loader = new Loader(name, task, new ArrayList<Loader>());
+        synchronized(this) {
+            if (!deferredStarted) {
+                deferred.add(loader);
+                return;
+            }
+        }
+        submit(loader);
+    }
+
+    /**
+     * Starts performing the deferred tasks without waiting for them. Only
+     * the first call has an effect.
+     *
+     * @param reason Why the tasks are performed now (e.g. "joined"), shown in
+     * the statistics
+     */
+    public void runDeferred(String reason) {
+        List<Loader> toRun;
+        synchronized(this) {
+            if (deferredStarted) {
+                return;
+            }
+            deferredStarted = true;
+            deferredReason = reason;
+            deferredTime = System.currentTimeMillis() - startTime;
+            toRun = new ArrayList<>(deferred);
+            deferred.clear();
+        }
+        LOGGER.info("Startup: Running "+toRun.size()+" deferred tasks ("+reason+")");
+        for (Loader loader : toRun) {
+            submit(loader);
+        }
+    }
+
+    /**
+     * Starts performing the deferred tasks after the given delay, unless
+     * they have already been started before that.
+     *
+     * @param delay The delay in milliseconds
+     */
+    public void runDeferredAfter(long delay) {
+        TaskScheduler.schedule("Startup", new Runnable() {
+
+            @Override
+            public void run() {
+                runDeferred("timeout");
+            }
+        }, delay);
+    }
+
+    private void submit(final Loader loader) {
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                perform(loader);
+            }
+        });
+    }
+
+    private void perform(Loader loader) {
+        long start = System.currentTimeMillis();
+        String error = null;
+        try {
+            loader.task.run();
+        } catch (Throwable ex) {
+            LOGGER.log(Level.WARNING, "Startup: Error performing "+loader.name, ex);
+            error = ex.toString();
+        }
+        long end = System.currentTimeMillis();
+        List<Loader> ready = new ArrayList<>();
+        synchronized(this) {
+            addStep(loader.name, Thread.currentThread().getName(), start, end, error);
+            for (Loader dependent : loader.dependents) {
+                dependent.dependencies.remove(loader);
+                if (dependent.dependencies.isEmpty()) {
+                    ready.add(dependent);
+                }
+            }
+        }
+        synchronized(loader) {
+            loader.done = true;
+            loader.notifyAll();
+        }
+        for (Loader dependent : ready) {
+            submit(dependent);
+        }
+    }
+
+    private void addStep(String name, String thread, long start, long end, String error) {
+        steps.add(new Step(name, thread, start - startTime, end - start, error));
+    }
+
+    /**
+     * The recorded steps in the order they were done, with when they started
+     * (relative to when this was created) and how long they took.
+     *
+     * @return A multi-line String
+     */
+    public synchronized String getStats() {
+        StringBuilder b = new StringBuilder();
+        b.append(String.format("Startup: %dms, deferred tasks: %s",
+                phaseStart - startTime,
+                deferredStarted
+                        ? "started at "+deferredTime+"ms ("+deferredReason+")"
+                        : deferred.size()+" waiting"));
+        for (Step step : steps) {
+            b.append("\n").append(step);
+        }
+        return b.toString();
+    }
+
+    private static class Loader {
+
+        private final String name;
+        private final Runnable task;
+
+        /**
+         * Loaders that aren't done yet and have to be done before this one.
+         */
+        private final List<Loader> dependencies;
+
+        private final List<Loader> dependents = new ArrayList<>();
+
+        private boolean done;
+
+        Loader(String name, Runnable task, List<Loader> dependencies) {
+            this.name = name;
+            this.task = task;
+            this.dependencies = dependencies;
+            for (Loader dependency : dependencies) {
+                dependency.dependents.add(this);
+            }
+        }
+    }
+
+    private static class Step {
+
+        private final String name;
+        private final String thread;
+        private final long start;
+        private final long duration;
+        private final String error;
+
+        Step(String name, String thread, long start, long duration, String error) {
+            this.name = name;
+            this.thread = thread;
+            this.start = start;
+            this.duration = duration;
+            this.error = error;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %dms (at %dms%s)%s",
+                    name, duration, start,
+                    thread.isEmpty() ? "" : ", "+thread,
+                    error == null ? "" : " Error: "+error);
+        }
+    }
+
+}
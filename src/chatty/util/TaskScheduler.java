@@ -0,0 +1,202 @@
+
+package chatty.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs delayed and repeated tasks on a few shared threads, instead of every
+ * feature creating its own {@code java.util.Timer} (and thus its own thread).
+ *
+ * Each task belongs to a named group, which is used for the statistics (how
+ * often and how long the tasks of a group ran). Since the threads are shared,
+ * tasks should be short and not block for long (e.g. start a request in
+ * another thread instead of waiting for it).
+ *
+ * An exception thrown by a task is logged and doesn't stop repeated tasks
+ * (unlike with a {@code java.util.Timer}, where it would end the timer).
+ *
+ * @author tduva
+ */
+public class TaskScheduler {
+
+    private static final Logger LOGGER = Logger.getLogger(TaskScheduler.class.getName());
+
+    private static final int THREADS = 4;
+
+    private static final ScheduledThreadPoolExecutor executor;
+
+    private static final Map<String, Stats> stats = new TreeMap<>();
+
+    static {
+        executor = new ScheduledThreadPoolExecutor(THREADS, new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "TaskScheduler-"+count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Runs the task once after the given delay.
+     *
+     * @param group The name of the group the task belongs to
+     * @param task The task
+     * @param delay The delay in milliseconds
+     * @return The handle to cancel the task
+     */
+    public static Task schedule(String group, Runnable task, long delay) {
+        return new Task(executor.schedule(wrap(group, task),
+                delay, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Runs the task repeatedly, first after the given delay and then with the
+     * given period between the start of each run.
+     *
+     * @param group The name of the group the task belongs to
+     * @param task The task
+     * @param delay The delay before the first run, in milliseconds
+     * @param period The time between runs, in milliseconds
+     * @return The handle to cancel the task
+     */
+    public static Task scheduleAtFixedRate(String group, Runnable task,
+            long delay, long period) {
+        return new Task(executor.scheduleAtFixedRate(wrap(group, task),
+                delay, period, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Runs the task repeatedly, first after the given delay and then with the
+     * given delay between the end of a run and the start of the next one.
+     *
+     * @param group The name of the group the task belongs to
+     * @param task The task
+     * @param delay The delay before the first run, in milliseconds
+     * @param period The time between runs, in milliseconds
+     * @return The handle to cancel the task
+     */
+    public static Task scheduleWithFixedDelay(String group, Runnable task,
+            long delay, long period) {
+        return new Task(executor.scheduleWithFixedDelay(wrap(group, task),
+                delay, period, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Statistics of all groups that have run at least one task.
+     *
+     * @return A multi-line String
+     */
+    public static String getStats() {
+        StringBuilder b = new StringBuilder();
+        b.append(String.format("Scheduled: %d, Threads: %d (active %d)",
+                executor.getQueue().size(), executor.getPoolSize(),
+                executor.getActiveCount()));
+        synchronized(stats) {
+            for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+                b.append("\n").append(entry.getKey()).append(": ")
+                        .append(entry.getValue());
+            }
+        }
+        return b.toString();
+    }
+
+    private static Runnable wrap(final String group, final Runnable task) {
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                long start = System.nanoTime();
+                boolean error = false;
+                try {
+                    task.run();
+                } catch (Exception ex) {
+                    error = true;
+                    LOGGER.log(Level.WARNING, "Error running task ("+group+")", ex);
+                }
+                addStats(group, System.nanoTime() - start, error);
+            }
+        };
+    }
+
+    private static void addStats(String group, long time, boolean error) {
+        synchronized(stats) {
+            Stats groupStats = stats.get(group);
+            if (groupStats == null) {
+                groupStats = new Stats();
+                stats.put(group, groupStats);
+            }
+            groupStats.add(time, error);
+        }
+    }
+
+    /**
+     * A handle for a scheduled task.
+     */
+    public static class Task {
+
+        private final ScheduledFuture<?> future;
+
+        private Task(ScheduledFuture<?> future) {
+            this.future = future;
+        }
+
+        /**
+         * Prevents the task from running again. Does not interrupt the task if
+         * it is currently running.
+         */
+        public void cancel() {
+            future.cancel(false);
+        }
+
+        /**
+         * Whether the task has finished running (for tasks that only run
+         * once) or has been canceled.
+         *
+         * @return
+         */
+        public boolean isDone() {
+            return future.isDone();
+        }
+    }
+
+    private static class Stats {
+
+        private int runs;
+        private int errors;
+        private long totalTime;
+        private long maxTime;
+
+        void add(long time, boolean error) {
+            runs++;
+            if (error) {
+                errors++;
+            }
+            totalTime += time;
+            maxTime = Math.max(maxTime, time);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d runs (%d errors), %dms total, %.2fms avg, %dms max",
+                    runs, errors,
+                    TimeUnit.NANOSECONDS.toMillis(totalTime),
+                    totalTime / 1000000.0 / runs,
+                    TimeUnit.NANOSECONDS.toMillis(maxTime));
+        }
+    }
+
+}
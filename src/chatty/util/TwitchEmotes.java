@@ -3,13 +3,12 @@ package chatty.util;
 
 import chatty.Chatty;
 import chatty.Helper;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.logging.Level;
 import java.util.logging.Logger;
-import org.json.simple.JSONArray;
-import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
 /**
@@ -40,17 +39,23 @@ public class TwitchEmotes {
     }
     
     public synchronized void requestEmotesets(boolean forcedUpdate) {
-        String cached = null;
-        if (!forcedUpdate) {
-            cached = cache.load();
-        }
-        if (cached != null) {
-            loadEmotesets(cached);
-        } else {
+        if (forcedUpdate || !loadEmotesetsFromCache()) {
             requestEmotesetsFromApi();
         }
     }
     
+    private boolean loadEmotesetsFromCache() {
+        try (Reader reader = cache.openReader(false)) {
+            if (reader != null) {
+                loadEmotesets(reader);
+                return true;
+            }
+        } catch (IOException ex) {
+            LOGGER.warning("Error reading emotesets: "+ex);
+        }
+        return false;
+    }
+    
     private void requestEmotesetsFromApi() {
         if (pendingRequest) {
             return;
@@ -59,44 +64,49 @@ public class TwitchEmotes {
             
             @Override
             public void requestResult(String result, int responseCode) {
-                if (responseCode == 200) {
-                    if (loadEmotesets(result) > 0) {
+                if (responseCode == 200 && result != null) {
+                    if (loadEmotesets(new StringReader(result)) > 0) {
                         cache.save(result);
                     }
                 }
                 pendingRequest = false;
             }
         };
-        new Thread(request).start();
+        request.async();
         pendingRequest = true;
     }
     
-    private int loadEmotesets(String json) {
+    private int loadEmotesets(Reader json) {
         Map<Integer, String> emotesetStreams = parseEmotesets(json);
         LOGGER.info("Found " + emotesetStreams.size() + " emotesets");
         listener.emotesetsReceived(emotesetStreams);
         return emotesetStreams.size();
     }
     
-    private Map<Integer, String> parseEmotesets(String json) {
-        Map<Integer, String> emotesetStreams = new HashMap<>();
-        if (json == null) {
-            return emotesetStreams;
-        }
-        JSONParser parser = new JSONParser();
+    /**
+     * Parses the emotesets while reading, without keeping the whole JSON in
+     * memory.
+     * 
+     * @param json
+     * @return The emotesets with their stream, empty if an error occured
+     */
+    private Map<Integer, String> parseEmotesets(Reader json) {
+        final Map<Integer, String> emotesetStreams = new HashMap<>();
         try {
-            JSONObject root = (JSONObject)parser.parse(json);
-            JSONObject sets = (JSONObject)root.get("sets");
-            for (Object key : sets.keySet()) {
-                try {
-                    Integer emoteset = Integer.parseInt((String)key);
-                    String stream = Helper.toStream((String)sets.get(key));
-                    emotesetStreams.put(emoteset, stream);
-                } catch (ClassCastException | NumberFormatException | NullPointerException ex) {
-                    LOGGER.warning("Error parsing emoteset: "+key);
+            JSONRecordReader.read(json, new JSONRecordReader.RecordListener() {
+
+                @Override
+                public void record(String key, Object value) {
+                    try {
+                        Integer emoteset = Integer.parseInt(key);
+                        String stream = Helper.toStream((String)value);
+                        emotesetStreams.put(emoteset, stream);
+                    } catch (ClassCastException | NumberFormatException | NullPointerException ex) {
+                        LOGGER.warning("Error parsing emoteset: "+key);
+                    }
                 }
-            }
-        } catch (ParseException | ClassCastException | NullPointerException ex) {
+            }, "sets");
+        } catch (ParseException | IOException ex) {
             LOGGER.warning("Error parsing emotesets: "+ex);
         }
         return emotesetStreams;
@@ -1,32 +1,29 @@
 
 package chatty.util;
 
-import chatty.Chatty;
+import chatty.util.http.HttpClient;
+import chatty.util.http.HttpRequest;
+import chatty.util.http.HttpResponse;
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.Charset;
+import java.io.StringReader;
 import java.util.logging.Logger;
-import java.util.zip.GZIPInputStream;
 
 /**
  * General URL Request that just reads the whole file into a String.
  * 
+ * <p>The request is performed by {@link HttpClient}, which means identical
+ * requests that are made at the same time are only performed once.</p>
+ * 
  * @author tduva
  */
 public class UrlRequest implements Runnable {
     
     private static final Logger LOGGER = Logger.getLogger(UrlRequest.class.getName());
     
-    private static final Charset CHARSET = Charset.forName("UTF-8");
     private static final int CONNECT_TIMEOUT = 10000;
     private static final int READ_TIMEOUT = 10000;
     
-    private static final String VERSION = "Chatty "+Chatty.VERSION;
-    
     private String url;
     private int responseCode;
     private String result;
@@ -78,6 +75,15 @@ public class UrlRequest implements Runnable {
         requestResult(result, responseCode);
     }
     
+    /**
+     * Runs this request on the shared request threads of {@link HttpClient}.
+     * The result is given to {@link #requestResult(String, int)} in that
+     * thread.
+     */
+    public void async() {
+        HttpClient.submit(this);
+    }
+    
     /**
      * Override this to get the result of the request. The {@code result}
      * contains all the text returned by the request (may be null if the request
@@ -100,49 +106,37 @@ public class UrlRequest implements Runnable {
      * @return
      */
     private void getUrl(String targetUrl) {
-        HttpURLConnection connection = null;
-        Exception exception = null;
-        try {
-            URL url = new URL(targetUrl);
-            connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestProperty("User-Agent", VERSION);
-            connection.setRequestProperty("Accept-Encoding", "gzip");
-            
-            connection.setConnectTimeout(CONNECT_TIMEOUT);
-            connection.setReadTimeout(READ_TIMEOUT);
-            encoding = connection.getContentEncoding();
-            
-            // Read response
-            InputStream input = connection.getInputStream();
-            if ("gzip".equals(connection.getContentEncoding())) {
-                input = new GZIPInputStream(input);
-            }
-
-            StringBuilder response = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(input, CHARSET))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    response.append(line);
-                    response.append("\n");
-                }
+        HttpRequest request = new HttpRequest(targetUrl);
+        request.setTimeouts(CONNECT_TIMEOUT, READ_TIMEOUT);
+        request.setStatsKey(label.isEmpty() ? "UrlRequest" : label.trim());
+        HttpResponse response = HttpClient.execute(request);
+        responseCode = response.getResponseCode();
+        encoding = response.getEncoding();
+        if (response.getText() != null) {
+            result = toLines(response.getText());
+        }
+        if (responseCode != 200) {
+            LOGGER.warning(label+"Request Error [" + targetUrl + "] ("+responseCode+", " + response.getError() + ")");
+        }
+    }
+    
+    /**
+     * Normalizes the linebreaks, with a linebreak after each line.
+     * 
+     * @param text
+     * @return 
+     */
+    private static String toLines(String text) {
+        StringBuilder b = new StringBuilder(text.length() + 1);
+        try (BufferedReader reader = new BufferedReader(new StringReader(text))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                b.append(line);
+                b.append("\n");
             }
-            result = response.toString();
         } catch (IOException ex) {
-            exception = ex;
-        } finally {
-            if (connection != null) {
-                try {
-                    responseCode = connection.getResponseCode();
-                    connection.disconnect();
-                    if (responseCode != 200) {
-                        LOGGER.warning(label+"Request Error [" + url + "] ("+responseCode+", " + exception + ")");
-                    }
-                } catch (IOException ex) {
-                    LOGGER.warning(label+"Request Error [" + url + "] (" + exception + ")");
-                }
-            } else {
-                LOGGER.warning(label+"Request Error [" + url + "] (" + exception + ")");
-            }
+            // Can't happen when reading from a String
         }
+        return b.toString();
     }
 }
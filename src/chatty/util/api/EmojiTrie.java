@@ -0,0 +1,207 @@
+
+package chatty.util.api;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Finds Emoji in a text in a single pass, by looking up the code points at
+ * each position in a trie of all Emoji codes and using the longest match.
+ *
+ * Sequences like ZWJ sequences, skin-tone modifiers and keycaps are simply
+ * longer paths in the trie, so they are preferred to their individual parts if
+ * they are known. Variation selectors (U+FE0E, U+FE0F) are optional, both in
+ * the Emoji codes and in the text, since they are often omitted or added
+ * inconsistently. If they directly follow an Emoji in the text they are
+ * included in the match.
+ *
+ * The trie can't be changed after creation, so it can be used by several
+ * threads at the same time.
+ *
+ * @author tduva
+ */
+public class EmojiTrie {
+
+    public static final EmojiTrie EMPTY = new EmojiTrie(null);
+
+    private static final int VS15 = 0xFE0E;
+    private static final int VS16 = 0xFE0F;
+
+    private final Node root = new Node();
+
+    /**
+     * Text without any characters with at least this value can't contain any
+     * Emoji (each Emoji code has at least one character this high).
+     */
+    private final char threshold;
+
+    /**
+     * Creates a new trie for the given Emoji.
+     *
+     * @param emoji The Emoji, may be null (creates an empty trie)
+     */
+    public EmojiTrie(Collection<Emoticon> emoji) {
+        char min = Character.MAX_VALUE;
+        if (emoji != null) {
+            for (Emoticon emote : emoji) {
+                char max = add(emote);
+                if (max < min) {
+                    min = max;
+                }
+            }
+        }
+        threshold = min;
+    }
+
+    /**
+     * Adds the Emoji to the trie.
+     *
+     * @param emote
+     * @return The highest character of the code, or Character.MAX_VALUE if it
+     * was not added
+     */
+    private char add(Emoticon emote) {
+        String code = emote.code;
+        Node node = root;
+        char max = 0;
+        for (int i = 0; i < code.length(); i += Character.charCount(code.codePointAt(i))) {
+            int codePoint = code.codePointAt(i);
+            if (codePoint == VS15 || codePoint == VS16) {
+                continue;
+            }
+            node = node.getOrCreate(codePoint);
+            max = (char) Math.max(max, code.charAt(i));
+            if (Character.charCount(codePoint) == 2) {
+                max = (char) Math.max(max, code.charAt(i + 1));
+            }
+        }
+        if (node == root) {
+            return Character.MAX_VALUE;
+        }
+        // Prefer the code with the variation selector, if both exist
+        if (node.emote == null || node.emote.code.length() < code.length()) {
+            node.emote = emote;
+        }
+        return max;
+    }
+
+    public boolean isEmpty() {
+        return root.keys.length == 0;
+    }
+
+    /**
+     * Fast check if the text may contain any Emoji at all. If this returns
+     * false, then {@link #find(String, Listener)} will not find anything.
+     *
+     * @param text
+     * @return
+     */
+    public boolean mayContainEmoji(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= threshold) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds all Emoji in the given text, from left to right, preferring the
+     * longest Emoji at each position. Found Emoji don't overlap.
+     *
+     * @param text The text to search in
+     * @param listener Receives the found Emoji
+     */
+    public void find(String text, Listener listener) {
+        if (isEmpty() || !mayContainEmoji(text)) {
+            return;
+        }
+        int i = 0;
+        while (i < text.length()) {
+            // Find the longest Emoji starting at the current position
+            Node node = root;
+            Emoticon found = null;
+            int foundEnd = -1;
+            int pos = i;
+            while (pos < text.length()) {
+                int codePoint = text.codePointAt(pos);
+                int next = pos + Character.charCount(codePoint);
+                if (codePoint == VS15 || codePoint == VS16) {
+                    if (node == root) {
+                        break;
+                    }
+                    // Optional, so just include it in the current match
+                    if (foundEnd == pos) {
+                        foundEnd = next;
+                    }
+                    pos = next;
+                    continue;
+                }
+                node = node.get(codePoint);
+                if (node == null) {
+                    break;
+                }
+                if (node.emote != null) {
+                    found = node.emote;
+                    foundEnd = next;
+                }
+                pos = next;
+            }
+            if (found != null) {
+                listener.found(found, i, foundEnd);
+                i = foundEnd;
+            } else {
+                i += Character.charCount(text.codePointAt(i));
+            }
+        }
+    }
+
+    public interface Listener {
+
+        /**
+         * An Emoji has been found.
+         *
+         * @param emote The Emoji
+         * @param start The start index in the text
+         * @param end The end index in the text (exclusive)
+         */
+        void found(Emoticon emote, int start, int end);
+    }
+
+    private static class Node {
+
+        private static final int[] NO_KEYS = new int[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        // Sorted code points, for binary search
+        private int[] keys = NO_KEYS;
+        private Node[] children = NO_CHILDREN;
+        private Emoticon emote;
+
+        Node get(int codePoint) {
+            int index = Arrays.binarySearch(keys, codePoint);
+            return index < 0 ? null : children[index];
+        }
+
+        Node getOrCreate(int codePoint) {
+            int index = Arrays.binarySearch(keys, codePoint);
+            if (index >= 0) {
+                return children[index];
+            }
+            index = -index - 1;
+            int[] newKeys = new int[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(children, 0, newChildren, 0, index);
+            System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+            System.arraycopy(children, index, newChildren, index + 1, children.length - index);
+            Node node = new Node();
+            newKeys[index] = codePoint;
+            newChildren[index] = node;
+            keys = newKeys;
+            children = newChildren;
+            return node;
+        }
+    }
+
+}
@@ -0,0 +1,399 @@
+
+package chatty.util.api;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * All Twitch emotes (id, code and emoteset) in a compact binary file, which
+ * is memory-mapped instead of keeping an Emoticon object for every emote in
+ * memory. Emoticon objects are only created when an emote is requested (by
+ * id or emoteset) and then kept, so the same object is always returned for
+ * the same emote.
+ *
+ * <p>File format (all values big-endian):</p>
+ * <pre>
+ * int magic, int version, int count
+ * count * (int id, int emoteset, int codeOffset), sorted by id
+ * count * int recordIndex, sorted by emoteset (then id)
+ * codes: (unsigned short length, UTF-8 bytes), codeOffset is relative to the
+ * start of the codes
+ * </pre>
+ *
+ * @author tduva
+ */
+public class EmoteCatalog {
+
+    private static final Logger LOGGER = Logger.getLogger(EmoteCatalog.class.getName());
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private static final int MAGIC = 0x43455443;
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 12;
+    private static final int RECORD_SIZE = 12;
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final ByteBuffer data;
+    private final int count;
+    private final int setIndexStart;
+    private final int codesStart;
+
+    /**
+     * Emotes that have already been created, by record index.
+     */
+    private final Map<Integer, Emoticon> created = new HashMap<>();
+
+    private EmoteCatalog(ByteBuffer data, int count) {
+        this.data = data;
+        this.count = count;
+        this.setIndexStart = HEADER_SIZE + count * RECORD_SIZE;
+        this.codesStart = setIndexStart + count * 4;
+    }
+
+    /**
+     * Opens the catalog in the given file. Temporary files left over from
+     * previous writes are deleted.
+     *
+     * @param file
+     * @return The catalog
+     * @throws IOException If the file can't be read or is not a valid catalog
+     */
+    public static EmoteCatalog open(Path file) throws IOException {
+        deleteTempFiles(file);
+        return map(file);
+    }
+
+    private static EmoteCatalog map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (data.capacity() < HEADER_SIZE
+                    || data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+                throw new IOException("Invalid emote catalog");
+            }
+            int count = data.getInt(8);
+            if (count < 0 || data.capacity() < HEADER_SIZE + (long) count * (RECORD_SIZE + 4)) {
+                throw new IOException("Invalid emote catalog size");
+            }
+            return new EmoteCatalog(data, count);
+        }
+    }
+
+    /**
+     * Deletes the temporary files written for the given file. Files that are
+     * still in use (e.g. mapped on Windows) can't be deleted and are left for
+     * next time.
+     *
+     * @param file
+     */
+    private static void deleteTempFiles(Path file) {
+        Path dir = file.toAbsolutePath().getParent();
+        String prefix = getTempPrefix(file);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path temp : stream) {
+                String name = temp.getFileName().toString();
+                if (name.startsWith(prefix) && name.endsWith(TEMP_SUFFIX)) {
+                    try {
+                        Files.delete(temp);
+                    } catch (IOException ex) {
+                        LOGGER.info("Could not delete old emote catalog: "+ex);
+                    }
+                }
+            }
+        } catch (IOException ex) {
+            LOGGER.warning("Could not delete old emote catalogs: "+ex);
+        }
+    }
+
+    private static String getTempPrefix(Path file) {
+        return file.getFileName()+".";
+    }
+
+    /**
+     * The number of emotes in the catalog.
+     *
+     * @return
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * The number of emotes that Emoticon objects have been created for.
+     *
+     * @return
+     */
+    public synchronized int getCreatedCount() {
+        return created.size();
+    }
+
+    /**
+     * Gets the emote with the given id.
+     *
+     * @param id The Twitch emote id
+     * @return The Emoticon, or null if the id isn't in the catalog
+     */
+    public synchronized Emoticon getById(int id) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midId = getId(mid);
+            if (midId < id) {
+                low = mid + 1;
+            } else if (midId > id) {
+                high = mid - 1;
+            } else {
+                return getEmote(mid);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets all emotes in the given emoteset.
+     *
+     * @param emoteset The emoteset
+     * @return A new List of the emotes (sorted by id), may be empty
+     */
+    public synchronized List<Emoticon> getByEmoteset(int emoteset) {
+        // Find first entry with the emoteset
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getEmoteset(getSetIndexEntry(mid)) < emoteset) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        List<Emoticon> result = new ArrayList<>();
+        for (int i = low; i < count; i++) {
+            int record = getSetIndexEntry(i);
+            if (getEmoteset(record) != emoteset) {
+                break;
+            }
+            result.add(getEmote(record));
+        }
+        return result;
+    }
+
+    /**
+     * Gets all emotes with the given code. This has to check every emote, so
+     * it should only be used occasionally.
+     *
+     * @param code The emote code (case-sensitive)
+     * @return A new List of the emotes, may be empty
+     */
+    public synchronized List<Emoticon> findByCode(String code) {
+        byte[] search = code.getBytes(CHARSET);
+        List<Emoticon> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            int offset = getCodeOffset(i);
+            if (getCodeLength(offset) == search.length
+                    && codeEquals(offset + 2, search)) {
+                result.add(getEmote(i));
+            }
+        }
+        return result;
+    }
+
+    private Emoticon getEmote(int record) {
+        Emoticon emote = created.get(record);
+        if (emote == null) {
+            emote = createEmote(getId(record), getCode(record), getEmoteset(record));
+            created.put(record, emote);
+        }
+        return emote;
+    }
+
+    private int getId(int record) {
+        return data.getInt(HEADER_SIZE + record * RECORD_SIZE);
+    }
+
+    private int getEmoteset(int record) {
+        return data.getInt(HEADER_SIZE + record * RECORD_SIZE + 4);
+    }
+
+    private int getCodeOffset(int record) {
+        return codesStart + data.getInt(HEADER_SIZE + record * RECORD_SIZE + 8);
+    }
+
+    private int getSetIndexEntry(int index) {
+        return data.getInt(setIndexStart + index * 4);
+    }
+
+    private int getCodeLength(int offset) {
+        return data.getShort(offset) & 0xFFFF;
+    }
+
+    private boolean codeEquals(int offset, byte[] search) {
+        for (int i = 0; i < search.length; i++) {
+            if (data.get(offset + i) != search[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private String getCode(int record) {
+        int offset = getCodeOffset(record);
+        byte[] bytes = new byte[getCodeLength(offset)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = data.get(offset + 2 + i);
+        }
+        return new String(bytes, CHARSET);
+    }
+
+    /**
+     * Creates a Twitch emote with the given values.
+     *
+     * @param id
+     * @param code
+     * @param emoteset
+     * @return
+     */
+    static Emoticon createEmote(int id, String code, int emoteset) {
+        String url = Emoticon.getTwitchEmoteUrlById(id, 1);
+        Emoticon.Builder b = new Emoticon.Builder(Emoticon.Type.TWITCH, code, url);
+        b.setEmoteset(emoteset);
+        b.setNumericId(id);
+        return b.build();
+    }
+
+    /**
+     * Collects emotes and writes them into a catalog file.
+     */
+    public static class Builder {
+
+        private int[] ids = new int[1024];
+        private int[] emotesets = new int[1024];
+        private String[] codes = new String[1024];
+        private int size;
+
+        /**
+         * Adds an emote. If an emote with the same id was already added, the
+         * one added last is used.
+         *
+         * @param id The Twitch emote id
+         * @param code The emote code
+         * @param emoteset The emoteset, {@link Emoticon#SET_UNDEFINED} if none
+         */
+        public void add(int id, String code, int emoteset) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                emotesets = Arrays.copyOf(emotesets, size * 2);
+                codes = Arrays.copyOf(codes, size * 2);
+            }
+            ids[size] = id;
+            emotesets[size] = emoteset;
+            codes[size] = code;
+            size++;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Writes the catalog to the given file and opens it.
+         *
+         * <p>The file is first written to a new temporary file, which then
+         * replaces the given file. If the file can't be replaced (e.g. because
+         * it is still mapped on Windows), the temporary file is used
+         * instead. Since each write uses a different temporary file, a
+         * temporary file that is in use doesn't prevent further writes. Old
+         * temporary files are deleted when possible.</p>
+         *
+         * @param file
+         * @return The opened catalog
+         * @throws IOException If writing or opening failed
+         */
+        public EmoteCatalog write(Path file) throws IOException {
+            // Sort by id, keeping the order added for duplicates
+            long[] byId = new long[size];
+            for (int i = 0; i < size; i++) {
+                byId[i] = ((long) ids[i] << 32) | i;
+            }
+            Arrays.sort(byId);
+            int[] records = new int[size];
+            int count = 0;
+            for (int i = 0; i < size; i++) {
+                int index = (int) byId[i];
+                if (i + 1 < size && ids[(int) byId[i + 1]] == ids[index]) {
+                    // Duplicate, only use last one
+                    continue;
+                }
+                records[count++] = index;
+            }
+
+            // Sort by emoteset, record index (which is sorted by id)
+            long[] bySet = new long[count];
+            for (int i = 0; i < count; i++) {
+                bySet[i] = ((long) emotesets[records[i]] << 32) | i;
+            }
+            Arrays.sort(bySet);
+
+            deleteTempFiles(file);
+            Path temp = Files.createTempFile(file.toAbsolutePath().getParent(),
+                    getTempPrefix(file), TEMP_SUFFIX);
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(count);
+                byte[][] codeBytes = new byte[count][];
+                int codeOffset = 0;
+                for (int i = 0; i < count; i++) {
+                    int index = records[i];
+                    byte[] bytes = codes[index].getBytes(CHARSET);
+                    if (bytes.length > 0xFFFF) {
+                        bytes = Arrays.copyOf(bytes, 0xFFFF);
+                    }
+                    codeBytes[i] = bytes;
+                    out.writeInt(ids[index]);
+                    out.writeInt(emotesets[index]);
+                    out.writeInt(codeOffset);
+                    codeOffset += 2 + bytes.length;
+                }
+                for (int i = 0; i < count; i++) {
+                    out.writeInt((int) bySet[i]);
+                }
+                for (int i = 0; i < count; i++) {
+                    out.writeShort(codeBytes[i].length);
+                    out.write(codeBytes[i]);
+                }
+            } catch (IOException ex) {
+                Files.deleteIfExists(temp);
+                throw ex;
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException ex) {
+                LOGGER.warning("Could not replace emote catalog, using temporary file: "+ex);
+                return map(temp);
+            }
+            return map(file);
+        }
+    }
+
+}
@@ -5,6 +5,7 @@ import chatty.Helper;
 import chatty.User;
 import chatty.util.ImageCache;
 import chatty.util.StringUtil;
+import chatty.util.gif.AnimatedImageIcon;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Graphics;
@@ -61,6 +62,12 @@ public class Emoticon {
     
     private static final Pattern NOT_WORD = Pattern.compile("[^\\w]");
     
+    /**
+     * Characters that prevent the code from being looked up as a word (regex
+     * syntax or whitespace).
+     */
+    private static final Pattern NOT_WORD_CODE = Pattern.compile("[\\\\^$.|?*+()\\[\\]{}\\s]");
+    
     /**
      * Try loading the image these many times, which will be tried if an error
      * occurs.
@@ -108,6 +115,7 @@ public class Emoticon {
     public final String urlX2;
     public final String creator;
     public final boolean isAnimated;
+    private final boolean wordCode;
     
     private String stream;
     private Set<String> infos;
@@ -332,6 +340,20 @@ public class Emoticon {
         this.infos = builder.infos;
         this.isAnimated = builder.isAnimated;
         this.subType = builder.subtype;
+        this.wordCode = !code.isEmpty() && type != Type.EMOJI
+                && !(literal && NOT_WORD.matcher(code).find())
+                && !NOT_WORD_CODE.matcher(code).find();
+    }
+    
+    /**
+     * Whether this emote is only found as a whole word that is equal to the
+     * code, which means it can be looked up by code instead of having to
+     * use the regex (see {@link EmoticonIndex}).
+     * 
+     * @return 
+     */
+    public boolean isWordCode() {
+        return wordCode;
     }
     
     private void createMatcher() {
@@ -723,7 +745,15 @@ public class Emoticon {
              * loaded according to the MediaTracker though, so check that as
              * well. Not quite sure what that means exactly though.
              */
-            if ((icon.getIconWidth() != targetSize.width
+            if (icon instanceof AnimatedImageIcon
+                    && ((AnimatedImageIcon) icon).getAnimation() != null) {
+                /**
+                 * The frames have already been decoded, so they can just be
+                 * painted at a different size.
+                 */
+                ((AnimatedImageIcon) icon).setSize(targetSize.width,
+                        targetSize.height);
+            } else if ((icon.getIconWidth() != targetSize.width
                     || icon.getIconHeight() != targetSize.height)
                     && !url.endsWith(".gif")
                     && icon.getImageLoadStatus() == MediaTracker.COMPLETE) {
@@ -824,7 +854,7 @@ public class Emoticon {
                 if (loadedIcon == null) {
                     image.setLoadingError();
                 } else {
-                    image.setImage(loadedIcon.getImage());
+                    image.setImage(loadedIcon);
                 }
                 image.setLoadingDone();
             } catch (InterruptedException | ExecutionException ex) {
@@ -905,7 +935,13 @@ public class Emoticon {
 
     public static interface EmoticonUser {
 
-        void iconLoaded();
+        /**
+         * Called on the EDT when the given image finished loading (or failed
+         * loading).
+         * 
+         * @param image The image that was loaded
+         */
+        void iconLoaded(EmoticonImage image);
     }
     
     /**
@@ -920,7 +956,7 @@ public class Emoticon {
      */
     public class EmoticonImage {
         
-        private ImageIcon icon;
+        private AnimatedImageIcon icon;
         public final float scaleFactor;
         public final int maxHeight;
         
@@ -963,6 +999,16 @@ public class Emoticon {
             return icon;
         }
         
+        /**
+         * Whether the image is currently being loaded, which means that the
+         * users will be informed when it's done.
+         * 
+         * @return 
+         */
+        public boolean isLoading() {
+            return loading;
+        }
+        
         /**
          * Get the Emoticon object this EmoticonImage is a part of.
          *
@@ -1006,8 +1052,15 @@ public class Emoticon {
             loadingError = true;
         }
         
-        private void setImage(Image image) {
-            icon.setImage(image);
+        private void setImage(ImageIcon loadedIcon) {
+            if (loadedIcon instanceof AnimatedImageIcon
+                    && ((AnimatedImageIcon) loadedIcon).getAnimation() != null) {
+                AnimatedImageIcon animated = (AnimatedImageIcon) loadedIcon;
+                icon.setAnimation(animated.getAnimation(),
+                        animated.getIconWidth(), animated.getIconHeight());
+            } else {
+                icon.setImage(loadedIcon.getImage());
+            }
         }
         
         private void setLoadedFrom(String url) {
@@ -1034,7 +1087,7 @@ public class Emoticon {
         
         private void informUsers() {
             for (EmoticonUser user : users) {
-                user.iconLoaded();
+                user.iconLoaded(this);
             }
         }
         
@@ -1043,8 +1096,8 @@ public class Emoticon {
          *
          * @return
          */
-        private ImageIcon getDefaultIcon() {
-            return new ImageIcon(getDefaultImage(false));
+        private AnimatedImageIcon getDefaultIcon() {
+            return new AnimatedImageIcon(getDefaultImage(false));
         }
         
         /**
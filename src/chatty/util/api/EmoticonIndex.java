@@ -0,0 +1,165 @@
+
+package chatty.util.api;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index for a collection of emotes, so that emotes that are only found as a
+ * whole word (separated by whitespace) can be looked up by their code, instead
+ * of running the regex of every emote over the text.
+ *
+ * Emotes that can't be found that way (actual regex, literal codes that can
+ * occur anywhere in the text, emoji) are kept in a separate list, which still
+ * has to be checked with the regex of each emote.
+ *
+ * This is not thread-safe, it should only be used from the EDT, same as the
+ * collections of emotes in {@link Emoticons}.
+ *
+ * @author tduva
+ */
+public class EmoticonIndex {
+
+    static final EmoticonIndex EMPTY = new EmoticonIndex();
+
+    private final Map<String, List<Emoticon>> byCode = new HashMap<>();
+    private final List<Emoticon> regex = new ArrayList<>();
+
+    public EmoticonIndex() {
+    }
+
+    public EmoticonIndex(Collection<Emoticon> emotes) {
+        for (Emoticon emote : emotes) {
+            add(emote);
+        }
+    }
+
+    public void add(Emoticon emote) {
+        if (emote.isWordCode()) {
+            List<Emoticon> list = byCode.get(emote.code);
+            if (list == null) {
+                list = new ArrayList<>(1);
+                byCode.put(emote.code, list);
+            }
+            list.add(emote);
+        } else {
+            regex.add(emote);
+        }
+    }
+
+    public void remove(Emoticon emote) {
+        if (emote.isWordCode()) {
+            List<Emoticon> list = byCode.get(emote.code);
+            if (list != null) {
+                list.remove(emote);
+                if (list.isEmpty()) {
+                    byCode.remove(emote.code);
+                }
+            }
+        } else {
+            regex.remove(emote);
+        }
+    }
+
+    public void clear() {
+        byCode.clear();
+        regex.clear();
+    }
+
+    /**
+     * Get the emotes that are found if the given word occurs in the text.
+     *
+     * @param word A whitespace separated word from the text
+     * @return The emotes, or null if there are none
+     */
+    public List<Emoticon> get(String word) {
+        return byCode.get(word);
+    }
+
+    /**
+     * Get the emotes that have to be searched for in the text using their
+     * regex.
+     *
+     * @return An unmodifiable list
+     */
+    public List<Emoticon> getRegexEmotes() {
+        return Collections.unmodifiableList(regex);
+    }
+
+    public boolean isEmpty() {
+        return byCode.isEmpty() && regex.isEmpty();
+    }
+
+    /**
+     * Splits the given text into words separated by whitespace (as defined by
+     * "\s" in regex), which can then be looked up in the index.
+     *
+     * @param text The text to split
+     * @return The words, with the start index of each word in the text
+     */
+    public static Words split(String text) {
+        Words words = new Words();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            if (i == text.length() || isWhitespace(text.charAt(i))) {
+                if (start != -1) {
+                    words.add(text.substring(start, i), start);
+                    start = -1;
+                }
+            } else if (start == -1) {
+                start = i;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Same characters as "\s" in regex.
+     *
+     * @param c
+     * @return
+     */
+    static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    /**
+     * Words found in a text.
+     */
+    public static class Words {
+
+        private final List<String> words = new ArrayList<>();
+        private final List<Integer> starts = new ArrayList<>();
+
+        private void add(String word, int start) {
+            words.add(word);
+            starts.add(start);
+        }
+
+        public int size() {
+            return words.size();
+        }
+
+        public String get(int index) {
+            return words.get(index);
+        }
+
+        public int getStart(int index) {
+            return starts.get(index);
+        }
+
+        /**
+         *
+         * @param index
+         * @return The end index (inclusive)
+         */
+        public int getEnd(int index) {
+            return starts.get(index) + words.get(index).length() - 1;
+        }
+    }
+
+}
@@ -3,14 +3,16 @@ package chatty.util.api;
 
 import chatty.Chatty;
 import chatty.Logging;
+import chatty.util.JSONRecordReader;
 import chatty.util.SimpleCache;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Set;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.logging.Logger;
-import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
-import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
 /**
@@ -27,6 +29,10 @@ public class EmoticonManager {
     public static final int CACHED_EMOTICONS_EXPIRE_AFTER = 60*60*24;
     
     private static final String FILE = Chatty.getCacheDirectory()+"emoticon_images";
+    private static final Path DOWNLOAD_FILE = Paths.get(FILE+".download");
+    private static final Path CATALOG_FILE = Paths.get(FILE+".catalog");
+    
+    private static final Charset CHARSET = Charset.forName("UTF-8");
     
     private final SimpleCache cache;
     private final TwitchApiResultListener listener;
@@ -37,37 +43,82 @@ public class EmoticonManager {
     }
     
     /**
-     * Tries to read the emoticons from file.
+     * Tries to read the emoticons from file. The emote catalog is used if it
+     * is up-to-date with the cached list, otherwise it is created from the
+     * cached list first.
      * 
      * @param useFileEvenIfExpired
      * @return true if emoticons were loaded, false if emoticons should be
      *  requested from the API.
      */
     protected boolean loadEmoticons(boolean useFileEvenIfExpired) {
-        String fromFile = loadEmoticonsFromFile(useFileEvenIfExpired);
-        if (fromFile != null) {
-            Set<Emoticon> parsed = parseEmoticons(fromFile);
-            if (parsed == null) {
+        EmoteCatalog catalog;
+        synchronized(cache) {
+            try (Reader reader = cache.openReader(useFileEvenIfExpired)) {
+                if (reader == null) {
+                    return false;
+                }
+                catalog = openCatalog();
+                if (catalog == null) {
+                    catalog = createCatalog(reader);
+                }
+            } catch (IOException ex) {
+                LOGGER.warning("Error reading emoticons: "+ex);
                 return false;
             }
-            listener.receivedEmoticons(parsed);
-            LOGGER.info("Using emoticons list from file."+(useFileEvenIfExpired ? " (forced)" : ""));
-            return true;
         }
-        return false;
+        if (catalog == null) {
+            return false;
+        }
+        listener.receivedTwitchEmotes(catalog);
+        LOGGER.info("Using emoticons list from file ("+catalog.size()+" emotes)."
+                +(useFileEvenIfExpired ? " (forced)" : ""));
+        return true;
     }
     
-    protected void emoticonsReceived(String result, String type) {
-        Set<Emoticon> parsed = parseEmoticons(result);
-        if (parsed != null) {
-            if (!parsed.isEmpty()) {
-                saveEmoticonsToFile(result);
+    /**
+     * The file the emoticons list should be downloaded to, before calling
+     * {@link #emoticonsReceived(boolean, String)}. The list is parsed from the
+     * file and then moved into the cache, so it never has to be in memory
+     * all at once.
+     * 
+     * @return 
+     */
+    protected Path getDownloadFile() {
+        return DOWNLOAD_FILE;
+    }
+    
+    /**
+     * The emoticons list has been downloaded to the download file.
+     * 
+     * @param success Whether the request was successful
+     * @param type "update" if it was a forced update
+     */
+    protected void emoticonsReceived(boolean success, String type) {
+        EmoteCatalog catalog = null;
+        if (success) {
+            synchronized(cache) {
+                try (Reader reader = Files.newBufferedReader(DOWNLOAD_FILE, CHARSET)) {
+                    EmoteCatalog.Builder builder = new EmoteCatalog.Builder();
+                    if (parseEmoticons(reader, builder) && builder.size() > 0) {
+                        // Save list first, so the catalog is newer
+                        cache.save(DOWNLOAD_FILE);
+                        catalog = builder.write(CATALOG_FILE);
+                    }
+                } catch (IOException ex) {
+                    LOGGER.warning("Error reading emoticons: "+ex);
+                }
             }
-            if (listener != null) {
-                listener.receivedEmoticons(parsed);
+            if (catalog != null && listener != null) {
+                listener.receivedTwitchEmotes(catalog);
             }
         }
-        if (parsed == null || parsed.isEmpty()) {
+        try {
+            Files.deleteIfExists(DOWNLOAD_FILE);
+        } catch (IOException ex) {
+            LOGGER.warning("Error deleting "+DOWNLOAD_FILE+": "+ex);
+        }
+        if (catalog == null) {
             if (!type.equals("update")) {
                 loadEmoticons(true);
             } else {
@@ -77,92 +128,106 @@ public class EmoticonManager {
     }
     
     /**
-     * Saves the given json text (which should be the list of emoticons as
-     * received from the Twitch API v2) into a file.
-     *
-     * @param json
+     * Opens the emote catalog, if it is at least as new as the cached
+     * emoticons list.
+     * 
+     * @return The catalog, or null if it is outdated or couldn't be opened
      */
-    private void saveEmoticonsToFile(String json) {
-        synchronized(cache) {
-            cache.save(json);
+    private EmoteCatalog openCatalog() {
+        try {
+            if (Files.exists(CATALOG_FILE)
+                    && Files.getLastModifiedTime(CATALOG_FILE).compareTo(
+                            Files.getLastModifiedTime(Paths.get(FILE))) >= 0) {
+                return EmoteCatalog.open(CATALOG_FILE);
+            }
+        } catch (IOException ex) {
+            LOGGER.warning("Error opening emote catalog: "+ex);
         }
+        return null;
     }
     
     /**
-     * Loads emoticons list from the file.
+     * Creates the emote catalog from the given emoticons list.
      * 
-     * @return The json as received from the Twitch API v2 or null if the file
-     * isn't recent enough or an error occured
+     * @param json
+     * @return The catalog, or null if the list couldn't be parsed
+     * @throws IOException If reading the list or writing the catalog failed
      */
-    private String loadEmoticonsFromFile(boolean loadEvenIfExpired) {
-        synchronized(cache) {
-            return cache.load(loadEvenIfExpired);
+    private EmoteCatalog createCatalog(Reader json) throws IOException {
+        EmoteCatalog.Builder builder = new EmoteCatalog.Builder();
+        if (!parseEmoticons(json, builder) || builder.size() == 0) {
+            return null;
         }
+        LOGGER.info("Creating emote catalog ("+builder.size()+" emotes)");
+        return builder.write(CATALOG_FILE);
     }
     
     /**
-     * Parses the list of emoticons from the Twitch API.
+     * Parses the list of emoticons from the Twitch API. The emoticons are
+     * parsed one by one while reading and added to the catalog builder, so
+     * the whole list doesn't have to be in memory.
      * 
      * @param json
-     * @return 
+     * @param builder The builder to add the emoticons to
+     * @return true if the list was parsed, false if an error occured
+     * @throws IOException If an error occured reading
      */
-    private Set<Emoticon> parseEmoticons(String json) {
-        Set<Emoticon> result = new HashSet<>();
-        if (json == null) {
-            return null;
-        }
-        JSONParser parser = new JSONParser();
-        int errors = 0;
+    protected static boolean parseEmoticons(Reader json,
+            final EmoteCatalog.Builder builder) throws IOException {
+        final int[] errors = new int[1];
         try {
-            JSONObject root = (JSONObject)parser.parse(json);
-            JSONArray emoticons = (JSONArray)root.get("emoticons");
-            for (Object obj : emoticons) {
-                if (obj instanceof JSONObject) {
-                    JSONObject emote_json = (JSONObject)obj;
-                    Emoticon emote = parseEmoticon(emote_json);
-                    if (emote == null) {
-                        if (errors < 10) {
-                            LOGGER.warning("Error loading emote: "+emote_json);
+            boolean found = JSONRecordReader.read(json, new JSONRecordReader.RecordListener() {
+
+                @Override
+                public void record(String key, Object value) {
+                    if (value instanceof JSONObject) {
+                        JSONObject emote_json = (JSONObject) value;
+                        if (!parseEmoticon(emote_json, builder)) {
+                            if (errors[0] < 10) {
+                                LOGGER.warning("Error loading emote: "+emote_json);
+                            }
+                            errors[0]++;
                         }
-                        errors++;
-                    } else {
-                        result.add(emote);
                     }
                 }
+            }, "emoticons");
+            if (!found) {
+                LOGGER.warning("Error parsing emoticons: No emoticons found");
+                return false;
             }
-            if (errors > 0) {
-                LOGGER.warning(errors+" emotes couldn't be loaded");
-            }
-            if (errors > 100) {
-                return null;
+            if (errors[0] > 0) {
+                LOGGER.warning(errors[0]+" emotes couldn't be loaded");
             }
-            return result;
-        } catch (ParseException | NullPointerException | ClassCastException ex) {
+            return errors[0] <= 100;
+        } catch (ParseException ex) {
             LOGGER.warning("Error parsing emoticons: "+ex);
-            return null;
+            return false;
         }
     }
     
     /**
-     * Parses an Emoticon from the given JSONObject.
+     * Parses an emoticon from the given JSONObject and adds it to the catalog
+     * builder.
      * 
      * @param emote The JSONObject containing the emoticon data
-     * @return The Emoticon object or null if an error occured
+     * @param builder The builder to add the emoticon to
+     * @return true if the emoticon was added, false if an error occured
      */
-    private Emoticon parseEmoticon(JSONObject emote) {
+    private static boolean parseEmoticon(JSONObject emote, EmoteCatalog.Builder builder) {
         try {
             String code = (String)emote.get("code");
             int id = ((Number)emote.get("id")).intValue();
-            String url = Emoticon.getTwitchEmoteUrlById(id, 1);
-            Emoticon.Builder b = new Emoticon.Builder(Emoticon.Type.TWITCH, code, url);
+            int emoteSet = Emoticon.SET_UNDEFINED;
             if (emote.get("emoticon_set") != null) {
-                int emoteSet = ((Number)emote.get("emoticon_set")).intValue();
-                b.setEmoteset(emoteSet);
+                emoteSet = ((Number)emote.get("emoticon_set")).intValue();
             }
-            b.setNumericId(id);
-            return b.build();
+            if (code == null) {
+                return false;
+            }
+            builder.add(id, code, emoteSet);
+            return true;
         } catch (NullPointerException | ClassCastException ex) {
-            return null;
+            return false;
         }
     }
     
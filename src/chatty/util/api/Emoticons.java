@@ -4,6 +4,7 @@ package chatty.util.api;
 import chatty.Chatty;
 import chatty.Helper;
 import chatty.gui.emoji.EmojiUtil;
+import chatty.util.PrefixIndex;
 import chatty.util.settings.Settings;
 import java.awt.Dimension;
 import java.io.BufferedReader;
@@ -21,6 +22,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
@@ -82,6 +84,16 @@ public class Emoticons {
     
     private final Map<Integer, Emoticon> customEmotesById = new HashMap<>();
     
+    /**
+     * Indices for finding emotes in messages, kept in sync with the
+     * corresponding collections.
+     */
+    private final EmoticonIndex customEmotesIndex = new EmoticonIndex();
+    private final EmoticonIndex globalTwitchEmotesIndex = new EmoticonIndex();
+    private final EmoticonIndex otherGlobalEmotesIndex = new EmoticonIndex();
+    private final Map<Integer, EmoticonIndex> emoticonsByEmotesetIndex = new HashMap<>();
+    private final Map<String, EmoticonIndex> streamEmoticonsIndex = new HashMap<>();
+    
     /**
      * Emoji should be sorted by length, so that longer Emoji (which can be
      * combinations of several short Emoji characters) are checked first.
@@ -94,6 +106,12 @@ public class Emoticons {
             }
         });
     
+    /**
+     * For finding the Emoji in messages, created again when the Emoji are
+     * changed.
+     */
+    private volatile EmojiTrie emojiTrie = EmojiTrie.EMPTY;
+    
     /**
      * Only global Twitch emotes.
      */
@@ -137,8 +155,26 @@ public class Emoticons {
     
     private final Map<String, Set<String>> emotesNamesPerStream = new HashMap<>();
     
+    /**
+     * The same emote names as in emoteNames and emotesNamesPerStream, indexed
+     * by lowercase prefix for TAB Completion.
+     */
+    private final PrefixIndex<String> emoteNamesIndex = new PrefixIndex<>();
+    private final Map<String, PrefixIndex<String>> emoteNamesPerStreamIndex = new HashMap<>();
+    
     private Set<Integer> localEmotesets = new HashSet<>();
     
+    /**
+     * All Twitch emotes, of which Emoticon objects are only created when they
+     * are needed (when an emoteset is requested or an emote by id).
+     */
+    private EmoteCatalog twitchCatalog;
+    
+    /**
+     * The emotesets that have already been added from the catalog.
+     */
+    private final Set<Integer> catalogEmotesets = new HashSet<>();
+    
     public void updateEmoticons(EmoticonUpdate update) {
         removeEmoticons(update);
         if (!update.emotesToAdd.isEmpty()) {
@@ -154,14 +190,17 @@ public class Emoticons {
         int removedCount = 0;
         if (update.typeToRemove == Emoticon.Type.FFZ) {
             Iterator<Emoticon> it;
+            EmoticonIndex index;
             if (update.roomToRemove == null) {
                 it = otherGlobalEmotes.iterator();
+                index = otherGlobalEmotesIndex;
             }
             else {
                 if (!streamEmoticons.containsKey(update.roomToRemove)) {
                     return;
                 }
                 it = streamEmoticons.get(update.roomToRemove).iterator();
+                index = streamEmoticonsIndex.get(update.roomToRemove);
             }
             while (it.hasNext()) {
                 Emoticon emote = it.next();
@@ -169,8 +208,9 @@ public class Emoticons {
                     if (update.subTypeToRemove == null
                             || emote.subType == update.subTypeToRemove) {
                         it.remove();
-                        emoteNames.remove(emote.code);
-                        emotesNamesPerStream.get(update.roomToRemove).remove(emote.code);
+                        index.remove(emote);
+                        removeEmoteName(emote.code);
+                        removeEmoteName(update.roomToRemove, emote.code);
                         removedCount++;
                     }
                 }
@@ -206,6 +246,15 @@ public class Emoticons {
      * @param newEmoticons 
      */
     public void addEmoticons(Set<Emoticon> newEmoticons) {
+        addEmoticonsInternal(newEmoticons);
+        LOGGER.info("Added "+newEmoticons.size()+" emotes."
+                + " Now "+emoticonsByEmoteset.size()+" emotesets and "
+                +streamEmoticons.size()+" channels with exclusive emotes ("
+                +getGlobalTwitchEmotes().size()+" global emotes).");
+        findFavorites();
+    }
+    
+    private void addEmoticonsInternal(Collection<Emoticon> newEmoticons) {
         for (Emoticon emote : newEmoticons) {
             Set<String> channelRestrictions = emote.getStreamRestrictions();
             if (channelRestrictions != null) {
@@ -214,24 +263,28 @@ public class Emoticons {
                     // Create channel set if necessary
                     if (!streamEmoticons.containsKey(channel)) {
                         streamEmoticons.put(channel, new HashSet<Emoticon>());
+                        streamEmoticonsIndex.put(channel, new EmoticonIndex());
                     }
-                    addEmote(streamEmoticons.get(channel), emote);
+                    addEmote(streamEmoticons.get(channel),
+                            streamEmoticonsIndex.get(channel), emote);
                 }
             } else {
                 if (emote.hasGlobalEmoteset()) {
                     // Global emotes
                     if (emote.type == Emoticon.Type.TWITCH) {
-                        addEmote(globalTwitchEmotes, emote);
+                        addEmote(globalTwitchEmotes, globalTwitchEmotesIndex, emote);
                     } else {
-                        addEmote(otherGlobalEmotes, emote);
+                        addEmote(otherGlobalEmotes, otherGlobalEmotesIndex, emote);
                     }
                 } else {
                     // Emoteset based
                     Integer emoteset = emote.emoteSet > -1 ? emote.emoteSet : null;
                     if (!emoticonsByEmoteset.containsKey(emoteset)) {
                         emoticonsByEmoteset.put(emoteset, new HashSet<Emoticon>());
+                        emoticonsByEmotesetIndex.put(emoteset, new EmoticonIndex());
                     }
-                    addEmote(emoticonsByEmoteset.get(emoteset), emote);
+                    addEmote(emoticonsByEmoteset.get(emoteset),
+                            emoticonsByEmotesetIndex.get(emoteset), emote);
                 }
             }
             // By Twitch Emote ID
@@ -239,39 +292,83 @@ public class Emoticons {
                 twitchEmotesById.put(emote.numericId, emote);
             }
         }
-        LOGGER.info("Added "+newEmoticons.size()+" emotes."
-                + " Now "+emoticonsByEmoteset.size()+" emotesets and "
-                +streamEmoticons.size()+" channels with exclusive emotes ("
-                +getGlobalTwitchEmotes().size()+" global emotes).");
+    }
+    
+    /**
+     * Sets the catalog of all Twitch emotes. The global emotes are added
+     * immediately, emotesets are only added when they are requested (e.g.
+     * through {@link #getEmoticons(int)}) and emotes by id are only added
+     * when requested through {@link #getTwitchEmoteById(int)}.
+     * 
+     * <p>
+     * This is not thread-safe, so it should only be called from the EDT.
+     * </p>
+     * 
+     * @param catalog 
+     */
+    public void setTwitchCatalog(EmoteCatalog catalog) {
+        twitchCatalog = catalog;
+        // Emotesets already added will be updated from the new catalog
+        catalogEmotesets.clear();
+        Set<Emoticon> global = new HashSet<>();
+        global.addAll(catalog.getByEmoteset(Emoticon.SET_GLOBAL));
+        global.addAll(catalog.getByEmoteset(Emoticon.SET_UNDEFINED));
+        addEmoticonsInternal(global);
+        for (int emoteset : localEmotesets) {
+            loadEmoteset(emoteset);
+        }
+        LOGGER.info("Set Twitch emote catalog with "+catalog.size()+" emotes ("
+                +global.size()+" global emotes, "+catalog.getCreatedCount()+" loaded).");
         findFavorites();
     }
     
     /**
-     * Helper method to add an emote to a Collection.
+     * Adds the emotes of the given emoteset from the catalog, if that hasn't
+     * been done yet.
+     * 
+     * @param emoteset 
+     */
+    private void loadEmoteset(int emoteset) {
+        if (twitchCatalog != null && catalogEmotesets.add(emoteset)) {
+            addEmoticonsInternal(twitchCatalog.getByEmoteset(emoteset));
+        }
+    }
+    
+    /**
+     * Helper method to add an emote to a Collection and the corresponding
+     * index.
      * 
      * @param collection
+     * @param index
      * @param emote 
      */
-    private void addEmote(Collection<Emoticon> collection, Emoticon emote) {
+    private void addEmote(Collection<Emoticon> collection, EmoticonIndex index,
+            Emoticon emote) {
         /**
          * Add emote codes for TAB Completion. Only add emotes the local user
          * has access to.
          */
         if ((emote.hasGlobalEmoteset() || localEmotesets.contains(emote.emoteSet))) {
             if (!emote.hasStreamRestrictions()) {
-                emoteNames.add(emote.code);
+                addEmoteName(emote.code);
             } else {
                 // Channel specific emotes
                 for (String stream : emote.getStreamRestrictions()) {
                     if (!emotesNamesPerStream.containsKey(stream)) {
                         emotesNamesPerStream.put(stream, new HashSet<String>());
+                        emoteNamesPerStreamIndex.put(stream, new PrefixIndex<String>());
+                    }
+                    if (emotesNamesPerStream.get(stream).add(emote.code)) {
+                        emoteNamesPerStreamIndex.get(stream).add(getEmoteNameKey(emote.code), emote.code);
                     }
-                    emotesNamesPerStream.get(stream).add(emote.code);
                 }
             }
         }
-        collection.remove(emote);
+        if (collection.remove(emote)) {
+            index.remove(emote);
+        }
         collection.add(emote);
+        index.add(emote);
     }
     
     /**
@@ -287,6 +384,10 @@ public class Emoticons {
         return customEmotes;
     }
     
+    public EmoticonIndex getCustomEmotesIndex() {
+        return customEmotesIndex;
+    }
+    
     public Emoticon getCustomEmoteById(int id) {
         return customEmotesById.get(id);
     }
@@ -295,6 +396,10 @@ public class Emoticons {
         return emoji;
     }
     
+    public EmojiTrie getEmojiTrie() {
+        return emojiTrie;
+    }
+    
     /**
      * Gets a list of all emoticons that don't have an emoteset associated
      * with them. This returns the original Set, so it should not be modified.
@@ -305,6 +410,10 @@ public class Emoticons {
         return globalTwitchEmotes;
     }
     
+    public EmoticonIndex getGlobalTwitchEmotesIndex() {
+        return globalTwitchEmotesIndex;
+    }
+    
     public Map<String, Emoticon> getCheerEmotes() {
         return cheerEmotes;
     }
@@ -313,8 +422,26 @@ public class Emoticons {
         return otherGlobalEmotes;
     }
     
-    public HashMap<Integer, Emoticon> getEmoticonsById() {
-        return twitchEmotesById;
+    public EmoticonIndex getOtherGlobalEmotesIndex() {
+        return otherGlobalEmotesIndex;
+    }
+    
+    /**
+     * Gets the Twitch emote with the given id, which is added from the catalog
+     * if necessary.
+     * 
+     * @param id The Twitch emote id
+     * @return The emote, or null if none with that id is known
+     */
+    public Emoticon getTwitchEmoteById(int id) {
+        Emoticon emote = twitchEmotesById.get(id);
+        if (emote == null && twitchCatalog != null) {
+            emote = twitchCatalog.getById(id);
+            if (emote != null) {
+                twitchEmotesById.put(id, emote);
+            }
+        }
+        return emote;
     }
     
     /**
@@ -325,6 +452,7 @@ public class Emoticons {
      * @return
      */
     public HashSet<Emoticon> getEmoticons(int emoteSet) {
+        loadEmoteset(emoteSet);
         HashSet<Emoticon> result = emoticonsByEmoteset.get(emoteSet);
         if (result == null) {
             result = EMPTY_SET;
@@ -347,10 +475,84 @@ public class Emoticons {
         return result;
     }
     
+    /**
+     * Gets the index of the emoticons that are associated with the given
+     * emoteset.
+     * 
+     * @param emoteSet
+     * @return The index, or an empty index if no emotes are associated with
+     * the emoteset
+     */
+    public EmoticonIndex getEmoticonsIndex(int emoteSet) {
+        loadEmoteset(emoteSet);
+        EmoticonIndex result = emoticonsByEmotesetIndex.get(emoteSet);
+        if (result == null) {
+            result = EmoticonIndex.EMPTY;
+        }
+        return result;
+    }
+    
+    /**
+     * Gets the index of the emoticons that are associated with the given
+     * channel.
+     * 
+     * @param stream The name of the channel
+     * @return The index, or an empty index if no emotes are associated with
+     * the channel
+     */
+    public EmoticonIndex getEmoticonsIndex(String stream) {
+        EmoticonIndex result = streamEmoticonsIndex.get(stream);
+        if (result == null) {
+            result = EmoticonIndex.EMPTY;
+        }
+        return result;
+    }
+    
     public Collection<String> getEmoteNames() {
         return emoteNames;
     }
     
+    /**
+     * Gets the emote names the local user has access to in the given channel
+     * that start with the given prefix.
+     * 
+     * @param stream The channel name, may be null
+     * @param prefix The prefix (case-insensitive)
+     * @return A new List of emote names, not sorted
+     */
+    public List<String> findEmoteNames(String stream, String prefix) {
+        String key = getEmoteNameKey(prefix);
+        List<String> result = emoteNamesIndex.find(key);
+        PrefixIndex<String> streamIndex = emoteNamesPerStreamIndex.get(stream);
+        if (streamIndex != null) {
+            result.addAll(streamIndex.find(key));
+        }
+        return result;
+    }
+    
+    private void addEmoteName(String code) {
+        if (emoteNames.add(code)) {
+            emoteNamesIndex.add(getEmoteNameKey(code), code);
+        }
+    }
+    
+    private void removeEmoteName(String code) {
+        if (emoteNames.remove(code)) {
+            emoteNamesIndex.remove(getEmoteNameKey(code), code);
+        }
+    }
+    
+    private void removeEmoteName(String stream, String code) {
+        Set<String> names = emotesNamesPerStream.get(stream);
+        if (names != null && names.remove(code)) {
+            emoteNamesPerStreamIndex.get(stream).remove(getEmoteNameKey(code), code);
+        }
+    }
+    
+    private static String getEmoteNameKey(String code) {
+        return code.toLowerCase(Locale.ENGLISH);
+    }
+    
     public Collection<String> getEmotesNamesByStream(String stream) {
         Collection<String> names = emotesNamesPerStream.get(stream);
         return names == null ? EMPTY_STRING_SET : names;
@@ -361,7 +563,7 @@ public class Emoticons {
             this.localEmotesets = emotesets;
             for (int emoteset : emotesets) {
                 for (Emoticon emote : getEmoticons(emoteset)) {
-                    emoteNames.add(emote.code);
+                    addEmoteName(emote.code);
                 }
             }
         }
@@ -516,6 +718,9 @@ public class Emoticons {
     public Set<Emoticon> findMatchingEmoticons(String emoteCode) {
         Set<Emoticon> found = new HashSet<>();
         found.addAll(findMatchingEmoticons(emoteCode, emoticonsByEmoteset.values()));
+        if (twitchCatalog != null) {
+            found.addAll(twitchCatalog.findByCode(emoteCode));
+        }
         found.addAll(findMatchingEmoticons(emoteCode, streamEmoticons.values()));
         return found;
     }
@@ -690,6 +895,9 @@ public class Emoticons {
             return;
         }
         int count = favoritesNotFound.size();
+        for (Favorite f : new ArrayList<>(favoritesNotFound.values())) {
+            loadEmoteset(f.emoteset);
+        }
         findFavorites(twitchEmotesById.values());
         findFavorites(otherGlobalEmotes);
         findFavorites(emoji);
@@ -821,6 +1029,7 @@ public class Emoticons {
      */
     public void loadCustomEmotes() {
         customEmotes.clear();
+        customEmotesIndex.clear();
         customEmotesById.clear();
         
         Path file = Paths.get(Chatty.getUserDataDirectory()+"emotes.txt");
@@ -930,7 +1139,9 @@ public class Emoticons {
             }
             b.addStreamRestriction(streamRestriction);
             Emoticon emote = b.build();
-            customEmotes.add(emote);
+            if (customEmotes.add(emote)) {
+                customEmotesIndex.add(emote);
+            }
             if (id != Emoticon.ID_UNDEFINED) {
                 customEmotesById.put(id, emote);
             }
@@ -1085,6 +1296,7 @@ public class Emoticons {
     public void addEmoji(String sourceId) {
         emoji.clear();
         emoji.addAll(EmojiUtil.makeEmoticons(sourceId));
+        emojiTrie = new EmojiTrie(emoji);
     }
     
     public void addCheerEmotes(String type) {
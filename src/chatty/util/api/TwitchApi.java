@@ -8,11 +8,11 @@ import chatty.util.DateTime;
 import chatty.util.JSONUtil;
 import chatty.util.StringUtil;
 import chatty.util.api.usericons.UsericonFactory;
+import chatty.util.http.HttpClient;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.json.simple.JSONArray;
@@ -71,7 +71,7 @@ public class TwitchApi {
     private final Map<String, ChannelInfo> cachedChannelInfo =
             Collections.synchronizedMap(new HashMap<String, ChannelInfo>());
     
-    private final ExecutorService executor;
+    private final Executor executor;
 
     public TwitchApi(TwitchApiResultListener apiResultListener,
             StreamInfoListener streamInfoListener) {
@@ -83,7 +83,7 @@ public class TwitchApi {
         badgeManager = new BadgeManager(this);
         userIDs = new UserIDs(this);
         
-        executor = Executors.newCachedThreadPool();
+        executor = HttpClient.getExecutor();
     }
     
     /**
@@ -211,6 +211,7 @@ public class TwitchApi {
             //url = "http://127.0.0.1/twitch/emoticons";
             if (attemptRequest(url, forcedUpdate ? "update" : "")) {
                 TwitchApiRequest request = new TwitchApiRequest(this, RequestType.EMOTICONS, url);
+                request.setResultFile(emoticonManager.getDownloadFile());
                 //request.setApiVersion("v3");
                 executor.execute(request);
             }
@@ -473,7 +474,7 @@ public class TwitchApi {
             streamInfoManager.requestResultStreams(url, result, responseCode);
         }
         else if (type == RequestType.EMOTICONS) {
-            emoticonManager.emoticonsReceived(result, stream);
+            emoticonManager.emoticonsReceived(responseCode == 200 && error == null, stream);
         }
         else if (type == RequestType.CHAT_ICONS) {
             if (result == null) {
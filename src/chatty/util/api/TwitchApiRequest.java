@@ -3,18 +3,16 @@ package chatty.util.api;
 
 import chatty.Chatty;
 import chatty.util.api.TwitchApi.RequestType;
-import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.SocketTimeoutException;
-import java.net.URL;
-import java.nio.charset.Charset;
+import chatty.util.http.HttpClient;
+import chatty.util.http.HttpRequest;
+import chatty.util.http.HttpResponse;
+import java.nio.file.Path;
 import java.util.logging.Logger;
-import java.util.zip.GZIPInputStream;
 
 /**
  * A request to the Twitch API that is running in a seperate Thread. Does the
- * request and reads the answer, which is then send back to the TwitchApi
- * object.
+ * request (using {@link HttpClient}) and reads the answer, which is then send
+ * back to the TwitchApi object.
  * 
  * @author tduva
  */
@@ -43,6 +41,7 @@ public class TwitchApiRequest implements Runnable {
     private String contentType = "application/json";
     private String apiVersion = "v3";
     private String error;
+    private Path resultFile;
     
     /**
      * Construct a new request without a token.
@@ -104,6 +103,18 @@ public class TwitchApiRequest implements Runnable {
         this.contentType = contentType;
     }
 
+    /**
+     * Sets a file to write the response to, instead of reading it into a
+     * String. The result given to the TwitchApi object is then null, so
+     * whether the request was successful has to be determined from the
+     * response code and error.
+     * 
+     * @param file 
+     */
+    public void setResultFile(Path file) {
+        this.resultFile = file;
+    }
+
     @Override
     public void run() {
         String result = getUrl(url);
@@ -123,80 +134,45 @@ public class TwitchApiRequest implements Runnable {
      * @return 
      */
     private String getUrl(String targetUrl) {
-        Charset charset = Charset.forName("UTF-8");
-        URL url;
-        HttpURLConnection connection = null;
+        HttpRequest request = new HttpRequest(targetUrl);
+        request.setTimeouts(CONNECT_TIMEOUT, READ_TIMEOUT);
+        request.setStatsKey("TwitchApi "+type);
+        request.setMethod(requestMethod);
+        request.setBodyFile(resultFile);
 
-        try {
-            url = new URL(targetUrl);
-            connection = (HttpURLConnection)url.openConnection();
-            connection.setConnectTimeout(CONNECT_TIMEOUT);
-            connection.setReadTimeout(READ_TIMEOUT);
-        
-            // Request properties
-            connection.setRequestProperty("Accept", "application/vnd.twitchtv."+apiVersion+"+json");
-            connection.setRequestProperty("Accept-Encoding", "gzip");
-            connection.setRequestProperty("Client-ID", CLIENT_ID);
-            // Add token if necessary
-            if (token != null) {
-                connection.setRequestProperty("Authorization", "OAuth "+token);
-            }
-            
-            connection.setRequestMethod(requestMethod);
-            connection.setRequestProperty("Content-Type", contentType);
-            if (data != null) {
-                // Send data if necessary
-                connection.setDoOutput(true);
-                try (OutputStreamWriter out = new OutputStreamWriter(connection.getOutputStream(), charset)) {
-                    out.write(data);
-                }
-                LOGGER.info("Sending data: "+data);
-            }
+        // Request properties
+        request.setHeader("Accept", "application/vnd.twitchtv."+apiVersion+"+json");
+        request.setHeader("Client-ID", CLIENT_ID);
+        // Add token if necessary
+        if (token != null) {
+            request.setHeader("Authorization", "OAuth "+token);
+        }
+        request.setHeader("Content-Type", contentType);
+        if (data != null) {
+            // Send data if necessary
+            request.setData(data);
+            LOGGER.info("Sending data: "+data);
+        }
 
-            // Whether token was used or not
-            if (token != null) {
-                LOGGER.info(connection.getRequestMethod()+" ("+apiVersion+"): "+targetUrl+" "
-                        + "(using authorization)");
-            } else {
-                LOGGER.info(connection.getRequestMethod()+" ("+apiVersion+"): "+targetUrl);
-            }
-            
-            encoding = connection.getContentEncoding();
-            //System.out.println(connection.getHeaderFields());
-            
-            // Read response
-            InputStream input = connection.getInputStream();
-            if ("gzip".equals(connection.getContentEncoding())) {
-                input = new GZIPInputStream(input);
-            }
+        // Whether token was used or not
+        if (token != null) {
+            LOGGER.info(requestMethod+" ("+apiVersion+"): "+targetUrl+" "
+                    + "(using authorization)");
+        } else {
+            LOGGER.info(requestMethod+" ("+apiVersion+"): "+targetUrl);
+        }
 
-            StringBuilder response;
-            try (BufferedReader reader
-                    = new BufferedReader(new InputStreamReader(input, charset))) {
-                String line;
-                response = new StringBuilder();
-                while ((line = reader.readLine()) != null) {
-                    response.append(line);
-                }
-            }
-            
-            return response.toString();
-        } catch (SocketTimeoutException ex) {
-            error = ex.toString();
-            return null;
-        } catch (IOException ex) {
-            error = ex.toString();
+        HttpResponse response = HttpClient.execute(request);
+        responseCode = response.getResponseCode();
+        encoding = response.getEncoding();
+        error = response.getError();
+        
+        String text = response.getText();
+        if (text == null) {
             return null;
-        } finally {
-            if (connection != null) {
-                try {
-                    responseCode = connection.getResponseCode();
-                } catch (IOException ex) {
-//                    LOGGER.warning("IOException2: " + ex);
-                }
-                connection.disconnect();
-            }
         }
+        // Lines are joined without linebreaks
+        return text.replace("\r", "").replace("\n", "");
     }
     
 }
@@ -14,7 +14,7 @@ import java.util.Set;
  * @author tduva
  */
 public interface TwitchApiResultListener {
-    void receivedEmoticons(Set<Emoticon> emoticons);
+    void receivedTwitchEmotes(EmoteCatalog catalog);
     void receivedUsericons(List<Usericon> icons);
     void gameSearchResult(Set<String> games);
     void tokenVerified(String token, TokenInfo tokenInfo);
@@ -1,6 +1,7 @@
 
 package chatty.util.api;
 
+import chatty.util.TaskScheduler;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -8,8 +9,6 @@ import java.util.Iterator;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.logging.Logger;
 
 /**
@@ -47,8 +46,7 @@ public class UserIDs {
     public UserIDs(TwitchApi api) {
         this.api = api;
         
-        Timer checkPending = new Timer("UserIDPending", true);
-        checkPending.schedule(new TimerTask() {
+        TaskScheduler.scheduleAtFixedRate("UserIDPending", new Runnable() {
 
             @Override
             public void run() {
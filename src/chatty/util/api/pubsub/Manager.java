@@ -2,6 +2,7 @@
 package chatty.util.api.pubsub;
 
 import chatty.util.StringUtil;
+import chatty.util.TaskScheduler;
 import chatty.util.api.TwitchApi;
 import chatty.util.api.UserIDs;
 import java.util.Collections;
@@ -10,8 +11,6 @@ import java.util.HashSet;
 import java.util.Map;
 import java.util.Random;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.logging.Logger;
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
@@ -41,7 +40,7 @@ public class Manager {
      */
     private final Map<String, Long> modLogListen = Collections.synchronizedMap(new  HashMap<String, Long>());
     
-    private volatile Timer pingTimer;
+    private volatile boolean pinging;
     private volatile String token;
     private volatile long localUserId = -1;
     private volatile String localUsername;
@@ -223,20 +222,20 @@ public class Manager {
     }
     
     private void startPinging() {
-        if (pingTimer == null) {
-            pingTimer = new Timer("PubSubPing", true);
+        if (!pinging) {
+            pinging = true;
             schedulePing();
         }
     }
     
     private void schedulePing() {
-        pingTimer.schedule(new TimerTask() {
+        TaskScheduler.schedule("PubSubPing", new Runnable() {
 
             @Override
             public void run() {
                 sendPing();
                 schedulePing();
-                pingTimer.schedule(new TimerTask() {
+                TaskScheduler.schedule("PubSubPing", new Runnable() {
 
                     @Override
                     public void run() {
@@ -14,6 +14,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Logger;
 
@@ -46,7 +47,13 @@ public class ChatLog {
         if (path == null) {
             log = null;
         } else {
-            this.log = new LogManager(path);
+            this.log = new LogManager(path,
+                    settings.getLong("logFlushInterval"),
+                    settings.getBoolean("logForce"),
+                    settings.getBoolean("logIndex"));
+            this.log.setRotation(settings.getLong("logRotateSize")*1024*1024,
+                    settings.getBoolean("logRotateDaily"),
+                    settings.getBoolean("logCompress"));
         }
         compactForChannels = new HashMap<>();
         try {
@@ -98,7 +105,7 @@ public class ChatLog {
             } else {
                 line = timestamp()+"<"+name+"> "+message;
             }
-            writeLine(channel, line);
+            writeLine(channel, line, user.getNick(), message);
         }
     }
 
@@ -144,9 +151,26 @@ public class ChatLog {
     }
     
     private void writeLine(String channel, String message) {
+        writeLine(channel, message, null, null);
+    }
+    
+    /**
+     * Writes a line, which is also added to the index if the user is not
+     * null.
+     * 
+     * @param channel
+     * @param line The line to write
+     * @param user The name of the user who sent the message, can be null
+     * @param text The text of the message, without timestamp and name
+     */
+    private void writeLine(String channel, String line, String user, String text) {
         if (log != null) {
             compactClose(channel);
-            log.writeLine(channel, message);
+            if (user != null) {
+                log.writeMessage(channel, line, user, text);
+            } else {
+                log.writeLine(channel, line);
+            }
         }
     }
     
@@ -217,6 +241,35 @@ public class ChatLog {
         }
     }
     
+    /**
+     * Gets the statistics of the log writer.
+     * 
+     * @return The statistics, or an info text if logging is not available
+     */
+    public String getStats() {
+        if (log == null) {
+            return "Log not available";
+        }
+        return log.getStats();
+    }
+    
+    /**
+     * Searches the logged messages of the given channel. This reads from
+     * files, so it shouldn't be used on the EDT.
+     * 
+     * @param channel The channel to search in
+     * @param user Only messages by this user, may be null
+     * @param text Only messages containing this text, may be null
+     * @param limit The maximum number of results
+     * @return The results, newest first, or null if the index is not enabled
+     */
+    public List<LogIndex.Result> search(String channel, String user, String text, int limit) {
+        if (log == null || log.getIndex() == null) {
+            return null;
+        }
+        return log.getIndex().search(channel, user, text, limit);
+    }
+    
     public void closeChannel(String channel) {
         if (log != null) {
             compactClose(channel);
@@ -0,0 +1,156 @@
+
+package chatty.util.chatlog;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses rotated log files with gzip in a low priority background thread,
+ * so the LogWriter thread is never blocked by it.
+ *
+ * @author tduva
+ */
+public class LogCompressor {
+
+    private static final Logger LOGGER = Logger.getLogger(LogCompressor.class.getName());
+
+    /**
+     * Rotated log files have the time of rotation added to the name (and a
+     * number if rotated more than once in the same second).
+     */
+    private static final Pattern ROTATED_FILE = Pattern.compile(".*-\\d{8}-\\d{6}(-\\d+)?\\.log");
+
+    private static final String EXTENSION = ".gz";
+
+    private final ExecutorService executor;
+
+    public LogCompressor() {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "LogCompressor");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        pool.allowCoreThreadTimeOut(true);
+        this.executor = pool;
+    }
+
+    /**
+     * Compresses the given file in the background and deletes it afterwards.
+     *
+     * @param file
+     */
+    public void compressLater(final Path file) {
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                compress(file);
+            }
+        });
+    }
+
+    /**
+     * Compresses rotated log files in the given directory that have not been
+     * compressed yet (e.g. because Chatty was closed before it was done).
+     *
+     * @param dir
+     */
+    public void compressExistingLater(final Path dir) {
+        executor.execute(new Runnable() {
+
+            @Override
+            public void run() {
+                try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+                    for (Path file : files) {
+                        if (isRotatedFile(file)) {
+                            compress(file);
+                        }
+                    }
+                } catch (IOException ex) {
+                    LOGGER.warning("Log: Error reading "+dir+": "+ex);
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits for compression that is already running to finish, but doesn't
+     * start any queued compression (which is done on the next start).
+     *
+     * @param timeout In milliseconds
+     */
+    public void shutdown(long timeout) {
+        executor.shutdownNow();
+        try {
+            executor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static boolean isRotatedFile(Path file) {
+        return ROTATED_FILE.matcher(file.getFileName().toString()).matches();
+    }
+
+    public static Path getCompressedPath(Path file) {
+        return file.resolveSibling(file.getFileName()+EXTENSION);
+    }
+
+    /**
+     * Compresses the given file into a file with ".gz" added to the name, and
+     * deletes the original file afterwards. The compressed file is written to
+     * a temporary file first, so it's always complete.
+     *
+     * @param file
+     * @return true if the file was compressed
+     */
+    static boolean compress(Path file) {
+        Path target = getCompressedPath(file);
+        Path temp = target.resolveSibling(target.getFileName()+"-temp");
+        try {
+            try (InputStream in = Files.newInputStream(file);
+                    OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp), 64*1024)) {
+                byte[] buffer = new byte[64*1024];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new IOException("Interrupted");
+                    }
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            Files.delete(file);
+            LOGGER.info("Log: Compressed "+file);
+            return true;
+        } catch (IOException ex) {
+            LOGGER.warning("Log: Error compressing "+file+": "+ex);
+            try {
+                Files.deleteIfExists(temp);
+            } catch (IOException ex2) {
+                // Ignore
+            }
+            return false;
+        }
+    }
+
+}
@@ -16,6 +16,9 @@ import java.util.logging.Logger;
  * Open, lock and write to a single logfile. The name of the logfiles is based
  * on the given name, but with ".log" added to the end.
  * 
+ * Lines are buffered and only written to the file when {@link #flush()} is
+ * called (or the buffer is full), so several lines can be written at once.
+ * 
  * @author tduva
  */
 public class LogFile {
@@ -27,10 +30,34 @@ public class LogFile {
     // How many different files to try to open in case of error
     private static final int MAX_ATTEMPTS = 3;
     
+    /**
+     * Buffer size in chars, larger than the amount of data the LogWriter
+     * buffers before flushing, so it doesn't have to write in between.
+     */
+    private static final int BUFFER_SIZE = 128*1024;
+    
     private BufferedWriter writer;
+    private FileChannel channel;
     private boolean valid;
     private Path file;
     
+    /**
+     * Number of chars written since the last flush.
+     */
+    private int unflushed;
+    
+    /**
+     * The byte offset in the file where the next line will be written.
+     */
+    private long position;
+    
+    /**
+     * When the file was opened.
+     */
+    private final long opened = System.currentTimeMillis();
+    
+    private static final int NEWLINE_LENGTH = System.lineSeparator().length();
+    
     private LogFile(Path path, String name) {
         // * can't be part of a filename (for Bouncer messages, e.g. *status)
         name = name.replace("*", "_");
@@ -67,6 +94,14 @@ public class LogFile {
         return file;
     }
     
+    /**
+     * Adds a line to the buffer, which is written to the file on the next
+     * flush.
+     * 
+     * @param line The line, without linebreak
+     * @return true if the line was added, false if an error occured (the file
+     * is closed in that case)
+     */
     public boolean write(String line) {
         //System.out.println("Writing "+line);
         if (!valid) {
@@ -76,7 +111,52 @@ public class LogFile {
         try {
             writer.write(line);
             writer.newLine();
+            unflushed += line.length() + 1;
+            position += utf8Length(line) + NEWLINE_LENGTH;
+            return true;
+        } catch (IOException ex) {
+            LOGGER.warning("Log: Error writing to "+file+" ("+ex.getLocalizedMessage()+")");
+            close();
+            return false;
+        }
+    }
+    
+    /**
+     * Writes buffered lines to the file.
+     * 
+     * @return true if successful, false if an error occured (the file is
+     * closed in that case)
+     */
+    public boolean flush() {
+        if (!valid) {
+            return false;
+        }
+        if (unflushed == 0) {
+            return true;
+        }
+        try {
             writer.flush();
+            unflushed = 0;
+            return true;
+        } catch (IOException ex) {
+            LOGGER.warning("Log: Error writing to "+file+" ("+ex.getLocalizedMessage()+")");
+            close();
+            return false;
+        }
+    }
+    
+    /**
+     * Forces the already flushed data to be written to the storage device.
+     * 
+     * @return true if successful, false if an error occured (the file is
+     * closed in that case)
+     */
+    public boolean force() {
+        if (!valid) {
+            return false;
+        }
+        try {
+            channel.force(false);
             return true;
         } catch (IOException ex) {
             LOGGER.warning("Log: Error writing to "+file+" ("+ex.getLocalizedMessage()+")");
@@ -85,6 +165,60 @@ public class LogFile {
         }
     }
     
+    /**
+     * The byte offset in the file where the next line will be written
+     * (including lines that are still buffered).
+     * 
+     * @return 
+     */
+    public long getPosition() {
+        return position;
+    }
+    
+    /**
+     * When this file was opened, in milliseconds.
+     * 
+     * @return 
+     */
+    public long getOpenedTime() {
+        return opened;
+    }
+    
+    /**
+     * The number of bytes the given String takes up when encoded as UTF-8.
+     * 
+     * @param text
+     * @return 
+     */
+    static int utf8Length(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                // Unpaired surrogates are encoded as '?'
+                length += Character.isSurrogate(c) ? 1 : 3;
+            }
+        }
+        return length;
+    }
+    
+    /**
+     * The number of chars written into the buffer since the last flush.
+     * 
+     * @return 
+     */
+    public int getUnflushed() {
+        return unflushed;
+    }
+    
     public boolean isValid() {
         return valid;
     }
@@ -124,10 +258,12 @@ public class LogFile {
             LOGGER.info("Log: Trying to open "+file.getAbsolutePath());
             RandomAccessFile raf = new RandomAccessFile(file, "rw");
             raf.seek(raf.length());
+            position = raf.length();
             FileChannel channel = raf.getChannel();
             FileLock lock = channel.tryLock();
             if (lock != null) {
-                writer = new BufferedWriter(Channels.newWriter(channel, CHARSET));
+                writer = new BufferedWriter(Channels.newWriter(channel, CHARSET), BUFFER_SIZE);
+                this.channel = channel;
                 valid = true;
                 return true;
             }
@@ -0,0 +1,170 @@
+
+package chatty.util.chatlog;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads lines at certain byte offsets from a log file, which may also have
+ * been compressed (in which case the file with ".gz" added to the name is
+ * used).
+ *
+ * @author tduva
+ */
+class LogFileReader {
+
+    /**
+     * Maximum length of a line to read.
+     */
+    private static final int MAX_LINE_LENGTH = 64*1024;
+
+    /**
+     * Size of the buffer used for reading a line from an uncompressed file.
+     */
+    private static final int BUFFER_SIZE = 4096;
+
+    /**
+     * Reads the lines starting at the given offsets.
+     *
+     * @param file The uncompressed log file name, the compressed file is used
+     * if this file doesn't exist
+     * @param offsets The offsets, in ascending order
+     * @return The lines (without linebreak) in the same order as the offsets,
+     * null for offsets that could not be read (e.g. not written to the file
+     * yet) or that are not at the start of a line
+     * @throws IOException
+     */
+    static String[] readLines(Path file, long[] offsets) throws IOException {
+        if (Files.exists(file)) {
+            return readLinesPlain(file, offsets);
+        }
+        Path compressed = LogCompressor.getCompressedPath(file);
+        if (Files.exists(compressed)) {
+            return readLinesCompressed(compressed, offsets);
+        }
+        throw new IOException("File not found: "+file);
+    }
+
+    private static String[] readLinesPlain(Path file, long[] offsets) throws IOException {
+        String[] result = new String[offsets.length];
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "r")) {
+            long length = raf.length();
+            for (int i = 0; i < offsets.length; i++) {
+                long offset = offsets[i];
+                if (offset < length) {
+                    // Start at the previous byte, to check for a linebreak
+                    raf.seek(Math.max(0, offset - 1));
+                    InputStream in = new BufferedInputStream(new RafInputStream(raf), BUFFER_SIZE);
+                    if (offset == 0 || in.read() == '\n') {
+                        result[i] = readLine(in);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Decompresses the file up to the last requested offset, since gzip can't
+     * seek.
+     */
+    private static String[] readLinesCompressed(Path file, long[] offsets) throws IOException {
+        String[] result = new String[offsets.length];
+        try (InputStream in = new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file)))) {
+            long position = 0;
+            // The byte before the current position
+            int previous = '\n';
+            for (int i = 0; i < offsets.length; i++) {
+                long offset = offsets[i];
+                if (offset < position) {
+                    continue;
+                }
+                while (position < offset - 1) {
+                    long skipped = in.skip(offset - 1 - position);
+                    if (skipped <= 0) {
+                        return result;
+                    }
+                    position += skipped;
+                }
+                if (position < offset) {
+                    previous = in.read();
+                    if (previous == -1) {
+                        return result;
+                    }
+                    position++;
+                }
+                CountingInputStream counting = new CountingInputStream(in);
+                String line = readLine(counting);
+                if (previous == '\n') {
+                    result[i] = line;
+                }
+                position += counting.count;
+                previous = counting.last;
+            }
+        }
+        return result;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        int b;
+        while ((b = in.read()) != -1 && b != '\n' && bytes.size() < MAX_LINE_LENGTH) {
+            bytes.write(b);
+        }
+        byte[] line = bytes.toByteArray();
+        int length = line.length;
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        return new String(line, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private static class RafInputStream extends InputStream {
+
+        private final RandomAccessFile raf;
+
+        RafInputStream(RandomAccessFile raf) {
+            this.raf = raf;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return raf.read();
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return raf.read(b, off, len);
+        }
+    }
+
+    private static class CountingInputStream extends InputStream {
+
+        private final InputStream in;
+        private long count;
+        private int last = -1;
+
+        CountingInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1) {
+                count++;
+                last = b;
+            }
+            return b;
+        }
+    }
+
+}
@@ -0,0 +1,701 @@
+
+package chatty.util.chatlog;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Index of the logged messages, so messages by a user or containing certain
+ * words can be found without reading through the log files.
+ *
+ * The index is build while the messages are written, in memory for each
+ * channel, and saved as a {@link LogIndexSegment} when the day changes, the
+ * log file is closed or enough lines have been added. Each segment refers to
+ * the byte offsets of the lines in one log file. Segments are stored in the
+ * "index" directory of the log directory, with one directory per channel.
+ *
+ * Adding is done from the LogWriter thread, searching can be done from any
+ * thread and also includes the lines that are not in a saved segment yet.
+ *
+ * @author tduva
+ */
+public class LogIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(LogIndex.class.getName());
+
+    private static final String EXTENSION = ".idx";
+
+    /**
+     * Added to the name of a segment that was replaced, but couldn't be
+     * deleted (e.g. because it is still mapped).
+     */
+    private static final String OBSOLETE_MARKER = ".obsolete";
+
+    /**
+     * Save a segment when it has this many lines, so the lines not yet saved
+     * don't use too much memory.
+     */
+    private static final int MAX_SEGMENT_LINES = 50000;
+
+    private static final int MAX_TOKEN_LENGTH = 50;
+
+    /**
+     * Minimum number of lines to read from a log file at once.
+     */
+    private static final int READ_CHUNK = 100;
+
+    private final Path logPath;
+    private final Path indexPath;
+
+    /**
+     * Segments that are currently being build, by channel.
+     */
+    private final Map<String, Builder> builders = new HashMap<>();
+
+    /**
+     * Opened segments, by file.
+     */
+    private final Map<Path, LogIndexSegment> segments = new ConcurrentHashMap<>();
+
+    /**
+     * Segments that have been replaced or refer to a log file that doesn't
+     * contain their lines anymore, but couldn't be deleted yet.
+     */
+    private final Set<Path> obsolete = ConcurrentHashMap.newKeySet();
+
+    private final SimpleDateFormat dayFormat = new SimpleDateFormat("yyyy-MM-dd");
+    private String currentDay;
+    private long nextDayStart;
+
+    /**
+     * Creates a new index for the given log directory.
+     *
+     * @param logPath The directory the log files are in
+     */
+    public LogIndex(Path logPath) {
+        this.logPath = logPath;
+        this.indexPath = logPath.resolve("index");
+    }
+
+    /**
+     * Adds a message line.
+     *
+     * @param channel The channel
+     * @param logFile The log file the line was written to
+     * @param offset The byte offset of the line in the log file
+     * @param username The username of the user that sent the message, may be
+     * null if not a user message
+     * @param text The text to index, may be null
+     */
+    public synchronized void add(String channel, Path logFile, long offset,
+            String username, String text) {
+        long time = System.currentTimeMillis();
+        String day = getDay(time);
+        String logFileName = logPath.relativize(logFile).toString();
+        Builder builder = builders.get(channel);
+        if (builder != null && (!builder.day.equals(day)
+                || !builder.logFile.equals(logFileName)
+                || builder.lineCount >= MAX_SEGMENT_LINES)) {
+            save(builder);
+            builder = null;
+        }
+        if (builder == null) {
+            builder = new Builder(channel, logFileName, day);
+            builders.put(channel, builder);
+        }
+        builder.add(offset, time, username, text);
+    }
+
+    /**
+     * Saves the segment currently being build for the given channel, for
+     * example because the log file was closed.
+     *
+     * @param channel
+     */
+    public synchronized void close(String channel) {
+        Builder builder = builders.remove(channel);
+        if (builder != null) {
+            save(builder);
+        }
+    }
+
+    /**
+     * Saves all segments currently being build.
+     */
+    public synchronized void closeAll() {
+        for (Builder builder : new ArrayList<>(builders.values())) {
+            save(builder);
+        }
+    }
+
+    /**
+     * Updates the index after a log file has been renamed (rotated), so lines
+     * can still be read from it. This saves the segment currently being build
+     * for the channel and changes the log file name stored in already saved
+     * segments.
+     *
+     * Saved segments may be memory-mapped, so they are not changed. Instead a
+     * copy with the new log file name is saved under a new name and the old
+     * segment is removed. If that fails, the old segment is still removed
+     * (or marked as obsolete if it can't be deleted), since the old log file
+     * name now refers to a new log file.
+     *
+     * @param channel The channel the log file is for
+     * @param oldFile The previous log file path
+     * @param newFile The new log file path
+     */
+    public synchronized void rotated(String channel, Path oldFile, Path newFile) {
+        String oldName = logPath.relativize(oldFile).toString();
+        String newName = logPath.relativize(newFile).toString();
+        Builder builder = builders.get(channel);
+        if (builder != null && builder.logFile.equals(oldName)) {
+            builder.logFile = newName;
+            save(builder);
+        }
+        for (Path file : getSegmentFiles(channel)) {
+            LogIndexSegment segment = getSegment(file);
+            if (segment != null && segment.getLogFile().equals(oldName)) {
+                try {
+                    LogIndexSegment.copyWithLogFile(file, getReplacementFile(file), newName);
+                } catch (IOException ex) {
+                    LOGGER.warning("Log: Error updating index "+file+", removing: "+ex);
+                }
+                remove(file);
+            }
+        }
+    }
+
+    /**
+     * A new name for the given segment file, which sorts the same compared
+     * to the other segments.
+     *
+     * @param file
+     * @return
+     */
+    private static Path getReplacementFile(Path file) {
+        String name = file.getFileName().toString();
+        name = name.substring(0, name.length() - EXTENSION.length());
+        int replaced = name.indexOf("_r");
+        if (replaced != -1) {
+            name = name.substring(0, replaced);
+        }
+        long time = System.currentTimeMillis();
+        Path result = file.resolveSibling(name+"_r"+time+EXTENSION);
+        while (Files.exists(result)) {
+            time++;
+            result = file.resolveSibling(name+"_r"+time+EXTENSION);
+        }
+        return result;
+    }
+
+    /**
+     * Removes the segment file, or marks it as obsolete if it can't be
+     * deleted. Obsolete segments are not used and deleted later.
+     *
+     * @param file
+     */
+    private void remove(Path file) {
+        obsolete.add(file);
+        segments.remove(file);
+        try {
+            Files.delete(file);
+            obsolete.remove(file);
+        } catch (IOException ex) {
+            LOGGER.info("Log: Could not delete index "+file+" (marked obsolete): "+ex);
+            try {
+                Files.createFile(getObsoleteMarker(file));
+            } catch (IOException ex2) {
+                LOGGER.warning("Log: Error marking index "+file+" as obsolete: "+ex2);
+            }
+        }
+    }
+
+    private static Path getObsoleteMarker(Path file) {
+        return file.resolveSibling(file.getFileName()+OBSOLETE_MARKER);
+    }
+
+    private void save(Builder builder) {
+        builders.remove(builder.channel);
+        if (builder.lineCount == 0) {
+            return;
+        }
+        try {
+            Path dir = getChannelDir(builder.channel);
+            Files.createDirectories(dir);
+            Path file = dir.resolve(builder.getFileName());
+            LogIndexSegment.write(file, builder.channel, builder.logFile,
+                    builder.day, builder.lineCount, builder.offsets,
+                    builder.times, builder.users, builder.tokens);
+            LOGGER.info("Log: Saved index "+file+" ("+builder.lineCount+" lines)");
+        } catch (IOException ex) {
+            LOGGER.warning("Log: Error saving index for "+builder.channel+": "+ex);
+        }
+    }
+
+    private String getDay(long time) {
+        if (currentDay == null || time >= nextDayStart) {
+            currentDay = dayFormat.format(new Date(time));
+            Calendar cal = Calendar.getInstance();
+            cal.setTimeInMillis(time);
+            cal.set(Calendar.HOUR_OF_DAY, 0);
+            cal.set(Calendar.MINUTE, 0);
+            cal.set(Calendar.SECOND, 0);
+            cal.set(Calendar.MILLISECOND, 0);
+            cal.add(Calendar.DAY_OF_MONTH, 1);
+            nextDayStart = cal.getTimeInMillis();
+        }
+        return currentDay;
+    }
+
+    private Path getChannelDir(String channel) {
+        // Same as LogFile, * can't be part of a filename
+        return indexPath.resolve(channel.replace("*", "_"));
+    }
+
+    /*
+     * ##########
+     * # Search
+     * ##########
+     */
+
+    /**
+     * Searches the log of the given channel, newest messages first.
+     *
+     * @param channel The channel to search in
+     * @param username Only messages by this user (case-insensitive), may be
+     * null
+     * @param text Only messages containing this text (case-insensitive), may
+     * be null. The index is used to find messages containing the words of the
+     * text, where the last word may also be the beginning of a word, so the
+     * text should start at the beginning of a word.
+     * @param limit The maximum number of results
+     * @return The results, newest first
+     */
+    public List<Result> search(String channel, String username, String text, int limit) {
+        if (username != null) {
+            username = username.toLowerCase(Locale.ENGLISH);
+        }
+        List<String> tokens = text != null ? tokenize(text) : new ArrayList<String>();
+        String lowercaseText = text != null ? text.toLowerCase(Locale.ROOT) : null;
+        List<Result> results = new ArrayList<>();
+
+        // Lines not saved yet (newest)
+        LineSet current = null;
+        String currentFileName = null;
+        synchronized(this) {
+            Builder builder = builders.get(channel);
+            if (builder != null) {
+                current = builder.find(username, tokens);
+                currentFileName = builder.getFileName();
+            }
+        }
+        if (current != null) {
+            addResults(current, false, lowercaseText, limit, results);
+        }
+
+        // Saved segments, newest first
+        List<Path> files = getSegmentFiles(channel);
+        for (int i = files.size() - 1; i >= 0 && results.size() < limit; i--) {
+            if (files.get(i).getFileName().toString().equals(currentFileName)) {
+                // Saved in the meantime, but already searched
+                continue;
+            }
+            LogIndexSegment segment = getSegment(files.get(i));
+            if (segment != null) {
+                addResults(find(segment, username, tokens), true, lowercaseText, limit, results);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Reads the matching lines from the log file and adds them to the results.
+     *
+     * @param lines The matching lines
+     * @param saved Whether the lines are from a saved segment, which means
+     * they should all have been written to the log file already, so it is
+     * checked whether they fit into the file
+     * @param lowercaseText
+     * @param limit
+     * @param results
+     */
+    private void addResults(LineSet lines, boolean saved, String lowercaseText,
+            int limit, List<Result> results) {
+        Path file = logPath.resolve(lines.logFile);
+        try {
+            if (saved && !isValid(lines, file)) {
+                LOGGER.warning("Log: Index doesn't match "+file+", skipped");
+                return;
+            }
+            // Read in chunks, newest first, since compressed files have to be
+            // read from the start for each read
+            int end = lines.lines.length;
+            while (end > 0 && results.size() < limit) {
+                int start = Math.max(0, end - Math.max(READ_CHUNK, (limit - results.size()) * 2));
+                long[] offsets = new long[end - start];
+                for (int i = start; i < end; i++) {
+                    offsets[i - start] = lines.offsets[lines.lines[i]];
+                }
+                String[] lineTexts = LogFileReader.readLines(file, offsets);
+                for (int i = end - 1; i >= start && results.size() < limit; i--) {
+                    String lineText = lineTexts[i - start];
+                    if (lineText != null && (lowercaseText == null
+                            || lineText.toLowerCase(Locale.ROOT).contains(lowercaseText))) {
+                        int line = lines.lines[i];
+                        results.add(new Result(lines.channel, lines.times[line],
+                                lines.offsets[line], lineText));
+                    }
+                }
+                end = start;
+            }
+        } catch (IOException ex) {
+            LOGGER.warning("Log: Error reading "+file+": "+ex);
+        }
+    }
+
+    /**
+     * Checks if the lines can be in the log file (which may not be the case
+     * if the index couldn't be updated after the log file was rotated). This
+     * only checks the size of the file, when reading the lines it is also
+     * checked whether each line starts at its offset.
+     *
+     * @param lines
+     * @param file
+     * @return false if the lines are certainly not in the file
+     * @throws IOException
+     */
+    private static boolean isValid(LineSet lines, Path file) throws IOException {
+        if (!Files.exists(file) || lines.lines.length == 0) {
+            // Compressed files aren't written to anymore, so they should fit
+            return true;
+        }
+        long maxOffset = lines.offsets[lines.lines[lines.lines.length - 1]];
+        return maxOffset < Files.size(file);
+    }
+
+    private List<Path> getSegmentFiles(String channel) {
+        List<Path> result = new ArrayList<>();
+        Path dir = getChannelDir(channel);
+        if (!Files.isDirectory(dir)) {
+            return result;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*"+EXTENSION)) {
+            for (Path file : stream) {
+                if (obsolete.contains(file)) {
+                    continue;
+                }
+                Path marker = getObsoleteMarker(file);
+                if (Files.exists(marker)) {
+                    // Replaced in a previous session, should be deletable now
+                    if (!segments.containsKey(file)) {
+                        deleteObsolete(file, marker);
+                    }
+                    continue;
+                }
+                result.add(file);
+            }
+        } catch (IOException ex) {
+            LOGGER.warning("Log: Error reading index directory "+dir+": "+ex);
+        }
+        // File names start with the day and creation time
+        Collections.sort(result);
+        return result;
+    }
+
+    private static void deleteObsolete(Path file, Path marker) {
+        try {
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(marker);
+        } catch (IOException ex) {
+            // Try again next time
+        }
+    }
+
+    private LogIndexSegment getSegment(Path file) {
+        LogIndexSegment segment = segments.get(file);
+        if (segment == null) {
+            try {
+                segment = LogIndexSegment.open(file);
+                segments.put(file, segment);
+            } catch (IOException ex) {
+                LOGGER.warning("Log: Error opening index "+file+": "+ex);
+            }
+        }
+        return segment;
+    }
+
+    private static LineSet find(LogIndexSegment segment, String username, List<String> tokens) {
+        int[] lines = null;
+        if (username != null) {
+            lines = segment.getUserLines(username);
+        }
+        for (int i = 0; i < tokens.size(); i++) {
+            if (i == tokens.size() - 1) {
+                lines = intersect(lines, segment.getTokenPrefixLines(tokens.get(i)));
+            } else {
+                lines = intersect(lines, segment.getTokenLines(tokens.get(i)));
+            }
+        }
+        if (lines == null) {
+            // No criteria, so all lines
+            lines = new int[segment.getLineCount()];
+            for (int i = 0; i < lines.length; i++) {
+                lines[i] = i;
+            }
+        }
+        long[] offsets = new long[segment.getLineCount()];
+        long[] times = new long[segment.getLineCount()];
+        for (int line : lines) {
+            offsets[line] = segment.getOffset(line);
+            times[line] = segment.getTime(line);
+        }
+        return new LineSet(segment.getChannel(), segment.getLogFile(), lines, offsets, times);
+    }
+
+    /**
+     * Returns the line numbers contained in both sorted arrays.
+     *
+     * @param a May be null, in which case b is returned
+     * @param b
+     * @return
+     */
+    static int[] intersect(int[] a, int[] b) {
+        if (a == null) {
+            return b;
+        }
+        int[] result = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    /**
+     * Sorts the array and removes duplicates.
+     *
+     * @param values
+     * @return
+     */
+    static int[] sortedUnique(int[] values) {
+        Arrays.sort(values);
+        int count = 0;
+        for (int i = 0; i < values.length; i++) {
+            if (count == 0 || values[count - 1] != values[i]) {
+                values[count++] = values[i];
+            }
+        }
+        return Arrays.copyOf(values, count);
+    }
+
+    /**
+     * Splits the text into lowercase tokens (sequences of letters and
+     * digits), without duplicates.
+     *
+     * @param text
+     * @return
+     */
+    static List<String> tokenize(String text) {
+        Set<String> result = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean tokenChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (tokenChar && start == -1) {
+                start = i;
+            } else if (!tokenChar && start != -1) {
+                if (i - start <= MAX_TOKEN_LENGTH) {
+                    result.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                }
+                start = -1;
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    public static class Result {
+
+        public final String channel;
+        public final long time;
+
+        /**
+         * The byte offset of the line in the log file.
+         */
+        public final long offset;
+        public final String line;
+
+        public Result(String channel, long time, long offset, String line) {
+            this.channel = channel;
+            this.time = time;
+            this.offset = offset;
+            this.line = line;
+        }
+
+        @Override
+        public String toString() {
+            return line;
+        }
+    }
+
+    /**
+     * Matching lines in one segment or builder.
+     */
+    private static class LineSet {
+
+        final String channel;
+        final String logFile;
+        final int[] lines;
+        final long[] offsets;
+        final long[] times;
+
+        LineSet(String channel, String logFile, int[] lines, long[] offsets, long[] times) {
+            this.channel = channel;
+            this.logFile = logFile;
+            this.lines = lines;
+            this.offsets = offsets;
+            this.times = times;
+        }
+    }
+
+    /**
+     * Growable list of ints.
+     */
+    static class IntList {
+
+        private int[] data = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == data.length) {
+                data = Arrays.copyOf(data, size * 2);
+            }
+            data[size++] = value;
+        }
+
+        int get(int index) {
+            return data[index];
+        }
+
+        int size() {
+            return size;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+
+    /**
+     * A segment that is currently being build.
+     */
+    private static class Builder {
+
+        final String channel;
+        final String day;
+        final long created = System.currentTimeMillis();
+        final Map<String, IntList> users = new TreeMap<>();
+        final TreeMap<String, IntList> tokens = new TreeMap<>();
+        String logFile;
+        long[] offsets = new long[64];
+        long[] times = new long[64];
+        int lineCount;
+
+        Builder(String channel, String logFile, String day) {
+            this.channel = channel;
+            this.logFile = logFile;
+            this.day = day;
+        }
+
+        void add(long offset, long time, String username, String text) {
+            if (lineCount == offsets.length) {
+                offsets = Arrays.copyOf(offsets, lineCount * 2);
+                times = Arrays.copyOf(times, lineCount * 2);
+            }
+            int line = lineCount++;
+            offsets[line] = offset;
+            times[line] = time;
+            if (username != null) {
+                addPosting(users, username.toLowerCase(Locale.ENGLISH), line);
+            }
+            if (text != null) {
+                for (String token : tokenize(text)) {
+                    addPosting(tokens, token, line);
+                }
+            }
+        }
+
+        String getFileName() {
+            return day+"_"+created+EXTENSION;
+        }
+
+        private static void addPosting(Map<String, IntList> map, String key, int line) {
+            IntList lines = map.get(key);
+            if (lines == null) {
+                lines = new IntList();
+                map.put(key, lines);
+            }
+            lines.add(line);
+        }
+
+        LineSet find(String username, List<String> searchTokens) {
+            int[] lines = null;
+            if (username != null) {
+                lines = getLines(users, username);
+            }
+            for (int i = 0; i < searchTokens.size(); i++) {
+                String token = searchTokens.get(i);
+                if (i == searchTokens.size() - 1) {
+                    IntList result = new IntList();
+                    for (IntList prefixLines : tokens.subMap(token, token+Character.MAX_VALUE).values()) {
+                        for (int j = 0; j < prefixLines.size(); j++) {
+                            result.add(prefixLines.get(j));
+                        }
+                    }
+                    lines = intersect(lines, sortedUnique(result.toArray()));
+                } else {
+                    lines = intersect(lines, getLines(tokens, token));
+                }
+            }
+            if (lines == null) {
+                lines = new int[lineCount];
+                for (int i = 0; i < lineCount; i++) {
+                    lines[i] = i;
+                }
+            }
+            return new LineSet(channel, logFile, lines,
+                    Arrays.copyOf(offsets, lineCount), Arrays.copyOf(times, lineCount));
+        }
+
+        private static int[] getLines(Map<String, IntList> map, String key) {
+            IntList lines = map.get(key);
+            return lines != null ? lines.toArray() : new int[0];
+        }
+    }
+
+}
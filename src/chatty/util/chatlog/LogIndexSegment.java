@@ -0,0 +1,364 @@
+
+package chatty.util.chatlog;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * A sealed part of the log index, which is never changed after being written.
+ * It contains the offsets of logged messages of one channel in one log file,
+ * and for each username and each token the lines it occurs in.
+ *
+ * <p>Format (big-endian):</p>
+ * <pre>
+ * int magic, int version
+ * string channel, string logFile, string day
+ * int lineCount, long[lineCount] offsets, long[lineCount] times
+ * int userCount, int tokenCount, int entriesStart, int postingsStart
+ * int[userCount] user entry positions (relative to entriesStart)
+ * int[tokenCount] token entry positions (relative to entriesStart)
+ * entries: string key, int postings position (relative to postingsStart),
+ * int postings count
+ * postings: int line numbers, ascending
+ * </pre>
+ * Strings are stored as a short length followed by the UTF-8 bytes. Keys are
+ * sorted, so they can be looked up with a binary search.
+ *
+ * <p>Reading is done from a memory-mapped buffer, using only absolute get
+ * methods, so it can be used from several threads.</p>
+ *
+ * @author tduva
+ */
+class LogIndexSegment {
+
+    private static final int MAGIC = 0x434C4958;
+    private static final int VERSION = 1;
+
+    private final ByteBuffer buffer;
+    private final String channel;
+    private final String logFile;
+    private final String day;
+    private final int lineCount;
+    private final int offsetsStart;
+    private final int userCount;
+    private final int tokenCount;
+    private final int userIndexStart;
+    private final int tokenIndexStart;
+    private final int entriesStart;
+    private final int postingsStart;
+
+    private LogIndexSegment(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Invalid index segment");
+        }
+        int pos = 8;
+        channel = readString(pos);
+        pos += stringSize(pos);
+        logFile = readString(pos);
+        pos += stringSize(pos);
+        day = readString(pos);
+        pos += stringSize(pos);
+        lineCount = buffer.getInt(pos);
+        pos += 4;
+        offsetsStart = pos;
+        pos += lineCount * 16;
+        userCount = buffer.getInt(pos);
+        tokenCount = buffer.getInt(pos + 4);
+        entriesStart = buffer.getInt(pos + 8);
+        postingsStart = buffer.getInt(pos + 12);
+        pos += 16;
+        userIndexStart = pos;
+        tokenIndexStart = pos + userCount * 4;
+    }
+
+    /**
+     * Opens the given segment file by mapping it into memory.
+     *
+     * @param file
+     * @return
+     * @throws IOException If the file couldn't be read or isn't a valid
+     * segment
+     */
+    static LogIndexSegment open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                return new LogIndexSegment(buffer);
+            } catch (IndexOutOfBoundsException ex) {
+                throw new IOException("Invalid index segment", ex);
+            }
+        }
+    }
+
+    public String getChannel() {
+        return channel;
+    }
+
+    /**
+     * The name of the log file the offsets refer to, relative to the log
+     * directory.
+     *
+     * @return
+     */
+    public String getLogFile() {
+        return logFile;
+    }
+
+    public String getDay() {
+        return day;
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    public long getOffset(int line) {
+        return buffer.getLong(offsetsStart + line * 8);
+    }
+
+    public long getTime(int line) {
+        return buffer.getLong(offsetsStart + lineCount * 8 + line * 8);
+    }
+
+    /**
+     * Gets the lines of messages by the given user.
+     *
+     * @param username The lowercase username
+     * @return The line numbers in ascending order, empty if none
+     */
+    public int[] getUserLines(String username) {
+        return getPostings(userIndexStart, userCount, username);
+    }
+
+    /**
+     * Gets the lines of messages containing the given token.
+     *
+     * @param token The token, as created by {@link LogIndex#tokenize(String)}
+     * @return The line numbers in ascending order, empty if none
+     */
+    public int[] getTokenLines(String token) {
+        return getPostings(tokenIndexStart, tokenCount, token);
+    }
+
+    /**
+     * Gets the lines of messages containing a token that starts with the
+     * given prefix.
+     *
+     * @param prefix
+     * @return The line numbers in ascending order, empty if none
+     */
+    public int[] getTokenPrefixLines(String prefix) {
+        // Find first key that is not smaller than the prefix
+        int low = 0;
+        int high = tokenCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (readString(getEntry(tokenIndexStart, mid)).compareTo(prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        LogIndex.IntList result = new LogIndex.IntList();
+        for (int i = low; i < tokenCount; i++) {
+            int entry = getEntry(tokenIndexStart, i);
+            if (!readString(entry).startsWith(prefix)) {
+                break;
+            }
+            int pos = entry + stringSize(entry);
+            int start = postingsStart + buffer.getInt(pos);
+            int count = buffer.getInt(pos + 4);
+            for (int j = 0; j < count; j++) {
+                result.add(buffer.getInt(start + j * 4));
+            }
+        }
+        return LogIndex.sortedUnique(result.toArray());
+    }
+
+    private int getEntry(int indexStart, int i) {
+        return entriesStart + buffer.getInt(indexStart + i * 4);
+    }
+
+    private int[] getPostings(int indexStart, int count, String key) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = getEntry(indexStart, mid);
+            int cmp = readString(entry).compareTo(key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                int pos = entry + stringSize(entry);
+                int start = postingsStart + buffer.getInt(pos);
+                int[] result = new int[buffer.getInt(pos + 4)];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = buffer.getInt(start + i * 4);
+                }
+                return result;
+            }
+        }
+        return new int[0];
+    }
+
+    private String readString(int pos) {
+        int length = buffer.getShort(pos) & 0xFFFF;
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = buffer.get(pos + 2 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int stringSize(int pos) {
+        return 2 + (buffer.getShort(pos) & 0xFFFF);
+    }
+
+    /**
+     * Writes a segment file. The file is first written to a temporary file
+     * and then moved, so a segment file is always complete.
+     *
+     * @param file The file to write to
+     * @param channel
+     * @param logFile
+     * @param day
+     * @param lineCount
+     * @param offsets The offsets of the lines (at least lineCount)
+     * @param times The times of the lines (at least lineCount)
+     * @param users Lowercase usernames and their ascending line numbers,
+     * sorted by key
+     * @param tokens Tokens and their ascending line numbers, sorted by key
+     * @throws IOException
+     */
+    static void write(Path file, String channel, String logFile, String day,
+            int lineCount, long[] offsets, long[] times,
+            Map<String, LogIndex.IntList> users,
+            Map<String, LogIndex.IntList> tokens) throws IOException {
+        ByteArrayOutputStream entriesBytes = new ByteArrayOutputStream();
+        DataOutputStream entries = new DataOutputStream(entriesBytes);
+        ByteArrayOutputStream postingsBytes = new ByteArrayOutputStream();
+        DataOutputStream postings = new DataOutputStream(postingsBytes);
+        int[] userEntries = writeEntries(users, entries, postings);
+        int[] tokenEntries = writeEntries(tokens, entries, postings);
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+        writeString(header, channel);
+        writeString(header, logFile);
+        writeString(header, day);
+        header.writeInt(lineCount);
+        for (int i = 0; i < lineCount; i++) {
+            header.writeLong(offsets[i]);
+        }
+        for (int i = 0; i < lineCount; i++) {
+            header.writeLong(times[i]);
+        }
+        int entriesStart = header.size() + 16 + (userEntries.length + tokenEntries.length) * 4;
+        header.writeInt(userEntries.length);
+        header.writeInt(tokenEntries.length);
+        header.writeInt(entriesStart);
+        header.writeInt(entriesStart + entries.size());
+        for (int pos : userEntries) {
+            header.writeInt(pos);
+        }
+        for (int pos : tokenEntries) {
+            header.writeInt(pos);
+        }
+
+        Path tempFile = file.resolveSibling(file.getFileName()+"-temp");
+        try (OutputStream out = Files.newOutputStream(tempFile)) {
+            headerBytes.writeTo(out);
+            entriesBytes.writeTo(out);
+            postingsBytes.writeTo(out);
+        }
+        Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Writes a copy of the given segment file with a different log file name,
+     * for when the log file has been renamed. Since this changes the length
+     * of the header, the absolute entries and postings positions are adjusted
+     * (all other positions are relative).
+     *
+     * <p>The source file is not changed, since it may still be mapped (which
+     * on some systems prevents it from being replaced). The target is written
+     * the same way as in
+     * {@link #write(Path, String, String, String, int, long[], long[], Map, Map)}.</p>
+     *
+     * @param file The segment file
+     * @param target The file to write the copy to, should not be opened
+     * @param logFile The new log file name
+     * @throws IOException
+     */
+    static void copyWithLogFile(Path file, Path target, String logFile) throws IOException {
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file));
+        if (data.getInt(0) != MAGIC || data.getInt(4) != VERSION) {
+            throw new IOException("Invalid index segment");
+        }
+        int logFileStart = 8 + 2 + (data.getShort(8) & 0xFFFF);
+        int logFileEnd = logFileStart + 2 + (data.getShort(logFileStart) & 0xFFFF);
+
+        ByteArrayOutputStream replacedBytes = new ByteArrayOutputStream();
+        writeString(new DataOutputStream(replacedBytes), logFile);
+        int delta = replacedBytes.size() - (logFileEnd - logFileStart);
+
+        ByteBuffer result = ByteBuffer.allocate(data.capacity() + delta);
+        result.put(data.array(), 0, logFileStart);
+        result.put(replacedBytes.toByteArray());
+        result.put(data.array(), logFileEnd, data.capacity() - logFileEnd);
+
+        // Skip day string, lines, user and token count
+        int pos = logFileEnd + delta;
+        pos += 2 + (result.getShort(pos) & 0xFFFF);
+        pos += 4 + result.getInt(pos) * 16;
+        pos += 8;
+        result.putInt(pos, result.getInt(pos) + delta);
+        result.putInt(pos + 4, result.getInt(pos + 4) + delta);
+
+        Path tempFile = target.resolveSibling(target.getFileName()+"-temp");
+        Files.write(tempFile, result.array());
+        Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static int[] writeEntries(Map<String, LogIndex.IntList> data,
+            DataOutputStream entries, DataOutputStream postings) throws IOException {
+        int[] result = new int[data.size()];
+        int i = 0;
+        for (Map.Entry<String, LogIndex.IntList> entry : data.entrySet()) {
+            result[i++] = entries.size();
+            writeString(entries, entry.getKey());
+            LogIndex.IntList lines = entry.getValue();
+            entries.writeInt(postings.size());
+            entries.writeInt(lines.size());
+            for (int j = 0; j < lines.size(); j++) {
+                postings.writeInt(lines.get(j));
+            }
+        }
+        return result;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("String too long");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+}
@@ -18,24 +18,67 @@ public class LogManager {
   
     private static final Logger LOGGER = Logger.getLogger(LogManager.class.getName());
     
-    private static final int QUEUE_CAPACITY = 100;
+    private static final int QUEUE_CAPACITY = 1000;
     private static final int MAX_WAIT = 10*1000;
+    private static final int MAX_COMPRESS_WAIT = 1000;
     
     private final AtomicInteger errors = new AtomicInteger();
     
     private final BlockingQueue<LogItem> queue;
+    private final LogIndex index;
+    private final LogWriter writer;
     private final Thread writerThread;
+    private final Path path;
+    private LogCompressor compressor;
     
     public LogManager(Path path) {
+        this(path, 0, false, false);
+    }
+    
+    /**
+     * Creates a new LogManager.
+     * 
+     * @param path The directory to write the files into
+     * @param flushInterval How long written lines may stay in the buffer at
+     * most, in milliseconds
+     * @param force Whether to force the data to the storage device after each
+     * flush
+     * @param indexEnabled Whether to build an index of messages that can be
+     * searched
+     */
+    public LogManager(Path path, long flushInterval, boolean force, boolean indexEnabled) {
         path.toFile().mkdirs();
         if (!path.toFile().exists()) {
             LOGGER.warning("Log: Failed to create path: "+path);
         }
+        this.path = path;
         this.queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
-        this.writerThread = new Thread(new LogWriter(queue, path));
+        this.index = indexEnabled ? new LogIndex(path) : null;
+        this.writer = new LogWriter(queue, path, flushInterval, force, index);
+        this.writerThread = new Thread(writer, "LogWriter");
+    }
+    
+    /**
+     * Sets when log files should be rotated, which means the current file is
+     * renamed (with the current date and time added) and a new file is
+     * started. Must be called before {@link #start()}.
+     * 
+     * @param maxSize Rotate when a file reaches this size in bytes (0 to
+     * disable)
+     * @param daily Rotate files that were opened before the current day
+     * @param compress Whether to compress rotated files in the background
+     */
+    public void setRotation(long maxSize, boolean daily, boolean compress) {
+        if (compress) {
+            compressor = new LogCompressor();
+        }
+        writer.setRotation(maxSize, daily, compressor);
     }
     
     public void start() {
+        if (compressor != null) {
+            compressor.compressExistingLater(path);
+        }
         writerThread.start();
     }
 
@@ -55,11 +98,50 @@ public class LogManager {
             LOGGER.warning("Log: Interrupted when waiting for Log to finish..");
             Thread.currentThread().interrupt();
         }
+        if (compressor != null) {
+            // Unfinished files are compressed on the next start
+            compressor.shutdown(MAX_COMPRESS_WAIT);
+        }
     }
 
     
+    /**
+     * Gets a summary of the statistics of the writer.
+     * 
+     * @return 
+     */
+    public String getStats() {
+        return String.format("queue: %d/%d / dropped: %d / %s",
+                queue.size(), QUEUE_CAPACITY, errors.get(), writer.getStats());
+    }
+    
+    /**
+     * Gets the index of logged messages.
+     * 
+     * @return The index, or null if not enabled
+     */
+    public LogIndex getIndex() {
+        return index;
+    }
+    
     public void writeLine(String channel, String line) {
-        boolean added = queue.offer(new LogItem(channel, line));
+        writeItem(new LogItem(channel, line));
+    }
+    
+    /**
+     * Writes a chat message line, which is also added to the index.
+     * 
+     * @param channel
+     * @param line The line to write
+     * @param user The username
+     * @param text The message text
+     */
+    public void writeMessage(String channel, String line, String user, String text) {
+        writeItem(new LogItem(channel, line, user, text));
+    }
+    
+    private void writeItem(LogItem item) {
+        boolean added = queue.offer(item);
         if (!added) {
             int current = errors.incrementAndGet();
             if (current % 20 == 0) {
@@ -1,20 +1,36 @@
 
 package chatty.util.chatlog;
 
+import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 /**
  * Handles writing the log files. Retrieves data from a queue and manages files
  * to write the log into.
  * 
+ * All items currently in the queue are retrieved at once and written into the
+ * buffers of the files, which are flushed when the oldest unflushed line is
+ * older than the flush interval or when a file has buffered a lot of data.
+ * Optionally the files can also be forced to be written to the storage device
+ * after being flushed.
+ * 
+ * Files can be rotated when they reach a certain size or a new day started,
+ * in which case the file is renamed, compressed in the background (by the
+ * LogCompressor, so this thread doesn't have to wait for it) and a new file
+ * is started.
+ * 
  * @author tduva
  */
 public class LogWriter implements Runnable {
@@ -26,10 +42,50 @@ public class LogWriter implements Runnable {
     private static final int STATS_INTERVAL = 500;
     private static final int STATS_TIME_INTERVAL = 5*60*1000;
     
+    /**
+     * Flush a file when it has buffered this many chars, independent of the
+     * flush interval.
+     */
+    private static final int FLUSH_SIZE = 64*1024;
+    
+    /**
+     * The maximum number of items to retrieve from the queue at once.
+     */
+    private static final int MAX_BATCH_SIZE = 1000;
+    
     private final Map<String, LogFile> files = new HashMap<>();
     private final Set<String> errors = new HashSet<>();
     private final BlockingQueue<LogItem> queue;
     private final Path path;
+    private final long flushInterval;
+    private final boolean force;
+    private final List<LogItem> batch = new ArrayList<>();
+    
+    /**
+     * Files that have been written to since the last flush.
+     */
+    private final Set<LogFile> unflushed = new HashSet<>();
+    private long firstUnflushedTime;
+    
+    private final Stats stats = new Stats();
+    
+    /**
+     * The index to add messages to, may be null.
+     */
+    private final LogIndex index;
+    
+    private final SimpleDateFormat rotateFormat = new SimpleDateFormat("yyyyMMdd-HHmmss");
+    private long rotateSize;
+    private boolean rotateDaily;
+    private LogCompressor compressor;
+    private long dayStart;
+    private long nextDayStart;
+    
+    /**
+     * Files that couldn't be renamed when they should have been rotated, so
+     * it isn't tried again for every line.
+     */
+    private final Set<LogFile> rotateFailed = new HashSet<>();
     
     private long addedQueueSize;
     private int addedQueueSizeCount;
@@ -39,8 +95,42 @@ public class LogWriter implements Runnable {
     private int totalLines;
     
     public LogWriter(BlockingQueue<LogItem> queue, Path path) {
+        this(queue, path, 0, false, null);
+    }
+    
+    /**
+     * Creates a new LogWriter.
+     * 
+     * @param queue The queue to retrieve items from
+     * @param path The directory to write the files into
+     * @param flushInterval How long written lines may stay in the buffer at
+     * most, in milliseconds (0 to flush after every batch)
+     * @param force Whether to force the data to the storage device after each
+     * flush
+     * @param index The index to add messages to, may be null
+     */
+    public LogWriter(BlockingQueue<LogItem> queue, Path path,
+            long flushInterval, boolean force, LogIndex index) {
         this.queue = queue;
         this.path = path;
+        this.flushInterval = Math.max(flushInterval, 0);
+        this.force = force;
+        this.index = index;
+    }
+    
+    /**
+     * Sets when files should be rotated. Must be called before the writer is
+     * started.
+     * 
+     * @param maxSize Rotate when a file reaches this size in bytes (0 to
+     * disable)
+     * @param daily Rotate files that were opened before the current day
+     * @param compressor Used to compress rotated files, may be null
+     */
+    public void setRotation(long maxSize, boolean daily, LogCompressor compressor) {
+        this.rotateSize = maxSize;
+        this.rotateDaily = daily;
+        this.compressor = compressor;
     }
     
     @Override
@@ -49,22 +139,41 @@ public class LogWriter implements Runnable {
         try {
             while (run) {
                 //System.out.println("Waiting for a new item..");
-                LogItem item = queue.take();
-                stats(queue.size());
-                if (item.channel == null) {
-                    if (item.message == null) {
-                        outputStats();
-                        run = false;
-                        closeAllFiles();
-                    } else {
-                        // Can't close any files here because it would
-                        // remove an item during iteration
-                        for (String channel : files.keySet()) {
-                            handleMessage(channel, item.message);
+                LogItem first;
+                if (unflushed.isEmpty()) {
+                    first = queue.take();
+                } else {
+                    long wait = firstUnflushedTime + flushInterval - System.currentTimeMillis();
+                    first = queue.poll(Math.max(wait, 0), TimeUnit.MILLISECONDS);
+                }
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                    stats.batch(batch.size(), queue.size());
+                }
+                for (LogItem item : batch) {
+                    stats(queue.size());
+                    stats.item(item);
+                    if (item.channel == null) {
+                        if (item.message == null) {
+                            outputStats();
+                            run = false;
+                            closeAllFiles();
+                            break;
+                        } else {
+                            // Iterate over a copy, since writing may remove
+                            // or add files (rotation, errors)
+                            for (String channel : new ArrayList<>(files.keySet())) {
+                                handleMessage(channel, item.message, null, null);
+                            }
                         }
+                    } else {
+                        handleMessage(item.channel, item.message, item.user, item.text);
                     }
-                } else {
-                    handleMessage(item.channel, item.message);
+                }
+                batch.clear();
+                if (run) {
+                    flushIfNecessary();
                 }
             }
         } catch (InterruptedException ex) {
@@ -74,27 +183,177 @@ public class LogWriter implements Runnable {
         }
     }
     
+    /**
+     * Flushes all files if the flush interval has passed since the first line
+     * that hasn't been flushed yet.
+     */
+    private void flushIfNecessary() {
+        if (!unflushed.isEmpty()
+                && System.currentTimeMillis() - firstUnflushedTime >= flushInterval) {
+            flushAll();
+        }
+    }
+    
+    private void flushAll() {
+        stats.flushed(System.currentTimeMillis() - firstUnflushedTime);
+        // Copy, since an error removes the file from the set
+        for (LogFile file : new ArrayList<>(unflushed)) {
+            flush(file);
+        }
+        unflushed.clear();
+    }
+    
+    private void flush(LogFile file) {
+        boolean success = file.flush();
+        if (success && force) {
+            success = file.force();
+            stats.forced();
+        }
+        if (!success) {
+            for (Map.Entry<String, LogFile> entry : files.entrySet()) {
+                if (entry.getValue() == file) {
+                    fileError(entry.getKey());
+                    break;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Remember that the given file has been written to, and flush it if it
+     * has buffered a lot already.
+     * 
+     * @param file 
+     */
+    private void written(LogFile file) {
+        if (file.getUnflushed() >= FLUSH_SIZE) {
+            flush(file);
+            unflushed.remove(file);
+        } else {
+            if (unflushed.isEmpty()) {
+                firstUnflushedTime = System.currentTimeMillis();
+            }
+            unflushed.add(file);
+        }
+    }
+    
+    /**
+     * The statistics of this writer, which can be accessed from other threads.
+     * 
+     * @return 
+     */
+    public Stats getStats() {
+        return stats;
+    }
+    
     private void closeAllFiles() {
         for (String channel : files.keySet()) {
             LogFile file = files.get(channel);
             closeFile(file);
         }
         files.clear();
+        unflushed.clear();
+        if (index != null) {
+            index.closeAll();
+        }
     }
     
-    private void handleMessage(String channel, String message) {
+    private void handleMessage(String channel, String message, String user, String text) {
         if (message == null) {
             closeFileForChannel(channel);
         } else {
-            writeLine(channel, message);
+            writeLine(channel, message, user, text);
         }
     }
     
-    private void writeLine(String channel, String line) {
+    private void writeLine(String channel, String line, String user, String text) {
         LogFile file = getFile(channel);
+        if (file != null && shouldRotate(file)) {
+            file = rotate(channel, file);
+        }
+        long offset = file != null ? file.getPosition() : 0;
         if (file == null || !file.write(line)) {
             fileError(channel);
+        } else {
+            written(file);
+            if (index != null && (user != null || text != null)) {
+                index.add(channel, file.getPath(), offset, user, text);
+            }
+        }
+    }
+    
+    private boolean shouldRotate(LogFile file) {
+        if (rotateFailed.contains(file)) {
+            return false;
+        }
+        if (rotateSize > 0 && file.getPosition() >= rotateSize) {
+            return true;
+        }
+        if (rotateDaily) {
+            long now = System.currentTimeMillis();
+            if (now >= nextDayStart) {
+                Calendar cal = Calendar.getInstance();
+                cal.setTimeInMillis(now);
+                cal.set(Calendar.HOUR_OF_DAY, 0);
+                cal.set(Calendar.MINUTE, 0);
+                cal.set(Calendar.SECOND, 0);
+                cal.set(Calendar.MILLISECOND, 0);
+                dayStart = cal.getTimeInMillis();
+                cal.add(Calendar.DAY_OF_MONTH, 1);
+                nextDayStart = cal.getTimeInMillis();
+            }
+            return file.getOpenedTime() < dayStart;
+        }
+        return false;
+    }
+    
+    /**
+     * Closes the given file, renames it and opens a new file for the channel.
+     * If the file can't be renamed, the new file will be the same file again.
+     * 
+     * @param channel
+     * @param file
+     * @return The new file, or null if it couldn't be opened
+     */
+    private LogFile rotate(String channel, LogFile file) {
+        closeFile(file);
+        files.remove(channel);
+        Path current = file.getPath();
+        String name = current.getFileName().toString();
+        if (name.endsWith(".log")) {
+            name = name.substring(0, name.length() - 4);
+        }
+        name += "-"+rotateFormat.format(Calendar.getInstance().getTime());
+        Path rotated = current.resolveSibling(name+".log");
+        // Rotated more than once in the same second
+        for (int i = 1; Files.exists(rotated)
+                || Files.exists(LogCompressor.getCompressedPath(rotated)); i++) {
+            rotated = current.resolveSibling(name+"-"+i+".log");
+        }
+        boolean success = false;
+        try {
+            Files.move(current, rotated);
+            success = true;
+            LOGGER.info("Log: Rotated "+current+" to "+rotated);
+        } catch (IOException ex) {
+            LOGGER.warning("Log: Error rotating "+current+": "+ex);
+        }
+        if (success) {
+            stats.rotated();
+            if (index != null) {
+                index.rotated(channel, current, rotated);
+            }
+            if (compressor != null) {
+                compressor.compressLater(rotated);
+            }
+        } else if (index != null) {
+            index.close(channel);
         }
+        LogFile newFile = getFile(channel);
+        if (!success && newFile != null) {
+            rotateFailed.add(newFile);
+        }
+        return newFile;
     }
     
     private LogFile getFile(String channel) {
@@ -115,6 +374,7 @@ public class LogWriter implements Runnable {
         } else {
             files.put(channel, file);
             file.write("# Log started: "+getDateTime());
+            written(file);
             LOGGER.info("Log: Opened file " + file.getPath());
         }
         return file;
@@ -122,18 +382,24 @@ public class LogWriter implements Runnable {
     
     private void fileError(String channel) {
         //LOGGER.warning("LOG: Could not write to file for "+channel);
-        files.remove(channel);
+        unflushed.remove(files.remove(channel));
         errors.add(channel);
         errorCount++;
+        stats.error();
     }
     
     private void closeFileForChannel(String channel) {
         LogFile file = files.get(channel);
         closeFile(file);
         files.remove(channel);
+        if (index != null) {
+            index.close(channel);
+        }
     }
     
     private void closeFile(LogFile file) {
+        unflushed.remove(file);
+        rotateFailed.remove(file);
         if (file != null && file.isValid()) {
             file.write("# Log closed: "+getDateTime());
             file.write("-");
@@ -162,7 +428,7 @@ public class LogWriter implements Runnable {
     private void outputStats() {
         long avg = addedQueueSizeCount > 0 ? addedQueueSize / addedQueueSizeCount : 0;
         LOGGER.info("Log: total: "+totalLines+" / queue size (avg: "+avg
-                +", max: "+maxQueueSize+") / errors: " + errorCount);
+                +", max: "+maxQueueSize+") / new errors: " + errorCount+" / "+stats);
         addedQueueSize = 0;
         addedQueueSizeCount = 0;
         errorCount = 0;
@@ -175,9 +441,149 @@ public class LogWriter implements Runnable {
         public final String channel;
         public final String message;
         
+        /**
+         * The username and text of a chat message, for the index (may be
+         * null).
+         */
+        public final String user;
+        public final String text;
+        
+        /**
+         * When the item was created, in nanoseconds.
+         */
+        public final long created;
+        
         public LogItem(String channel, String message) {
+            this(channel, message, null, null);
+        }
+        
+        public LogItem(String channel, String message, String user, String text) {
             this.channel = channel;
             this.message = message;
+            this.user = user;
+            this.text = text;
+            this.created = System.nanoTime();
+        }
+    }
+    
+    /**
+     * Statistics since the LogWriter was started. Only changed by the
+     * LogWriter thread, but can be read from any thread.
+     */
+    public static class Stats {
+        
+        private volatile long items;
+        private volatile long batches;
+        private volatile int maxBatchSize;
+        private volatile int maxQueueSize;
+        private volatile long totalQueueTime;
+        private volatile long maxQueueTime;
+        private volatile long flushes;
+        private volatile long maxFlushDelay;
+        private volatile long forces;
+        private volatile long errors;
+        private volatile long rotations;
+        
+        private void batch(int size, int remainingQueueSize) {
+            batches++;
+            maxBatchSize = Math.max(maxBatchSize, size);
+            maxQueueSize = Math.max(maxQueueSize, size + remainingQueueSize);
+        }
+        
+        private void item(LogItem item) {
+            long queueTime = System.nanoTime() - item.created;
+            items++;
+            totalQueueTime += queueTime;
+            maxQueueTime = Math.max(maxQueueTime, queueTime);
+        }
+        
+        private void flushed(long delay) {
+            flushes++;
+            maxFlushDelay = Math.max(maxFlushDelay, delay);
+        }
+        
+        private void forced() {
+            forces++;
+        }
+        
+        private void error() {
+            errors++;
+        }
+        
+        private void rotated() {
+            rotations++;
+        }
+        
+        public long getItems() {
+            return items;
+        }
+        
+        public long getBatches() {
+            return batches;
+        }
+        
+        public int getMaxBatchSize() {
+            return maxBatchSize;
+        }
+        
+        public int getMaxQueueSize() {
+            return maxQueueSize;
+        }
+        
+        /**
+         * The average time items spent in the queue, in milliseconds.
+         * 
+         * @return 
+         */
+        public double getAverageQueueTime() {
+            long count = items;
+            return count > 0 ? totalQueueTime / (double)count / 1000000 : 0;
+        }
+        
+        /**
+         * The longest time an item spent in the queue, in milliseconds.
+         * 
+         * @return 
+         */
+        public double getMaxQueueTime() {
+            return maxQueueTime / 1000000.0;
+        }
+        
+        public long getFlushes() {
+            return flushes;
+        }
+        
+        /**
+         * The longest time a line stayed in the buffer before being flushed,
+         * in milliseconds.
+         * 
+         * @return 
+         */
+        public long getMaxFlushDelay() {
+            return maxFlushDelay;
+        }
+        
+        public long getForces() {
+            return forces;
+        }
+        
+        public long getErrors() {
+            return errors;
+        }
+        
+        public long getRotations() {
+            return rotations;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("items: %d / batches: %d (max size: %d) / "
+                    + "max queue: %d / queue time: %.1fms avg, %.1fms max / "
+                    + "flushes: %d (max delay: %dms) / forces: %d / errors: %d / "
+                    + "rotations: %d",
+                    items, batches, maxBatchSize, maxQueueSize,
+                    getAverageQueueTime(), getMaxQueueTime(),
+                    flushes, maxFlushDelay, forces, errors, rotations);
         }
     }
     
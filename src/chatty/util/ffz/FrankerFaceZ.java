@@ -4,6 +4,7 @@ package chatty.util.ffz;
 import chatty.Helper;
 import chatty.util.api.usericons.Usericon;
 import chatty.util.StringUtil;
+import chatty.util.TaskScheduler;
 import chatty.util.UrlRequest;
 import chatty.util.api.Emoticon;
 import chatty.util.api.EmoticonUpdate;
@@ -125,8 +126,7 @@ public class FrankerFaceZ {
             return;
         }
         featureFridayTimerStarted = true;
-        Timer timer = new Timer("FFZ Feature Friday", true);
-        timer.schedule(new TimerTask() {
+        TaskScheduler.scheduleAtFixedRate("FFZFeatureFriday", new Runnable() {
 
             @Override
             public void run() {
@@ -180,7 +180,7 @@ public class FrankerFaceZ {
         };
         request.setLabel("[FFZ]");
         request.setUrl(url);
-        new Thread(request).start();
+        request.async();
     }
     
     /**
@@ -347,6 +347,6 @@ public class FrankerFaceZ {
             }
         };
         request.setLabel("FFZ Bots");
-        new Thread(request).start();
+        request.async();
     }
 }
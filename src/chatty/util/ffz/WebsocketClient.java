@@ -4,6 +4,7 @@ package chatty.util.ffz;
 import chatty.util.DateTime;
 import static chatty.util.MiscUtil.getStackTrace;
 import chatty.util.SSLUtil;
+import chatty.util.TaskScheduler;
 import chatty.util.TimedCounter;
 import chatty.util.ffz.WebsocketClient.MyConfigurator;
 import java.io.IOException;
@@ -13,8 +14,6 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.logging.Logger;
 import javax.websocket.ClientEndpoint;
@@ -94,8 +93,7 @@ public class WebsocketClient {
         }).start();
         
         // Ping Timer (should only be started once)
-        Timer ping = new Timer(true);
-        ping.schedule(new TimerTask() {
+        TaskScheduler.scheduleAtFixedRate("FFZPing", new Runnable() {
 
             @Override
             public void run() {
@@ -244,15 +242,13 @@ public class WebsocketClient {
         
         private void reconnect(long delay) {
             // Reconnect manually, so that the server can be changed
-            new java.util.Timer().schedule(
-                    new java.util.TimerTask() {
-                        @Override
-                        public void run() {
-                            connectToRandomServer();
-                        }
-                    },
-                    delay*1000
-            );
+            TaskScheduler.schedule("FFZReconnect", new Runnable() {
+
+                @Override
+                public void run() {
+                    connectToRandomServer();
+                }
+            }, delay*1000);
         }
     }
     
@@ -0,0 +1,116 @@
+
+package chatty.util.gif;
+
+import chatty.util.gif.GifDecoder.GifImage;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * The frames of an animated image, decoded once, with the time each frame is
+ * shown. Which frame is shown is based on the time, so all icons using the
+ * same animation show the same frame and no per-icon state is required.
+ *
+ * @author tduva
+ */
+public class AnimatedImage {
+
+    /**
+     * Delays smaller than or equal to this (in milliseconds) are replaced by
+     * {@link #DEFAULT_DELAY}, since browsers also do that and some GIFs rely on
+     * it.
+     */
+    private static final int MIN_DELAY = 10;
+    private static final int DEFAULT_DELAY = 100;
+
+    private final BufferedImage[] frames;
+
+    /**
+     * The time (since the start of the animation) at which each frame ends.
+     */
+    private final long[] frameEnds;
+    private final long duration;
+
+    public AnimatedImage(BufferedImage[] frames, int[] delays) {
+        if (frames.length == 0 || frames.length != delays.length) {
+            throw new IllegalArgumentException("Invalid frames");
+        }
+        this.frames = frames;
+        this.frameEnds = new long[frames.length];
+        long time = 0;
+        for (int i = 0; i < frames.length; i++) {
+            int delay = delays[i];
+            if (delay <= MIN_DELAY) {
+                delay = DEFAULT_DELAY;
+            }
+            time += delay;
+            frameEnds[i] = time;
+        }
+        this.duration = time;
+    }
+
+    /**
+     * Creates an animation from a decoded GIF.
+     *
+     * @param gif
+     * @return
+     */
+    public static AnimatedImage fromGif(GifImage gif) {
+        int count = gif.getFrameCount();
+        BufferedImage[] frames = new BufferedImage[count];
+        int[] delays = new int[count];
+        for (int i = 0; i < count; i++) {
+            frames[i] = gif.getFrame(i);
+            // GIF delays are in 1/100 seconds
+            delays[i] = gif.getDelay(i) * 10;
+        }
+        return new AnimatedImage(frames, delays);
+    }
+
+    public int getWidth() {
+        return frames[0].getWidth();
+    }
+
+    public int getHeight() {
+        return frames[0].getHeight();
+    }
+
+    public int getFrameCount() {
+        return frames.length;
+    }
+
+    public BufferedImage getFrame(int index) {
+        return frames[index];
+    }
+
+    /**
+     * The index of the frame to show at the given time.
+     *
+     * @param time The time in milliseconds (e.g. current time)
+     * @return
+     */
+    public int getFrameIndex(long time) {
+        if (frames.length == 1) {
+            return 0;
+        }
+        long position = time % duration;
+        int index = Arrays.binarySearch(frameEnds, position);
+        // Exactly at the end of a frame means the next frame is shown
+        return index >= 0 ? (index + 1) % frames.length : -index - 1;
+    }
+
+    /**
+     * The time at which the frame shown at the given time changes.
+     *
+     * @param time The time in milliseconds
+     * @return The time in milliseconds, or -1 if the image only has one frame
+     */
+    public long getNextChange(long time) {
+        if (frames.length == 1) {
+            return -1;
+        }
+        long position = time % duration;
+        int index = getFrameIndex(time);
+        return time - position + frameEnds[index];
+    }
+
+}
@@ -0,0 +1,103 @@
+
+package chatty.util.gif;
+
+import java.awt.Component;
+import java.awt.Graphics;
+import java.awt.Image;
+import javax.swing.ImageIcon;
+
+/**
+ * An ImageIcon that can show an animation with pre-decoded frames, which are
+ * painted at the current frame of the {@link AnimationClock}, scaled to the
+ * set size. Without an animation set, it behaves like a normal ImageIcon.
+ *
+ * @author tduva
+ */
+public class AnimatedImageIcon extends ImageIcon {
+
+    private volatile AnimatedImage animation;
+    private volatile int width;
+    private volatile int height;
+
+    public AnimatedImageIcon(Image image) {
+        super(image);
+    }
+
+    public AnimatedImageIcon(AnimatedImage animation) {
+        super(animation.getFrame(0));
+        this.animation = animation;
+        this.width = animation.getWidth();
+        this.height = animation.getHeight();
+    }
+
+    /**
+     * Sets the animation to show, replacing the current image.
+     *
+     * @param animation The animation, or null to show the image instead
+     * @param width The width to paint the animation at
+     * @param height The height to paint the animation at
+     */
+    public void setAnimation(AnimatedImage animation, int width, int height) {
+        if (animation != null) {
+            super.setImage(animation.getFrame(0));
+        }
+        this.width = width;
+        this.height = height;
+        this.animation = animation;
+    }
+
+    /**
+     * Sets the size to paint the animation at.
+     *
+     * @param width
+     * @param height
+     */
+    public void setSize(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    public AnimatedImage getAnimation() {
+        return animation;
+    }
+
+    /**
+     * Sets an image, removing the animation if one was set.
+     *
+     * @param image
+     */
+    @Override
+    public void setImage(Image image) {
+        animation = null;
+        super.setImage(image);
+    }
+
+    @Override
+    public int getIconWidth() {
+        if (animation != null) {
+            return width;
+        }
+        return super.getIconWidth();
+    }
+
+    @Override
+    public int getIconHeight() {
+        if (animation != null) {
+            return height;
+        }
+        return super.getIconHeight();
+    }
+
+    @Override
+    public synchronized void paintIcon(Component c, Graphics g, int x, int y) {
+        AnimatedImage current = animation;
+        if (current == null) {
+            super.paintIcon(c, g, x, y);
+            return;
+        }
+        int frame = current.getFrameIndex(AnimationClock.getTime());
+        g.drawImage(current.getFrame(frame), x, y, width, height, null);
+        AnimationClock.painted(c, x, y, width, height, current, frame);
+    }
+
+}
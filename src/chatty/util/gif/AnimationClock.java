@@ -0,0 +1,197 @@
+
+package chatty.util.gif;
+
+import java.awt.Component;
+import java.awt.Rectangle;
+import java.awt.Window;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * A single clock for all animated icons, so that not every icon needs its own
+ * timer to repaint itself.
+ *
+ * Icons report where they have been painted and with which frame. When the
+ * frame of an animation changes, only the areas where it was painted are
+ * repainted. Areas that aren't painted anymore (e.g. because they were
+ * scrolled out of view) aren't repainted, so animations that aren't visible
+ * don't cause any work. Components that aren't showing (e.g. in a tab that
+ * isn't selected) are skipped and optionally components in windows that
+ * aren't focused as well.
+ *
+ * Must only be used from the EDT.
+ *
+ * @author tduva
+ */
+public class AnimationClock {
+
+    /**
+     * The minimum time between repaints, in milliseconds.
+     */
+    private static final int MIN_DELAY = 20;
+
+    /**
+     * How often to check whether paused animations should continue, in
+     * milliseconds.
+     */
+    private static final int PAUSED_DELAY = 500;
+
+    private static final Map<Component, List<Painted>> painted = new WeakHashMap<>();
+
+    private static final Timer timer = new Timer(MIN_DELAY, new ActionListener() {
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            update();
+        }
+    });
+
+    static {
+        timer.setRepeats(false);
+    }
+
+    private static boolean pauseUnfocused;
+
+    /**
+     * When the timer is scheduled to run next.
+     */
+    private static long scheduledTime;
+
+    /**
+     * Whether animations in windows that aren't focused should be paused.
+     *
+     * @param pause
+     */
+    public static void setPauseUnfocused(boolean pause) {
+        pauseUnfocused = pause;
+    }
+
+    /**
+     * The current time, that determines which frame of animations is shown.
+     *
+     * @return
+     */
+    public static long getTime() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Should be called by an icon when it has been painted. The area will be
+     * repainted once the animation changes to another frame.
+     *
+     * @param c The component the icon has been painted on
+     * @param x
+     * @param y
+     * @param width
+     * @param height
+     * @param image The animation
+     * @param frame The index of the frame that has been painted
+     */
+    public static void painted(Component c, int x, int y, int width, int height,
+            AnimatedImage image, int frame) {
+        if (c == null || image.getFrameCount() == 1) {
+            return;
+        }
+        List<Painted> entries = painted.get(c);
+        if (entries == null) {
+            entries = new ArrayList<>();
+            painted.put(c, entries);
+        }
+        Rectangle bounds = new Rectangle(x, y, width, height);
+        for (Painted entry : entries) {
+            if (entry.image == image && entry.bounds.equals(bounds)) {
+                entry.frame = frame;
+                schedule(image.getNextChange(getTime()));
+                return;
+            }
+        }
+        entries.add(new Painted(bounds, image, frame));
+        schedule(image.getNextChange(getTime()));
+    }
+
+    /**
+     * Make sure the timer runs at or before the given time.
+     *
+     * @param time
+     */
+    private static void schedule(long time) {
+        long now = getTime();
+        if (timer.isRunning() && scheduledTime <= time) {
+            return;
+        }
+        int delay = (int) Math.max(MIN_DELAY, time - now);
+        scheduledTime = now + delay;
+        timer.setInitialDelay(delay);
+        timer.restart();
+    }
+
+    /**
+     * Repaint all areas where the frame has changed.
+     */
+    private static void update() {
+        long now = getTime();
+        long next = Long.MAX_VALUE;
+        Iterator<Map.Entry<Component, List<Painted>>> it = painted.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Component, List<Painted>> e = it.next();
+            Component c = e.getKey();
+            List<Painted> entries = e.getValue();
+            if (!c.isShowing()) {
+                // Will be painted again when it's shown
+                it.remove();
+                continue;
+            }
+            if (isPaused(c)) {
+                next = Math.min(next, now + PAUSED_DELAY);
+                continue;
+            }
+            Iterator<Painted> entriesIt = entries.iterator();
+            while (entriesIt.hasNext()) {
+                Painted entry = entriesIt.next();
+                if (entry.image.getFrameIndex(now) != entry.frame) {
+                    // Will be added again when painted
+                    entriesIt.remove();
+                    c.repaint(entry.bounds.x, entry.bounds.y,
+                            entry.bounds.width, entry.bounds.height);
+                } else {
+                    next = Math.min(next, entry.image.getNextChange(now));
+                }
+            }
+            if (entries.isEmpty()) {
+                it.remove();
+            }
+        }
+        if (next != Long.MAX_VALUE) {
+            schedule(next);
+        }
+    }
+
+    private static boolean isPaused(Component c) {
+        if (!pauseUnfocused) {
+            return false;
+        }
+        Window w = SwingUtilities.getWindowAncestor(c);
+        return w != null && !w.isFocused();
+    }
+
+    private static class Painted {
+
+        final Rectangle bounds;
+        final AnimatedImage image;
+        int frame;
+
+        Painted(Rectangle bounds, AnimatedImage image, int frame) {
+            this.bounds = bounds;
+            this.image = image;
+            this.frame = frame;
+        }
+    }
+
+}
@@ -1,14 +1,14 @@
 
 package chatty.util.gif;
 
-import chatty.util.gif.GifDecoder.GifImage;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.SoftReference;
 import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.logging.Logger;
-import javax.imageio.ImageIO;
-import javax.imageio.stream.ImageOutputStream;
 import javax.swing.ImageIcon;
 
 /**
@@ -19,38 +19,44 @@ public class GifUtil {
     
     private static final Logger LOGGER = Logger.getLogger(GifUtil.class.getName());
     
+    /**
+     * Decoded animations by URL, so that the same image loaded several times
+     * (e.g. in different sizes) is only decoded once, as long as it's still in
+     * use somewhere.
+     */
+    private static final Map<String, SoftReference<AnimatedImage>> cache = new HashMap<>();
+    
     public static ImageIcon getGifFromUrl(URL url) throws Exception {
+        String key = url.toString();
+        synchronized(cache) {
+            SoftReference<AnimatedImage> ref = cache.get(key);
+            if (ref != null && ref.get() != null) {
+                return new AnimatedImageIcon(ref.get());
+            }
+        }
+        AnimatedImage animation;
         try (InputStream input = url.openStream()) {
             // Use readAllBytes() because GifDecoder doesn't handle streams well
-            return fixGifFps(readAllBytes(input));
+            animation = decode(readAllBytes(input));
         }
+        synchronized(cache) {
+            cache.put(key, new SoftReference<>(animation));
+        }
+        return new AnimatedImageIcon(animation);
     }
     
     /**
-     * Decodes and re-writes the animated GIF with modified FPS. Any delay
-     * smaller than 10ms is set to 100ms. Yes, this is kind of ugly, but it
-     * worked best with the GIF emotes I tested.
+     * Decodes all frames of the animated GIF, which can then be painted
+     * directly, instead of having to decode the GIF again while it is
+     * animated. Any delay smaller than 10ms is set to 100ms. Yes, this is kind
+     * of ugly, but it worked best with the GIF emotes I tested.
      * 
      * @param imageData
      * @return
      * @throws IOException 
      */
-    private static ImageIcon fixGifFps(byte[] imageData) throws IOException {
-        final GifImage gif = GifDecoder.read(imageData);
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        try (ImageOutputStream output = ImageIO.createImageOutputStream(bos)) {
-            int delay = gif.getDelay(0) * 10;
-            if (delay <= 10) {
-                delay = 100;
-            }
-            GifSequenceWriter w = new GifSequenceWriter(output, gif.getFrame(0).getType(), delay, true);
-            for (int i = 0; i < gif.getFrameCount(); i++) {
-                //System.out.println(gif.getDelay(i));
-                w.writeToSequence(gif.getFrame(i));
-            }
-            w.close();
-        }
-        return new ImageIcon(bos.toByteArray());
+    private static AnimatedImage decode(byte[] imageData) throws IOException {
+        return AnimatedImage.fromGif(GifDecoder.read(imageData));
     }
 
     /**
@@ -0,0 +1,362 @@
+
+package chatty.util.http;
+
+import chatty.Chatty;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Performs HTTP requests for the different parts of the program (API requests,
+ * emotes, images), so they can share connections and limits.
+ *
+ * <ul>
+ * <li>The number of simultaneous requests per host is limited, additional
+ * requests wait until another one finished.</li>
+ * <li>Responses are always read completely and the connection is not
+ * explicitly closed, so that the connection can be reused (keep-alive) for
+ * the next request to the same host.</li>
+ * <li>If an identical GET request is already in progress, it waits for and
+ * uses the response of that request, instead of requesting the same thing
+ * again.</li>
+ * <li>Requests can contain validators of a cached copy (ETag,
+ * Last-Modified), so the server only has to send it again if it changed.</li>
+ * <li>Statistics (number of requests, time, size) are collected for each stats
+ * key the requests specify.</li>
+ * </ul>
+ *
+ * Requests can be run in the current thread, or on a shared pool of threads
+ * with {@link #submit(Runnable)}.
+ *
+ * @author tduva
+ */
+public class HttpClient {
+
+    private static final Logger LOGGER = Logger.getLogger(HttpClient.class.getName());
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private static final String USER_AGENT = "Chatty "+Chatty.VERSION;
+
+    /**
+     * The maximum number of requests that run at the same time for a host.
+     */
+    private static final int MAX_PER_HOST = 4;
+
+    /**
+     * The number of threads used for requests run with
+     * {@link #submit(Runnable)}.
+     */
+    private static final int THREADS = 12;
+
+    private static final ConcurrentMap<String, Semaphore> hostLimits = new ConcurrentHashMap<>();
+
+    private static final ConcurrentMap<String, FutureTask<HttpResponse>> inProgress = new ConcurrentHashMap<>();
+
+    private static final Map<String, Stats> stats = new TreeMap<>();
+
+    private static final ThreadPoolExecutor executor;
+
+    static {
+        executor = new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "HttpClient-"+count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Runs the given task (which would usually perform one or several
+     * requests) on the shared request threads.
+     *
+     * @param task
+     */
+    public static void submit(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * The executor that runs tasks on the shared request threads.
+     *
+     * @return
+     * @see #submit(Runnable)
+     */
+    public static Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * Performs the request in the current thread, waiting until it is
+     * finished.
+     *
+     * @param request The request
+     * @return The response, never null
+     */
+    public static HttpResponse execute(final HttpRequest request) {
+        if (!request.canBeShared()) {
+            return executeLimited(request);
+        }
+        String key = request.getKey();
+        FutureTask<HttpResponse> task = new FutureTask<>(new Callable<HttpResponse>() {
+
+            @Override
+            public HttpResponse call() {
+                return executeLimited(request);
+            }
+        });
+        FutureTask<HttpResponse> existing = inProgress.putIfAbsent(key, task);
+        if (existing != null) {
+            LOGGER.info("Using response of request already in progress: "+request);
+            getKeyStats(request.getStatsKey()).addShared();
+            return getResult(existing);
+        }
+        try {
+            task.run();
+            return getResult(task);
+        } finally {
+            inProgress.remove(key, task);
+        }
+    }
+
+    /**
+     * Statistics for all stats keys that have been used by requests.
+     *
+     * @return A multi-line String
+     */
+    public static String getStats() {
+        StringBuilder b = new StringBuilder();
+        b.append(String.format("Threads: %d (active %d, queued %d), in progress: %d",
+                executor.getPoolSize(), executor.getActiveCount(),
+                executor.getQueue().size(), inProgress.size()));
+        synchronized(stats) {
+            for (Map.Entry<String, Stats> entry : stats.entrySet()) {
+                b.append("\n").append(entry.getKey()).append(": ")
+                        .append(entry.getValue());
+            }
+        }
+        return b.toString();
+    }
+
+    private static HttpResponse getResult(FutureTask<HttpResponse> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException | ExecutionException ex) {
+            return new HttpResponse(-1, null, ex.toString(), null, null, 0, 0, 0);
+        }
+    }
+
+    /**
+     * Performs the request once a slot for the host is free.
+     *
+     * @param request
+     * @return
+     */
+    private static HttpResponse executeLimited(HttpRequest request) {
+        Semaphore limit = getHostLimit(request.getUrl());
+        try {
+            limit.acquire();
+        } catch (InterruptedException ex) {
+            return new HttpResponse(-1, null, ex.toString(), null, null, 0, 0, 0);
+        }
+        try {
+            HttpResponse response = executeInternal(request);
+            getKeyStats(request.getStatsKey()).add(response);
+            return response;
+        } finally {
+            limit.release();
+        }
+    }
+
+    private static HttpResponse executeInternal(HttpRequest request) {
+        long start = System.currentTimeMillis();
+        HttpURLConnection connection = null;
+        int responseCode = -1;
+        byte[] body = null;
+        String error = null;
+        String encoding = null;
+        String etag = null;
+        long lastModified = 0;
+        long size = 0;
+        try {
+            URLConnection urlConnection = new URL(request.getUrl()).openConnection();
+            if (!(urlConnection instanceof HttpURLConnection)) {
+                throw new IOException("Not a HTTP URL");
+            }
+            connection = (HttpURLConnection) urlConnection;
+            connection.setConnectTimeout(request.getConnectTimeout());
+            connection.setReadTimeout(request.getReadTimeout());
+            connection.setRequestMethod(request.getMethod());
+            connection.setRequestProperty("User-Agent", USER_AGENT);
+            connection.setRequestProperty("Accept-Encoding", "gzip");
+            for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+            if (request.getEtag() != null) {
+                connection.setRequestProperty("If-None-Match", request.getEtag());
+            }
+            if (request.getLastModified() > 0) {
+                connection.setIfModifiedSince(request.getLastModified());
+            }
+            if (request.getData() != null) {
+                connection.setDoOutput(true);
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(request.getData().getBytes(CHARSET));
+                }
+            }
+
+            responseCode = connection.getResponseCode();
+            encoding = connection.getContentEncoding();
+            etag = connection.getHeaderField("ETag");
+            lastModified = connection.getLastModified();
+            if (responseCode == 304) {
+                readFully(connection.getInputStream());
+            } else {
+                InputStream input = connection.getInputStream();
+                if ("gzip".equals(encoding)) {
+                    input = new GZIPInputStream(input);
+                }
+                if (request.getBodyFile() != null) {
+                    try (InputStream in = input) {
+                        size = Files.copy(in, request.getBodyFile(),
+                                StandardCopyOption.REPLACE_EXISTING);
+                    }
+                } else {
+                    body = readFully(input);
+                    size = body.length;
+                }
+            }
+        } catch (IOException ex) {
+            error = ex.toString();
+            if (connection != null) {
+                // Reading the error response allows the connection to be reused
+                try {
+                    readFully(connection.getErrorStream());
+                } catch (IOException ex2) {
+                    // Connection won't be reused
+                }
+            }
+        }
+        return new HttpResponse(responseCode, body, error, encoding, etag,
+                lastModified, System.currentTimeMillis() - start, size);
+    }
+
+    /**
+     * Reads and closes the stream.
+     *
+     * @param input The stream, may be null
+     * @return The read bytes, or null if the stream was null
+     * @throws IOException
+     */
+    private static byte[] readFully(InputStream input) throws IOException {
+        if (input == null) {
+            return null;
+        }
+        try (InputStream in = input) {
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                result.write(buffer, 0, read);
+            }
+            return result.toByteArray();
+        }
+    }
+
+    private static Semaphore getHostLimit(String url) {
+        String host;
+        try {
+            URL parsed = new URL(url);
+            host = parsed.getHost()+":"+parsed.getPort();
+        } catch (IOException ex) {
+            host = "";
+        }
+        Semaphore limit = hostLimits.get(host);
+        if (limit == null) {
+            limit = new Semaphore(MAX_PER_HOST, true);
+            Semaphore existing = hostLimits.putIfAbsent(host, limit);
+            if (existing != null) {
+                limit = existing;
+            }
+        }
+        return limit;
+    }
+
+    private static Stats getKeyStats(String key) {
+        synchronized(stats) {
+            Stats keyStats = stats.get(key);
+            if (keyStats == null) {
+                keyStats = new Stats();
+                stats.put(key, keyStats);
+            }
+            return keyStats;
+        }
+    }
+
+    private static class Stats {
+
+        private int requests;
+        private int errors;
+        private int notModified;
+        private int shared;
+        private long bytes;
+        private long totalTime;
+        private long maxTime;
+
+        synchronized void add(HttpResponse response) {
+            requests++;
+            if (response.getError() != null) {
+                errors++;
+            }
+            if (response.isNotModified()) {
+                notModified++;
+            }
+            bytes += response.getSize();
+            totalTime += response.getTime();
+            maxTime = Math.max(maxTime, response.getTime());
+        }
+
+        synchronized void addShared() {
+            shared++;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("%d requests (%d errors, %d not modified, %d shared), %dKB, %.0fms avg, %dms max",
+                    requests, errors, notModified, shared, bytes / 1024,
+                    requests > 0 ? totalTime / (double) requests : 0.0,
+                    maxTime);
+        }
+    }
+
+}
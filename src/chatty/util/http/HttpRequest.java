@@ -0,0 +1,167 @@
+
+package chatty.util.http;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The settings for a single HTTP request, which can be executed with
+ * {@link HttpClient}.
+ *
+ * @author tduva
+ */
+public class HttpRequest {
+
+    private final String url;
+    private final Map<String, String> headers = new LinkedHashMap<>();
+    private String method = "GET";
+    private String data;
+    private int connectTimeout = 10000;
+    private int readTimeout = 10000;
+    private String statsKey = "Other";
+    private String etag;
+    private long lastModified;
+    private Path bodyFile;
+
+    public HttpRequest(String url) {
+        this.url = url;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setMethod(String method) {
+        this.method = method;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * Sets a request header, replacing any previously set value.
+     *
+     * @param name
+     * @param value
+     */
+    public void setHeader(String name, String value) {
+        headers.put(name, value);
+    }
+
+    public Map<String, String> getHeaders() {
+        return Collections.unmodifiableMap(headers);
+    }
+
+    /**
+     * Sets the data to send (as UTF-8) with the request.
+     *
+     * @param data The data, or null to not send any
+     */
+    public void setData(String data) {
+        this.data = data;
+    }
+
+    public String getData() {
+        return data;
+    }
+
+    /**
+     * Sets the timeouts.
+     *
+     * @param connectTimeout The connect timeout in milliseconds
+     * @param readTimeout The read timeout in milliseconds
+     */
+    public void setTimeouts(int connectTimeout, int readTimeout) {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * Sets the name the statistics of this request are collected under (e.g.
+     * the type of request).
+     *
+     * @param statsKey
+     */
+    public void setStatsKey(String statsKey) {
+        this.statsKey = statsKey;
+    }
+
+    public String getStatsKey() {
+        return statsKey;
+    }
+
+    /**
+     * Sets the validators of a cached copy of the resource, so the server can
+     * respond with "304 Not Modified" if it hasn't changed.
+     *
+     * @param etag The ETag of the cached copy, may be null
+     * @param lastModified When the cached copy was last modified (in
+     * milliseconds), 0 for unknown
+     */
+    public void setCacheValidators(String etag, long lastModified) {
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Sets a file to write the body of a successful response to, instead of
+     * keeping it in memory. This is useful for large responses that can be
+     * processed while reading them from the file.
+     *
+     * @param bodyFile The file (replaced if it exists), or null to keep the
+     * body in memory
+     */
+    public void setBodyFile(Path bodyFile) {
+        this.bodyFile = bodyFile;
+    }
+
+    public Path getBodyFile() {
+        return bodyFile;
+    }
+
+    /**
+     * Whether the response to this request can be shared with an identical
+     * request that is made at the same time. This is only the case for
+     * requests that don't change anything on the server.
+     *
+     * @return
+     */
+    boolean canBeShared() {
+        return method.equals("GET") && data == null;
+    }
+
+    /**
+     * A key that is the same for requests that would return the same response
+     * (including the headers, since they can contain e.g. authorization).
+     *
+     * @return
+     */
+    String getKey() {
+        return method+" "+url+" "+headers+" "+etag+" "+lastModified+" "+bodyFile;
+    }
+
+    @Override
+    public String toString() {
+        return method+" "+url;
+    }
+
+}
@@ -0,0 +1,136 @@
+
+package chatty.util.http;
+
+import java.nio.charset.Charset;
+
+/**
+ * The result of a {@link HttpRequest}. Instances may be shared between
+ * requests, so the body must not be modified.
+ *
+ * @author tduva
+ */
+public class HttpResponse {
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private final int responseCode;
+    private final byte[] body;
+    private final String error;
+    private final String encoding;
+    private final String etag;
+    private final long lastModified;
+    private final long time;
+    private final long size;
+
+    HttpResponse(int responseCode, byte[] body, String error, String encoding,
+            String etag, long lastModified, long time, long size) {
+        this.responseCode = responseCode;
+        this.body = body;
+        this.error = error;
+        this.encoding = encoding;
+        this.etag = etag;
+        this.lastModified = lastModified;
+        this.time = time;
+        this.size = size;
+    }
+
+    /**
+     * The HTTP response code.
+     *
+     * @return The response code, or -1 if none was received
+     */
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    /**
+     * The body of a successful response (already decompressed).
+     *
+     * @return The body, or null if the request failed, the response was
+     * "304 Not Modified" or the body was written to a file
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * The body of a successful response as UTF-8 text.
+     *
+     * @return The text, or null if there is no body
+     */
+    public String getText() {
+        if (body == null) {
+            return null;
+        }
+        return new String(body, CHARSET);
+    }
+
+    /**
+     * The error that occured while performing the request.
+     *
+     * @return The error message, or null if there was none
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * The Content-Encoding the body was received in (e.g. "gzip").
+     *
+     * @return The encoding, or null if none was specified
+     */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    public String getEtag() {
+        return etag;
+    }
+
+    /**
+     * The Last-Modified header.
+     *
+     * @return The time in milliseconds, or 0 if not specified
+     */
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Whether the cached copy (as specified in the request) is still valid.
+     *
+     * @return
+     */
+    public boolean isNotModified() {
+        return responseCode == 304;
+    }
+
+    /**
+     * The size of the body (after decompressing), also if it was written to a
+     * file.
+     *
+     * @return The size in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Whether the request was successful (the body was received).
+     *
+     * @return
+     */
+    public boolean isSuccess() {
+        return error == null && responseCode >= 200 && responseCode < 300;
+    }
+
+    /**
+     * How long the request took, in milliseconds.
+     *
+     * @return
+     */
+    public long getTime() {
+        return time;
+    }
+
+}
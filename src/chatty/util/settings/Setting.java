@@ -38,6 +38,12 @@ public class Setting {
     private boolean save = true;
     private String file;
     
+    /**
+     * The position of this setting in the {@link SettingsSnapshot}, set when
+     * it is added to {@link Settings}.
+     */
+    int index = -1;
+    
     /**
      * Creates a new Setting object with some initial values.
      * 
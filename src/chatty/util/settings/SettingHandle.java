@@ -0,0 +1,119 @@
+
+package chatty.util.settings;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A reference to a single setting, with the setting name and type already
+ * resolved, so getting the value is just an array access in the current
+ * {@link SettingsSnapshot}, without locking or name lookup.
+ *
+ * Get an instance with one of the {@code get...Handle()} methods of
+ * {@link Settings}, which can be kept and used from any thread.
+ *
+ * @author tduva
+ */
+public abstract class SettingHandle {
+
+    private final Settings settings;
+    private final String name;
+    private final int index;
+
+    private SettingHandle(Settings settings, String name, int index) {
+        this.settings = settings;
+        this.name = name;
+        this.index = index;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    protected Object value() {
+        return settings.getSnapshot().get(index);
+    }
+
+    protected SettingsSnapshot.ListValue listValue() {
+        return settings.getSnapshot().getListValue(index);
+    }
+
+    @Override
+    public String toString() {
+        return name+"="+value();
+    }
+
+    public static class BooleanHandle extends SettingHandle {
+
+        BooleanHandle(Settings settings, String name, int index) {
+            super(settings, name, index);
+        }
+
+        public boolean get() {
+            return (Boolean) value();
+        }
+    }
+
+    public static class LongHandle extends SettingHandle {
+
+        LongHandle(Settings settings, String name, int index) {
+            super(settings, name, index);
+        }
+
+        public long get() {
+            return ((Number) value()).longValue();
+        }
+    }
+
+    public static class StringHandle extends SettingHandle {
+
+        StringHandle(Settings settings, String name, int index) {
+            super(settings, name, index);
+        }
+
+        public String get() {
+            return (String) value();
+        }
+    }
+
+    public static class ListHandle extends SettingHandle {
+
+        ListHandle(Settings settings, String name, int index) {
+            super(settings, name, index);
+        }
+
+        /**
+         * Gets an unmodifiable List with the current values.
+         *
+         * @return
+         */
+        public List<?> get() {
+            return listValue().list;
+        }
+
+        public boolean contains(Object value) {
+            return listValue().set.contains(value);
+        }
+    }
+
+    public static class MapHandle extends SettingHandle {
+
+        MapHandle(Settings settings, String name, int index) {
+            super(settings, name, index);
+        }
+
+        /**
+         * Gets an unmodifiable Map with the current values.
+         *
+         * @return
+         */
+        public Map<?, ?> get() {
+            return (Map<?, ?>) value();
+        }
+
+        public Object get(Object key) {
+            return get().get(key);
+        }
+    }
+
+}
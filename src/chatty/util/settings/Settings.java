@@ -24,6 +24,13 @@ import org.json.simple.parser.ParseException;
  * settings and checking type isn't synchronized, but if settings are only
  * added once at the beginning this shouldn't be a problem.
  * 
+ * Changes are made while holding the lock, after which an immutable
+ * {@link SettingsSnapshot} with the new values is published. Reading single
+ * values (getBoolean(), getLong(), listContains() etc.) uses the current
+ * snapshot and doesn't lock. For settings that are read often, a
+ * {@link SettingHandle} can be used, which also doesn't need to lookup the
+ * setting name.
+ * 
  * @author tduva
  */
 public class Settings {
@@ -46,6 +53,11 @@ public class Settings {
     
     private boolean saved;
     
+    /**
+     * The current values, replaced (while holding the lock) on every change.
+     */
+    private volatile SettingsSnapshot snapshot = SettingsSnapshot.EMPTY;
+    
     public Settings(String path) {
         this.defaultFile = path;
     }
@@ -201,14 +213,66 @@ public class Settings {
      * @param save 
      */
     private void add(String settingName, Object value, int type, int subType, boolean save) {
+        Setting setting;
         if (type == Setting.MAP || type == Setting.LIST) {
-            settings.put(settingName, new SubtypeSetting(value, type, subType, save, defaultFile));
+            setting = new SubtypeSetting(value, type, subType, save, defaultFile);
         }
         else {
-            settings.put(settingName, new Setting(value, type, save, defaultFile));
+            setting = new Setting(value, type, save, defaultFile);
+        }
+        synchronized(LOCK) {
+            Setting previous = settings.put(settingName, setting);
+            setting.index = previous != null ? previous.index : settings.size() - 1;
+            snapshot = snapshot.withSetting(settingName, setting);
         }
     }
     
+    /**
+     * Publishes a new snapshot containing the current value of the given
+     * setting. Must be called while holding the lock, after the value of the
+     * setting has been changed.
+     * 
+     * @param settingName 
+     */
+    private void publish(String settingName) {
+        snapshot = snapshot.withValue(settings.get(settingName));
+    }
+    
+    /**
+     * Gets the current immutable snapshot of all values, which can be used to
+     * read several settings at once with consistent values.
+     * 
+     * @return The snapshot, never null
+     */
+    public SettingsSnapshot getSnapshot() {
+        return snapshot;
+    }
+    
+    public SettingHandle.BooleanHandle getBooleanHandle(String settingName) {
+        return new SettingHandle.BooleanHandle(this, settingName,
+                snapshot.getIndex(settingName, Setting.BOOLEAN));
+    }
+    
+    public SettingHandle.LongHandle getLongHandle(String settingName) {
+        return new SettingHandle.LongHandle(this, settingName,
+                snapshot.getIndex(settingName, Setting.LONG));
+    }
+    
+    public SettingHandle.StringHandle getStringHandle(String settingName) {
+        return new SettingHandle.StringHandle(this, settingName,
+                snapshot.getIndex(settingName, Setting.STRING));
+    }
+    
+    public SettingHandle.ListHandle getListHandle(String settingName) {
+        return new SettingHandle.ListHandle(this, settingName,
+                snapshot.getIndex(settingName, Setting.LIST));
+    }
+    
+    public SettingHandle.MapHandle getMapHandle(String settingName) {
+        return new SettingHandle.MapHandle(this, settingName,
+                snapshot.getIndex(settingName, Setting.MAP));
+    }
+    
     /**
      * Sets the given setting to a new value. The type must match the type
      * of the given value.
@@ -231,6 +295,9 @@ public class Settings {
             } else {
                 changed = setting.setValue(value);
             }
+            if (changed) {
+                publish(settingName);
+            }
         }
         if (changed) {
             settingChanged(settingName,type,value);
@@ -264,7 +331,7 @@ public class Settings {
     }
     
     public boolean getBoolean(String settingName) {
-        return (Boolean)get(settingName, Setting.BOOLEAN);
+        return snapshot.getBoolean(settingName);
     }
     
     /**
@@ -274,11 +341,11 @@ public class Settings {
      * @return 
      */
     public String getString(String setting) {
-        return (String)get(setting, Setting.STRING);
+        return snapshot.getString(setting);
     }
     
     public long getLong(String setting) {
-        return ((Number)(get(setting, Setting.LONG))).longValue();
+        return snapshot.getLong(setting);
     }
 
 
@@ -329,13 +396,12 @@ public class Settings {
             Map settingMap = getMapInternal(settingName);
             settingMap.clear();
             settingMap.putAll(map);
+            publish(settingName);
         }
     }
     
     public Object mapGet(String settingName, Object key) {
-        synchronized(LOCK) {
-            return getMapInternal(settingName).get(key);
-        }
+        return snapshot.mapGet(settingName, key);
     }
 
     
@@ -352,6 +418,7 @@ public class Settings {
     public void mapPut(String settingName, Object key, Object value) {
         synchronized(LOCK) {
             getMapInternal(settingName).put(key, value);
+            publish(settingName);
         }
     }
     
@@ -367,6 +434,7 @@ public class Settings {
     public void mapClear(String settingName) {
         synchronized(LOCK) {
             getMapInternal(settingName).clear();
+            publish(settingName);
         }
     }
     
@@ -384,6 +452,7 @@ public class Settings {
     public void mapRemove(String settingName, Object key) {
         synchronized (LOCK) {
             getMapInternal(settingName).remove(key);
+            publish(settingName);
         }
     }
 
@@ -431,6 +500,7 @@ public class Settings {
             Collection settingList = (Collection) get(settingName, Setting.LIST);
             settingList.clear();
             settingList.addAll(list);
+            publish(settingName);
         }
     }
     
@@ -444,9 +514,7 @@ public class Settings {
      * exist or isn't a {@code List} setting.
      */
     public boolean listContains(String settingName, Object value) {
-        synchronized(LOCK) {
-            return getListInternal(settingName).contains(value);
-        }
+        return snapshot.listContains(settingName, value);
     }
 
     /**
@@ -460,19 +528,25 @@ public class Settings {
      */
     public boolean listRemove(String settingName, Object value) {
         synchronized(LOCK) {
-            return getListInternal(settingName).remove(value);
+            boolean removed = getListInternal(settingName).remove(value);
+            if (removed) {
+                publish(settingName);
+            }
+            return removed;
         }
     }
     
     public void listAdd(String settingName, Object value) {
         synchronized(LOCK) {
             getListInternal(settingName).add(value);
+            publish(settingName);
         }
     }
     
     public void listClear(String settingName) {
         synchronized(LOCK) {
             getListInternal(settingName).clear();
+            publish(settingName);
         }
     }
     
@@ -490,6 +564,7 @@ public class Settings {
             Collection settingList = getListInternal(settingName);
             if (!settingList.contains(value)) {
                 settingList.add(value);
+                publish(settingName);
                 return true;
             }
             return false;
@@ -873,6 +948,7 @@ public class Settings {
             for (String fileName : files) {
                 loadSettingsFromJson(fileName);
             }
+            snapshot = snapshot.withValues(settings.values());
         }
     }
     
@@ -0,0 +1,213 @@
+
+package chatty.util.settings;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable copy of the values of all settings at a certain point in time,
+ * which can be read from any thread without locking.
+ *
+ * A new snapshot is published by {@link Settings} whenever a setting is added
+ * or changed, with an increased version. Only the changed value is copied, the
+ * values of other settings are shared with the previous snapshot (they are
+ * immutable anyway).
+ *
+ * List settings are stored as an unmodifiable List together with a Set of the
+ * same values, so checking if a value is contained is fast.
+ *
+ * @author tduva
+ */
+public class SettingsSnapshot {
+
+    static final SettingsSnapshot EMPTY = new SettingsSnapshot(0,
+            Collections.<String, Integer>emptyMap(), new int[0], new Object[0]);
+
+    private final long version;
+
+    /**
+     * Setting names to index. Never modified after
+     * being created, a new Map is created when a setting is added.
+     */
+    private final Map<String, Integer> indices;
+    private final int[] types;
+    private final Object[] values;
+
+    private SettingsSnapshot(long version, Map<String, Integer> indices,
+            int[] types, Object[] values) {
+        this.version = version;
+        this.indices = indices;
+        this.types = types;
+        this.values = values;
+    }
+
+    /**
+     * The version of this snapshot, which increases with every change, so it
+     * can be used to check if something may have changed.
+     *
+     * @return
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean getBoolean(String settingName) {
+        return (Boolean) get(settingName, Setting.BOOLEAN);
+    }
+
+    public String getString(String settingName) {
+        return (String) get(settingName, Setting.STRING);
+    }
+
+    public long getLong(String settingName) {
+        return ((Number) get(settingName, Setting.LONG)).longValue();
+    }
+
+    /**
+     * Gets an unmodifiable List with the values of the given List setting.
+     *
+     * @param settingName
+     * @return
+     */
+    public List<?> getList(String settingName) {
+        return ((ListValue) get(settingName, Setting.LIST)).list;
+    }
+
+    public boolean listContains(String settingName, Object value) {
+        return ((ListValue) get(settingName, Setting.LIST)).set.contains(value);
+    }
+
+    /**
+     * Gets an unmodifiable Map with the values of the given Map setting.
+     *
+     * @param settingName
+     * @return
+     */
+    public Map<?, ?> getMap(String settingName) {
+        return (Map<?, ?>) get(settingName, Setting.MAP);
+    }
+
+    public Object mapGet(String settingName, Object key) {
+        return getMap(settingName).get(key);
+    }
+
+    /**
+     * Gets the index of the given setting.
+     *
+     * @param settingName
+     * @param type The type the setting has to be
+     * @return The index
+     * @throws SettingNotFoundException if the setting doesn't exist or isn't
+     * of the given type
+     */
+    int getIndex(String settingName, int type) {
+        Integer index = indices.get(settingName);
+        if (index == null || types[index] != type) {
+            throw new SettingNotFoundException("Could not find setting: " + settingName);
+        }
+        return index;
+    }
+
+    private Object get(String settingName, int type) {
+        return values[getIndex(settingName, type)];
+    }
+
+    /**
+     * Gets the value at the given index, for settings handles that already
+     * resolved the index.
+     *
+     * @param index
+     * @return
+     */
+    Object get(int index) {
+        return values[index];
+    }
+
+    ListValue getListValue(int index) {
+        return (ListValue) values[index];
+    }
+
+    /**
+     * Creates a new snapshot with the given setting added.
+     *
+     * @param settingName
+     * @param setting Its index must already be set, either a new index (one
+     * larger than the current highest) or the index of the setting it replaces
+     * @return
+     */
+    SettingsSnapshot withSetting(String settingName, Setting setting) {
+        int index = setting.index;
+        Map<String, Integer> newIndices = new HashMap<>(indices);
+        newIndices.put(settingName, index);
+        int size = Math.max(values.length, index + 1);
+        int[] newTypes = new int[size];
+        System.arraycopy(types, 0, newTypes, 0, types.length);
+        newTypes[index] = setting.getType();
+        Object[] newValues = new Object[size];
+        System.arraycopy(values, 0, newValues, 0, values.length);
+        newValues[index] = makeValue(setting);
+        return new SettingsSnapshot(version + 1, newIndices, newTypes, newValues);
+    }
+
+    /**
+     * Creates a new snapshot with the current value of the given setting.
+     *
+     * @param setting
+     * @return
+     */
+    SettingsSnapshot withValue(Setting setting) {
+        Object[] newValues = values.clone();
+        newValues[setting.index] = makeValue(setting);
+        return new SettingsSnapshot(version + 1, indices, types, newValues);
+    }
+
+    /**
+     * Creates a new snapshot with the current values of all the given
+     * settings.
+     *
+     * @param settings
+     * @return
+     */
+    SettingsSnapshot withValues(Collection<Setting> settings) {
+        Object[] newValues = values.clone();
+        for (Setting setting : settings) {
+            newValues[setting.index] = makeValue(setting);
+        }
+        return new SettingsSnapshot(version + 1, indices, types, newValues);
+    }
+
+    /**
+     * Creates an immutable copy of the value of the given setting.
+     *
+     * @param setting
+     * @return
+     */
+    private static Object makeValue(Setting setting) {
+        Object value = setting.getValue();
+        if (setting.getType() == Setting.LIST) {
+            return new ListValue((Collection<?>) value);
+        }
+        if (setting.getType() == Setting.MAP) {
+            return Collections.unmodifiableMap(new HashMap<Object, Object>((Map<?, ?>) value));
+        }
+        return value;
+    }
+
+    static class ListValue {
+
+        final List<Object> list;
+        final Set<Object> set;
+
+        ListValue(Collection<?> values) {
+            this.list = Collections.unmodifiableList(new ArrayList<Object>(values));
+            this.set = new HashSet<Object>(values);
+        }
+    }
+
+}
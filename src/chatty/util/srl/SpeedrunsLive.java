@@ -30,7 +30,7 @@ public class SpeedrunsLive {
     public void requestRaces() {
         if (!requestPending) {
             requestPending = true;
-            new Thread(new SpeedrunsLiveRequest()).start();
+            new SpeedrunsLiveRequest().async();
         }
     }
     
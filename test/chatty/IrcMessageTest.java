@@ -0,0 +1,98 @@
+
+package chatty;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tduva
+ */
+public class IrcMessageTest {
+    
+    private static final String[] LINES = new String[]{
+        ":jtv MODE #lotsofs +o da00",
+        ":jtv MODE #lotsofs +o",
+        "jtv MODE #lotsofs +o da00",
+        "MODE #lotsofs  +o da00 ",
+        ": MODE #lotsofs +o da00",
+        ":jtv!jtv@jtv.tmi.twitch.tv PRIVMSG  :tduvatest is now hosting you for 0 viewers. [0]",
+        ":jtv!jtv@jtv.tmi.twitch.tv PRIVMSG #lotsofs :",
+        ":jtv!jtv@jtv.tmi.twitch.tv PRIVMSG #lotsofs",
+        "@color=;emotes=;slow :abc!abc@abc PRIVMSG #test :a:b c",
+        "@a=1;a=2;b;c=\\s\\:\\\\ PING",
+        "PING",
+        "",
+        " ",
+        ":",
+    };
+    
+    private static void assertSame(String line) {
+        LegacyIrcParser legacy = new LegacyIrcParser();
+        IrcMessage message = new IrcMessage();
+        boolean legacyResult = legacy.parse(line);
+        boolean result = message.parse(line) == null;
+        assertEquals(line, legacyResult, result);
+        if (!result) {
+            return;
+        }
+        assertEquals(line, legacy.prefix, message.getPrefix());
+        assertEquals(line, legacy.command, message.getCommand());
+        assertTrue(line, message.isCommand(legacy.command));
+        assertArrayEquals(legacy.parameters, message.getParameters());
+        assertEquals(line, legacy.trailing, message.getTrailing());
+        IrcTags tags = message.getTags();
+        if (legacy.tags == null) {
+            assertNull(tags);
+        } else {
+            for (String key : legacy.tags.keySet()) {
+                assertEquals(line, legacy.tags.get(key), tags.get(key));
+                assertTrue(line, tags.containsKey(key));
+            }
+            assertEquals(line, legacy.tags, new HashMap<>(tags));
+        }
+    }
+    
+    @Test
+    public void testSameAsLegacy() throws Exception {
+        for (String line : LINES) {
+            assertSame(line);
+        }
+        for (String line : loadSample()) {
+            assertSame(line);
+        }
+    }
+    
+    @Test
+    public void testTags() {
+        IrcMessage message = new IrcMessage();
+        message.parse("@a=1;a=2;b;c=\\s\\:\\\\;d= PING");
+        Map<String, String> tags = message.getTags();
+        assertEquals("2", tags.get("a"));
+        assertNull(tags.get("b"));
+        assertTrue(tags.containsKey("b"));
+        assertEquals(" ;\\", tags.get("c"));
+        assertEquals("", tags.get("d"));
+        assertFalse(tags.containsKey("e"));
+        assertEquals(4, tags.size());
+    }
+    
+    /**
+     * Lines recorded from a busy channel (with some names changed).
+     * 
+     * @return
+     * @throws Exception 
+     */
+    public static List<String> loadSample() throws Exception {
+        Path path = Paths.get(IrcMessageTest.class.getResource("irc_sample_traffic").toURI());
+        return Files.readAllLines(path, StandardCharsets.UTF_8);
+    }
+    
+}
@@ -0,0 +1,99 @@
+
+package chatty;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares the performance of {@link IrcMessage} to the previous parsing in
+ * {@link LegacyIrcParser}, using the recorded lines from the test resources.
+ *
+ * Both parsers have to produce everything that is passed on to the listeners
+ * (including the tags that are usually accessed), so the comparison is fair.
+ *
+ * Run manually (with the test directory as working directory), not part of
+ * the unit tests.
+ *
+ * @author tduva
+ */
+public class IrcParserBenchmark {
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+    private static final int ITERATIONS = 20000;
+
+    private static final String[] ACCESSED_TAGS = new String[]{
+        "badges", "display-name", "color", "turbo", "subscriber", "user-type",
+        "emotes", "id", "bits"
+    };
+
+    public static void main(String[] args) throws Exception {
+        List<String> sample = IrcMessageTest.loadSample();
+        String[] lines = sample.toArray(new String[sample.size()]);
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            runLegacy(lines);
+            runNew(lines);
+        }
+        long legacyTime = 0;
+        long newTime = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            legacyTime += runLegacy(lines);
+            newTime += runNew(lines);
+        }
+        long count = (long)ROUNDS * ITERATIONS * lines.length;
+        System.out.println(String.format("Legacy: %.1f ns/line", legacyTime / (double)count));
+        System.out.println(String.format("New:    %.1f ns/line", newTime / (double)count));
+    }
+
+    private static volatile int sink;
+
+    private static long runLegacy(String[] lines) {
+        LegacyIrcParser parser = new LegacyIrcParser();
+        int result = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (String line : lines) {
+                parser.parse(line);
+                result += consume(parser.prefix, parser.command,
+                        parser.parameters, parser.trailing, parser.tags);
+            }
+        }
+        long time = System.nanoTime() - start;
+        sink = result;
+        return time;
+    }
+
+    private static long runNew(String[] lines) {
+        IrcMessage message = new IrcMessage();
+        int result = 0;
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (String line : lines) {
+                message.parse(line);
+                result += consume(message.getPrefix(), message.getCommand(),
+                        message.getParameters(), message.getTrailing(),
+                        message.getTags());
+            }
+        }
+        long time = System.nanoTime() - start;
+        sink = result;
+        return time;
+    }
+
+    private static int consume(String prefix, String command,
+            String[] parameters, String trailing, Map<String, String> tags) {
+        int result = prefix.length() + command.length() + parameters.length
+                + trailing.length();
+        if (tags != null) {
+            for (String key : ACCESSED_TAGS) {
+                String value = tags.get(key);
+                if (value != null) {
+                    result += value.length();
+                }
+            }
+        }
+        return result;
+    }
+
+}
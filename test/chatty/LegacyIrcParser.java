@@ -0,0 +1,86 @@
+
+package chatty;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * The parsing previously done in {@link Irc#received(String)}, kept to verify
+ * that {@link IrcMessage} produces the same results and to compare the
+ * performance.
+ * 
+ * @author tduva
+ */
+public class LegacyIrcParser {
+    
+    private static final Pattern SPACE_PATTERN = Pattern.compile(" ");
+    
+    public String prefix;
+    public String command;
+    public String[] parameters;
+    public String trailing;
+    public Map<String, String> tags;
+    
+    private static Map<String, String> parseTags(String data) {
+        String[] tags = data.split(";");
+        if (tags.length > 0) {
+            Map<String, String> result = new HashMap<>();
+            for (String tag : tags) {
+                String[] keyValue = tag.split("=",2);
+                if (keyValue.length == 2) {
+                    result.put(keyValue[0], Helper.tagsvalue_decode(keyValue[1]));
+                } else {
+                    result.put(keyValue[0], null);
+                }
+            }
+            return result;
+        }
+        return null;
+    }
+    
+    public boolean parse(String data) {
+        tags = null;
+        if (data.startsWith("@")) {
+            int endOfTags = data.indexOf(" ");
+            if (endOfTags == -1) {
+                return false;
+            }
+            tags = parseTags(data.substring(1, endOfTags));
+            data = data.substring(endOfTags+1);
+        }
+        
+        prefix = "";
+        parameters = new String[0];
+        trailing = "";
+        
+        int endOfPrefix = 0;
+        int endOfCommand = 0;
+        
+        if (data.startsWith(":")) {
+            endOfPrefix = data.indexOf(" ");
+            if (endOfPrefix == -1) {
+                return false;
+            }
+            prefix = data.substring(1,endOfPrefix);
+        }
+        
+        endOfCommand = data.indexOf(":",endOfPrefix);
+        if (endOfCommand == -1) {
+            endOfCommand = data.length();
+        }
+        else {
+            trailing = data.substring(endOfCommand+1,data.length());
+        }
+        
+        String commandAndParameter = data.substring(endOfPrefix,endOfCommand).trim();
+        String[] parts = SPACE_PATTERN.split(commandAndParameter);
+        if (parts.length > 1) {
+            parameters = new String[parts.length - 1];
+            System.arraycopy(parts, 1, parameters, 0, parts.length - 1);
+        }
+        command = parts[0];
+        return true;
+    }
+    
+}
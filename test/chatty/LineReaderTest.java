@@ -0,0 +1,94 @@
+
+package chatty;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tduva
+ */
+public class LineReaderTest {
+
+    private static LineReader create(String data, int capacity) {
+        InputStream in = new ByteArrayInputStream(data.getBytes(StandardCharsets.UTF_8));
+        return new LineReader(in, StandardCharsets.UTF_8, capacity);
+    }
+
+    @Test
+    public void testLines() throws IOException {
+        LineReader r = create("abc\r\n\r\ndef\r\nincomplete", 16*1024);
+        assertEquals("abc", r.readLine());
+        assertEquals("", r.readLine());
+        assertEquals("def", r.readLine());
+        assertNull(r.readLine());
+    }
+
+    @Test
+    public void testFiltered() throws IOException {
+        LineReader r = create("a\rb\nc\r\r\nd\n\r\n", 16*1024);
+        assertEquals("abc", r.readLine());
+        assertEquals("d", r.readLine());
+        assertNull(r.readLine());
+    }
+
+    @Test
+    public void testSmallBuffer() throws IOException {
+        // Buffer has to be compacted and grown
+        LineReader r = create("PRIVMSG #channel :äöü Kappa 🎉\r\nshort\r\n"
+                + "a somewhat longer line than before\r\n", 4);
+        assertEquals("PRIVMSG #channel :äöü Kappa 🎉", r.readLine());
+        assertEquals("short", r.readLine());
+        assertEquals("a somewhat longer line than before", r.readLine());
+        assertNull(r.readLine());
+    }
+
+    /**
+     * Data arriving in small parts with timeouts in between, with the line
+     * ending and multi-byte characters split.
+     */
+    @Test
+    public void testPartial() throws IOException {
+        final byte[] data = "äbc\r\ndef\r\n".getBytes(StandardCharsets.UTF_8);
+        InputStream in = new InputStream() {
+
+            private int pos;
+            private boolean timeout;
+
+            @Override
+            public int read() throws IOException {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (pos == data.length) {
+                    return -1;
+                }
+                timeout = !timeout;
+                if (timeout) {
+                    throw new SocketTimeoutException();
+                }
+                b[off] = data[pos++];
+                return 1;
+            }
+        };
+        LineReader r = new LineReader(in);
+        String[] expected = new String[]{"äbc", "def", null};
+        int count = 0;
+        while (count < expected.length) {
+            try {
+                assertEquals(expected[count], r.readLine());
+                count++;
+            } catch (SocketTimeoutException ex) {
+                // Continue
+            }
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+
+package chatty;
+
+import java.awt.Color;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author tduva
+ */
+public class UserManagerTest {
+
+    @Test
+    public void testGetUsers() {
+        UserManager m = new UserManager();
+        User existing = m.getUser("#a", "abc");
+        List<User> result = m.getUsers("#a", Arrays.asList("def", "ABC", "def"));
+        assertEquals(3, result.size());
+        assertSame(existing, result.get(1));
+        assertSame(result.get(0), result.get(2));
+        assertSame(result.get(0), m.getUserIfExists("#a", "def"));
+        assertEquals(1, m.getUsersByName("def").size());
+    }
+
+    @Test
+    public void testNameIndex() {
+        UserManager m = new UserManager();
+        User a1 = m.getUser("#a", "Abc");
+        User b1 = m.getUser("#b", "abc");
+        User a2 = m.getUser("#a", "def");
+
+        assertSame(a1, m.getUser("#a", "abc"));
+        assertSame(a1, m.getUserIfExists("#a", "abc"));
+        assertNull(m.getUserIfExists("#c", "abc"));
+
+        Set<User> expected = new HashSet<>();
+        expected.add(a1);
+        expected.add(b1);
+        assertEquals(expected, new HashSet<>(m.getUsersByName("ABC")));
+
+        Map<String, User> channels = m.getChannelsAndUsersByUserName("abc");
+        assertEquals(2, channels.size());
+        assertSame(b1, channels.get("#b"));
+
+        m.clear("#a");
+        assertNull(m.getUserIfExists("#a", "abc"));
+        assertEquals(1, m.getUsersByName("abc").size());
+        assertTrue(m.getUsersByName("def").isEmpty());
+        assertTrue(m.getUsersInChannel("#a").isEmpty());
+        assertNotSame(a2, m.getUser("#a", "def"));
+
+        m.clear();
+        assertTrue(m.getUsersByName("abc").isEmpty());
+        assertTrue(m.getChannelsAndUsersByUserName("def").isEmpty());
+    }
+
+    @Test
+    public void testColor() {
+        UserManager m = new UserManager();
+        User a = m.getUser("#a", "abc");
+        m.setColorForUsername("Abc", "#FF0000");
+        assertEquals(Color.RED, a.getPlainColor());
+        User b = m.getUser("#b", "abc");
+        assertEquals(Color.RED, b.getPlainColor());
+    }
+
+}
@@ -0,0 +1,60 @@
+
+package chatty;
+
+import chatty.util.settings.Setting;
+import chatty.util.settings.Settings;
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author tduva
+ */
+public class UsercolorManagerTest {
+
+    private UsercolorManager manager;
+
+    @Before
+    public void setUp() {
+        Settings settings = new Settings("");
+        settings.addList("usercolors", new ArrayList<String>(), Setting.STRING);
+        settings.addBoolean("customUsercolors", true);
+        manager = new UsercolorManager(settings);
+    }
+
+    @Test
+    public void testOrder() {
+        User mod = new User("modUser", "#test");
+        mod.setModerator(true);
+        mod.setColor("#FF0000");
+        User red = new User("redUser", "#test");
+        red.setColor("#ff0000");
+        User other = new User("other", "#test");
+        other.setColor("Blue");
+
+        manager.setData(Arrays.asList(
+                new UsercolorItem("$mod", Color.GREEN),
+                new UsercolorItem("reduser", Color.YELLOW),
+                new UsercolorItem("#FF0000", Color.CYAN),
+                new UsercolorItem("moduser", Color.PINK)));
+        // Status item comes first
+        assertEquals(Color.GREEN, manager.getColor(mod));
+        // Name item before color item
+        assertEquals(Color.YELLOW, manager.getColor(red));
+        assertNull(manager.getColor(other));
+
+        manager.setData(Arrays.asList(
+                new UsercolorItem("#FF0000", Color.CYAN),
+                new UsercolorItem("moduser", Color.PINK),
+                new UsercolorItem("$mod", Color.GREEN),
+                new UsercolorItem("$all", Color.ORANGE)));
+        assertEquals(Color.CYAN, manager.getColor(mod));
+        assertEquals(Color.CYAN, manager.getColor(red));
+        assertEquals(Color.ORANGE, manager.getColor(other));
+    }
+
+}
@@ -0,0 +1,98 @@
+
+package chatty;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author tduva
+ */
+public class UserlistBatcherTest {
+
+    @Test
+    public void testBatches() throws InterruptedException {
+        final List<String> applied = new ArrayList<>();
+        UserlistBatcher batcher = new UserlistBatcher(new UserlistBatcher.BatchListener() {
+
+            @Override
+            public void apply(String channel, List<UserlistBatcher.Change> changes) {
+                synchronized(applied) {
+                    StringBuilder b = new StringBuilder(channel);
+                    for (UserlistBatcher.Change change : changes) {
+                        b.append(change.joined ? " +" : " -").append(change.name);
+                    }
+                    applied.add(b.toString());
+                    applied.notifyAll();
+                }
+            }
+        });
+        batcher.add("#a", "abc", true, false);
+        batcher.add("#a", "def", true, true);
+        batcher.add("#b", "abc", true, true);
+        batcher.add("#a", "abc", false, true);
+        batcher.flush("#a");
+        assertEquals(1, applied.size());
+        assertEquals("#a +abc +def -abc", applied.get(0));
+
+        batcher.discard("#b");
+        batcher.add("#c", "xyz", true, false);
+        synchronized(applied) {
+            long start = System.currentTimeMillis();
+            while (applied.size() < 2 && System.currentTimeMillis() - start < 5000) {
+                applied.wait(100);
+            }
+        }
+        assertEquals(2, applied.size());
+        assertEquals("#c +xyz", applied.get(1));
+    }
+
+    @Test
+    public void testPartBeforeMessage() {
+        final Set<String> online = new HashSet<>();
+        final List<String> parts = new ArrayList<>();
+        UserlistBatcher batcher = new UserlistBatcher(new UserlistBatcher.BatchListener() {
+
+            @Override
+            public void apply(String channel, List<UserlistBatcher.Change> changes) {
+                for (UserlistBatcher.Change change : changes) {
+                    if (change.joined) {
+                        online.add(change.name);
+                    } else {
+                        if (!change.isSuperseded()) {
+                            online.remove(change.name);
+                        }
+                        parts.add(change.name);
+                    }
+                }
+            }
+        });
+        batcher.add("#a", "abc", true, false);
+        batcher.add("#a", "def", true, false);
+        batcher.flush("#a");
+        assertEquals(new HashSet<>(Arrays.asList("abc", "def")), online);
+
+        // PART, then message (sets online directly) in the same batch window
+        batcher.add("#a", "abc", false, true);
+        batcher.add("#a", "def", false, true);
+        batcher.userActive("#a", "ABC");
+        online.add("abc");
+        batcher.flush("#a");
+        assertEquals(new HashSet<>(Arrays.asList("abc")), online);
+        // PART is still shown
+        assertEquals(Arrays.asList("abc", "def"), parts);
+
+        // Message, then PART
+        batcher.userActive("#a", "abc");
+        online.add("abc");
+        batcher.add("#a", "abc", false, true);
+        batcher.flush("#a");
+        assertTrue(online.isEmpty());
+    }
+
+}
@@ -268,4 +268,43 @@ public class HighlighterTest {
         assertFalse(highlighter.check(subscriber, ""));
     }
     
+    /**
+     * Compare the result of the compiled items to checking each item on it's
+     * own.
+     */
+    @Test
+    public void testCompiled() {
+        String[] items = new String[]{
+            "w:kappa", "wcs:Keepo", "w:!bet", "w:a.b", "cs:CaSe", "abc",
+            "user:testuser2 def", "chan:testChannel2 w:def", "color:blue w:ÄÖ",
+            "start:hello", "re:.*\\d{3}.*", "config:info w:info", "w:hey you",
+            "cat:testCat xyz", "w:_under_"
+        };
+        String[] texts = new String[]{
+            "", "kappa", "KAPPA", "xkappa", "kappa_", "Keepo", "keepo", "a Keepo!",
+            "!bet 100", "a!bet", "axb", "a.b", "this is a CaSe", "case", "xxabcxx",
+            "def", "abc def", "äö", "ÄÖ", "ÄÖx", "hello world", "123", "ab12",
+            "info", "hey you there", "hey  you", "kappa\nabc", "Kappa\u2028",
+            "_under_", "x_under_", "kappa\u0301", "é kappa"
+        };
+        User[] users = new User[]{user, user2, user3, null};
+        highlighter.update(Arrays.asList(items));
+        for (String text : texts) {
+            for (User u : users) {
+                Color expectedColor = null;
+                boolean expected = false;
+                for (String item : items) {
+                    Highlighter.HighlightItem hlItem = new Highlighter.HighlightItem(item);
+                    if (hlItem.matches(u, text, text.toLowerCase())) {
+                        expected = true;
+                        expectedColor = hlItem.getColor();
+                        break;
+                    }
+                }
+                assertEquals(text+" "+u, expected, highlighter.check(u, text));
+                assertEquals(text+" "+u, expectedColor, highlighter.getLastMatchColor());
+            }
+        }
+    }
+    
 }
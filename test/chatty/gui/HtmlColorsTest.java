@@ -0,0 +1,29 @@
+
+package chatty.gui;
+
+import java.awt.Color;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author tduva
+ */
+public class HtmlColorsTest {
+
+    @Test
+    public void testColors() {
+        assertSame(HtmlColors.decode("#123456"), HtmlColors.decode("#123456"));
+        assertEquals(new Color(0x12, 0x34, 0x56), HtmlColors.decode("#123456"));
+        assertEquals(Color.BLUE, HtmlColors.decode("bLuE"));
+        assertNull(HtmlColors.decode("abc", null));
+        assertEquals(Color.WHITE, HtmlColors.decode("abc", Color.WHITE));
+
+        Color background = new Color(250, 250, 250);
+        Color corrected = HtmlColors.correctReadability(Color.WHITE, background);
+        assertFalse(Color.WHITE.equals(corrected));
+        assertEquals(corrected, HtmlColors.correctReadability(new Color(255, 255, 255), background));
+        assertEquals(Color.WHITE, HtmlColors.correctReadability(Color.WHITE, Color.BLACK));
+    }
+
+}
@@ -0,0 +1,142 @@
+
+package chatty.gui;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.swing.SwingUtilities;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author tduva
+ */
+public class MessagePumpTest {
+
+    /**
+     * The lines of each open channel, only accessed on the EDT. Printing to a
+     * channel opens it, like Channels.getChannel() does.
+     */
+    private final Map<String, List<String>> channels = new HashMap<>();
+
+    /**
+     * The order the tasks ran in, only accessed on the EDT.
+     */
+    private final List<String> log = new ArrayList<>();
+
+    private Runnable print(final String channel, final String line) {
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                List<String> lines = channels.get(channel);
+                if (lines == null) {
+                    lines = new ArrayList<>();
+                    channels.put(channel, lines);
+                }
+                lines.add(line);
+                log.add(line);
+            }
+        };
+    }
+
+    private Runnable close(final String channel) {
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                channels.remove(channel);
+                log.add("close "+channel);
+            }
+        };
+    }
+
+    private Runnable sleep(final long millis) {
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(millis);
+                } catch (InterruptedException ex) {
+                    // Just continue
+                }
+            }
+        };
+    }
+
+    /**
+     * Waits until all tasks added to the pump have run.
+     *
+     * @param pump
+     */
+    private static void flush(MessagePump pump) throws InterruptedException, InvocationTargetException {
+        Runnable nothing = new Runnable() {
+
+            @Override
+            public void run() {
+            }
+        };
+        for (int i = 0; i < 1000 && pump.getQueueSize() > 0; i++) {
+            SwingUtilities.invokeAndWait(nothing);
+        }
+        // Tasks taken from the queue may still be running
+        SwingUtilities.invokeAndWait(nothing);
+        assertEquals(0, pump.getQueueSize());
+    }
+
+    @Test
+    public void testOrder() throws Exception {
+        MessagePump pump = new MessagePump();
+        pump.add("#a", print("#a", "a1"));
+        pump.add("#b", print("#b", "b1"));
+        pump.add("#a", print("#a", "a2"));
+        pump.add(null, print("#b", "all1"));
+        pump.add("#b", print("#b", "b2"));
+        pump.add("#a", print("#a", "a3"));
+        flush(pump);
+        assertEquals(Arrays.asList("a1", "b1", "a2", "all1", "b2", "a3"), log);
+        assertTrue(pump.getStats().contains("Tasks: 6 (channel batches 6)"));
+    }
+
+    @Test
+    public void testOrderOverDrains() throws Exception {
+        MessagePump pump = new MessagePump();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            String channel = i % 3 == 0 ? null : "#"+(i % 5);
+            if (i % 100 == 0) {
+                // Exceed time budget, so several drains are required
+                pump.add(channel, sleep(10));
+            }
+            pump.add(channel, print(channel, "line"+i));
+            expected.add("line"+i);
+        }
+        flush(pump);
+        assertEquals(expected, log);
+    }
+
+    @Test
+    public void testClosedChannel() throws Exception {
+        MessagePump pump = new MessagePump();
+        // Exceed time budget, so other events can run in between drains
+        pump.add("#a", sleep(20));
+        pump.add("#a", print("#a", "a1"));
+        pump.add("#b", print("#b", "b1"));
+        pump.add("#a", close("#a"));
+        flush(pump);
+        assertFalse(channels.containsKey("#a"));
+        assertEquals(Arrays.asList("b1"), channels.get("#b"));
+        assertEquals(Arrays.asList("a1", "b1", "close #a"), log);
+
+        // Channel can be opened again afterwards
+        pump.add("#a", print("#a", "a2"));
+        flush(pump);
+        assertEquals(Arrays.asList("a2"), channels.get("#a"));
+    }
+
+}
@@ -0,0 +1,114 @@
+package chatty.gui.components.textpane;
+
+import java.util.Arrays;
+import java.util.Collections;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author tduva
+ */
+public class LineTextIndexTest {
+
+    private Document doc;
+    private LineTextIndex index;
+
+    @Before
+    public void setUp() {
+        doc = new DefaultStyledDocument();
+        index = new LineTextIndex(doc);
+    }
+
+    private Element addLine(String text) throws BadLocationException {
+        String newline = doc.getLength() == 0 ? "" : "\n";
+        doc.insertString(doc.getLength(), newline + text, null);
+        Element root = doc.getDefaultRootElement();
+        Element line = root.getElement(root.getElementCount() - 1);
+        index.add(line);
+        return line;
+    }
+
+    private void removeFirstLines(int amount) throws BadLocationException {
+        Element root = doc.getDefaultRootElement();
+        int endOffset = Math.min(root.getElement(amount - 1).getEndOffset(), doc.getLength());
+        index.removeUntil(endOffset);
+        doc.remove(0, endOffset);
+    }
+
+    private int line(int offset) {
+        return offset == -1 ? -1 : doc.getDefaultRootElement().getElementIndex(offset);
+    }
+
+    @Test
+    public void testSearch() throws BadLocationException {
+        addLine("user1: Hello World");
+        addLine("user2: abc");
+        addLine("user1: hello again");
+        LineTextIndex.Query query = LineTextIndex.createQuery("HELLO");
+
+        assertEquals(2, line(index.findPrevious(query, Integer.MAX_VALUE)));
+        int offset = index.findPrevious(query, Integer.MAX_VALUE);
+        assertEquals(0, line(index.findPrevious(query, offset)));
+        assertEquals(-1, index.findPrevious(query, 0));
+        assertEquals(Arrays.asList(0, 2), lines(index.findAll(query)));
+
+        LineTextIndex.Query regex = LineTextIndex.createQuery("re:^user\\d: a");
+        assertEquals(Arrays.asList(1), lines(index.findAll(regex)));
+        assertNull(LineTextIndex.createQuery("re:("));
+    }
+
+    @Test
+    public void testChanges() throws BadLocationException {
+        addLine("user1: Hello World");
+        addLine("user2: abc");
+        LineTextIndex.Query query = LineTextIndex.createQuery("banned");
+        assertEquals(Collections.emptyList(), index.findAll(query));
+
+        // Changing a finished line
+        Element first = doc.getDefaultRootElement().getElement(0);
+        doc.insertString(first.getEndOffset() - 1, " (banned)", null);
+        assertEquals(Arrays.asList(0), lines(index.findAll(query)));
+
+        // Appending to the last line
+        doc.insertString(doc.getLength(), " (Banned)", null);
+        assertEquals(Arrays.asList(0, 1), lines(index.findAll(query)));
+
+        // Adding a line doesn't change the previous one
+        addLine("user3: banned?");
+        assertEquals(Arrays.asList(0, 1, 2), lines(index.findAll(query)));
+
+        removeFirstLines(2);
+        assertEquals(Arrays.asList(0), lines(index.findAll(query)));
+        assertEquals(0, index.getLastOffset());
+
+        index.clear();
+        assertEquals(-1, index.getLastOffset());
+        assertEquals(Collections.emptyList(), index.findAll(query));
+    }
+
+    @Test
+    public void testRemoveMany() throws BadLocationException {
+        for (int i = 0; i < 500; i++) {
+            addLine("line " + i);
+        }
+        removeFirstLines(400);
+        LineTextIndex.Query query = LineTextIndex.createQuery("re:line 450\\b");
+        assertEquals(Arrays.asList(50), lines(index.findAll(query)));
+        assertEquals(50, line(index.findPrevious(query, Integer.MAX_VALUE)));
+    }
+
+    private java.util.List<Integer> lines(java.util.List<Integer> offsets) {
+        java.util.List<Integer> result = new java.util.ArrayList<>();
+        for (Integer offset : offsets) {
+            result.add(line(offset));
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,82 @@
+
+package chatty.gui.components.textpane;
+
+import chatty.User;
+import java.util.Arrays;
+import java.util.Collections;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.DefaultStyledDocument;
+import javax.swing.text.Document;
+import javax.swing.text.Element;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author tduva
+ */
+public class UserLineIndexTest {
+
+    private Document doc;
+    private UserLineIndex index;
+
+    private final User user1 = new User("user1", "#test");
+    private final User user2 = new User("user2", "#test");
+
+    @Before
+    public void setUp() {
+        doc = new DefaultStyledDocument();
+        index = new UserLineIndex(doc);
+    }
+
+    private Element addLine(String text) throws BadLocationException {
+        String newline = doc.getLength() == 0 ? "" : "\n";
+        doc.insertString(doc.getLength(), newline + text, null);
+        Element root = doc.getDefaultRootElement();
+        return root.getElement(root.getElementCount() - 1);
+    }
+
+    private void removeFirstLines(int amount) throws BadLocationException {
+        Element root = doc.getDefaultRootElement();
+        int endOffset = Math.min(root.getElement(amount - 1).getEndOffset(), doc.getLength());
+        index.removeUntil(endOffset);
+        doc.remove(0, endOffset);
+    }
+
+    @Test
+    public void testLines() throws BadLocationException {
+        index.add(addLine("user1: a"), user1, "id1", false);
+        addLine("info");
+        index.add(addLine("user2: b"), user2, null, false);
+        index.add(addLine("user1: c"), user1, "id2", false);
+        Element ban = addLine("user1 has been banned");
+        index.add(ban, user1, null, true);
+
+        assertEquals(Arrays.asList(0, 3), index.getLines(user1, null));
+        assertEquals(Arrays.asList(3), index.getLines(user1, "id2"));
+        assertEquals(Arrays.asList(2), index.getLines(user2, null));
+        assertSame(ban, index.getLastLine(user1));
+
+        // Changing a line doesn't affect the other lines
+        doc.insertString(doc.getDefaultRootElement().getElement(2).getEndOffset() - 1, "..", null);
+        assertEquals(Arrays.asList(0, 3), index.getLines(user1, null));
+
+        removeFirstLines(2);
+        assertEquals(Arrays.asList(1), index.getLines(user1, null));
+        assertEquals(Arrays.asList(0), index.getLines(user2, null));
+
+        removeFirstLines(1);
+        assertEquals(Collections.emptyList(), index.getLines(user2, null));
+        assertNull(index.getLastLine(user2));
+        assertEquals(Arrays.asList(0), index.getLines(user1, null));
+
+        index.add(addLine("user2: d"), user2, null, false);
+        assertEquals(Arrays.asList(2), index.getLines(user2, null));
+
+        index.clear();
+        assertNull(index.getLastLine(user1));
+        assertEquals(Collections.emptyList(), index.getLines(user1, null));
+    }
+
+}
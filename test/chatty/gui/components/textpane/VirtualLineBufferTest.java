@@ -0,0 +1,78 @@
+
+package chatty.gui.components.textpane;
+
+import java.util.Arrays;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author tduva
+ */
+public class VirtualLineBufferTest {
+
+    @Test
+    public void testHeights() {
+        VirtualLineBuffer<String> buffer = new VirtualLineBuffer<>(3);
+        assertEquals(-1, buffer.getIndexAt(0));
+        assertNull(buffer.add("a", 10));
+        assertNull(buffer.add("b", 20));
+        assertNull(buffer.add("c", 30));
+        assertEquals(60, buffer.getTotalHeight());
+        assertEquals(0, buffer.getY(0));
+        assertEquals(30, buffer.getY(2));
+        assertEquals(60, buffer.getY(3));
+        assertEquals(0, buffer.getIndexAt(-5));
+        assertEquals(0, buffer.getIndexAt(9));
+        assertEquals(1, buffer.getIndexAt(10));
+        assertEquals(2, buffer.getIndexAt(59));
+        assertEquals(2, buffer.getIndexAt(100));
+
+        // Wraps around
+        assertEquals("a", buffer.add("d", 5));
+        assertEquals(3, buffer.size());
+        assertEquals("b", buffer.get(0));
+        assertEquals("d", buffer.get(2));
+        assertEquals(55, buffer.getTotalHeight());
+        assertEquals(50, buffer.getY(2));
+        assertEquals(2, buffer.getIndexAt(52));
+        assertEquals(1, buffer.getIndexAt(20));
+
+        buffer.setHeight(0, 1);
+        assertEquals(36, buffer.getTotalHeight());
+        assertEquals(31, buffer.getY(2));
+        assertEquals(1, buffer.getIndexAt(1));
+    }
+
+    @Test
+    public void testCapacity() {
+        VirtualLineBuffer<String> buffer = new VirtualLineBuffer<>(4);
+        buffer.add("a", 1);
+        buffer.add("b", 2);
+        buffer.add("c", 3);
+        assertEquals(Arrays.asList("a"), buffer.setCapacity(2));
+        assertEquals(2, buffer.size());
+        assertEquals("b", buffer.get(0));
+        assertEquals(5, buffer.getTotalHeight());
+
+        assertTrue(buffer.setCapacity(10).isEmpty());
+        assertEquals(2, buffer.size());
+        assertNull(buffer.add("d", 4));
+        assertEquals(9, buffer.getTotalHeight());
+        assertEquals(3, buffer.getHeight(1));
+
+        buffer.clear();
+        assertEquals(0, buffer.size());
+        assertEquals(0, buffer.getTotalHeight());
+
+        // Wrapped around, removed oldest first
+        buffer = new VirtualLineBuffer<>(3);
+        for (String line : new String[]{"a", "b", "c", "d", "e"}) {
+            buffer.add(line, 1);
+        }
+        assertEquals(Arrays.asList("c", "d"), buffer.setCapacity(1));
+        assertEquals("e", buffer.get(0));
+        assertEquals(1, buffer.getTotalHeight());
+    }
+
+}
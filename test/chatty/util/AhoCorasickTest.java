@@ -0,0 +1,75 @@
+
+package chatty.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author tduva
+ */
+public class AhoCorasickTest {
+    
+    private static List<String> find(AhoCorasick ac, String text) {
+        final List<String> result = new ArrayList<>();
+        ac.find(text, new AhoCorasick.MatchListener() {
+
+            @Override
+            public boolean match(int id, int start, int end) {
+                result.add(id+":"+start+"-"+end);
+                return true;
+            }
+        });
+        return result;
+    }
+    
+    @Test
+    public void testFind() {
+        AhoCorasick ac = new AhoCorasick();
+        ac.add("he", 0);
+        ac.add("she", 1);
+        ac.add("his", 2);
+        ac.add("hers", 3);
+        ac.add("", 4);
+        ac.build();
+        
+        List<String> result = find(ac, "ushers");
+        assertEquals(3, result.size());
+        assertTrue(result.contains("1:1-4"));
+        assertTrue(result.contains("0:2-4"));
+        assertTrue(result.contains("3:2-6"));
+        
+        assertTrue(find(ac, "").isEmpty());
+        assertTrue(find(ac, "abc").isEmpty());
+        assertEquals(0, find(ac, "ahishe").indexOf("2:1-4"));
+    }
+    
+    @Test
+    public void testSamePattern() {
+        AhoCorasick ac = new AhoCorasick();
+        assertTrue(ac.isEmpty());
+        ac.add("aa", 0);
+        ac.add("aa", 1);
+        ac.add("a", 2);
+        assertFalse(ac.isEmpty());
+        ac.build();
+        assertFalse(ac.isEmpty());
+        
+        List<String> result = find(ac, "aaa");
+        assertEquals(7, result.size());
+        assertTrue(result.contains("0:1-3"));
+        assertTrue(result.contains("1:1-3"));
+        assertTrue(result.contains("2:2-3"));
+    }
+    
+    @Test(expected = IllegalStateException.class)
+    public void testAddAfterBuild() {
+        AhoCorasick ac = new AhoCorasick();
+        ac.build();
+        assertTrue(ac.isEmpty());
+        ac.add("abc", 0);
+    }
+    
+}
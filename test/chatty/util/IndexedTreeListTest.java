@@ -0,0 +1,123 @@
+
+package chatty.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author tduva
+ */
+public class IndexedTreeListTest {
+
+    @Test
+    public void testBasic() {
+        IndexedTreeList<String> list = new IndexedTreeList<>(null);
+        assertEquals(0, list.add("b"));
+        assertEquals(0, list.add("a"));
+        assertEquals(2, list.add("c"));
+        assertEquals(-1, list.add(list.get(0)));
+        assertEquals(Arrays.asList("a", "b", "c"), list.toList());
+        assertEquals(1, list.indexOf(list.get(1)));
+        assertEquals(1, list.remove(list.get(1)));
+        assertEquals(Arrays.asList("a", "c"), list.toList());
+        assertEquals(-1, list.remove("x"));
+
+        list.setComparator(Collections.reverseOrder());
+        assertEquals(Arrays.asList("c", "a"), list.toList());
+        list.clear();
+        assertTrue(list.isEmpty());
+    }
+
+    /**
+     * An item without equals(), so equal values still have different
+     * identities.
+     */
+    private static class Item {
+
+        final int value;
+
+        Item(int value) {
+            this.value = value;
+        }
+    }
+
+    private static final Comparator<Item> ITEM_COMPARATOR = new Comparator<Item>() {
+
+        @Override
+        public int compare(Item o1, Item o2) {
+            return Integer.compare(o1.value, o2.value);
+        }
+    };
+
+    private static List<Integer> values(List<Item> items) {
+        List<Integer> result = new ArrayList<>();
+        for (Item item : items) {
+            result.add(item.value);
+        }
+        return result;
+    }
+
+    @Test
+    public void testRandom() {
+        Random random = new Random(1);
+        IndexedTreeList<Item> list = new IndexedTreeList<>(ITEM_COMPARATOR);
+        List<Item> expected = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            int action = random.nextInt(10);
+            if (action < 6 || expected.isEmpty()) {
+                Item item = new Item(random.nextInt(1000));
+                list.add(item);
+                expected.add(item);
+            } else if (action < 9) {
+                Item item = expected.remove(random.nextInt(expected.size()));
+                list.remove(item);
+            } else {
+                List<Item> batch = new ArrayList<>();
+                for (int j = 0; j < random.nextInt(100); j++) {
+                    batch.add(new Item(random.nextInt(1000)));
+                }
+                list.addAll(batch);
+                expected.addAll(batch);
+            }
+        }
+        Collections.sort(expected, ITEM_COMPARATOR);
+        assertEquals(values(expected), values(list.toList()));
+        assertEquals(expected.size(), list.size());
+        int index = 0;
+        for (Item item : list) {
+            assertEquals(index, list.indexOf(item));
+            assertSame(item, list.get(index));
+            index++;
+        }
+    }
+
+    @Test
+    public void testChangedOrder() {
+        // Removing works even if the sort order of an item changed
+        final int[] keys = new int[]{5, 3, 8};
+        IndexedTreeList<Integer> list = new IndexedTreeList<>(new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                return Integer.compare(keys[o1], keys[o2]);
+            }
+        });
+        list.addAll(Arrays.asList(0, 1, 2));
+        assertEquals(Arrays.asList(1, 0, 2), list.toList());
+        keys[1] = 10;
+        assertEquals(0, list.remove(1));
+        assertEquals(2, list.add(1));
+        assertEquals(Arrays.asList(0, 2, 1), list.toList());
+        keys[0] = 20;
+        list.resort();
+        assertEquals(Arrays.asList(2, 1, 0), list.toList());
+    }
+
+}
@@ -0,0 +1,90 @@
+
+package chatty.util;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.ParseException;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author tduva
+ */
+public class JSONRecordReaderTest {
+
+    private static class Collector implements JSONRecordReader.RecordListener {
+
+        final List<String> keys = new ArrayList<>();
+        final List<Object> values = new ArrayList<>();
+
+        @Override
+        public void record(String key, Object value) {
+            keys.add(key);
+            values.add(value);
+        }
+    }
+
+    private static Collector read(String json, String... path) throws IOException, ParseException {
+        Collector c = new Collector();
+        JSONRecordReader.read(new StringReader(json), c, path);
+        return c;
+    }
+
+    @Test
+    public void testArray() throws Exception {
+        Collector c = read("{\"before\":[{\"id\":0}],\"emoticons\":[{\"id\":1,\"code\":\"a\",\"urls\":{\"1\":\"x\"}},"
+                + "{\"id\":2,\"list\":[1,[2,3],{\"b\":null}]},5,\"text\"],\"after\":{\"id\":3}}", "emoticons");
+        assertEquals(4, c.values.size());
+        assertNull(c.keys.get(0));
+        JSONObject first = (JSONObject) c.values.get(0);
+        assertEquals(1L, first.get("id"));
+        assertEquals("a", first.get("code"));
+        assertEquals("x", ((JSONObject) first.get("urls")).get("1"));
+        JSONArray list = (JSONArray) ((JSONObject) c.values.get(1)).get("list");
+        assertEquals(3, list.size());
+        assertEquals(2, ((JSONArray) list.get(1)).size());
+        assertTrue(((JSONObject) list.get(2)).containsKey("b"));
+        assertEquals(5L, c.values.get(2));
+        assertEquals("text", c.values.get(3));
+    }
+
+    @Test
+    public void testObject() throws Exception {
+        Collector c = read("{\"meta\":{\"sets\":{\"1\":\"no\"}},\"sets\":{\"1\":\"abc\",\"2\":{\"a\":1}}}", "sets");
+        assertEquals(2, c.values.size());
+        assertEquals("1", c.keys.get(0));
+        assertEquals("abc", c.values.get(0));
+        assertEquals("2", c.keys.get(1));
+        assertEquals(1L, ((JSONObject) c.values.get(1)).get("a"));
+    }
+
+    @Test
+    public void testPath() throws Exception {
+        Collector c = read("{\"a\":{\"b\":[1,2],\"c\":[3]},\"b\":[4]}", "a", "b");
+        assertEquals(2, c.values.size());
+        assertEquals(1L, c.values.get(0));
+        assertEquals(2L, c.values.get(1));
+
+        c = read("[1,{\"a\":2}]");
+        assertEquals(2, c.values.size());
+        assertEquals(1L, c.values.get(0));
+    }
+
+    @Test
+    public void testFound() throws Exception {
+        assertTrue(JSONRecordReader.read(new StringReader("{\"a\":[]}"), new Collector(), "a"));
+        assertFalse(JSONRecordReader.read(new StringReader("{\"b\":[]}"), new Collector(), "a"));
+        assertFalse(JSONRecordReader.read(new StringReader("{\"b\":{\"a\":[]}}"), new Collector(), "a"));
+    }
+
+    @Test(expected = ParseException.class)
+    public void testInvalid() throws Exception {
+        read("{\"a\":[1,2}", "a");
+    }
+
+}
@@ -0,0 +1,42 @@
+
+package chatty.util;
+
+import java.util.Arrays;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author tduva
+ */
+public class PrefixIndexTest {
+
+    @Test
+    public void testFind() {
+        PrefixIndex<String> index = new PrefixIndex<>();
+        assertTrue(index.add("abc", "Abc"));
+        assertTrue(index.add("abd", "abd"));
+        assertTrue(index.add("ab", "AB"));
+        assertTrue(index.add("abc", "ABC"));
+        assertFalse(index.add("abc", "ABC"));
+        assertTrue(index.add("b", "b"));
+        assertEquals(5, index.size());
+
+        assertEquals(Arrays.asList("AB", "Abc", "ABC", "abd"), index.find("ab"));
+        assertEquals(Arrays.asList("Abc", "ABC"), index.find("abc"));
+        assertTrue(index.find("abcd").isEmpty());
+        assertTrue(index.find("c").isEmpty());
+        assertEquals(5, index.find("").size());
+
+        assertTrue(index.remove("abc", "Abc"));
+        assertFalse(index.remove("abc", "Abc"));
+        assertFalse(index.remove("b", "abd"));
+        assertEquals(Arrays.asList("ABC"), index.find("abc"));
+        assertEquals(4, index.size());
+
+        index.clear();
+        assertTrue(index.find("").isEmpty());
+        assertEquals(0, index.size());
+    }
+
+}
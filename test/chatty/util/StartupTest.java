@@ -0,0 +1,150 @@
+
+package chatty.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author tduva
+ */
+public class StartupTest {
+
+    private static Runnable record(final List<String> done, final String name) {
+        return new Runnable() {
+
+            @Override
+            public void run() {
+                done.add(name);
+            }
+        };
+    }
+
+    @Test
+    public void testDependencies() {
+        final List<String> done = Collections.synchronizedList(new ArrayList<String>());
+        Startup startup = new Startup(3);
+        startup.add("a", record(done, "a"));
+        startup.add("b", new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException ex) {
+                    // Just continue
+                }
+                done.add("b");
+            }
+        });
+        startup.add("c", record(done, "c"), "a", "b");
+        startup.add("d", record(done, "d"), "c");
+        startup.start();
+        startup.phase("main");
+        startup.await("loaders");
+
+        assertEquals(4, done.size());
+        assertTrue(done.indexOf("c") > done.indexOf("a"));
+        assertTrue(done.indexOf("c") > done.indexOf("b"));
+        assertEquals("d", done.get(3));
+
+        String stats = startup.getStats();
+        assertTrue(stats.contains("\nmain: "));
+        assertTrue(stats.contains("\nloaders: "));
+        assertTrue(stats.contains("\nd: "));
+        assertTrue(stats.contains("deferred tasks: 0 waiting"));
+    }
+
+    @Test
+    public void testConcurrent() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(2);
+        final AtomicInteger waited = new AtomicInteger();
+        Runnable task = new Runnable() {
+
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    // Only finishes in time if both run at the same time
+                    if (started.await(2, TimeUnit.SECONDS)) {
+                        waited.incrementAndGet();
+                    }
+                } catch (InterruptedException ex) {
+                    // Just continue
+                }
+            }
+        };
+        Startup startup = new Startup(2);
+        startup.add("a", task);
+        startup.add("b", task);
+        startup.start();
+        startup.await("loaders");
+        assertEquals(2, waited.get());
+    }
+
+    @Test
+    public void testError() {
+        final List<String> done = Collections.synchronizedList(new ArrayList<String>());
+        Startup startup = new Startup(2);
+        startup.add("a", new Runnable() {
+
+            @Override
+            public void run() {
+                throw new RuntimeException("test");
+            }
+        });
+        startup.add("b", record(done, "b"), "a");
+        startup.start();
+        startup.await("loaders");
+        assertEquals(Collections.singletonList("b"), done);
+        assertTrue(startup.getStats().contains("Error: java.lang.RuntimeException: test"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownDependency() {
+        Startup startup = new Startup(2);
+        startup.add("a", record(new ArrayList<String>(), "a"), "b");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicate() {
+        Startup startup = new Startup(2);
+        startup.add("a", record(new ArrayList<String>(), "a"));
+        startup.add("a", record(new ArrayList<String>(), "a"));
+    }
+
+    @Test
+    public void testDeferred() throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(2);
+        final AtomicInteger count = new AtomicInteger();
+        Runnable task = new Runnable() {
+
+            @Override
+            public void run() {
+                count.incrementAndGet();
+                done.countDown();
+            }
+        };
+        Startup startup = new Startup(2);
+        startup.defer("a", task);
+        Thread.sleep(100);
+        assertEquals(0, count.get());
+        assertTrue(startup.getStats().contains("deferred tasks: 1 waiting"));
+
+        startup.runDeferred("test");
+        startup.runDeferred("again");
+        // Added after already started, so performed right away
+        startup.defer("b", task);
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(2, count.get());
+        assertTrue(startup.getStats().contains("(test)"));
+    }
+
+}
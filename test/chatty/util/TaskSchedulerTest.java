@@ -0,0 +1,87 @@
+
+package chatty.util;
+
+import chatty.util.TaskScheduler.Task;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author tduva
+ */
+public class TaskSchedulerTest {
+
+    @Test
+    public void testSchedule() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicInteger canceledRuns = new AtomicInteger();
+        TaskScheduler.schedule("Test", new Runnable() {
+
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        }, 10);
+        Task canceled = TaskScheduler.schedule("Test", new Runnable() {
+
+            @Override
+            public void run() {
+                canceledRuns.incrementAndGet();
+            }
+        }, 50);
+        canceled.cancel();
+        assertTrue(canceled.isDone());
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        assertEquals(0, canceledRuns.get());
+        assertTrue(TaskScheduler.getStats().contains("Test: "));
+    }
+
+    @Test
+    public void testRepeatAfterError() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(3);
+        Task task = TaskScheduler.scheduleWithFixedDelay("TestError", new Runnable() {
+
+            @Override
+            public void run() {
+                latch.countDown();
+                throw new RuntimeException("Test");
+            }
+        }, 0, 10);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        task.cancel();
+        assertTrue(TaskScheduler.getStats().contains("errors"));
+    }
+
+    @Test
+    public void testDelayedActionQueue() throws InterruptedException {
+        final List<String> items = Collections.synchronizedList(new ArrayList<String>());
+        final List<Long> times = Collections.synchronizedList(new ArrayList<Long>());
+        final CountDownLatch latch = new CountDownLatch(3);
+        DelayedActionQueue<String> queue = DelayedActionQueue.create(
+                new DelayedActionQueue.DelayedActionListener<String>() {
+
+            @Override
+            public void actionPerformed(String item) {
+                items.add(item);
+                times.add(System.currentTimeMillis());
+                latch.countDown();
+            }
+        }, 50);
+        queue.add("a");
+        queue.add("b");
+        queue.add("c");
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("a", "b", "c"), items);
+        assertTrue(times.get(1) - times.get(0) >= 45);
+        assertTrue(times.get(2) - times.get(1) >= 45);
+    }
+
+}
@@ -0,0 +1,88 @@
+
+package chatty.util.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author tduva
+ */
+public class EmojiTrieTest {
+
+    private static Emoticon emoji(String code) {
+        return new Emoticon.Builder(Emoticon.Type.EMOJI, code, null).build();
+    }
+
+    private static final String HEART = "\u2764";
+    private static final String THUMBS_UP = "\uD83D\uDC4D";
+    private static final String SKIN_TONE = "\uD83C\uDFFD";
+    private static final String MAN = "\uD83D\uDC68";
+    private static final String WOMAN = "\uD83D\uDC69";
+    private static final String ZWJ = "\u200D";
+    private static final String KEYCAP_1 = "1\u20E3";
+
+    private static final EmojiTrie TRIE = new EmojiTrie(Arrays.asList(
+            emoji(HEART),
+            emoji(THUMBS_UP),
+            emoji(THUMBS_UP + SKIN_TONE),
+            emoji(SKIN_TONE),
+            emoji(MAN),
+            emoji(WOMAN),
+            emoji(MAN + ZWJ + HEART + "\uFE0F" + ZWJ + WOMAN),
+            emoji(KEYCAP_1)));
+
+    private static List<String> find(String text) {
+        final List<String> result = new ArrayList<>();
+        TRIE.find(text, new EmojiTrie.Listener() {
+
+            @Override
+            public void found(Emoticon emote, int start, int end) {
+                result.add(start + "-" + end + ":" + emote.code);
+            }
+        });
+        return result;
+    }
+
+    @Test
+    public void testFind() {
+        assertEquals(Arrays.asList(), find(""));
+        assertEquals(Arrays.asList(), find("abc 123"));
+        assertEquals(Arrays.asList("0-1:" + HEART), find(HEART));
+        assertEquals(Arrays.asList("2-3:" + HEART, "3-4:" + HEART), find("a " + HEART + HEART));
+
+        // Modifier
+        assertEquals(Arrays.asList("0-4:" + THUMBS_UP + SKIN_TONE),
+                find(THUMBS_UP + SKIN_TONE));
+        assertEquals(Arrays.asList("0-2:" + THUMBS_UP, "3-5:" + SKIN_TONE),
+                find(THUMBS_UP + " " + SKIN_TONE));
+
+        // ZWJ sequence, with or without variation selector in the text
+        String couple = MAN + ZWJ + HEART + "\uFE0F" + ZWJ + WOMAN;
+        assertEquals(Arrays.asList("0-8:" + couple), find(couple));
+        assertEquals(Arrays.asList("0-7:" + couple), find(MAN + ZWJ + HEART + ZWJ + WOMAN));
+        // Unknown sequence falls back to the parts
+        assertEquals(Arrays.asList("0-2:" + MAN, "3-5:" + WOMAN), find(MAN + ZWJ + WOMAN));
+
+        // Variation selector directly after Emoji is included
+        assertEquals(Arrays.asList("0-2:" + HEART), find(HEART + "\uFE0F"));
+        assertEquals(Arrays.asList("1-3:" + HEART), find("\uFE0F" + HEART + "\uFE0E"));
+
+        // Keycap
+        assertEquals(Arrays.asList("3-5:" + KEYCAP_1), find("123" + KEYCAP_1));
+    }
+
+    @Test
+    public void testPreCheck() {
+        assertFalse(TRIE.mayContainEmoji("Kappa 123 abc"));
+        assertFalse(TRIE.mayContainEmoji("\u00E4\u00F6\u00FC"));
+        assertTrue(TRIE.mayContainEmoji("a" + HEART));
+        assertTrue(TRIE.mayContainEmoji(KEYCAP_1));
+        assertFalse(EmojiTrie.EMPTY.mayContainEmoji(HEART));
+        assertTrue(EmojiTrie.EMPTY.isEmpty());
+    }
+
+}
@@ -0,0 +1,130 @@
+
+package chatty.util.api;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author tduva
+ */
+public class EmoteCatalogTest {
+
+    private static EmoteCatalog create(EmoteCatalog.Builder builder) throws IOException {
+        File file = File.createTempFile("emotecatalog", null);
+        file.deleteOnExit();
+        return builder.write(file.toPath());
+    }
+
+    @Test
+    public void testLookup() throws IOException {
+        EmoteCatalog.Builder builder = new EmoteCatalog.Builder();
+        // More than the initial capacity, in no particular order
+        for (int i = 0; i < 3000; i++) {
+            int id = (i * 7919) % 3000;
+            builder.add(id, "emote"+id, id % 10 == 0 ? Emoticon.SET_UNDEFINED : id % 50);
+        }
+        builder.add(5000, "caf\u00e9", 123);
+        builder.add(-5, "Negative", -2);
+        EmoteCatalog catalog = create(builder);
+        assertEquals(3002, catalog.size());
+
+        assertEquals("emote0", catalog.getById(0).code);
+        assertEquals("emote2999", catalog.getById(2999).code);
+        assertEquals(49, catalog.getById(2999).emoteSet);
+        assertEquals(2999, catalog.getById(2999).numericId);
+        assertEquals("caf\u00e9", catalog.getById(5000).code);
+        assertEquals("Negative", catalog.getById(-5).code);
+        assertNull(catalog.getById(3000));
+        assertNull(catalog.getById(-1));
+
+        // Same object every time
+        assertSame(catalog.getById(1234), catalog.getById(1234));
+        assertEquals(5, catalog.getCreatedCount());
+
+        List<Emoticon> set = catalog.getByEmoteset(49);
+        assertEquals(60, set.size());
+        for (int i = 0; i < set.size(); i++) {
+            assertEquals(49, set.get(i).emoteSet);
+            if (i > 0) {
+                assertTrue(set.get(i - 1).numericId < set.get(i).numericId);
+            }
+        }
+        assertTrue(set.contains(catalog.getById(2999)));
+        assertEquals(300, catalog.getByEmoteset(Emoticon.SET_UNDEFINED).size());
+        assertEquals(1, catalog.getByEmoteset(123).size());
+        assertEquals(1, catalog.getByEmoteset(-2).size());
+        assertTrue(catalog.getByEmoteset(51).isEmpty());
+        assertTrue(catalog.getByEmoteset(Integer.MAX_VALUE).isEmpty());
+
+        assertEquals(1, catalog.findByCode("emote25").size());
+        assertEquals(1, catalog.findByCode("caf\u00e9").size());
+        assertTrue(catalog.findByCode("emote").isEmpty());
+    }
+
+    @Test
+    public void testDuplicates() throws IOException {
+        EmoteCatalog.Builder builder = new EmoteCatalog.Builder();
+        builder.add(1, "Old", 5);
+        builder.add(2, "Other", 5);
+        builder.add(1, "New", 6);
+        EmoteCatalog catalog = create(builder);
+        assertEquals(2, catalog.size());
+        assertEquals("New", catalog.getById(1).code);
+        assertEquals(1, catalog.getByEmoteset(5).size());
+        assertEquals(1, catalog.getByEmoteset(6).size());
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        EmoteCatalog catalog = create(new EmoteCatalog.Builder());
+        assertEquals(0, catalog.size());
+        assertNull(catalog.getById(1));
+        assertTrue(catalog.getByEmoteset(0).isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalid() throws IOException {
+        File file = File.createTempFile("emotecatalog", null);
+        file.deleteOnExit();
+        Files.write(file.toPath(), new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12});
+        EmoteCatalog.open(file.toPath());
+    }
+
+    @Test
+    public void testNotReplaceable() throws IOException {
+        Path dir = Files.createTempDirectory("emotecatalog");
+        // A non-empty directory can't be replaced, like a mapped file on Windows
+        Path file = dir.resolve("catalog");
+        Files.createDirectory(file);
+        Files.createFile(file.resolve("blocker"));
+
+        EmoteCatalog.Builder builder = new EmoteCatalog.Builder();
+        builder.add(1, "First", 0);
+        assertEquals("First", builder.write(file).getById(1).code);
+        // Writing again still works while the first temporary file is in use
+        builder.add(1, "Second", 0);
+        assertEquals("Second", builder.write(file).getById(1).code);
+
+        // Temporary files are deleted when opening the actual catalog
+        Files.delete(file.resolve("blocker"));
+        Files.delete(file);
+        builder.add(1, "Third", 0);
+        assertEquals("Third", builder.write(file).getById(1).code);
+        assertEquals("Third", EmoteCatalog.open(file).getById(1).code);
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path path : stream) {
+                assertEquals(file, path);
+            }
+        }
+        Files.delete(file);
+        Files.delete(dir);
+    }
+
+}
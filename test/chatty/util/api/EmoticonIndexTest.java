@@ -0,0 +1,99 @@
+
+package chatty.util.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author tduva
+ */
+public class EmoticonIndexTest {
+
+    private static Emoticon emote(String code, boolean literal) {
+        Emoticon.Builder b = new Emoticon.Builder(Emoticon.Type.TWITCH, code, null);
+        b.setLiteral(literal);
+        return b.build();
+    }
+
+    @Test
+    public void testWordCode() {
+        assertTrue(emote("Kappa", false).isWordCode());
+        assertTrue(emote("Kappa", true).isWordCode());
+        assertTrue(emote("<3", false).isWordCode());
+        assertFalse(emote("<3", true).isWordCode());
+        assertFalse(emote(":-?\\)", false).isWordCode());
+        assertFalse(emote("[oO](_|\\.)[oO]", false).isWordCode());
+        assertFalse(emote("", false).isWordCode());
+    }
+
+    @Test
+    public void testIndex() {
+        EmoticonIndex index = new EmoticonIndex();
+        Emoticon kappa = emote("Kappa", false);
+        Emoticon smile = emote(":-?\\)", false);
+        index.add(kappa);
+        index.add(smile);
+        assertEquals(Arrays.asList(kappa), index.get("Kappa"));
+        assertNull(index.get("kappa"));
+        assertEquals(Arrays.asList(smile), index.getRegexEmotes());
+
+        index.remove(kappa);
+        assertNull(index.get("Kappa"));
+        assertFalse(index.isEmpty());
+        index.remove(smile);
+        assertTrue(index.isEmpty());
+    }
+
+    @Test
+    public void testSplit() {
+        EmoticonIndex.Words words = EmoticonIndex.split("  Kappa\tabc\r\n d ");
+        assertEquals(3, words.size());
+        assertEquals("Kappa", words.get(0));
+        assertEquals(2, words.getStart(0));
+        assertEquals(6, words.getEnd(0));
+        assertEquals("abc", words.get(1));
+        assertEquals("d", words.get(2));
+        assertEquals(14, words.getStart(2));
+        assertEquals(0, EmoticonIndex.split("").size());
+        assertEquals(0, EmoticonIndex.split(" \t").size());
+    }
+
+    /**
+     * Finding emotes through the index has to find the same as the regex.
+     */
+    @Test
+    public void testSameAsRegex() {
+        String[] codes = new String[]{"Kappa", "<3", "Kappa123", "a_b", "D:"};
+        String[] texts = new String[]{
+            "Kappa", "Kappa Kappa", " Kappa ", "Kappa123 Kappa", "xKappa",
+            "<3<3 <3", "D: D:D:", "a_b\ta_b", "Kappa Kappa", "\u000BKappa\f"
+        };
+        for (String code : codes) {
+            Emoticon emote = emote(code, false);
+            assertTrue(emote.isWordCode());
+            for (String text : texts) {
+                List<Integer> expected = new ArrayList<>();
+                Matcher m = emote.getMatcher(text);
+                while (m.find()) {
+                    expected.add(m.start());
+                    expected.add(m.end() - 1);
+                }
+                List<Integer> actual = new ArrayList<>();
+                EmoticonIndex.Words words = EmoticonIndex.split(text);
+                for (int i = 0; i < words.size(); i++) {
+                    if (words.get(i).equals(code)) {
+                        actual.add(words.getStart(i));
+                        actual.add(words.getEnd(i));
+                    }
+                }
+                assertEquals(code + "/" + text, expected, actual);
+            }
+        }
+    }
+
+}
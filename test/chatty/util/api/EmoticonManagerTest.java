@@ -0,0 +1,40 @@
+
+package chatty.util.api;
+
+import java.io.File;
+import java.io.StringReader;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author tduva
+ */
+public class EmoticonManagerTest {
+
+    @Test
+    public void testParseEmoticons() throws Exception {
+        EmoteCatalog.Builder builder = new EmoteCatalog.Builder();
+        assertTrue(EmoticonManager.parseEmoticons(new StringReader(
+                "{\"_links\":{},\"emoticons\":[{\"id\":25,\"code\":\"Kappa\",\"emoticon_set\":0},"
+                + "{\"id\":88,\"code\":\"PogChamp\",\"emoticon_set\":null},"
+                + "{\"code\":\"NoId\"}]}"), builder));
+        assertEquals(2, builder.size());
+
+        File file = File.createTempFile("emotecatalog", null);
+        file.deleteOnExit();
+        EmoteCatalog catalog = builder.write(file.toPath());
+        Emoticon kappa = catalog.getById(25);
+        assertEquals("Kappa", kappa.code);
+        assertEquals(0, kappa.emoteSet);
+        Emoticon pogChamp = catalog.getById(88);
+        assertEquals("PogChamp", pogChamp.code);
+        assertEquals(Emoticon.SET_UNDEFINED, pogChamp.emoteSet);
+
+        assertFalse(EmoticonManager.parseEmoticons(
+                new StringReader("{\"error\":\"Not Found\"}"), new EmoteCatalog.Builder()));
+        assertFalse(EmoticonManager.parseEmoticons(
+                new StringReader("{\"emoticons\":["), new EmoteCatalog.Builder()));
+    }
+
+}
@@ -0,0 +1,220 @@
+
+package chatty.util.chatlog;
+
+import chatty.util.chatlog.LogWriter.LogItem;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author tduva
+ */
+public class LogIndexTest {
+
+    @Test
+    public void testTokenize() {
+        assertEquals(Arrays.asList("hello", "world", "123"),
+                LogIndex.tokenize("Hello, world! hello 123"));
+        assertEquals(Arrays.asList("gr\u00fc\u00dfe"), LogIndex.tokenize("Gr\u00fc\u00dfe :)"));
+    }
+
+    @Test
+    public void testIntersect() {
+        assertArrayEquals(new int[]{2, 5}, LogIndex.intersect(new int[]{1, 2, 5, 7}, new int[]{2, 3, 5}));
+        assertArrayEquals(new int[]{3}, LogIndex.intersect(null, new int[]{3}));
+        assertArrayEquals(new int[0], LogIndex.intersect(new int[]{1}, new int[0]));
+    }
+
+    @Test
+    public void testSearch() throws IOException {
+        Path dir = Files.createTempDirectory("chattyindextest");
+        LogIndex index = new LogIndex(dir);
+        BlockingQueue<LogItem> queue = new LinkedBlockingQueue<>();
+        queue.add(new LogItem("#a", "<Abc> hello world", "abc", "hello world"));
+        queue.add(new LogItem("#a", "<def> hello \u00e4\u00f6\u00fc", "def", "hello \u00e4\u00f6\u00fc"));
+        queue.add(new LogItem("#a", "Some info"));
+        queue.add(new LogItem("#b", "<abc> other channel", "abc", "other channel"));
+        queue.add(new LogItem("#a", "<abc> bye world", "abc", "bye world"));
+        queue.add(new LogItem(null, null));
+        new LogWriter(queue, dir, 0, false, index).run();
+
+        // Use new index, so the saved segments are read
+        index = new LogIndex(dir);
+        List<LogIndex.Result> results = index.search("#a", "ABC", null, 10);
+        assertEquals(2, results.size());
+        assertEquals("<abc> bye world", results.get(0).line);
+        assertEquals("<Abc> hello world", results.get(1).line);
+
+        results = index.search("#a", null, "hello", 10);
+        assertEquals(2, results.size());
+        assertEquals("<def> hello \u00e4\u00f6\u00fc", results.get(0).line);
+
+        results = index.search("#a", "abc", "World", 1);
+        assertEquals(1, results.size());
+        assertEquals("<abc> bye world", results.get(0).line);
+
+        results = index.search("#a", null, "hello wor", 10);
+        assertEquals(1, results.size());
+
+        assertTrue(index.search("#a", "xyz", null, 10).isEmpty());
+        assertTrue(index.search("#c", null, "hello", 10).isEmpty());
+        assertEquals(1, index.search("#b", "abc", null, 10).size());
+
+        // Lines not saved to a segment yet
+        Path logFile = dir.resolve("#b.log");
+        long offset = Files.size(logFile);
+        assertTrue(offset > 0);
+        Files.write(logFile, "<xyz> first line\n".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+        index.add("#b", logFile, offset, "xyz", "first line");
+        results = index.search("#b", "xyz", "first", 10);
+        assertEquals(1, results.size());
+        assertEquals("<xyz> first line", results.get(0).line);
+        assertEquals(offset, results.get(0).offset);
+        assertEquals("#b", results.get(0).channel);
+
+        deleteRecursive(dir);
+    }
+
+    @Test
+    public void testRotation() throws IOException {
+        Path dir = Files.createTempDirectory("chattyindextest");
+        LogIndex index = new LogIndex(dir);
+        BlockingQueue<LogItem> queue = new LinkedBlockingQueue<>();
+        for (int i = 0; i < 20; i++) {
+            queue.add(new LogItem("#a", "<abc> message "+i, "abc", "message "+i));
+        }
+        queue.add(new LogItem(null, null));
+        LogWriter writer = new LogWriter(queue, dir, 0, false, index);
+        writer.setRotation(100, false, null);
+        writer.run();
+        assertTrue(writer.getStats().getRotations() > 2);
+
+        // Compress rotated files (normally done in the background)
+        int rotated = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.log")) {
+            for (Path file : files) {
+                if (LogCompressor.isRotatedFile(file)) {
+                    assertTrue(LogCompressor.compress(file));
+                    assertFalse(Files.exists(file));
+                    rotated++;
+                }
+            }
+        }
+        assertEquals(writer.getStats().getRotations(), rotated);
+
+        index = new LogIndex(dir);
+        List<LogIndex.Result> results = index.search("#a", "abc", null, 100);
+        assertEquals(20, results.size());
+        assertEquals("<abc> message 19", results.get(0).line);
+        assertEquals("<abc> message 0", results.get(19).line);
+        results = index.search("#a", null, "message 3", 10);
+        assertEquals(1, results.size());
+        assertEquals("<abc> message 3", results.get(0).line);
+
+        deleteRecursive(dir);
+    }
+
+    @Test
+    public void testRotationReplacesSegments() throws IOException {
+        Path dir = Files.createTempDirectory("chattyindextest");
+        LogIndex index = new LogIndex(dir);
+        index.add("#a", dir.resolve("#a.log"), 0, "abc", "one");
+        index.add("#a", dir.resolve("#a.log"), 10, "abc", "two");
+        index.close("#a");
+        Path segmentDir = dir.resolve("index").resolve("#a");
+        Path segment;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(segmentDir, "*.idx")) {
+            segment = files.iterator().next();
+        }
+
+        // Open segment before rotating
+        assertEquals(0, index.search("#a", "abc", null, 10).size());
+
+        Path rotated = dir.resolve("#a-rotated.log");
+        Files.write(rotated, "<abc> one\n<abc> two\n".getBytes(StandardCharsets.UTF_8));
+        index.rotated("#a", dir.resolve("#a.log"), rotated);
+
+        List<LogIndex.Result> results = index.search("#a", "abc", null, 10);
+        assertEquals(2, results.size());
+        assertEquals("<abc> two", results.get(0).line);
+
+        // Saved under a new name, old one removed
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(segmentDir)) {
+            for (Path file : files) {
+                segments.add(file);
+            }
+        }
+        assertEquals(1, segments.size());
+        assertFalse(segments.contains(segment));
+        assertTrue(segments.get(0).getFileName().toString().contains("_r"));
+        assertEquals(2, new LogIndex(dir).search("#a", "abc", null, 10).size());
+
+        deleteRecursive(dir);
+    }
+
+    @Test
+    public void testStaleSegment() throws IOException {
+        Path dir = Files.createTempDirectory("chattyindextest");
+        LogIndex index = new LogIndex(dir);
+        BlockingQueue<LogItem> queue = new LinkedBlockingQueue<>();
+        queue.add(new LogItem("#a", "<abc> hello world", "abc", "hello world"));
+        queue.add(new LogItem("#a", "<abc> bye world", "abc", "bye world"));
+        queue.add(new LogItem(null, null));
+        new LogWriter(queue, dir, 0, false, index).run();
+        Path logFile = dir.resolve("#a.log");
+        long size = Files.size(logFile);
+        assertEquals(2, new LogIndex(dir).search("#a", "abc", null, 10).size());
+
+        // Log file replaced without updating the index (shorter)
+        Files.write(logFile, "<abc> other\n".getBytes(StandardCharsets.UTF_8));
+        assertTrue(new LogIndex(dir).search("#a", "abc", null, 10).isEmpty());
+
+        // Same size, but the lines start at different offsets
+        StringBuilder b = new StringBuilder();
+        while (b.length() < size - 1) {
+            b.append('x');
+        }
+        b.append('\n');
+        Files.write(logFile, b.toString().getBytes(StandardCharsets.UTF_8));
+        assertTrue(new LogIndex(dir).search("#a", "abc", null, 10).isEmpty());
+
+        // Segment marked as obsolete is not used and deleted
+        Path segmentDir = dir.resolve("index").resolve("#a");
+        Path segment;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(segmentDir, "*.idx")) {
+            segment = files.iterator().next();
+        }
+        Path marker = segment.resolveSibling(segment.getFileName()+".obsolete");
+        Files.createFile(marker);
+        assertTrue(new LogIndex(dir).search("#a", null, null, 10).isEmpty());
+        assertFalse(Files.exists(segment));
+        assertFalse(Files.exists(marker));
+
+        deleteRecursive(dir);
+    }
+
+    private static void deleteRecursive(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(path)) {
+                for (Path file : files) {
+                    deleteRecursive(file);
+                }
+            }
+        }
+        Files.delete(path);
+    }
+
+}
@@ -0,0 +1,91 @@
+
+package chatty.util.chatlog;
+
+import chatty.util.chatlog.LogWriter.LogItem;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author tduva
+ */
+public class LogWriterTest {
+
+    @Test
+    public void testBatches() throws IOException {
+        Path dir = Files.createTempDirectory("chattylogtest");
+        BlockingQueue<LogItem> queue = new LinkedBlockingQueue<>();
+        for (int i = 0; i < 100; i++) {
+            queue.add(new LogItem("#a", "a" + i));
+            queue.add(new LogItem("#b", "b" + i));
+        }
+        queue.add(new LogItem("#b", null));
+        queue.add(new LogItem("#a", "last"));
+        queue.add(new LogItem(null, null));
+
+        LogWriter writer = new LogWriter(queue, dir, 250, true, null);
+        writer.run();
+
+        List<String> a = Files.readAllLines(dir.resolve("#a.log"), StandardCharsets.UTF_8);
+        List<String> b = Files.readAllLines(dir.resolve("#b.log"), StandardCharsets.UTF_8);
+        assertTrue(a.get(0).startsWith("# Log started"));
+        assertEquals("a0", a.get(1));
+        assertEquals("a99", a.get(100));
+        assertEquals("last", a.get(101));
+        assertTrue(a.get(102).startsWith("# Log closed"));
+        assertEquals("b99", b.get(100));
+        assertTrue(b.get(101).startsWith("# Log closed"));
+
+        LogWriter.Stats stats = writer.getStats();
+        assertEquals(203, stats.getItems());
+        assertEquals(1, stats.getBatches());
+        assertEquals(0, stats.getErrors());
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    @Test
+    public void testBroadcastRotation() throws IOException {
+        Path dir = Files.createTempDirectory("chattylogtest");
+        BlockingQueue<LogItem> queue = new LinkedBlockingQueue<>();
+        queue.add(new LogItem("#a", "a"));
+        queue.add(new LogItem("#b", "b"));
+        queue.add(new LogItem("#c", "c"));
+        // Written to all open files, which are rotated first
+        queue.add(new LogItem(null, "all"));
+        queue.add(new LogItem(null, null));
+
+        LogWriter writer = new LogWriter(queue, dir, 250, true, null);
+        // The header alone exceeds the size, so every write rotates
+        writer.setRotation(1, false, null);
+        writer.run();
+
+        for (String channel : new String[]{"#a", "#b", "#c"}) {
+            List<String> lines = Files.readAllLines(dir.resolve(channel+".log"), StandardCharsets.UTF_8);
+            assertEquals("all", lines.get(1));
+        }
+        assertEquals(6, writer.getStats().getRotations());
+        assertEquals(0, writer.getStats().getErrors());
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+}
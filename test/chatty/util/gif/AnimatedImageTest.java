@@ -0,0 +1,57 @@
+
+package chatty.util.gif;
+
+import java.awt.image.BufferedImage;
+import static org.junit.Assert.*;
+import org.junit.Test;
+
+/**
+ *
+ * @author tduva
+ */
+public class AnimatedImageTest {
+
+    private static AnimatedImage create(int... delays) {
+        BufferedImage[] frames = new BufferedImage[delays.length];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = new BufferedImage(2, 1, BufferedImage.TYPE_INT_ARGB);
+        }
+        return new AnimatedImage(frames, delays);
+    }
+
+    @Test
+    public void testFrameIndex() {
+        AnimatedImage image = create(50, 100, 30);
+        assertEquals(0, image.getFrameIndex(0));
+        assertEquals(0, image.getFrameIndex(49));
+        assertEquals(1, image.getFrameIndex(50));
+        assertEquals(1, image.getFrameIndex(149));
+        assertEquals(2, image.getFrameIndex(150));
+        assertEquals(2, image.getFrameIndex(179));
+        assertEquals(0, image.getFrameIndex(180));
+        assertEquals(1, image.getFrameIndex(180 * 1000 + 60));
+        assertEquals(2, image.getWidth());
+        assertEquals(1, image.getHeight());
+    }
+
+    @Test
+    public void testNextChange() {
+        AnimatedImage image = create(50, 100, 30);
+        assertEquals(50, image.getNextChange(0));
+        assertEquals(150, image.getNextChange(50));
+        assertEquals(180, image.getNextChange(170));
+        assertEquals(360 + 50, image.getNextChange(360));
+        assertEquals(-1, create(100).getNextChange(10));
+        assertEquals(0, create(100).getFrameIndex(10));
+    }
+
+    @Test
+    public void testMinDelay() {
+        // Too short delays are replaced
+        AnimatedImage image = create(0, 10);
+        assertEquals(0, image.getFrameIndex(99));
+        assertEquals(1, image.getFrameIndex(100));
+        assertEquals(0, image.getFrameIndex(200));
+    }
+
+}
@@ -0,0 +1,213 @@
+
+package chatty.util.http;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.Charset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+import org.junit.After;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the HttpClient against a local server.
+ *
+ * @author tduva
+ */
+public class HttpClientTest {
+
+    private static final Charset CHARSET = Charset.forName("UTF-8");
+
+    private HttpServer server;
+    private String baseUrl;
+    private final AtomicInteger slowRequests = new AtomicInteger();
+    private final CountDownLatch slowRelease = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/text", new HttpHandler() {
+
+            @Override
+            public void handle(HttpExchange e) throws IOException {
+                send(e, 200, "abc\r\nd\u00e4f");
+            }
+        });
+        server.createContext("/gzip", new HttpHandler() {
+
+            @Override
+            public void handle(HttpExchange e) throws IOException {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+                try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+                    out.write("compressed".getBytes(CHARSET));
+                }
+                e.getResponseHeaders().set("Content-Encoding", "gzip");
+                send(e, 200, compressed.toByteArray());
+            }
+        });
+        server.createContext("/etag", new HttpHandler() {
+
+            @Override
+            public void handle(HttpExchange e) throws IOException {
+                e.getResponseHeaders().set("ETag", "\"v1\"");
+                if ("\"v1\"".equals(e.getRequestHeaders().getFirst("If-None-Match"))) {
+                    e.sendResponseHeaders(304, -1);
+                    e.close();
+                } else {
+                    send(e, 200, "content");
+                }
+            }
+        });
+        server.createContext("/missing", new HttpHandler() {
+
+            @Override
+            public void handle(HttpExchange e) throws IOException {
+                send(e, 404, "not found");
+            }
+        });
+        server.createContext("/post", new HttpHandler() {
+
+            @Override
+            public void handle(HttpExchange e) throws IOException {
+                ByteArrayOutputStream data = new ByteArrayOutputStream();
+                byte[] buffer = new byte[1024];
+                int read;
+                while ((read = e.getRequestBody().read(buffer)) != -1) {
+                    data.write(buffer, 0, read);
+                }
+                send(e, 200, e.getRequestMethod()+" "+new String(data.toByteArray(), CHARSET));
+            }
+        });
+        server.createContext("/slow", new HttpHandler() {
+
+            @Override
+            public void handle(HttpExchange e) throws IOException {
+                slowRequests.incrementAndGet();
+                try {
+                    slowRelease.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException ex) {
+                    // Just respond
+                }
+                send(e, 200, "slow");
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:"+server.getAddress().getPort();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private static void send(HttpExchange e, int code, String text) throws IOException {
+        send(e, code, text.getBytes(CHARSET));
+    }
+
+    private static void send(HttpExchange e, int code, byte[] data) throws IOException {
+        e.sendResponseHeaders(code, data.length);
+        try (OutputStream out = e.getResponseBody()) {
+            out.write(data);
+        }
+    }
+
+    @Test
+    public void testGet() {
+        HttpResponse response = HttpClient.execute(new HttpRequest(baseUrl+"/text"));
+        assertEquals(200, response.getResponseCode());
+        assertEquals("abc\r\nd\u00e4f", response.getText());
+        assertNull(response.getError());
+        assertFalse(response.isNotModified());
+
+        response = HttpClient.execute(new HttpRequest(baseUrl+"/gzip"));
+        assertEquals("gzip", response.getEncoding());
+        assertEquals("compressed", response.getText());
+    }
+
+    @Test
+    public void testError() {
+        HttpResponse response = HttpClient.execute(new HttpRequest(baseUrl+"/missing"));
+        assertEquals(404, response.getResponseCode());
+        assertNull(response.getText());
+        assertNotNull(response.getError());
+
+        // Connection can still be used
+        response = HttpClient.execute(new HttpRequest(baseUrl+"/text"));
+        assertEquals(200, response.getResponseCode());
+
+        response = HttpClient.execute(new HttpRequest("http://127.0.0.1:1/nothing"));
+        assertEquals(-1, response.getResponseCode());
+        assertNotNull(response.getError());
+    }
+
+    @Test
+    public void testPost() {
+        HttpRequest request = new HttpRequest(baseUrl+"/post");
+        request.setMethod("POST");
+        request.setData("some data");
+        HttpResponse response = HttpClient.execute(request);
+        assertEquals("POST some data", response.getText());
+    }
+
+    @Test
+    public void testRevalidate() {
+        HttpResponse response = HttpClient.execute(new HttpRequest(baseUrl+"/etag"));
+        assertEquals("content", response.getText());
+        assertEquals("\"v1\"", response.getEtag());
+
+        HttpRequest request = new HttpRequest(baseUrl+"/etag");
+        request.setCacheValidators(response.getEtag(), 0);
+        response = HttpClient.execute(request);
+        assertTrue(response.isNotModified());
+        assertNull(response.getBody());
+        assertNull(response.getError());
+
+        request = new HttpRequest(baseUrl+"/etag");
+        request.setCacheValidators("\"v0\"", 0);
+        response = HttpClient.execute(request);
+        assertEquals("content", response.getText());
+    }
+
+    @Test
+    public void testShared() throws InterruptedException {
+        final int count = 3;
+        final HttpResponse[] responses = new HttpResponse[count];
+        final CountDownLatch done = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            HttpClient.submit(new Runnable() {
+
+                @Override
+                public void run() {
+                    responses[index] = HttpClient.execute(new HttpRequest(baseUrl+"/slow"));
+                    done.countDown();
+                }
+            });
+        }
+        // Give all requests time to start
+        Thread.sleep(300);
+        slowRelease.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, slowRequests.get());
+        for (HttpResponse response : responses) {
+            assertEquals("slow", response.getText());
+        }
+
+        // Not in progress anymore, so requested again
+        assertEquals("slow", HttpClient.execute(new HttpRequest(baseUrl+"/slow")).getText());
+        assertEquals(2, slowRequests.get());
+        assertTrue(HttpClient.getStats().contains("Other: "));
+    }
+
+}
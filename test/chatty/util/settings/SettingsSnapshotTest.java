@@ -0,0 +1,110 @@
+
+package chatty.util.settings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ *
+ * @author tduva
+ */
+public class SettingsSnapshotTest {
+
+    private Settings settings;
+
+    @Before
+    public void setUp() {
+        settings = new Settings("");
+        settings.addBoolean("abc", true);
+        settings.addLong("number", 5);
+        settings.addString("text", "a");
+        settings.addList("list", new ArrayList<String>(), Setting.STRING);
+        settings.addMap("map", new HashMap<String, String>(), Setting.STRING);
+    }
+
+    @Test(expected = SettingNotFoundException.class)
+    public void testCaseSensitive() {
+        // Same as Settings
+        settings.getSnapshot().getBoolean("ABC");
+    }
+
+    @Test
+    public void testSnapshot() {
+        SettingsSnapshot before = settings.getSnapshot();
+        assertTrue(before.getBoolean("abc"));
+        assertEquals(5, before.getLong("number"));
+
+        settings.setLong("number", 10);
+        settings.listAdd("list", "value");
+        settings.mapPut("map", "key", "value");
+
+        SettingsSnapshot after = settings.getSnapshot();
+        assertTrue(after.getVersion() > before.getVersion());
+        assertEquals(5, before.getLong("number"));
+        assertEquals(10, after.getLong("number"));
+        assertFalse(before.listContains("list", "value"));
+        assertTrue(after.listContains("list", "value"));
+        assertTrue(settings.listContains("list", "value"));
+        assertEquals("value", settings.mapGet("map", "key"));
+        assertNull(before.mapGet("map", "key"));
+
+        // Unchanged value doesn't create a new snapshot
+        settings.setLong("number", 10);
+        assertSame(after, settings.getSnapshot());
+    }
+
+    @Test
+    public void testHandles() {
+        SettingHandle.BooleanHandle abc = settings.getBooleanHandle("abc");
+        SettingHandle.LongHandle number = settings.getLongHandle("number");
+        SettingHandle.StringHandle text = settings.getStringHandle("text");
+        SettingHandle.ListHandle list = settings.getListHandle("list");
+        SettingHandle.MapHandle map = settings.getMapHandle("map");
+
+        settings.setBoolean("abc", false);
+        settings.setLong("number", 1);
+        settings.setString("text", "b");
+        settings.putList("list", Arrays.asList("a", "b"));
+        settings.mapPut("map", "k", "v");
+
+        assertFalse(abc.get());
+        assertEquals(1, number.get());
+        assertEquals("b", text.get());
+        assertTrue(list.contains("b"));
+        assertFalse(list.contains("c"));
+        assertEquals(Arrays.asList("a", "b"), list.get());
+        assertEquals("v", map.get("k"));
+
+        settings.listRemove("list", "b");
+        assertFalse(list.contains("b"));
+        settings.mapClear("map");
+        assertTrue(map.get().isEmpty());
+
+        // Added later, replacing the previous setting
+        settings.addLong("number", 3);
+        assertEquals(3, number.get());
+        settings.addLong("number2", 4);
+        assertEquals(4, settings.getLongHandle("number2").get());
+        assertEquals(3, number.get());
+    }
+
+    @Test(expected = SettingNotFoundException.class)
+    public void testWrongType() {
+        settings.getBooleanHandle("number");
+    }
+
+    @Test(expected = SettingNotFoundException.class)
+    public void testNotFound() {
+        settings.getLong("doesntExist");
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUnmodifiable() {
+        settings.getListHandle("list").get().clear();
+    }
+
+}